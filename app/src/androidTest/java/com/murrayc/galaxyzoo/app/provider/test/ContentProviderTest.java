@@ -19,17 +19,29 @@
 
 package com.murrayc.galaxyzoo.app.provider.test;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.RemoteException;
 import android.test.ProviderTestCase2;
 import android.test.mock.MockContentResolver;
 
+import com.murrayc.galaxyzoo.app.provider.CacheStats;
+import com.murrayc.galaxyzoo.app.provider.Classification;
+import com.murrayc.galaxyzoo.app.provider.ClassificationAnswer;
+import com.murrayc.galaxyzoo.app.provider.ClassificationCheckbox;
 import com.murrayc.galaxyzoo.app.provider.Item;
+import com.murrayc.galaxyzoo.app.provider.ItemStats;
 import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 public class ContentProviderTest extends ProviderTestCase2<ItemsContentProvider> {
 
@@ -76,6 +88,57 @@ public class ContentProviderTest extends ProviderTestCase2<ItemsContentProvider>
         cursor.close();
     }
 
+    public void testQueryPages() {
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(mMockResolver.insert(Item.ITEMS_URI, getFullContentValues()));
+        }
+
+        final String[] projection = {Item.Columns._ID};
+
+        //The first page:
+        Uri uri = Item.ITEMS_URI.buildUpon()
+                .appendQueryParameter(Item.QUERY_PARAMETER_LIMIT, "2")
+                .build();
+        Cursor cursor = mMockResolver.query(uri, projection, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(2, cursor.getCount());
+        assertTrue(cursor.moveToLast());
+        final long lastId = cursor.getLong(0);
+        cursor.close();
+
+        //The next page, continuing after the last item of the first page:
+        uri = Item.ITEMS_URI.buildUpon()
+                .appendQueryParameter(Item.QUERY_PARAMETER_AFTER_ID, Long.toString(lastId))
+                .appendQueryParameter(Item.QUERY_PARAMETER_LIMIT, "2")
+                .build();
+        cursor = mMockResolver.query(uri, projection, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertTrue(cursor.getLong(0) > lastId);
+        cursor.close();
+    }
+
+    public void testQueryPageWithSelectionArgs() {
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(mMockResolver.insert(Item.ITEMS_URI, getFullContentValues()));
+        }
+
+        final String[] projection = {Item.Columns._ID};
+        final Uri uri = Item.ITEMS_URI.buildUpon()
+                .appendQueryParameter(Item.QUERY_PARAMETER_AFTER_ID, "1")
+                .appendQueryParameter(Item.QUERY_PARAMETER_LIMIT, "2")
+                .build();
+        final Cursor cursor = mMockResolver.query(uri, projection,
+                Item.Columns.SUBJECT_ID + " = ?", new String[]{VALID_SUBJECT_ID}, null);
+        assertNotNull(cursor);
+        assertEquals(2, cursor.getCount());
+        while (cursor.moveToNext()) {
+            assertTrue(cursor.getLong(0) > 1);
+        }
+        cursor.close();
+    }
+
     public void testInsertThenQuerySpecific() {
         final Uri uri = mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
         assertNotNull(uri);
@@ -92,6 +155,123 @@ public class ContentProviderTest extends ProviderTestCase2<ItemsContentProvider>
         cursor.close();
     }
 
+    public void testBulkInsert() {
+        final ContentValues[] values = {getFullContentValues(), getFullContentValues(), getFullContentValues()};
+        assertEquals(3, mMockResolver.bulkInsert(Item.ITEMS_URI, values));
+
+        final Cursor cursor = mMockResolver.query(Item.ITEMS_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(3, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testBulkInsertFailureInsertsNothing() {
+        final ContentValues[] values = new ContentValues[3];
+        for (int i = 0; i < values.length; i++) {
+            final ContentValues valuesAnswer = new ContentValues();
+            valuesAnswer.put(ClassificationAnswer.Columns.ITEM_ID, "1");
+            valuesAnswer.put(ClassificationAnswer.Columns.SEQUENCE, i);
+            valuesAnswer.put(ClassificationAnswer.Columns.QUESTION_ID, "sloan-" + i);
+            valuesAnswer.put(ClassificationAnswer.Columns.ANSWER_ID, "a-0");
+            values[i] = valuesAnswer;
+        }
+
+        //The last row has the same primary key as the first, so it cannot be inserted:
+        values[0].put(ClassificationAnswer.Columns._ID, 1);
+        values[2].put(ClassificationAnswer.Columns._ID, 1);
+
+        assertEquals(0, mMockResolver.bulkInsert(ClassificationAnswer.CLASSIFICATION_ANSWERS_URI, values));
+
+        final Cursor cursor = mMockResolver.query(ClassificationAnswer.CLASSIFICATION_ANSWERS_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testApplyBatch() throws OperationApplicationException, RemoteException {
+        final Uri uriItem = mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
+        assertNotNull(uriItem);
+        final String itemId = Long.toString(ContentUris.parseId(uriItem));
+
+        final ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final ContentValues valuesAnswer = new ContentValues();
+            valuesAnswer.put(ClassificationAnswer.Columns.ITEM_ID, itemId);
+            valuesAnswer.put(ClassificationAnswer.Columns.SEQUENCE, i);
+            valuesAnswer.put(ClassificationAnswer.Columns.QUESTION_ID, "sloan-" + i);
+            valuesAnswer.put(ClassificationAnswer.Columns.ANSWER_ID, "a-0");
+            ops.add(ContentProviderOperation.newInsert(ClassificationAnswer.CLASSIFICATION_ANSWERS_URI)
+                    .withValues(valuesAnswer).build());
+        }
+
+        final ContentValues valuesItem = new ContentValues();
+        valuesItem.put(Item.Columns.DONE, true);
+        ops.add(ContentProviderOperation.newUpdate(uriItem).withValues(valuesItem).build());
+
+        final ContentProviderResult[] results = mMockResolver.applyBatch(Item.AUTHORITY, ops);
+        assertNotNull(results);
+        assertEquals(3, results.length);
+
+        final Cursor cursor = mMockResolver.query(ClassificationAnswer.CLASSIFICATION_ANSWERS_URI,
+                null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(2, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testQueryClassification() {
+        final Uri uriItem = mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
+        assertNotNull(uriItem);
+        final String itemId = Long.toString(ContentUris.parseId(uriItem));
+
+        //An answer without checkboxes:
+        final ContentValues valuesAnswer = new ContentValues();
+        valuesAnswer.put(ClassificationAnswer.Columns.ITEM_ID, itemId);
+        valuesAnswer.put(ClassificationAnswer.Columns.SEQUENCE, 0);
+        valuesAnswer.put(ClassificationAnswer.Columns.QUESTION_ID, "sloan-0");
+        valuesAnswer.put(ClassificationAnswer.Columns.ANSWER_ID, "a-1");
+        assertNotNull(mMockResolver.insert(ClassificationAnswer.CLASSIFICATION_ANSWERS_URI, valuesAnswer));
+
+        //An answer with two checkboxes:
+        valuesAnswer.put(ClassificationAnswer.Columns.SEQUENCE, 1);
+        valuesAnswer.put(ClassificationAnswer.Columns.QUESTION_ID, "sloan-6");
+        valuesAnswer.put(ClassificationAnswer.Columns.ANSWER_ID, "a-0");
+        assertNotNull(mMockResolver.insert(ClassificationAnswer.CLASSIFICATION_ANSWERS_URI, valuesAnswer));
+
+        final ContentValues valuesCheckbox = new ContentValues();
+        valuesCheckbox.put(ClassificationCheckbox.Columns.ITEM_ID, itemId);
+        valuesCheckbox.put(ClassificationCheckbox.Columns.SEQUENCE, 1);
+        valuesCheckbox.put(ClassificationCheckbox.Columns.QUESTION_ID, "sloan-6");
+        valuesCheckbox.put(ClassificationCheckbox.Columns.CHECKBOX_ID, "x-1");
+        assertNotNull(mMockResolver.insert(ClassificationCheckbox.CLASSIFICATION_CHECKBOXES_URI, valuesCheckbox));
+        valuesCheckbox.put(ClassificationCheckbox.Columns.CHECKBOX_ID, "x-0");
+        assertNotNull(mMockResolver.insert(ClassificationCheckbox.CLASSIFICATION_CHECKBOXES_URI, valuesCheckbox));
+
+        final Uri uri = Classification.CLASSIFICATIONS_URI.buildUpon().appendPath(itemId).build();
+        final String[] projection = {Classification.Columns.SEQUENCE,
+                Classification.Columns.ANSWER_ID,
+                Classification.Columns.CHECKBOX_ID};
+        final Cursor cursor = mMockResolver.query(uri, projection, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(3, cursor.getCount());
+
+        assertTrue(cursor.moveToNext());
+        assertEquals(0, cursor.getInt(0));
+        assertEquals("a-1", cursor.getString(1));
+        assertTrue(cursor.isNull(2));
+
+        //The checkboxes should be sorted:
+        assertTrue(cursor.moveToNext());
+        assertEquals(1, cursor.getInt(0));
+        assertEquals("a-0", cursor.getString(1));
+        assertEquals("x-0", cursor.getString(2));
+
+        assertTrue(cursor.moveToNext());
+        assertEquals(1, cursor.getInt(0));
+        assertEquals("x-1", cursor.getString(2));
+
+        cursor.close();
+    }
 
     public void testInsertThenOpenFile() throws IOException {
         final Uri uriItem = mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
@@ -119,6 +299,195 @@ public class ContentProviderTest extends ProviderTestCase2<ItemsContentProvider>
         cursor.close();
     }
 
+    public void testQueryCacheStats() {
+        final Cursor cursor = mMockResolver.query(CacheStats.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(0, cursor.getInt(cursor.getColumnIndex(CacheStats.Columns.FILE_COUNT)));
+        assertEquals(0L, cursor.getLong(cursor.getColumnIndex(CacheStats.Columns.BYTES_USED)));
+        cursor.close();
+    }
+
+    public void testItemStatsFollowItemChanges() {
+        assertItemStats(0, 0, 0, 0);
+
+        final Uri uriItem = mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
+        assertNotNull(uriItem);
+        mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
+        assertItemStats(2, 2, 0, 0);
+
+        //Classify one item:
+        ContentValues values = new ContentValues();
+        values.put(Item.Columns.DONE, 1);
+        assertEquals(1, mMockResolver.update(uriItem, values, null, null));
+        assertItemStats(2, 1, 0, 1);
+
+        //Upload its classification:
+        values = new ContentValues();
+        values.put(Item.Columns.UPLOADED, 1);
+        assertEquals(1, mMockResolver.update(uriItem, values, null, null));
+        assertItemStats(2, 1, 1, 0);
+
+        assertEquals(1, mMockResolver.delete(uriItem, null, null));
+        assertItemStats(1, 1, 0, 0);
+    }
+
+    private void assertItemStats(final int itemCount, final int notDoneCount,
+                                 final int uploadedCount, final int outstandingCount) {
+        final Cursor cursor = mMockResolver.query(ItemStats.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(itemCount, cursor.getInt(cursor.getColumnIndex(ItemStats.Columns.ITEM_COUNT)));
+        assertEquals(notDoneCount, cursor.getInt(cursor.getColumnIndex(ItemStats.Columns.NOT_DONE_COUNT)));
+        assertEquals(uploadedCount, cursor.getInt(cursor.getColumnIndex(ItemStats.Columns.UPLOADED_COUNT)));
+        assertEquals(outstandingCount, cursor.getInt(cursor.getColumnIndex(ItemStats.Columns.OUTSTANDING_COUNT)));
+        final long bytesUsed = cursor.getLong(cursor.getColumnIndex(ItemStats.Columns.BYTES_USED));
+        cursor.close();
+
+        //The bytes used should be the same as from CacheStats:
+        final Cursor cursorCache = mMockResolver.query(CacheStats.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursorCache);
+        assertTrue(cursorCache.moveToFirst());
+        assertEquals(cursorCache.getLong(cursorCache.getColumnIndex(CacheStats.Columns.BYTES_USED)), bytesUsed);
+        cursorCache.close();
+    }
+
+    public void testDeleteItemDeletesImages() {
+        final Uri uriItem = mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
+        assertNotNull(uriItem);
+
+        //The standard, thumbnail, and inverted images:
+        assertEquals(3, getCacheFileCount());
+
+        assertEquals(1, mMockResolver.delete(uriItem, null, null));
+        assertEquals(0, getCacheFileCount());
+    }
+
+    private int getCacheFileCount() {
+        final Cursor cursor = mMockResolver.query(CacheStats.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        final int result = cursor.getInt(cursor.getColumnIndex(CacheStats.Columns.FILE_COUNT));
+        cursor.close();
+        return result;
+    }
+
+    public void testRemoveItemsWithLimit() {
+        mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
+        mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
+        final Uri uriFirst = mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
+        assertNotNull(uriFirst);
+
+        //Remove the 2 newest items:
+        final Bundle extras = new Bundle();
+        extras.putString(Item.EXTRA_SORT_ORDER, Item.Columns._ID + " DESC");
+        final Bundle result = mMockResolver.call(Item.ITEMS_URI, Item.METHOD_REMOVE_ITEMS,
+                "2", extras);
+        assertNotNull(result);
+        assertEquals(2, result.getInt(CacheStats.RESULT_ITEMS_REMOVED));
+
+        final Cursor cursor = mMockResolver.query(Item.ITEMS_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        //The images rows of the removed items are gone too:
+        assertEquals(3, getCacheFileCount());
+    }
+
+    public void testTrimCacheKeepsItemsNotUploaded() {
+        mMockResolver.insert(Item.ITEMS_URI, getFullContentValues());
+
+        //Even with no budget at all, an item that is not yet uploaded must not be removed:
+        final Bundle result = mMockResolver.call(CacheStats.CONTENT_URI, CacheStats.METHOD_TRIM_CACHE,
+                "0", null);
+        assertNotNull(result);
+        assertEquals(0, result.getInt(CacheStats.RESULT_ITEMS_REMOVED));
+
+        final Cursor cursor = mMockResolver.query(Item.ITEMS_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    /**
+     * Get the query plan from the provider's database directly,
+     * because the provider doesn't offer this.
+     */
+    private String getQueryPlan(final String sql) {
+        //Make sure that the provider has created the database:
+        mMockResolver.query(Item.ITEMS_URI, null, null, null, null).close();
+
+        //This is ItemsContentProvider.DatabaseHelper.DATABASE_NAME,
+        //which the mock context renames just as it does for the provider.
+        final SQLiteDatabase db = getMockContext().openOrCreateDatabase("items.db", 0, null);
+        final Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        assertNotNull(cursor);
+
+        final StringBuilder result = new StringBuilder();
+        final int columnIndex = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            result.append(cursor.getString(columnIndex));
+            result.append('\n');
+        }
+
+        cursor.close();
+        db.close();
+        return result.toString();
+    }
+
+    private void assertQueryUsesIndex(final String sql, final String indexName) {
+        final String plan = getQueryPlan(sql);
+        assertTrue("Query plan does not use " + indexName + ": " + plan,
+                plan.contains(indexName));
+    }
+
+    public void testQueryPlanNextItem() {
+        //As in ItemsContentProvider.queryItemNext():
+        assertQueryUsesIndex("SELECT _id FROM items_with_images WHERE (" +
+                        "(" + Item.Columns.DONE + " != 1" +
+                        ") AND (" +
+                        Item.Columns.LOCATION_STANDARD_DOWNLOADED + " == 1" +
+                        ") AND (" +
+                        Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED + " == 1" +
+                        ") AND (" +
+                        Item.Columns.LOCATION_INVERTED_DOWNLOADED + " == 1" +
+                        ")) ORDER BY _id ASC LIMIT 1",
+                "items_next_index");
+    }
+
+    public void testQueryPlanDownloadNotDone() {
+        //As in SubjectAdder.downloadMissingImages():
+        //Each item's images are found via the index instead of scanning the images table.
+        assertQueryUsesIndex("SELECT _id FROM items_with_images WHERE (" +
+                        "(" + Item.Columns.LOCATION_STANDARD_DOWNLOADED + " != 1" +
+                        ") OR (" +
+                        Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED + " != 1" +
+                        ") OR (" +
+                        Item.Columns.LOCATION_INVERTED_DOWNLOADED + " != 1" +
+                        ")) ORDER BY _id ASC",
+                "images_item_index");
+    }
+
+    public void testQueryPlanRemoveOldSubjects() {
+        //As in SyncAdapter.removeOldSubjects():
+        assertQueryUsesIndex("SELECT _id FROM items_with_images WHERE (" +
+                        Item.Columns.UPLOADED + " == 1" +
+                        ") ORDER BY " + Item.Columns.DATETIME_DONE + " ASC",
+                "items_uploaded_by_date_index");
+    }
+
+    public void testQueryPlanOutstandingUploads() {
+        //As in SyncAdapter.uploadOutstandingClassifications():
+        assertQueryUsesIndex("SELECT _id FROM items_with_images WHERE (" +
+                        "(" + Item.Columns.DONE + " == 1) AND " +
+                        "(" + Item.Columns.UPLOADED + " != 1)" +
+                        ") ORDER BY " + Item.Columns.DATETIME_DONE + " ASC",
+                "items_outstanding_by_date_index");
+    }
+
     //TODO: Test filtering of mime types?
     public void testGetStreamTypes() {
         final Uri uri = Uri.parse(Item.FILE_URI + "/1");
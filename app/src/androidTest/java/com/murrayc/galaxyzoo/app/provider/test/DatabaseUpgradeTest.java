@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider.test;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.ProviderTestCase2;
+import android.test.mock.MockContentResolver;
+
+import com.murrayc.galaxyzoo.app.provider.Classification;
+import com.murrayc.galaxyzoo.app.provider.Item;
+import com.murrayc.galaxyzoo.app.provider.ItemStats;
+import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
+
+/**
+ * Creates a database as it was in each older version,
+ * and checks that the provider upgrades it without losing the items,
+ * their cached files, or their classifications.
+ */
+public class DatabaseUpgradeTest extends ProviderTestCase2<ItemsContentProvider> {
+
+    //This is ItemsContentProvider.DatabaseHelper.DATABASE_NAME,
+    //which the mock context renames just as it does for the provider.
+    private static final String DATABASE_NAME = "items.db";
+
+    private static final String SUBJECT_ID = "someSubjectId";
+
+    private MockContentResolver mMockResolver;
+
+    public DatabaseUpgradeTest() {
+        super(ItemsContentProvider.class, Item.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMockResolver = getMockContentResolver();
+    }
+
+    /**
+     * A version from before the migrations, which we upgrade by copying the data.
+     */
+    public void testUpgradeFrom19() {
+        checkUpgradeFrom(19);
+    }
+
+    public void testUpgradeFrom20() {
+        checkUpgradeFrom(20);
+    }
+
+    public void testUpgradeFrom21() {
+        checkUpgradeFrom(21);
+    }
+
+    public void testUpgradeFrom22() {
+        checkUpgradeFrom(22);
+    }
+
+    public void testUpgradeFrom23() {
+        checkUpgradeFrom(23);
+    }
+
+    public void testUpgradeFrom24() {
+        checkUpgradeFrom(24);
+    }
+
+    public void testUpgradeFrom25() {
+        checkUpgradeFrom(25);
+    }
+
+    public void testUpgradeFrom26() {
+        checkUpgradeFrom(26);
+    }
+
+    public void testUpgradeFrom27() {
+        checkUpgradeFrom(27);
+    }
+
+    /**
+     * When a step fails, after it has renamed the items table,
+     * the upgrade should roll back that step and then copy the data, without losing any.
+     */
+    public void testUpgradeFrom24WithFailedStep() {
+        createDatabase(24);
+
+        //Make step 24 fail when it creates the images table:
+        final SQLiteDatabase db = getMockContext().openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        db.execSQL("CREATE TABLE images (_id INTEGER PRIMARY KEY)");
+        db.close();
+
+        checkUpgradedDatabase();
+    }
+
+    private void checkUpgradeFrom(final int version) {
+        createDatabase(version);
+        checkUpgradedDatabase();
+    }
+
+    private void checkUpgradedDatabase() {
+        //This makes the provider open, and upgrade, the database:
+        Cursor cursor = mMockResolver.query(Item.ITEMS_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(SUBJECT_ID, cursor.getString(cursor.getColumnIndex(Item.Columns.SUBJECT_ID)));
+        assertEquals(1, cursor.getInt(cursor.getColumnIndex(Item.Columns.DONE)));
+        assertEquals(0, cursor.getInt(cursor.getColumnIndex(Item.Columns.UPLOADED)));
+        assertEquals(1, cursor.getInt(cursor.getColumnIndex(Item.Columns.LOCATION_STANDARD_DOWNLOADED)));
+        assertEquals("content://" + Item.AUTHORITY + "/file/1",
+                cursor.getString(cursor.getColumnIndex(Item.Columns.LOCATION_STANDARD_URI)));
+        assertEquals(0, cursor.getInt(cursor.getColumnIndex(Item.Columns.UPLOAD_ATTEMPTS)));
+        assertEquals(0, cursor.getInt(cursor.getColumnIndex(Item.Columns.DERIVE_ATTEMPTS)));
+        assertEquals(0, cursor.getLong(cursor.getColumnIndex(Item.Columns.DERIVE_NEXT_ATTEMPT)));
+        cursor.close();
+
+        //The existing item is counted, once:
+        cursor = mMockResolver.query(ItemStats.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getInt(cursor.getColumnIndex(ItemStats.Columns.ITEM_COUNT)));
+        assertEquals(0, cursor.getInt(cursor.getColumnIndex(ItemStats.Columns.NOT_DONE_COUNT)));
+        assertEquals(1, cursor.getInt(cursor.getColumnIndex(ItemStats.Columns.OUTSTANDING_COUNT)));
+        cursor.close();
+
+        //The classification, which has not yet been uploaded:
+        final Uri uri = Classification.CLASSIFICATIONS_URI.buildUpon().appendPath("1").build();
+        final String[] projection = {Classification.Columns.ANSWER_ID};
+        cursor = mMockResolver.query(uri, projection, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("a-1", cursor.getString(0));
+        cursor.close();
+
+        final SQLiteDatabase db = getMockContext().openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+
+        //The cached file, which keeps its ID, now in the images table instead of the files table:
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "images", "_id = 1 AND itemId = 1", null));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "sqlite_master",
+                "type = 'table' AND name = ?", new String[]{"files"}));
+
+        //The queue for the file janitor:
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "sqlite_master",
+                "type = 'table' AND name = ?", new String[]{"removed_files"}));
+
+        //The new indexes:
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "sqlite_master",
+                "type = 'index' AND name = ?", new String[]{"items_next_index"}));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "sqlite_master",
+                "type = 'index' AND name = ?", new String[]{"items_done_index"}));
+
+        //No temporary tables left over:
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "sqlite_master",
+                "type = 'table' AND name LIKE '%_old'", null));
+        db.close();
+    }
+
+    /**
+     * Create the database as it was in this version, with one classified item that is not yet uploaded.
+     */
+    private void createDatabase(final int version) {
+        final Context context = getMockContext();
+        context.deleteDatabase(DATABASE_NAME);
+        final SQLiteDatabase db = context.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+
+        //Version 20 (and, as far as we know, earlier versions):
+        db.execSQL("CREATE TABLE items (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "done INTEGER DEFAULT 0, " +
+                "uploaded INTEGER DEFAULT 0, " +
+                "subjectId TEXT, " +
+                "zooniverseId TEXT, " +
+                "locationStandardUriRemote TEXT, " +
+                "locationStandardUri TEXT, " +
+                "locationStandardDownloaded INTEGER DEFAULT 0, " +
+                "locationThumbnailUriRemote TEXT, " +
+                "locationThumbnailUri TEXT, " +
+                "locationThumbnailDownloaded INTEGER DEFAULT 0, " +
+                "locationInvertedUriRemote TEXT, " +
+                "locationInvertedUri TEXT, " +
+                "locationInvertedDownloaded INTEGER DEFAULT 0, " +
+                "favorite INTEGER DEFAULT 0, " +
+                "dateTimeDone TEXT)");
+        createIndex(db, "items", "subjectId");
+        createIndex(db, "items", "uploaded");
+        createIndex(db, "items", "done");
+        createIndex(db, "items", "dateTimeDone");
+        createIndex(db, "items", "locationStandardDownloaded");
+        createIndex(db, "items", "locationThumbnailDownloaded");
+        createIndex(db, "items", "locationInvertedDownloaded");
+
+        db.execSQL("CREATE TABLE files (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "_data TEXT)");
+
+        db.execSQL("CREATE TABLE classification_answers (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "sequence INTEGER DEFAULT 0, " +
+                "itemId INTEGER, " +
+                "questionId TEXT, " +
+                "answerId TEXT)");
+        createIndex(db, "classification_answers", "itemId");
+
+        db.execSQL("CREATE TABLE classification_checkboxes (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "sequence INTEGER DEFAULT 0, " +
+                "itemId INTEGER, " +
+                "questionId TEXT, " +
+                "checkboxId TEXT)");
+        createIndex(db, "classification_checkboxes", "itemId");
+        createIndex(db, "classification_checkboxes", "questionId");
+
+        if (version >= 21) {
+            db.execSQL("ALTER TABLE items ADD COLUMN groupId TEXT");
+        }
+
+        if (version >= 22) {
+            db.execSQL("ALTER TABLE items ADD COLUMN uploadAttempts INTEGER DEFAULT 0");
+            db.execSQL("ALTER TABLE items ADD COLUMN uploadNextAttempt INTEGER DEFAULT 0");
+        }
+
+        if (version >= 23) {
+            db.execSQL("ALTER TABLE files ADD COLUMN size INTEGER DEFAULT 0");
+            db.execSQL("ALTER TABLE files ADD COLUMN lastAccessed INTEGER DEFAULT 0");
+        }
+
+        //Version 24 only changed the indexes, which the upgrade replaces anyway.
+
+        if (version < 25) {
+            db.execSQL("INSERT INTO files (_id, _data) VALUES (1, 'testFileThatDoesNotExist')");
+            db.execSQL("INSERT INTO items (_id, done, uploaded, subjectId, " +
+                    "locationStandardUri, locationStandardDownloaded, dateTimeDone) " +
+                    "VALUES (1, 1, 0, '" + SUBJECT_ID + "', " +
+                    "'content://" + Item.AUTHORITY + "/file/1', 1, '2014-01-01 00:00:00.000')");
+        } else {
+            //Version 25 replaced the items' location columns, and the files table, with the images table:
+            db.execSQL("DROP TABLE items");
+            db.execSQL("DROP TABLE files");
+            db.execSQL("CREATE TABLE items (" +
+                    "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "done INTEGER DEFAULT 0, " +
+                    "uploaded INTEGER DEFAULT 0, " +
+                    "subjectId TEXT, " +
+                    "zooniverseId TEXT, " +
+                    "groupId TEXT, " +
+                    "favorite INTEGER DEFAULT 0, " +
+                    "dateTimeDone TEXT, " +
+                    "uploadAttempts INTEGER DEFAULT 0, " +
+                    "uploadNextAttempt INTEGER DEFAULT 0)");
+            createIndex(db, "items", "subjectId");
+            db.execSQL("CREATE INDEX items_next_index ON items ( _id ) WHERE done != 1");
+
+            db.execSQL("CREATE TABLE images (" +
+                    "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "itemId INTEGER NOT NULL REFERENCES items (_id) ON DELETE CASCADE, " +
+                    "type INTEGER NOT NULL, " +
+                    "remoteUri TEXT, " +
+                    "_data TEXT, " +
+                    "state INTEGER DEFAULT 0, " +
+                    "bytes INTEGER DEFAULT 0, " +
+                    "etag TEXT, " +
+                    "lastAccessed INTEGER DEFAULT 0)");
+            db.execSQL("CREATE UNIQUE INDEX images_item_index ON images ( itemId, type )");
+            createItemsView(db);
+
+            db.execSQL("INSERT INTO items (_id, done, uploaded, subjectId, dateTimeDone) " +
+                    "VALUES (1, 1, 0, '" + SUBJECT_ID + "', '2014-01-01 00:00:00.000')");
+            db.execSQL("INSERT INTO images (_id, itemId, type, _data, state) " +
+                    "VALUES (1, 1, 0, 'testFileThatDoesNotExist', 1)");
+        }
+
+        if (version >= 26) {
+            db.execSQL("CREATE TABLE removed_files (" +
+                    "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "_data TEXT)");
+        }
+
+        if (version >= 27) {
+            //The counts of the one item. The triggers don't matter here.
+            db.execSQL("CREATE TABLE item_stats (" +
+                    "_id INTEGER PRIMARY KEY, " +
+                    "itemCount INTEGER DEFAULT 0, " +
+                    "notDoneCount INTEGER DEFAULT 0, " +
+                    "uploadedCount INTEGER DEFAULT 0, " +
+                    "outstandingCount INTEGER DEFAULT 0)");
+            db.execSQL("INSERT INTO item_stats (_id, itemCount, notDoneCount, uploadedCount, outstandingCount) " +
+                    "VALUES (1, 1, 0, 0, 1)");
+        }
+
+        db.execSQL("INSERT INTO classification_answers (sequence, itemId, questionId, answerId) " +
+                "VALUES (0, 1, 'sloan-0', 'a-1')");
+
+        db.setVersion(version);
+        db.close();
+    }
+
+    /**
+     * Create the items_with_images view as it was in version 25.
+     */
+    private static void createItemsView(final SQLiteDatabase db) {
+        final String[] types = {"Standard", "Thumbnail", "Inverted"};
+        final StringBuilder columns = new StringBuilder("items.*");
+        final StringBuilder joins = new StringBuilder();
+        for (int i = 0; i < types.length; i++) {
+            final String alias = "image" + i;
+            columns.append(", ").append(alias).append(".remoteUri AS location").append(types[i]).append("UriRemote");
+            columns.append(", 'content://" + Item.AUTHORITY + "/file/' || ").append(alias)
+                    .append("._id AS location").append(types[i]).append("Uri");
+            columns.append(", ").append(alias).append(".state AS location").append(types[i]).append("Downloaded");
+            joins.append(" LEFT JOIN images AS ").append(alias)
+                    .append(" ON (").append(alias).append(".itemId = items._id AND ")
+                    .append(alias).append(".type = ").append(i).append(")");
+        }
+
+        db.execSQL("CREATE VIEW items_with_images AS SELECT " + columns + " FROM items" + joins);
+    }
+
+    private static void createIndex(final SQLiteDatabase db, final String tableName, final String fieldName) {
+        db.execSQL("CREATE INDEX " + tableName + "_" + fieldName + "_index" +
+                " ON " + tableName + " ( " + fieldName + " )");
+    }
+}
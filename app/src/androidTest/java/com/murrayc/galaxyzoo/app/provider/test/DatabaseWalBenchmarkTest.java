@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider.test;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+import android.test.ProviderTestCase2;
+import android.test.mock.MockContentResolver;
+
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.provider.Item;
+import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compares the latency of the "next" item query, as used by ClassifyFragment,
+ * while another thread marks images as downloaded, as the image download callbacks do,
+ * with and without write-ahead logging.
+ *
+ * The provider creates the database and its items, so this uses the real schema.
+ * This then opens the database file itself, so it can open it in both modes.
+ * The results are in the log.
+ */
+public class DatabaseWalBenchmarkTest extends ProviderTestCase2<ItemsContentProvider> {
+
+    //This is ItemsContentProvider.DatabaseHelper.DATABASE_NAME,
+    //which the mock context renames just as it does for the provider.
+    private static final String DATABASE_NAME = "items.db";
+
+    private static final int ITEMS_COUNT = 500;
+    private static final int QUERIES_COUNT = 500;
+
+    //These are the names in ItemsContentProvider.DatabaseHelper:
+    private static final String VIEW_NAME_ITEMS = "items_with_images";
+    private static final String TABLE_NAME_IMAGES = "images";
+    private static final String IMAGES_COLUMN_ITEM_ID = "itemId";
+    private static final String IMAGES_COLUMN_TYPE = "type";
+    private static final String IMAGES_COLUMN_STATE = "state";
+    private static final String IMAGES_COLUMN_BYTES = "bytes";
+    private static final String IMAGES_COLUMN_LAST_ACCESSED = "lastAccessed";
+    private static final int IMAGE_TYPE_STANDARD = 0;
+    private static final int IMAGE_STATE_DOWNLOADED = 1;
+
+    //This is the where clause that ItemsContentProvider.queryItemNext() uses:
+    private static final String WHERE_CLAUSE_NOT_DONE = "(" +
+            Item.Columns.DONE + " != 1" +
+            ") AND (" +
+            Item.Columns.LOCATION_STANDARD_DOWNLOADED + " == 1" +
+            ") AND (" +
+            Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED + " == 1" +
+            ") AND (" +
+            Item.Columns.LOCATION_INVERTED_DOWNLOADED + " == 1" +
+            ")";
+
+    private static final String[] PROJECTION_NEXT = {Item.Columns._ID,
+            Item.Columns.SUBJECT_ID,
+            Item.Columns.LOCATION_STANDARD_URI,
+            Item.Columns.LOCATION_INVERTED_URI};
+
+    private MockContentResolver mMockResolver;
+
+    public DatabaseWalBenchmarkTest() {
+        super(ItemsContentProvider.class, Item.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMockResolver = getMockContentResolver();
+    }
+
+    public void testNextQueryLatencyUnderWriteLoad() throws InterruptedException {
+        addItems();
+
+        //Let us open the database file ourselves:
+        getProvider().shutdown();
+
+        final long[] rollback = measure(false);
+        final long[] wal = measure(true);
+
+        Log.info("DatabaseWalBenchmarkTest: rollback journal: p50=" + percentile(rollback, 50) + "us, p99=" + percentile(rollback, 99) + "us");
+        Log.info("DatabaseWalBenchmarkTest: write-ahead log: p50=" + percentile(wal, 50) + "us, p99=" + percentile(wal, 99) + "us");
+
+        assertEquals(QUERIES_COUNT, wal.length);
+    }
+
+    /**
+     * Add the items via the provider, with their images marked as downloaded,
+     * classifying the first half of them, so the "next" query has to skip those.
+     */
+    private void addItems() {
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(Item.Columns.SUBJECT_ID, "subject" + i);
+            values.put(Item.Columns.LOCATION_STANDARD_URI_REMOTE, "http://example.com/standard" + i + ".jpg");
+            values.put(Item.Columns.LOCATION_THUMBNAIL_URI_REMOTE, "http://example.com/thumbnail" + i + ".jpg");
+            values.put(Item.Columns.LOCATION_INVERTED_URI_REMOTE, "http://example.com/inverted" + i + ".jpg");
+            final Uri uri = mMockResolver.insert(Item.ITEMS_URI, values);
+            assertNotNull(uri);
+
+            values = new ContentValues();
+            values.put(Item.Columns.LOCATION_STANDARD_DOWNLOADED, 1);
+            values.put(Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED, 1);
+            values.put(Item.Columns.LOCATION_INVERTED_DOWNLOADED, 1);
+            if (i < ITEMS_COUNT / 2) {
+                values.put(Item.Columns.DONE, 1);
+            }
+            assertEquals(1, mMockResolver.update(uri, values, null, null));
+        }
+    }
+
+    /**
+     * @return The sorted latencies of the queries, in microseconds.
+     */
+    private long[] measure(final boolean wal) throws InterruptedException {
+        final SQLiteDatabase db = getMockContext().openOrCreateDatabase(DATABASE_NAME,
+                wal ? Context.MODE_ENABLE_WRITE_AHEAD_LOGGING : Context.MODE_PRIVATE, null);
+
+        //Simulate the image downloads: Many small transactions,
+        //each marking one item's standard image as downloaded.
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int id = 1;
+                while (!stop.get()) {
+                    final ContentValues values = new ContentValues();
+                    values.put(IMAGES_COLUMN_STATE, IMAGE_STATE_DOWNLOADED);
+                    values.put(IMAGES_COLUMN_BYTES, 100000 + id);
+                    values.put(IMAGES_COLUMN_LAST_ACCESSED, System.currentTimeMillis());
+                    db.beginTransaction();
+                    try {
+                        db.update(TABLE_NAME_IMAGES, values,
+                                IMAGES_COLUMN_ITEM_ID + " = ? AND " + IMAGES_COLUMN_TYPE + " = ?",
+                                new String[]{Integer.toString(id), Integer.toString(IMAGE_TYPE_STANDARD)});
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+
+                    id = (id % ITEMS_COUNT) + 1;
+                }
+            }
+        });
+        writer.start();
+
+        final String query = getQueryNext();
+        final long[] result = new long[QUERIES_COUNT];
+        for (int i = 0; i < QUERIES_COUNT; i++) {
+            final long start = System.nanoTime();
+            final Cursor c = db.rawQuery(query, null);
+            assertTrue(c.moveToFirst());
+            c.close();
+            result[i] = (System.nanoTime() - start) / 1000;
+        }
+
+        stop.set(true);
+        writer.join();
+        db.close();
+
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Build the SQL just as ItemsContentProvider.queryItemNext() does,
+     * using the items view.
+     */
+    private static String getQueryNext() {
+        final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(VIEW_NAME_ITEMS);
+        builder.appendWhere(WHERE_CLAUSE_NOT_DONE);
+        return builder.buildQuery(PROJECTION_NEXT, null, null, null,
+                Item.Columns._ID + " ASC", "1");
+    }
+
+    private static long percentile(final long[] sorted, final int percentile) {
+        final int index = Math.min(sorted.length - 1, (sorted.length * percentile) / 100);
+        return sorted[index];
+    }
+}
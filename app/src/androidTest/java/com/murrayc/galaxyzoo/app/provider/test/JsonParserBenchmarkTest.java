@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider.test;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.gson.Gson;
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.Utils;
+import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
+import com.murrayc.galaxyzoo.app.test.BenchmarkUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Compares the parse time, and the memory allocated, when parsing the recorded
+ * subjects, project, and workflow responses with our streaming TypeAdapters (as used by ZooniverseClient)
+ * and with the older JsonDeserializers (see JsonTreeDeserializers), which parse the whole response into a tree first.
+ *
+ * This also checks that both give the same results.
+ * The results are in the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class JsonParserBenchmarkTest {
+    private static final int WARMUP_COUNT = 20;
+    private static final int PARSE_COUNT = 200;
+
+    private String mSubjectsJson;
+    private String mProjectJson;
+    private String mWorkflowJson;
+
+    @Before
+    public void setUp() throws IOException {
+        mSubjectsJson = getStringFromResource("test_more_items_response.json");
+        mProjectJson = getStringFromResource("test_project_response.json");
+        mWorkflowJson = getStringFromResource("test_workflow_response.json");
+    }
+
+    @Test
+    public void testSubjects() throws Exception {
+        final Gson streamingGson = ZooniverseClient.createGson();
+        final Gson treeGson = JsonTreeDeserializers.createTreeGson();
+
+        final List<ZooniverseClient.Subject> streamed =
+                streamingGson.fromJson(mSubjectsJson, ZooniverseClient.SubjectsResponse.class).subjects;
+        final List<ZooniverseClient.Subject> tree =
+                treeGson.fromJson(mSubjectsJson, ZooniverseClient.SubjectsResponse.class).subjects;
+        assertEquals(tree.size(), streamed.size());
+        for (int i = 0; i < tree.size(); i++) {
+            assertEquals(tree.get(i).getId(), streamed.get(i).getId());
+            assertEquals(tree.get(i).getZooniverseId(), streamed.get(i).getZooniverseId());
+            assertEquals(tree.get(i).getLocationStandard(), streamed.get(i).getLocationStandard());
+        }
+
+        compare("subjects", mSubjectsJson, ZooniverseClient.SubjectsResponse.class, streamingGson, treeGson);
+    }
+
+    @Test
+    public void testProject() throws Exception {
+        final Gson streamingGson = ZooniverseClient.createGson();
+        final Gson treeGson = JsonTreeDeserializers.createTreeGson();
+
+        final ZooniverseClient.Project streamed =
+                streamingGson.fromJson(mProjectJson, ZooniverseClient.ProjectsResponse.class).projects.get(0);
+        final ZooniverseClient.Project tree =
+                treeGson.fromJson(mProjectJson, ZooniverseClient.ProjectsResponse.class).projects.get(0);
+        assertEquals(tree.id(), streamed.id());
+        assertEquals(tree.displayName(), streamed.displayName());
+        assertEquals(tree.workflowIds(), streamed.workflowIds());
+        assertEquals(tree.activeWorkflowIds(), streamed.activeWorkflowIds());
+
+        compare("project", mProjectJson, ZooniverseClient.ProjectsResponse.class, streamingGson, treeGson);
+    }
+
+    @Test
+    public void testWorkflow() throws Exception {
+        final Gson streamingGson = ZooniverseClient.createGson();
+        final Gson treeGson = JsonTreeDeserializers.createTreeGson();
+
+        final ZooniverseClient.Workflow streamed =
+                streamingGson.fromJson(mWorkflowJson, ZooniverseClient.WorkflowsResponse.class).workflows.get(0);
+        final ZooniverseClient.Workflow tree =
+                treeGson.fromJson(mWorkflowJson, ZooniverseClient.WorkflowsResponse.class).workflows.get(0);
+        assertEquals(tree.id(), streamed.id());
+        assertEquals(tree.displayName(), streamed.displayName());
+
+        final List<ZooniverseClient.Task> streamedTasks = streamed.tasks();
+        final List<ZooniverseClient.Task> treeTasks = tree.tasks();
+        assertEquals(treeTasks.size(), streamedTasks.size());
+        for (int i = 0; i < treeTasks.size(); i++) {
+            final ZooniverseClient.Task treeTask = treeTasks.get(i);
+            final ZooniverseClient.Task streamedTask = streamedTasks.get(i);
+            assertEquals(treeTask.id(), streamedTask.id());
+            assertEquals(treeTask.type(), streamedTask.type());
+            assertEquals(treeTask.question(), streamedTask.question());
+            assertEquals(treeTask.help(), streamedTask.help());
+            if (treeTask.answers() == null) {
+                assertNull(streamedTask.answers());
+            } else {
+                assertEquals(treeTask.answers().size(), streamedTask.answers().size());
+            }
+        }
+
+        compare("workflow", mWorkflowJson, ZooniverseClient.WorkflowsResponse.class, streamingGson, treeGson);
+    }
+
+    private static void compare(final String name, final String json, final Class<?> responseClass,
+                                final Gson streamingGson, final Gson treeGson) throws Exception {
+        final BenchmarkUtils.Measurement streaming = measure(json, responseClass, streamingGson);
+        final BenchmarkUtils.Measurement tree = measure(json, responseClass, treeGson);
+
+        Log.info("JsonParserBenchmarkTest: " + name + ": TypeAdapter: " +
+                (streaming.nanoseconds / PARSE_COUNT / 1000) + "us and " +
+                (streaming.bytesAllocated / PARSE_COUNT) + " bytes per parse");
+        Log.info("JsonParserBenchmarkTest: " + name + ": JsonDeserializer: " +
+                (tree.nanoseconds / PARSE_COUNT / 1000) + "us and " +
+                (tree.bytesAllocated / PARSE_COUNT) + " bytes per parse");
+    }
+
+    private static BenchmarkUtils.Measurement measure(final String json, final Class<?> responseClass,
+                                                      final Gson gson) throws Exception {
+        return BenchmarkUtils.measure(new BenchmarkUtils.Task() {
+            @Override
+            public void run() {
+                assertNotNull(gson.fromJson(new StringReader(json), responseClass));
+            }
+        }, WARMUP_COUNT, PARSE_COUNT);
+    }
+
+    private static String getStringFromResource(final String name) throws IOException {
+        final InputStream input = JsonParserBenchmarkTest.class.getClassLoader().getResourceAsStream(name);
+        assertNotNull(input);
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, Utils.STRING_ENCODING));
+        final StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            sb.append(line).append('\n');
+        }
+        reader.close();
+
+        return sb.toString();
+    }
+}
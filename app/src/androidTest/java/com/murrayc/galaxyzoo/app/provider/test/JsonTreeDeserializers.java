@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider.test;
+
+import android.support.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JsonDeserializers that ZooniverseClient used before it used streaming TypeAdapters.
+ * These first parse the whole response into a tree of JsonElements.
+ * JsonParserBenchmarkTest compares them with ZooniverseClient.createGson().
+ */
+final class JsonTreeDeserializers {
+
+    private JsonTreeDeserializers() {
+    }
+
+    /**
+     * Like ZooniverseClient.createGson(), but with these JsonDeserializers.
+     */
+    @NonNull
+    static Gson createTreeGson() {
+        final GsonBuilder gsonBuilder = new GsonBuilder();
+        gsonBuilder.registerTypeAdapter(ZooniverseClient.SubjectsResponse.class, new SubjectsResponseDeserializer());
+        gsonBuilder.registerTypeAdapter(ZooniverseClient.ProjectsResponse.class, new ProjectsResponseDeserializer());
+        gsonBuilder.registerTypeAdapter(ZooniverseClient.WorkflowsResponse.class, new WorkflowsResponseDeserializer());
+        return gsonBuilder.create();
+    }
+
+    private static class SubjectsResponseDeserializer implements JsonDeserializer<ZooniverseClient.SubjectsResponse> {
+        public ZooniverseClient.SubjectsResponse deserialize(final JsonElement json, final Type typeOfT, final JsonDeserializationContext context)
+                throws JsonParseException {
+            final JsonObject jsonObject = json.getAsJsonObject();
+            if (jsonObject == null) {
+                return null;
+            }
+
+            final JsonArray jsonSubjects = jsonObject.getAsJsonArray("subjects");
+
+            // Parse each subject:
+            final List<ZooniverseClient.Subject> subjects = new ArrayList<>();
+            for (final JsonElement jsonSubject : jsonSubjects) {
+                subjects.add(deserializeSubjectFromJsonObject(jsonSubject.getAsJsonObject()));
+            }
+
+            return new ZooniverseClient.SubjectsResponse(subjects);
+        }
+
+        private static ZooniverseClient.Subject deserializeSubjectFromJsonObject(final JsonObject jsonObject) {
+            final String id = getString(jsonObject, "id");
+            final String zooniverseId = getString(jsonObject, "zooniverse_id");
+            final String groupId = getString(jsonObject, "group_id");
+
+            String locationStandard = null;
+            final JsonElement jsonElementLocations = jsonObject.get("locations");
+            if (jsonElementLocations != null) {
+                for (final JsonElement jsonLocation : jsonElementLocations.getAsJsonArray()) {
+                    final String url = getString(jsonLocation.getAsJsonObject(), "image/jpeg");
+                    if (url != null) {
+                        locationStandard = url;
+                        break;
+                    }
+                }
+            }
+
+            return new ZooniverseClient.Subject(id, zooniverseId, groupId, locationStandard, null, null);
+        }
+    }
+
+    private static class ProjectsResponseDeserializer implements JsonDeserializer<ZooniverseClient.ProjectsResponse> {
+        public ZooniverseClient.ProjectsResponse deserialize(final JsonElement json, final Type typeOfT, final JsonDeserializationContext context)
+                throws JsonParseException {
+            final JsonObject jsonObject = json.getAsJsonObject();
+            if (jsonObject == null) {
+                return null;
+            }
+
+            final JsonArray jsonProjects = jsonObject.getAsJsonArray("projects");
+            if (jsonProjects == null) {
+                return null;
+            }
+
+            // Parse each project (usually just one):
+            final List<ZooniverseClient.Project> projects = new ArrayList<>();
+            for (final JsonElement jsonProject : jsonProjects) {
+                projects.add(deserializeProjectFromJsonObject(jsonProject.getAsJsonObject()));
+            }
+
+            return new ZooniverseClient.ProjectsResponse(projects);
+        }
+
+        private static ZooniverseClient.Project deserializeProjectFromJsonObject(final JsonObject jsonObject) {
+            final String id = getString(jsonObject, "id");
+            final String displayName = getString(jsonObject, "display_name");
+
+            List<String> workflowIds = null;
+            List<String> activeWorkflowIds = null;
+
+            final JsonObject jsonObjectLinks = jsonObject.getAsJsonObject("links");
+            if (jsonObjectLinks != null) {
+                workflowIds = listOfStringsFromJsonArray(jsonObjectLinks, "workflows");
+                activeWorkflowIds = listOfStringsFromJsonArray(jsonObjectLinks, "active_workflows");
+            }
+
+            return new ZooniverseClient.Project(id, displayName, workflowIds, activeWorkflowIds);
+        }
+    }
+
+    private static class WorkflowsResponseDeserializer implements JsonDeserializer<ZooniverseClient.WorkflowsResponse> {
+        public ZooniverseClient.WorkflowsResponse deserialize(final JsonElement json, final Type typeOfT, final JsonDeserializationContext context)
+                throws JsonParseException {
+            final JsonObject jsonObject = json.getAsJsonObject();
+            if (jsonObject == null) {
+                return null;
+            }
+
+            final JsonArray jsonWorkflows = jsonObject.getAsJsonArray("workflows");
+            if (jsonWorkflows == null) {
+                return null;
+            }
+
+            // Parse each workflow (usually just one):
+            final List<ZooniverseClient.Workflow> workflows = new ArrayList<>();
+            for (final JsonElement jsonWorkflow : jsonWorkflows) {
+                workflows.add(deserializeWorkflowFromJsonObject(jsonWorkflow.getAsJsonObject()));
+            }
+
+            return new ZooniverseClient.WorkflowsResponse(workflows);
+        }
+
+        private static ZooniverseClient.Workflow deserializeWorkflowFromJsonObject(final JsonObject jsonObject) {
+            final String id = getString(jsonObject, "id");
+            final String displayName = getString(jsonObject, "display_name");
+
+            List<ZooniverseClient.Task> tasks = null;
+            final JsonElement jsonElementTasks = jsonObject.get("tasks");
+            if (jsonElementTasks != null) {
+                // Parse each task, whose id is its name in the tasks object:
+                tasks = new ArrayList<>();
+                for (final Map.Entry<String, JsonElement> jsonEntry : jsonElementTasks.getAsJsonObject().entrySet()) {
+                    final JsonElement jsonValue = jsonEntry.getValue();
+                    if (jsonValue == null || !jsonValue.isJsonObject()) {
+                        continue;
+                    }
+
+                    tasks.add(deserializeTaskFromJsonObject(jsonValue.getAsJsonObject(), jsonEntry.getKey()));
+                }
+            }
+
+            return new ZooniverseClient.Workflow(id, displayName, tasks);
+        }
+
+        private static ZooniverseClient.Task deserializeTaskFromJsonObject(final JsonObject jsonObject, final String id) {
+            final String type = getString(jsonObject, "type");
+            final String question = getString(jsonObject, "question");
+            final String help = getString(jsonObject, "help");
+            final boolean required = getBoolean(jsonObject, "required");
+
+            List<ZooniverseClient.Answer> answers = null;
+            final JsonElement jsonElementAnswers = jsonObject.get("answers");
+            if (jsonElementAnswers != null) {
+                // Parse each answer:
+                answers = new ArrayList<>();
+                for (final JsonElement jsonAnswer : jsonElementAnswers.getAsJsonArray()) {
+                    final JsonObject jsonObjectAnswer = jsonAnswer.getAsJsonObject();
+                    answers.add(new ZooniverseClient.Answer(getString(jsonObjectAnswer, "label"),
+                            getString(jsonObjectAnswer, "next")));
+                }
+            }
+
+            return new ZooniverseClient.Task(id, type, question, help, answers, required);
+        }
+    }
+
+    private static String getString(final JsonObject jsonObject, final String name) {
+        final JsonElement jsonElement = jsonObject.get(name);
+        if (jsonElement == null || jsonElement.isJsonNull()) {
+            return null;
+        }
+
+        return jsonElement.getAsString();
+    }
+
+    private static boolean getBoolean(final JsonObject jsonObject, final String name) {
+        final JsonElement jsonElement = jsonObject.get(name);
+        if (jsonElement == null || jsonElement.isJsonNull()) {
+            return false;
+        }
+
+        return jsonElement.getAsBoolean();
+    }
+
+    private static List<String> listOfStringsFromJsonArray(final JsonObject jsonObject, final String fieldName) {
+        final List<String> result = new ArrayList<>();
+        for (final JsonElement jsonElement : jsonObject.getAsJsonArray(fieldName)) {
+            if (jsonElement == null) {
+                continue;
+            }
+
+            final String text = jsonElement.getAsString();
+            if (text != null && !text.isEmpty()) {
+                result.add(text);
+            }
+        }
+
+        return result;
+    }
+}
@@ -71,4 +71,21 @@ public class MoreItemsJsonParserTest {
 
     }
 
+    @Test
+    public void testWriteThenRead() {
+        final Gson gson = ZooniverseClient.createGson();
+        final String json = gson.toJson(new ZooniverseClient.SubjectsResponse(mSubjects));
+        final ZooniverseClient.SubjectsResponse response = gson.fromJson(json, ZooniverseClient.SubjectsResponse.class);
+        assertNotNull(response);
+        assertEquals(mSubjects.size(), response.subjects.size());
+
+        for (int i = 0; i < mSubjects.size(); i++) {
+            final ZooniverseClient.Subject expected = mSubjects.get(i);
+            final ZooniverseClient.Subject subject = response.subjects.get(i);
+            assertEquals(expected.getId(), subject.getId());
+            assertEquals(expected.getZooniverseId(), subject.getZooniverseId());
+            assertEquals(expected.getGroupId(), subject.getGroupId());
+            assertEquals(expected.getLocationStandard(), subject.getLocationStandard());
+        }
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider.test;
+
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+
+import com.murrayc.galaxyzoo.app.provider.Config;
+import com.murrayc.galaxyzoo.app.provider.Item;
+import com.murrayc.galaxyzoo.app.provider.NotificationCoalescer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class NotificationCoalescerTest {
+
+    /**
+     * Records the notifications instead of sending them.
+     */
+    private static class RecordingContentResolver extends MockContentResolver {
+        final List<Uri> uris = new ArrayList<>();
+        final List<Boolean> syncToNetworks = new ArrayList<>();
+
+        @Override
+        public void notifyChange(final Uri uri, final ContentObserver observer, final boolean syncToNetwork) {
+            uris.add(uri);
+            syncToNetworks.add(syncToNetwork);
+        }
+    }
+
+    @Test
+    public void testFlushDoesNotRequestSync() {
+        final RecordingContentResolver resolver = new RecordingContentResolver();
+        final NotificationCoalescer coalescer = new NotificationCoalescer(resolver);
+
+        coalescer.add(ContentUris.withAppendedId(Item.ITEMS_URI, 1));
+        coalescer.add(ContentUris.withAppendedId(Item.ITEMS_URI, 2));
+        coalescer.flush();
+
+        assertFalse(resolver.uris.isEmpty());
+        for (final Boolean syncToNetwork : resolver.syncToNetworks) {
+            assertFalse(syncToNetwork);
+        }
+
+        //There is nothing left to notify:
+        final int count = resolver.uris.size();
+        coalescer.flush();
+        assertEquals(count, resolver.uris.size());
+    }
+
+    @Test
+    public void testFlushNotifiesDistinctUris() {
+        final RecordingContentResolver resolver = new RecordingContentResolver();
+        final NotificationCoalescer coalescer = new NotificationCoalescer(resolver);
+
+        final Uri uri1 = ContentUris.withAppendedId(Item.ITEMS_URI, 1);
+        final Uri uri2 = ContentUris.withAppendedId(Item.ITEMS_URI, 2);
+        coalescer.add(uri1);
+        coalescer.add(uri2);
+        coalescer.add(uri1);
+        coalescer.flush();
+
+        //Each item once, not the parent, so observers of other items are not notified:
+        assertEquals(2, resolver.uris.size());
+        assertTrue(resolver.uris.contains(uri1));
+        assertTrue(resolver.uris.contains(uri2));
+    }
+
+    @Test
+    public void testFlushSkipsUrisWithPendingAncestor() {
+        final RecordingContentResolver resolver = new RecordingContentResolver();
+        final NotificationCoalescer coalescer = new NotificationCoalescer(resolver);
+
+        coalescer.add(ContentUris.withAppendedId(Item.ITEMS_URI, 1));
+        coalescer.add(Item.ITEMS_URI);
+        coalescer.flush();
+
+        //Notifying the parent notifies the observers of the item too:
+        assertEquals(1, resolver.uris.size());
+        assertEquals(Item.ITEMS_URI, resolver.uris.get(0));
+    }
+
+    @Test
+    public void testFlushNotifiesCommonAncestorForManyUris() {
+        final RecordingContentResolver resolver = new RecordingContentResolver();
+        final NotificationCoalescer coalescer = new NotificationCoalescer(resolver);
+
+        for (int i = 1; i <= Config.NOTIFICATION_COALESCE_MAXIMUM_URIS + 1; i++) {
+            coalescer.add(ContentUris.withAppendedId(Item.ITEMS_URI, i));
+        }
+        coalescer.flush();
+
+        assertEquals(1, resolver.uris.size());
+        assertEquals(Item.ITEMS_URI, resolver.uris.get(0));
+    }
+}
@@ -38,6 +38,7 @@ import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 
 @RunWith(AndroidJUnit4.class)
 public class ProjectsJsonParserTest {
@@ -90,4 +91,21 @@ public class ProjectsJsonParserTest {
 
     }
 
+    @Test
+    public void testWriteThenRead() {
+        final Gson gson = ZooniverseClient.createGson();
+        final String json = gson.toJson(new ZooniverseClient.ProjectsResponse(mProjects));
+        final ZooniverseClient.ProjectsResponse response = gson.fromJson(json, ZooniverseClient.ProjectsResponse.class);
+        assertNotNull(response);
+        assertEquals(mProjects.size(), response.projects.size());
+
+        final ZooniverseClient.Project expected = mProjects.get(0);
+        final ZooniverseClient.Project project = response.projects.get(0);
+        assertEquals(expected.id(), project.id());
+        assertEquals(expected.displayName(), project.displayName());
+        assertEquals(expected.workflowIds(), project.workflowIds());
+        assertEquals(expected.activeWorkflowIds(), project.activeWorkflowIds());
+
+        assertNull(gson.fromJson(gson.toJson(null, ZooniverseClient.ProjectsResponse.class), ZooniverseClient.ProjectsResponse.class));
+    }
 }
@@ -38,6 +38,7 @@ import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 
 @RunWith(AndroidJUnit4.class)
 public class WorkflowsJsonParserTest {
@@ -84,4 +85,35 @@ public class WorkflowsJsonParserTest {
         assertEquals("T1", tasks.get(1).id());
     }
 
+    @Test
+    public void testWriteThenRead() {
+        final Gson gson = ZooniverseClient.createGson();
+        final String json = gson.toJson(new ZooniverseClient.WorkflowsResponse(mWorkflows));
+        final ZooniverseClient.WorkflowsResponse response = gson.fromJson(json, ZooniverseClient.WorkflowsResponse.class);
+        assertNotNull(response);
+        assertEquals(mWorkflows.size(), response.workflows.size());
+
+        final ZooniverseClient.Workflow expected = mWorkflows.get(0);
+        final ZooniverseClient.Workflow workflow = response.workflows.get(0);
+        assertEquals(expected.id(), workflow.id());
+        assertEquals(expected.displayName(), workflow.displayName());
+
+        final List<ZooniverseClient.Task> expectedTasks = expected.tasks();
+        final List<ZooniverseClient.Task> tasks = workflow.tasks();
+        assertEquals(expectedTasks.size(), tasks.size());
+        for (int i = 0; i < expectedTasks.size(); i++) {
+            final ZooniverseClient.Task expectedTask = expectedTasks.get(i);
+            final ZooniverseClient.Task task = tasks.get(i);
+            assertEquals(expectedTask.id(), task.id());
+            assertEquals(expectedTask.type(), task.type());
+            assertEquals(expectedTask.question(), task.question());
+            assertEquals(expectedTask.help(), task.help());
+            assertEquals(expectedTask.required(), task.required());
+            if (expectedTask.answers() == null) {
+                assertNull(task.answers());
+            } else {
+                assertEquals(expectedTask.answers().size(), task.answers().size());
+            }
+        }
+    }
 }
@@ -197,6 +197,38 @@ public class ZooniverseClientTest{
         server.shutdown();
     }
 
+    @Test
+    public void testWorkflowRevalidatedFromCache() throws IOException, InterruptedException, ZooniverseClient.RequestWorkflowException {
+        final MockWebServer server = new MockWebServer();
+
+        final String strResponse = getStringFromStream(
+                MoreItemsJsonParserTest.class.getClassLoader().getResourceAsStream("test_workflow_response.json"));
+        assertNotNull(strResponse);
+        final String etag = "\"test-workflow-etag\"";
+        server.enqueue(new MockResponse().setBody(strResponse)
+                .setHeader("ETag", etag));
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED));
+        server.start();
+
+        final ZooniverseClient client = createZooniverseClient(server);
+
+        final ZooniverseClient.Workflow workflow = client.requestWorkflowSync(TEST_WORKFLOW_ID);
+        assertNotNull(workflow);
+        server.takeRequest();
+
+        //The second request should be a conditional request,
+        //and the 304 (Not Modified) response should give us the cached workflow:
+        final ZooniverseClient.Workflow cachedWorkflow = client.requestWorkflowSync(TEST_WORKFLOW_ID);
+        assertNotNull(cachedWorkflow);
+        assertEquals(TEST_WORKFLOW_ID, cachedWorkflow.id());
+        assertEquals(11, cachedWorkflow.tasks().size());
+
+        final RecordedRequest request = server.takeRequest();
+        assertEquals(etag, request.getHeader("If-None-Match"));
+
+        server.shutdown();
+    }
+
     @Test
     public void testLoginWithSuccess() throws IOException, InterruptedException, ZooniverseClient.LoginException {
         final MockWebServer server = new MockWebServer();
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo.
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.test;
+
+import android.os.Build;
+import android.os.Debug;
+
+/**
+ * Timing and allocation measurements shared by the benchmark tests.
+ */
+public final class BenchmarkUtils {
+    /**
+     * One run of the code being measured.
+     */
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * The time and allocations for all the runs.
+     */
+    public static final class Measurement {
+        public long nanoseconds = 0;
+        public long bytesAllocated = 0;
+    }
+
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * Run the task warmupCount times, to let the JIT warm up, without measuring,
+     * and then count times, measuring the total time and allocations.
+     */
+    public static Measurement measure(final Task task, final int warmupCount, final int count) throws Exception {
+        for (int i = 0; i < warmupCount; i++) {
+            task.run();
+        }
+
+        final Measurement result = new Measurement();
+
+        final long bytesBefore = getBytesAllocated();
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            task.run();
+        }
+        result.nanoseconds = System.nanoTime() - start;
+        result.bytesAllocated = getBytesAllocated() - bytesBefore;
+
+        return result;
+    }
+
+    /**
+     * The total bytes allocated by the runtime so far, by all threads,
+     * or 0 if the runtime cannot tell us.
+     */
+    public static long getBytesAllocated() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return 0;
+        }
+
+        final String stat = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        if (stat == null) {
+            return 0;
+        }
+
+        try {
+            return Long.parseLong(stat);
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+}
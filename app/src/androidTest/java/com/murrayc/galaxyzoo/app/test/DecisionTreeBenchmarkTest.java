@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.test;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.common.io.ByteStreams;
+import com.murrayc.galaxyzoo.app.DecisionTree;
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.Utils;
+import com.murrayc.galaxyzoo.app.provider.Config;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static junit.framework.Assert.assertNotNull;
+
+/**
+ * Measures the parse time, and the memory allocated, when loading each decision tree
+ * with each translation, both from the XML and JSON (with the XmlPullParser loader),
+ * and from the files compiled at build time.
+ *
+ * The files are read into memory first, so this measures just the parsing.
+ * The results are in the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DecisionTreeBenchmarkTest {
+    private static final int WARMUP_COUNT = 5;
+    private static final int LOAD_COUNT = 50;
+
+    //null means no translation:
+    //TODO: Get them all automatically.
+    private static final String[] LOCALES = {null, "de", "fr", "it"};
+
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    @Test
+    public void testLoadDecisionTrees() throws Exception {
+        for (final Config.SubjectGroup subjectGroup : Config.SUBJECT_GROUPS.values()) {
+            final String decisionTreeFilename = subjectGroup.getFilename();
+            final byte[] tree = readAsset(Utils.getDecisionTreeFilepath(decisionTreeFilename));
+
+            for (final String locale : LOCALES) {
+                final byte[] translation = (locale == null) ? null :
+                        readAsset(Utils.getTranslationFilePath(locale, null));
+                final byte[] compiled = readAsset(
+                        Utils.getCompiledDecisionTreeFilePath(decisionTreeFilename, locale, null));
+
+                final BenchmarkUtils.Measurement parsedMeasurement = BenchmarkUtils.measure(new BenchmarkUtils.Task() {
+                    @Override
+                    public void run() throws DecisionTree.DecisionTreeException {
+                        loadParsed(tree, translation);
+                    }
+                }, WARMUP_COUNT, LOAD_COUNT);
+
+                final BenchmarkUtils.Measurement compiledMeasurement = BenchmarkUtils.measure(new BenchmarkUtils.Task() {
+                    @Override
+                    public void run() throws DecisionTree.DecisionTreeException {
+                        loadCompiled(compiled);
+                    }
+                }, WARMUP_COUNT, LOAD_COUNT);
+
+                final String name = decisionTreeFilename + " (" + (locale == null ? "untranslated" : locale) + ")";
+                Log.info("DecisionTreeBenchmarkTest: " + name + ": XML and JSON: " +
+                        (parsedMeasurement.nanoseconds / LOAD_COUNT / 1000) + "us and " +
+                        (parsedMeasurement.bytesAllocated / LOAD_COUNT) + " bytes per load");
+                Log.info("DecisionTreeBenchmarkTest: " + name + ": compiled: " +
+                        (compiledMeasurement.nanoseconds / LOAD_COUNT / 1000) + "us and " +
+                        (compiledMeasurement.bytesAllocated / LOAD_COUNT) + " bytes per load");
+            }
+        }
+    }
+
+    private static void loadParsed(final byte[] tree, final byte[] translation) throws DecisionTree.DecisionTreeException {
+        final InputStream inputStreamTranslation = (translation == null) ? null :
+                new ByteArrayInputStream(translation);
+        assertNotNull(new DecisionTree(new ByteArrayInputStream(tree), inputStreamTranslation));
+    }
+
+    private static void loadCompiled(final byte[] compiled) throws DecisionTree.DecisionTreeException {
+        assertNotNull(DecisionTree.loadCompiled(new ByteArrayInputStream(compiled)));
+    }
+
+    private byte[] readAsset(final String filePath) throws IOException {
+        final InputStream inputStream = Utils.openAsset(mContext, filePath);
+        assertNotNull(inputStream);
+
+        final byte[] result = ByteStreams.toByteArray(inputStream);
+        inputStream.close();
+        return result;
+    }
+}
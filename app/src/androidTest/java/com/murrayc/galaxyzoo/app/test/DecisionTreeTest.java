@@ -34,12 +34,16 @@ import org.junit.runner.RunWith;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
 public class DecisionTreeTest {
@@ -128,6 +132,119 @@ public class DecisionTreeTest {
         }
     }
 
+    /**
+     * app/decision_trees.gradle compiles each decision tree with its own copy of the parser,
+     * so check that it gives the same result for every decision tree and translation that we ship.
+     */
+    @Test
+    public void testCompiledDecisionTreesMatchParsedDecisionTrees() throws DecisionTree.DecisionTreeException, IOException {
+        //null means no translation:
+        final List<String> locales = new ArrayList<>();
+        locales.add(null);
+        final List<String> decisionTreeFilenames = new ArrayList<>();
+        for (final String filename : getContext().getAssets().list("decision_tree")) {
+            if (filename.endsWith(".json")) {
+                locales.add(filename.substring(0, filename.length() - ".json".length()));
+            } else if (filename.endsWith(".xml")) {
+                decisionTreeFilenames.add(filename);
+            }
+        }
+        assertFalse(decisionTreeFilenames.isEmpty());
+        assertTrue(locales.size() > 1);
+
+        for (final String decisionTreeFilename : decisionTreeFilenames) {
+            for (final String locale : locales) {
+                final InputStream inputStreamCompiled = Utils.openAsset(getContext(),
+                        Utils.getCompiledDecisionTreeFilePath(decisionTreeFilename, locale, null));
+                assertNotNull(inputStreamCompiled);
+                final DecisionTree compiled = DecisionTree.loadCompiled(inputStreamCompiled);
+                inputStreamCompiled.close();
+
+                final InputStream inputStreamTree = Utils.openAsset(getContext(),
+                        Utils.getDecisionTreeFilepath(decisionTreeFilename));
+                assertNotNull(inputStreamTree);
+                InputStream inputStreamTranslation = null;
+                if (locale != null) {
+                    inputStreamTranslation = Utils.openAsset(getContext(),
+                            Utils.getTranslationFilePath(locale, null));
+                    assertNotNull(inputStreamTranslation);
+                }
+                final DecisionTree parsed = new DecisionTree(inputStreamTree, inputStreamTranslation);
+                if (inputStreamTranslation != null) {
+                    inputStreamTranslation.close();
+                }
+                inputStreamTree.close();
+
+                assertDecisionTreesEqual(parsed, compiled);
+            }
+        }
+    }
+
+    @Test
+    public void testSharedTranslationAndQuestions() throws DecisionTree.DecisionTreeException, IOException {
+        final InputStream inputStreamTranslation = DecisionTreeTest.class.getClassLoader().getResourceAsStream("test_translation.json");
+        assertNotNull(inputStreamTranslation);
+        final DecisionTree.Translation translation = DecisionTree.Translation.load(inputStreamTranslation);
+        inputStreamTranslation.close();
+
+        //Using an already-loaded translation should give the same result as parsing it with the tree:
+        final InputStream inputStreamDecisionTree = DecisionTreeTest.class.getClassLoader().getResourceAsStream("test_decision_tree.xml");
+        assertNotNull(inputStreamDecisionTree);
+        final DecisionTree decisionTree = DecisionTree.load(inputStreamDecisionTree, translation);
+        inputStreamDecisionTree.close();
+
+        assertDecisionTreesEqual(createCorrectDecisionTree(true /* withTranslation */), decisionTree);
+
+        //A tree with a different "Discuss this" question should share the same questions:
+        final DecisionTree withDiscussQuestion = decisionTree.withDiscussQuestion(
+                new DecisionTree.DiscussQuestion("sloan-11", "a-0", "a-1"));
+        assertDecisionTreesEqual(decisionTree, withDiscussQuestion);
+        for (final DecisionTree.Question question : decisionTree.getAllQuestions()) {
+            assertSame(question, withDiscussQuestion.getQuestion(question.getId()));
+        }
+    }
+
+    private static void assertDecisionTreesEqual(final DecisionTree expected, final DecisionTree actual) {
+        assertEquals(expected.getQuestionOrFirst(null).getId(), actual.getQuestionOrFirst(null).getId());
+
+        final List<DecisionTree.Question> questions = expected.getAllQuestions();
+        assertEquals(questions.size(), actual.getAllQuestions().size());
+        for (final DecisionTree.Question question : questions) {
+            final DecisionTree.Question actualQuestion = actual.getQuestion(question.getId());
+            assertNotNull(actualQuestion);
+            assertEquals(question.getTitle(), actualQuestion.getTitle());
+            assertEquals(question.getText(), actualQuestion.getText());
+            assertEquals(question.getHelp(), actualQuestion.getHelp());
+
+            final List<DecisionTree.Answer> answers = question.getAnswers();
+            final List<DecisionTree.Answer> actualAnswers = actualQuestion.getAnswers();
+            assertEquals(answers.size(), actualAnswers.size());
+            for (int i = 0; i < answers.size(); i++) {
+                final DecisionTree.Answer answer = answers.get(i);
+                final DecisionTree.Answer actualAnswer = actualAnswers.get(i);
+                assertButtonsEqual(answer, actualAnswer);
+
+                final DecisionTree.Question next = expected.getNextQuestionForAnswer(question.getId(), answer.getId());
+                final DecisionTree.Question actualNext = actual.getNextQuestionForAnswer(question.getId(), answer.getId());
+                assertEquals(next == null ? null : next.getId(), actualNext == null ? null : actualNext.getId());
+            }
+
+            final List<DecisionTree.Checkbox> checkboxes = question.getCheckboxes();
+            final List<DecisionTree.Checkbox> actualCheckboxes = actualQuestion.getCheckboxes();
+            assertEquals(checkboxes.size(), actualCheckboxes.size());
+            for (int i = 0; i < checkboxes.size(); i++) {
+                assertButtonsEqual(checkboxes.get(i), actualCheckboxes.get(i));
+            }
+        }
+    }
+
+    private static void assertButtonsEqual(final DecisionTree.BaseButton expected, final DecisionTree.BaseButton actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getText(), actual.getText());
+        assertEquals(expected.getIcon(), actual.getIcon());
+        assertEquals(expected.getExamplesCount(), actual.getExamplesCount());
+    }
+
     @Test
     public void testQuestionsWithTranslation() throws DecisionTree.DecisionTreeException, IOException {
         final DecisionTree decisionTree = createCorrectDecisionTree(true /* withTranslation */);
@@ -208,4 +325,21 @@ public class DecisionTreeTest {
         }
     }
 
+    @Test
+    public void testMissingExamplesCount() throws DecisionTree.DecisionTreeException {
+        final String xml = "<murrayc_zoonverse_questions>" +
+                "<question id=\"sloan-0\"><title>Shape</title><text>Is the galaxy simply smooth and rounded?</text>" +
+                "<checkbox id=\"x-0\" icon=\"icon_a\"><text>Merging</text></checkbox>" +
+                "<answer id=\"a-0\" icon=\"icon_b\"><text>Smooth</text></answer>" +
+                "</question>" +
+                "</murrayc_zoonverse_questions>";
+        final InputStream is = new ByteArrayInputStream(xml.getBytes());
+        final DecisionTree decisionTree = new DecisionTree(is, null);
+
+        final DecisionTree.Question question = decisionTree.getQuestion("sloan-0");
+        assertNotNull(question);
+        assertEquals(0, question.getCheckboxes().get(0).getExamplesCount());
+        assertEquals(0, question.getAnswers().get(0).getExamplesCount());
+    }
+
 }
@@ -44,6 +44,7 @@ import java.util.Map;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
@@ -71,8 +72,7 @@ public class IconsCacheTest {
         assertEquals(Config.ICON_WIDTH_HEIGHT, exampleBitmap.getWidth());
     }
 
-    @Test
-    public void testIconsCache() throws DecisionTree.DecisionTreeException, IOException {
+    private List<DecisionTree> loadDecisionTrees() throws DecisionTree.DecisionTreeException {
         final List<DecisionTree> trees = new ArrayList<>();
         for (final Map.Entry<String, com.murrayc.galaxyzoo.app.provider.Config.SubjectGroup> entry : com.murrayc.galaxyzoo.app.provider.Config.SUBJECT_GROUPS.entrySet()) {
             final com.murrayc.galaxyzoo.app.provider.Config.SubjectGroup subjectGroup = entry.getValue();
@@ -88,8 +88,18 @@ public class IconsCacheTest {
             trees.add(decisionTree);
         }
 
+        return trees;
+    }
+
+    @Test
+    public void testIconsCache() throws DecisionTree.DecisionTreeException, IOException {
+        final List<DecisionTree> trees = loadDecisionTrees();
         final IconsCache iconsCache = new IconsCache(getContext(), trees);
 
+        //The memory budget should be big enough for all the preloaded icons:
+        assertEquals("Icons were evicted during preloading: " + iconsCache.getStatistics(),
+                0, iconsCache.getEvictionCount());
+
         for (final DecisionTree decisionTree : trees) {
             for (final DecisionTree.Question question : decisionTree.getAllQuestions()) {
                 assertNotNull(question);
@@ -105,6 +115,49 @@ public class IconsCacheTest {
         }
     }
 
+    /**
+     * Each lookup should count as just one hit or miss,
+     * even for the example icons, which are not in the same cache as the workflow icons.
+     */
+    @Test
+    public void testIconsCacheStatistics() throws DecisionTree.DecisionTreeException {
+        final List<DecisionTree> trees = loadDecisionTrees();
+        final IconsCache iconsCache = new IconsCache(getContext(), trees);
+
+        //Preloading is not a lookup:
+        assertEquals(0, iconsCache.getHitCount());
+        assertEquals(0, iconsCache.getMissCount());
+
+        //Find an answer with example icons:
+        DecisionTree.Question question = null;
+        DecisionTree.Answer answer = null;
+        for (final DecisionTree.Question questionToCheck : trees.get(0).getAllQuestions()) {
+            for (final DecisionTree.Answer answerToCheck : questionToCheck.getAnswers()) {
+                if (answerToCheck.getExamplesCount() > 0) {
+                    question = questionToCheck;
+                    answer = answerToCheck;
+                    break;
+                }
+            }
+
+            if (answer != null) {
+                break;
+            }
+        }
+        assertNotNull(answer);
+
+        assertNotNull(iconsCache.getIconIfCached(answer.getIcon()));
+        assertEquals(1, iconsCache.getHitCount());
+
+        assertNotNull(iconsCache.getIcon(answer.getExampleIconName(question.getId(), 0)));
+        assertEquals(2, iconsCache.getHitCount());
+        assertEquals(0, iconsCache.getMissCount());
+
+        assertNull(iconsCache.getIconIfCached("nonexistent"));
+        assertEquals(2, iconsCache.getHitCount());
+        assertEquals(1, iconsCache.getMissCount());
+    }
+
     private static boolean checkFileExistsAtUri(final String uri) throws IOException {
         final URL url = new URL(uri);
         final HttpURLConnection con = (HttpURLConnection) url.openConnection();
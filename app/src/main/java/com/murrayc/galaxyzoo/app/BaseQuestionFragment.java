@@ -22,6 +22,7 @@ package com.murrayc.galaxyzoo.app;
 import android.content.Context;
 import android.graphics.drawable.BitmapDrawable;
 import android.support.annotation.Nullable;
+import android.widget.Button;
 
 /**
  * Created by murrayc on 8/28/14.
@@ -73,4 +74,17 @@ public class BaseQuestionFragment extends ItemFragment {
         final Singleton singleton = getSingleton();
         return singleton.getIconDrawable(context, answer);
     }
+
+    /**
+     * Set the icon as the button's top drawable, without decoding the icon in the UI's main thread.
+     */
+    void setButtonIcon(final Context context, final Button button, final DecisionTree.BaseButton answer) {
+        final Singleton singleton = getSingleton();
+        singleton.getIconDrawableAsync(context, answer, new Singleton.IconDrawableCallbacks() {
+            @Override
+            public void onIconDrawableLoaded(final BitmapDrawable drawable) {
+                button.setCompoundDrawables(null, drawable, null, null);
+            }
+        });
+    }
 }
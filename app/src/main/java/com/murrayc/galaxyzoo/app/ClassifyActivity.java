@@ -23,7 +23,6 @@ import android.Manifest;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.content.BroadcastReceiver;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -43,8 +42,8 @@ import android.text.TextUtils;
 import android.view.MenuItem;
 import android.view.View;
 
-import com.murrayc.galaxyzoo.app.provider.Item;
 import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
+import com.murrayc.galaxyzoo.app.provider.SyncScheduler;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
@@ -187,14 +186,19 @@ public class ClassifyActivity extends ItemActivity
     }
 
     /**
-     * Asynchronously gets the account and tells the SyncAdapter to sync it now:
+     * Asynchronously gets the account and tells the SyncAdapter to sync it soon:
      */
     public static class RequestSyncTask extends AsyncTask<Void, Void, Void> {
 
         private final WeakReference<Context> mContextReference;
+        private final int mReasons;
 
-        RequestSyncTask(final Context context) {
+        /**
+         * @param reasons A combination of the SyncScheduler.REASON_* flags.
+         */
+        RequestSyncTask(final Context context, final int reasons) {
             mContextReference = new WeakReference<>(context);
+            mReasons = reasons;
         }
 
         @Override
@@ -230,11 +234,9 @@ public class ClassifyActivity extends ItemActivity
 
             final Account account = accts[0];
 
-            final Bundle extras = new Bundle();
-            extras.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
-
-            //Ask the framework to run our SyncAdapter.
-            ContentResolver.requestSync(account, Item.AUTHORITY, extras);
+            //Ask the framework to run our SyncAdapter,
+            //along with any other requests soon after this one:
+            SyncScheduler.requestSync(account, mReasons, false);
 
             return null;
         }
@@ -245,7 +247,11 @@ public class ClassifyActivity extends ItemActivity
     }
 
     private void requestSync() {
-        final RequestSyncTask task = new RequestSyncTask(this);
+        requestSync(SyncScheduler.REASONS_ALL);
+    }
+
+    private void requestSync(final int reasons) {
+        final RequestSyncTask task = new RequestSyncTask(this, reasons);
         task.execute();
     }
 
@@ -575,10 +581,15 @@ public class ClassifyActivity extends ItemActivity
 
         //Changes to these preferences would need us to do some work:
         //TODO: Do we need this check, or will we only be notified about the app's own preferences?
-        if (TextUtils.equals(key, getString(R.string.pref_key_cache_size)) ||
-                TextUtils.equals(key, getString(R.string.pref_key_keep_count)) ||
-                TextUtils.equals(key, getString(R.string.pref_key_wifi_only))) {
-            requestSync();
+        if (TextUtils.equals(key, getString(R.string.pref_key_cache_size))) {
+            requestSync(SyncScheduler.REASON_NEED_SUBJECTS | SyncScheduler.REASON_PRUNE);
+        } else if (TextUtils.equals(key, getString(R.string.pref_key_keep_count)) ||
+                TextUtils.equals(key, getString(R.string.pref_key_cache_bytes))) {
+            requestSync(SyncScheduler.REASON_PRUNE);
+        } else if (TextUtils.equals(key, getString(R.string.pref_key_wifi_only))) {
+            //We might now be allowed to use the network:
+            requestSync(SyncScheduler.REASON_NEED_SUBJECTS | SyncScheduler.REASON_DOWNLOAD_IMAGES |
+                    SyncScheduler.REASON_UPLOAD_PENDING);
         }
     }
 
@@ -24,6 +24,8 @@ import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
@@ -63,6 +65,17 @@ public class ClassifyFragment extends ItemFragment {
     private View mRootView = null;
     private boolean mGetNextInProgress = false;
 
+    //Whether we are waiting for the ContentProvider to have a "next" item ready,
+    //after it returned no items.
+    private boolean mWaitingForNextItem = false;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mWaitingForNextItemTimeout = new Runnable() {
+        @Override
+        public void run() {
+            onWaitingForNextItemTimeout();
+        }
+    };
+
     /**
      * A dummy implementation of the {@link ClassifyFragment.Callbacks} interface that does
      * nothing. Used only when this fragment is not attached to an activity.
@@ -142,6 +155,15 @@ public class ClassifyFragment extends ItemFragment {
             }
 
             mCursor = cursor;
+
+            //The ContentProvider returns no item, instead of waiting for the network,
+            //if no item is ready yet,
+            //so wait for it to tell us (via the loader) that an item is ready:
+            if (((cursor == null) || (cursor.getCount() <= 0)) && waitForNextItem()) {
+                return;
+            }
+
+            stopWaitingForNextItem();
             mGetNextInProgress = false;
 
             updateFromCursor();
@@ -191,10 +213,61 @@ public class ClassifyFragment extends ItemFragment {
     public void onDetach() {
         super.onDetach();
 
+        stopWaitingForNextItem();
+
         // Reset the active callbacks interface to the dummy implementation.
         mCallbacks = sDummyCallbacks;
     }
 
+    /**
+     * Keep the "next" loader running, showing the progress spinner, so we will get the
+     * next item when it is ready, if it seems likely that it will soon be ready.
+     *
+     * @return Return false if it isn't worth waiting, for instance because there is no network connection.
+     */
+    private boolean waitForNextItem() {
+        final Activity activity = getActivity();
+        if (activity == null) {
+            return false;
+        }
+
+        final Utils.NetworkConnected networkConnected = Utils.getNetworkIsConnected(activity,
+                Utils.getUseWifiOnlyFromSharedPrefs(activity));
+        if (!networkConnected.connected) {
+            return false;
+        }
+
+        if (!mWaitingForNextItem) {
+            mWaitingForNextItem = true;
+            showLoadingInProgress(true);
+
+            //Don't wait forever, for instance if the network is apparently connected but not working properly:
+            mHandler.postDelayed(mWaitingForNextItemTimeout, Config.NEXT_ITEM_WAIT_TIMEOUT_MS);
+        }
+
+        return true;
+    }
+
+    private void stopWaitingForNextItem() {
+        mWaitingForNextItem = false;
+        mHandler.removeCallbacks(mWaitingForNextItemTimeout);
+    }
+
+    private void onWaitingForNextItemTimeout() {
+        mWaitingForNextItem = false;
+        if (!mGetNextInProgress) {
+            return;
+        }
+
+        Log.error("ClassifyFragment: Timed out while waiting for the next item to be ready.");
+        mGetNextInProgress = false;
+
+        //This will warn about the network problem, because mCursor has no rows:
+        updateFromCursor();
+
+        getLoaderManager().destroyLoader(ClassifyFragment.LOADER_ID_NEXT_ID);
+    }
+
     private void warnAboutNetworkProblemWithRetry() {
         mCallbacks.warnAboutNetworkProblemWithRetry();
     }
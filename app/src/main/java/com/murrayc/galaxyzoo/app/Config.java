@@ -34,6 +34,18 @@ public final class Config {
     //TODO: Avoid hard-coding the 100px, 100px here:
     public static final int ICON_WIDTH_HEIGHT = 100; /* px */
 
+    //The minimum memory to use for the icons cache, if the memory class suggests less.
+    //This is enough for roughly 100 icons of ICON_WIDTH_HEIGHT * ICON_WIDTH_HEIGHT ARGB_8888 pixels.
+    public static final int ICONS_CACHE_MIN_BYTES = 4 * 1024 * 1024;
+
+    //The ListFragment's grid loads this many items at a time, loading the next page when
+    //the user scrolls to within LIST_PAGE_PREFETCH_DISTANCE items of the end.
+    public static final int LIST_PAGE_SIZE = 60;
+    public static final int LIST_PAGE_PREFETCH_DISTANCE = 15;
+
+    //How long to wait for the next subject to be downloaded before warning about a network problem.
+    public static final long NEXT_ITEM_WAIT_TIMEOUT_MS = 30 * 1000;
+
 
     private static final String STATIC_SERVER = "https://static.zooniverse.org/www.galaxyzoo.org/";
     private static final String STATIC_IMAGES_SERVER = STATIC_SERVER + "images/";
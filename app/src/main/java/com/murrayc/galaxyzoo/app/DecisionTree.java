@@ -23,13 +23,16 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Xml;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import com.google.common.io.ByteStreams;
 
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -40,17 +43,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
 /**
  * Created by murrayc on 7/30/14.
  */
 public class DecisionTree {
 
     //TODO: Make this private and add accessors.
-    private final Map<String, Question> questionsMap = new HashMap<>();
+    //This may be shared with other DecisionTrees. See withDiscussQuestion().
+    private final Map<String, Question> questionsMap;
     private String firstQuestionId = null;
 
     public static class DiscussQuestion {
@@ -77,14 +77,134 @@ public class DecisionTree {
         }
     }
 
-    private DiscussQuestion mDiscussQuestion = null;
+    //This is set only by withDiscussQuestion(), so a DecisionTree that is shared,
+    //for instance via the DecisionTreeRepository, cannot be changed.
+    private final DiscussQuestion mDiscussQuestion;
 
     private static final String NODE_ROOT = "murrayc_zoonverse_questions";
     private static final String NODE_QUESTION = "question";
     private static final String NODE_CHECKBOX = "checkbox";
     private static final String NODE_ANSWER = "answer";
 
+    //These must be the same as in app/decision_trees.gradle:
+    private static final int COMPILED_MAGIC = 0x475A4454; // "GZDT"
+    private static final int COMPILED_FORMAT_VERSION = 1;
 
+    private DecisionTree() {
+        questionsMap = new HashMap<>();
+        mDiscussQuestion = null;
+    }
+
+    /**
+     * Share the questions of another DecisionTree, which must not be changed afterwards.
+     */
+    private DecisionTree(final DecisionTree decisionTree, final DiscussQuestion discussQuestion) {
+        questionsMap = decisionTree.questionsMap;
+        firstQuestionId = decisionTree.firstQuestionId;
+        mDiscussQuestion = discussQuestion;
+    }
+
+    /**
+     * Get a DecisionTree with the same questions as this one,
+     * without copying them, but with a different "Discuss this" question.
+     * This lets several subject groups share one parsed decision tree.
+     */
+    public DecisionTree withDiscussQuestion(final DiscussQuestion discussQuestion) {
+        return new DecisionTree(this, discussQuestion);
+    }
+
+    /**
+     * Load a decision tree from its XML, using an already-loaded translation,
+     * so several trees can share one translation.
+     *
+     * @param inputStreamTree The XMl file containing the decision tree.
+     * @param translation     The translation, or null to use the English text from the XML.
+     */
+    public static DecisionTree load(final InputStream inputStreamTree, @Nullable final Translation translation) throws DecisionTreeException {
+        final DecisionTree result = new DecisionTree();
+        result.loadTree(inputStreamTree, (translation == null) ? null : translation.questions);
+        return result;
+    }
+
+    /**
+     * Load a decision tree, with its translation already applied,
+     * from the binary format generated at build time by the compileDecisionTrees task.
+     * See app/decision_trees.gradle for the format.
+     * This reads the whole file at once, and does no XML or JSON parsing.
+     *
+     * @param inputStreamCompiled A file such as decision_tree/compiled/gama_tree-de.bin
+     */
+    public static DecisionTree loadCompiled(final InputStream inputStreamCompiled) throws DecisionTreeException {
+        final DecisionTree result = new DecisionTree();
+
+        try {
+            final byte[] bytes = ByteStreams.toByteArray(inputStreamCompiled);
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+            if (in.readInt() != COMPILED_MAGIC) {
+                throw new DecisionTreeException("loadCompiled(): Unexpected file format.");
+            }
+
+            final int formatVersion = in.readInt();
+            if (formatVersion != COMPILED_FORMAT_VERSION) {
+                throw new DecisionTreeException("loadCompiled(): Unexpected format version: " + formatVersion);
+            }
+
+            final String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+
+            final int questionsCount = in.readInt();
+            for (int i = 0; i < questionsCount; i++) {
+                final Question question = new Question(
+                        readCompiledString(in, strings),
+                        readCompiledString(in, strings),
+                        readCompiledString(in, strings),
+                        readCompiledString(in, strings));
+
+                final int checkboxesCount = in.readInt();
+                for (int j = 0; j < checkboxesCount; j++) {
+                    question.addCheckbox(new Checkbox(
+                            readCompiledString(in, strings),
+                            readCompiledString(in, strings),
+                            readCompiledString(in, strings),
+                            in.readInt()));
+                }
+
+                final int answersCount = in.readInt();
+                for (int j = 0; j < answersCount; j++) {
+                    question.addAnswer(new Answer(
+                            readCompiledString(in, strings),
+                            readCompiledString(in, strings),
+                            readCompiledString(in, strings),
+                            readCompiledString(in, strings),
+                            in.readInt()));
+                }
+
+                // The first question is the top of the decision tree:
+                if (result.questionsMap.isEmpty()) {
+                    result.firstQuestionId = question.getId();
+                }
+
+                result.questionsMap.put(question.getId(), question);
+            }
+        } catch (final IOException | IndexOutOfBoundsException e) {
+            throw new DecisionTreeException("loadCompiled() failed", e);
+        }
+
+        return result;
+    }
+
+    @Nullable
+    private static String readCompiledString(final DataInputStream in, final String[] strings) throws IOException {
+        final int index = in.readInt();
+        if (index < 0) {
+            return null;
+        }
+
+        return strings[index];
+    }
 
     /**
      * @param inputStreamTree        The XMl file containing the decision tree.
@@ -92,66 +212,68 @@ public class DecisionTree {
      *                               such as https://github.com/zooniverse/Galaxy-Zoo/blob/master/public/locales/es.json
      */
     public DecisionTree(final InputStream inputStreamTree, final InputStream inputStreamTranslation) throws DecisionTreeException {
-        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        questionsMap = new HashMap<>();
+        mDiscussQuestion = null;
 
-        //Disable feature that we don't need and which just slows the parsing down:
-        //TODO: Confirm that this actually makes a difference.
-        dbf.setNamespaceAware(false);
-        dbf.setValidating(false);
-
-        final DocumentBuilder documentBuilder;
-        try {
-            documentBuilder = dbf.newDocumentBuilder();
-        } catch (final ParserConfigurationException e) {
-            throw new DecisionTreeException("Exception from newDocumentBuilder.", e);
+        //Load the translation first, if one was provided,
+        //so we can use its strings as we read the tree,
+        //instead of reading the English strings and then replacing them.
+        //We still use the English strings that are not in the translation,
+        //because the translation might be incomplete.
+        Map<String, QuestionTranslation> translations = null;
+        if (inputStreamTranslation != null) {
+            translations = Translation.load(inputStreamTranslation).questions;
         }
 
-        final Document xmlDocument;
+        loadTree(inputStreamTree, translations);
+    }
 
+    private void loadTree(final InputStream inputStreamTree, @Nullable final Map<String, QuestionTranslation> translations) throws DecisionTreeException {
         try {
-            xmlDocument = documentBuilder.parse(inputStreamTree);
-        } catch (final SAXException | IOException e) {
-            throw new DecisionTreeException("Exception from DocumentBuilder.parse().", e);
+            final XmlPullParser parser = Xml.newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            parser.setInput(inputStreamTree, null);
+            loadTree(parser, translations);
+        } catch (final XmlPullParserException | IOException | NumberFormatException e) {
+            throw new DecisionTreeException("Exception while parsing the decision tree.", e);
         }
+    }
 
-        final Element rootNode = xmlDocument.getDocumentElement();
-        if (!TextUtils.equals(rootNode.getNodeName(), NODE_ROOT)) {
-            throw new DecisionTreeException("Unexpected XML root node name found: " + rootNode.getNodeName());
+    private void loadTree(final XmlPullParser parser, @Nullable final Map<String, QuestionTranslation> translations)
+            throws XmlPullParserException, IOException, DecisionTreeException {
+        //This throws an XmlPullParserException if the document does not start with an element.
+        parser.nextTag();
+        if (!TextUtils.equals(parser.getName(), NODE_ROOT)) {
+            throw new DecisionTreeException("Unexpected XML root node name found: " + parser.getName());
         }
 
-        final List<Node> listQuestions = getChildrenByTagName(rootNode, NODE_QUESTION);
-        for (final Node node : listQuestions) {
-            if (!(node instanceof Element)) {
+        while (parser.nextTag() == XmlPullParser.START_TAG) {
+            if (!TextUtils.equals(parser.getName(), NODE_QUESTION)) {
+                skipElement(parser);
                 continue;
             }
 
-            final Element element = (Element) node;
-            final Question question = loadQuestion(element);
+            final String questionId = getAttribute(parser, "id");
+            final QuestionTranslation translation =
+                    (translations == null) ? null : translations.get(questionId);
+            final Question question = loadQuestion(parser, questionId, translation);
 
             // We assume that the first question in the XML file is the top of the decision tree:
-            final String questionid = question.getId();
             if (questionsMap.isEmpty()) {
-                firstQuestionId = questionid;
+                firstQuestionId = questionId;
             }
 
-            questionsMap.put(questionid, question);
-        }
-
-        //Load the translation if one was provided:
-        //We don't avoid loading the English strings before,
-        //because the translation might be incomplete.
-        //TODO: Find an efficient way to avoid loading English strings that will be replaced,
-        //maybe by loading the translation first.
-        if (inputStreamTranslation != null) {
-            try {
-                loadTranslation(inputStreamTranslation);
-            } catch (final IOException e) {
-                throw new DecisionTreeException("loadTranslation() failed", e);
-            }
+            questionsMap.put(questionId, question);
         }
     }
 
-    private void loadTranslation(final InputStream inputStreamTranslation) throws IOException {
+    /**
+     * Read the "questions" object from the translation,
+     * ignoring the "zooniverse" and "quiz_questions" objects.
+     */
+    private static Map<String, QuestionTranslation> loadTranslation(final InputStream inputStreamTranslation) throws IOException {
+        final Map<String, QuestionTranslation> result = new HashMap<>();
+
         InputStreamReader streamReader = null;
         JsonReader reader = null;
         try {
@@ -160,7 +282,7 @@ public class DecisionTree {
             reader.beginObject();
             while (reader.hasNext()) {
                 if (TextUtils.equals(reader.nextName(), "questions")) { //We ignore the "zooniverse" and "quiz_questions" objects
-                    readJsonQuestions(reader);
+                    readJsonQuestions(reader, result);
                 } else {
                     reader.skipValue();
                 }
@@ -178,78 +300,60 @@ public class DecisionTree {
                 reader.close();
             }
         }
+
+        return result;
     }
 
-    private void readJsonQuestions(final JsonReader reader) throws IOException {
+    private static void readJsonQuestions(final JsonReader reader, final Map<String, QuestionTranslation> translations) throws IOException {
         reader.beginObject();
         while (reader.hasNext()) {
             final String questionId = reader.nextName();
-
-            final Question question = questionsMap.get(questionId);
-            if (question != null) {
-                readJsonQuestion(reader, question);
-            } else {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
                 reader.skipValue();
+                continue;
             }
+
+            translations.put(questionId, readJsonQuestion(reader));
         }
         reader.endObject();
     }
 
-    private static void readJsonQuestion(final JsonReader reader, final Question question) throws IOException {
+    private static QuestionTranslation readJsonQuestion(final JsonReader reader) throws IOException {
+        final QuestionTranslation result = new QuestionTranslation();
+
         reader.beginObject();
         while (reader.hasNext()) {
             final String name = reader.nextName();
             switch (name) {
                 case "text":
-                    question.setText(reader.nextString());
+                    result.text = reader.nextString();
                     break;
                 case "title":
-                    question.setTitle(reader.nextString());
+                    result.title = reader.nextString();
                     break;
                 case "help":
-                    question.setHelp(reader.nextString());
+                    result.help = reader.nextString();
                     break;
                 case "answers":
-                    readJsonAnswers(reader, question);
+                    readJsonButtons(reader, result.answers);
                     break;
                 case "checkboxes":
-                    readJsonCheckboxes(reader, question);
+                    readJsonButtons(reader, result.checkboxes);
                     break;
                 default:
                     reader.skipValue();
             }
         }
         reader.endObject();
-    }
 
-    private static void readJsonAnswers(final JsonReader reader, final Question question) throws IOException {
-        reader.beginObject();
-        while (reader.hasNext()) {
-            final String answerId = reader.nextName();
-
-            //Get the previously created answer from the decision tree and add the translated text:
-            final Answer answer = question.getAnswer(answerId);
-            if (answer != null) {
-                answer.setText(reader.nextString());
-            } else {
-                reader.skipValue();
-            }
-        }
-        reader.endObject();
+        return result;
     }
 
-    private static void readJsonCheckboxes(final JsonReader reader, final Question question) throws IOException {
+    private static void readJsonButtons(final JsonReader reader, final Map<String, String> texts) throws IOException {
         reader.beginObject();
         while (reader.hasNext()) {
-            final String answerId = reader.nextName();
-
-            //Get the previously created checkbox from the decision tree and add the translated text:
-            final Checkbox checkbox = question.getCheckbox(answerId);
-            if (checkbox != null) {
-                checkbox.setText(reader.nextString());
-            } else {
-                reader.skipValue();
-            }
+            final String id = reader.nextName();
+            texts.put(id, reader.nextString());
         }
         reader.endObject();
     }
@@ -312,114 +416,170 @@ public class DecisionTree {
     }
 
     /**
-     * getElementsByTagName() is recursive, but we do not want that.
-     *
-     * @param parentNode
-     * @param tagName
-     * @return
+     * Read the question's child elements, using the translated text instead of the English text when possible.
+     * This leaves the parser at the question's end tag.
      */
-    private static List<Node> getChildrenByTagName(@NonNull final Element parentNode, @NonNull final String tagName) {
-        final List<Node> result = new ArrayList<>();
-
-        final NodeList list = parentNode.getElementsByTagName(tagName);
-        final int num = list.getLength();
-        for (int i = 0; i < num; i++) {
-            final Node node = list.item(i);
-            if (node == null) {
-                continue;
-            }
+    private static Question loadQuestion(final XmlPullParser parser, final String questionId,
+                                         @Nullable final QuestionTranslation translation)
+            throws XmlPullParserException, IOException {
+        final Question result = new Question(questionId, null, null, null);
 
-            final Node itemParentNode = node.getParentNode();
-            if (itemParentNode.equals(parentNode)) {
-                result.add(node);
+        while (parser.nextTag() == XmlPullParser.START_TAG) {
+            switch (parser.getName()) {
+                case "title":
+                    result.setTitle(readText(parser, translation == null ? null : translation.title));
+                    break;
+                case "text":
+                    result.setText(readText(parser, translation == null ? null : translation.text));
+                    break;
+                case "help":
+                    result.setHelp(readText(parser, translation == null ? null : translation.help));
+                    break;
+                case NODE_CHECKBOX:
+                    result.addCheckbox(loadCheckbox(parser,
+                            translation == null ? null : translation.checkboxes));
+                    break;
+                case NODE_ANSWER:
+                    result.addAnswer(loadAnswer(parser,
+                            translation == null ? null : translation.answers));
+                    break;
+                default:
+                    skipElement(parser);
             }
         }
 
         return result;
     }
 
+    private static Checkbox loadCheckbox(final XmlPullParser parser, @Nullable final Map<String, String> translatedTexts)
+            throws XmlPullParserException, IOException {
+        final String id = getAttribute(parser, "id");
+        final String icon = getAttribute(parser, "icon");
+        final int examplesCount = getIntAttribute(parser, "examplesCount");
+        final String text = loadButtonText(parser, translatedTexts == null ? null : translatedTexts.get(id));
+
+        return new Checkbox(id, text, icon, examplesCount);
+    }
+
+    private static Answer loadAnswer(final XmlPullParser parser, @Nullable final Map<String, String> translatedTexts)
+            throws XmlPullParserException, IOException {
+        final String id = getAttribute(parser, "id");
+        final String icon = getAttribute(parser, "icon");
+        final String leadsTo = getAttribute(parser, "leadsTo");
+        final int examplesCount = getIntAttribute(parser, "examplesCount");
+        final String text = loadButtonText(parser, translatedTexts == null ? null : translatedTexts.get(id));
+
+        return new Answer(id, text, icon, leadsTo, examplesCount);
+    }
+
     /**
-     * getElementsByTagName() is recursive, but we do not want that.
-     *
-     * @param parentNode
-     * @param tagName
-     * @return
+     * Read the text child element of an answer or checkbox, unless we already have the translated text.
+     * This leaves the parser at the answer's or checkbox's end tag.
      */
     @Nullable
-    private static Node getFirstChildByTagName(@NonNull final Element parentNode, @NonNull final String tagName) {
-        final NodeList list = parentNode.getElementsByTagName(tagName);
-        final int num = list.getLength();
-        for (int i = 0; i < num; i++) {
-            final Node node = list.item(i);
-            if (node == null) {
-                continue;
+    private static String loadButtonText(final XmlPullParser parser, @Nullable final String translatedText)
+            throws XmlPullParserException, IOException {
+        String result = null;
+        while (parser.nextTag() == XmlPullParser.START_TAG) {
+            if (TextUtils.equals(parser.getName(), "text")) {
+                result = readText(parser, translatedText);
+            } else {
+                skipElement(parser);
             }
+        }
 
-            final Node itemParentNode = node.getParentNode();
-            if (itemParentNode.equals(parentNode)) {
-                return node;
-            }
+        return result;
+    }
+
+    /**
+     * Get the element's text, or just skip the element if we already have the translated text,
+     * to avoid creating a String for the English text.
+     * This leaves the parser at the element's end tag.
+     */
+    private static String readText(final XmlPullParser parser, @Nullable final String translatedText)
+            throws XmlPullParserException, IOException {
+        if (translatedText != null) {
+            skipElement(parser);
+            return translatedText;
         }
 
-        return null;
+        return parser.nextText();
     }
 
-    @Nullable
-    private static String getTextOfChildNode(@NonNull final Element element, @NonNull final String tagName) {
-        final Node node = getFirstChildByTagName(element, tagName);
-        if (node == null)
-            return null;
+    /**
+     * Skip the current element, including its children.
+     * This leaves the parser at the element's end tag.
+     */
+    private static void skipElement(final XmlPullParser parser) throws XmlPullParserException, IOException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new XmlPullParserException("Unexpected end of document.");
+                default:
+                    break;
+            }
+        }
+    }
 
-        return node.getTextContent();
+    /**
+     * Like DOM's Element.getAttribute(), this returns an empty string if there is no such attribute.
+     */
+    @NonNull
+    private static String getAttribute(final XmlPullParser parser, final String name) {
+        final String result = parser.getAttributeValue(null, name);
+        return (result == null) ? "" : result;
     }
 
-    private static Question loadQuestion(final Element questionNode) {
-        final Question result = new Question(
-                questionNode.getAttribute("id"),
-                getTextOfChildNode(questionNode, "title"),
-                getTextOfChildNode(questionNode, "text"),
-                getTextOfChildNode(questionNode, "help"));
+    /**
+     * This returns 0 if there is no such attribute.
+     * app/decision_trees.gradle must do the same.
+     */
+    private static int getIntAttribute(final XmlPullParser parser, final String name) {
+        final String str = getAttribute(parser, name);
+        return str.isEmpty() ? 0 : Integer.parseInt(str);
+    }
 
-        final List<Node> listCheckboxes = getChildrenByTagName(questionNode, NODE_CHECKBOX);
-        for (final Node node : listCheckboxes) {
-            if (!(node instanceof Element)) {
-                continue;
-            }
+    /**
+     * The translated strings for the questions of all the decision trees,
+     * from a translation file such as de.json.
+     * This is immutable, so it can be shared by several DecisionTrees.
+     */
+    public static final class Translation {
+        private final Map<String, QuestionTranslation> questions;
 
-            final Element element = (Element) node;
-            final Checkbox checkbox = loadCheckbox(element);
-            result.addCheckbox(checkbox);
+        private Translation(final Map<String, QuestionTranslation> questions) {
+            this.questions = questions;
         }
 
-        final List<Node> listAnswers = getChildrenByTagName(questionNode, NODE_ANSWER);
-        for (final Node node : listAnswers) {
-            if (!(node instanceof Element)) {
-                continue;
+        /**
+         * @param inputStreamTranslation A JSON file containing translations of the question and answers,
+         *                               such as https://github.com/zooniverse/Galaxy-Zoo/blob/master/public/locales/es.json
+         */
+        public static Translation load(final InputStream inputStreamTranslation) throws DecisionTreeException {
+            try {
+                return new Translation(loadTranslation(inputStreamTranslation));
+            } catch (final IOException | IllegalStateException e) {
+                throw new DecisionTreeException("loadTranslation() failed", e);
             }
-
-            final Element element = (Element) node;
-            final Answer answer = loadAnswer(element);
-            result.addAnswer(answer);
         }
-
-        return result;
     }
 
-    private static Checkbox loadCheckbox(final Element checkboxNode) {
-        return new Checkbox(
-                checkboxNode.getAttribute("id"),
-                getTextOfChildNode(checkboxNode, "text"),
-                checkboxNode.getAttribute("icon"),
-                Integer.parseInt(checkboxNode.getAttribute("examplesCount")));
-    }
-
-    private static Answer loadAnswer(final Element answerNode) {
-        return new Answer(
-                answerNode.getAttribute("id"),
-                getTextOfChildNode(answerNode, "text"),
-                answerNode.getAttribute("icon"),
-                answerNode.getAttribute("leadsTo"),
-                Integer.parseInt(answerNode.getAttribute("examplesCount")));
+    /**
+     * The translated strings for a question, and its answers and checkboxes, by ID.
+     */
+    private static final class QuestionTranslation {
+        String title = null;
+        String text = null;
+        String help = null;
+        final Map<String, String> answers = new HashMap<>();
+        final Map<String, String> checkboxes = new HashMap<>();
     }
 
     /** This class is meant to be immutable,
@@ -626,10 +786,6 @@ public class DecisionTree {
     }
 
 
-    public void setDiscussQuestion(final DiscussQuestion discussQuestion) {
-        mDiscussQuestion = discussQuestion;
-    }
-
     @Nullable
     String getDiscussQuestionYesAnswerId() {
         if (mDiscussQuestion == null) {
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads each decision tree, and each translation, just once,
+ * so subject groups that use the same decision tree file share the same questions,
+ * instead of parsing the same files again for each group.
+ *
+ * The DecisionTrees returned by getDecisionTree() are shared, so they must not be changed.
+ * Use DecisionTree.withDiscussQuestion() to get a DecisionTree for a specific subject group.
+ *
+ * This is not thread-safe.
+ */
+final class DecisionTreeRepository {
+    private final Context mContext;
+
+    //By decision tree filename, language, and country code.
+    //A null value means that we could not load the decision tree, so we don't try again.
+    private final Map<String, DecisionTree> mDecisionTrees = new HashMap<>();
+
+    //By language and country code.
+    //A null value means that there is no translation for the locale, so we don't look again.
+    private final Map<String, DecisionTree.Translation> mTranslations = new HashMap<>();
+
+    DecisionTreeRepository(final Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Get the decision tree, with the best translation for the locale,
+     * loading it only if we have not loaded it already.
+     *
+     * @param decisionTreeFilename The decision tree's filename, such as gama_tree.xml
+     * @param language The language, or null for no translation.
+     * @param countryCode The country code, or null.
+     * @return The shared DecisionTree, or null if it could not be found.
+     */
+    @Nullable
+    DecisionTree getDecisionTree(final String decisionTreeFilename, @Nullable final String language,
+                                 @Nullable final String countryCode) throws DecisionTree.DecisionTreeException {
+        final String key = getKey(decisionTreeFilename, language, countryCode);
+        if (mDecisionTrees.containsKey(key)) {
+            return mDecisionTrees.get(key);
+        }
+
+        //Prefer the tree that was compiled, with its translation, at build time,
+        //which avoids parsing the XML and the translation's JSON:
+        DecisionTree result = loadCompiledDecisionTree(decisionTreeFilename, language, countryCode);
+        if (result == null) {
+            result = loadDecisionTree(decisionTreeFilename, language, countryCode);
+        }
+
+        mDecisionTrees.put(key, result);
+        return result;
+    }
+
+    private static String getKey(final String decisionTreeFilename, @Nullable final String language,
+                                 @Nullable final String countryCode) {
+        return decisionTreeFilename + "/" + getKey(language, countryCode);
+    }
+
+    private static String getKey(@Nullable final String language, @Nullable final String countryCode) {
+        return (TextUtils.isEmpty(language) ? "" : language) + "_" +
+                (TextUtils.isEmpty(countryCode) ? "" : countryCode);
+    }
+
+    /**
+     * Load the decision tree that was compiled at build time, with the best translation for the locale,
+     * or return null if there is no compiled decision tree.
+     */
+    @Nullable
+    private DecisionTree loadCompiledDecisionTree(final String decisionTreeFilename, @Nullable final String language,
+                                                  @Nullable final String countryCode) throws DecisionTree.DecisionTreeException {
+        //Try a country-specific form of the language, then just the language,
+        //then the untranslated tree, as for the translation files:
+        final List<String> filePaths = new ArrayList<>();
+        if (!TextUtils.isEmpty(language)) {
+            if (!TextUtils.isEmpty(countryCode)) {
+                filePaths.add(Utils.getCompiledDecisionTreeFilePath(decisionTreeFilename,
+                        language, countryCode));
+            }
+
+            filePaths.add(Utils.getCompiledDecisionTreeFilePath(decisionTreeFilename,
+                    language, null));
+        }
+        filePaths.add(Utils.getCompiledDecisionTreeFilePath(decisionTreeFilename, null, null));
+
+        for (final String filePath : filePaths) {
+            final InputStream inputStream = Utils.openAsset(mContext, filePath);
+            if (inputStream == null) {
+                continue;
+            }
+
+            try {
+                return DecisionTree.loadCompiled(inputStream);
+            } finally {
+                try {
+                    inputStream.close();
+                } catch (final IOException e) {
+                    Log.error("DecisionTreeRepository: Exception while closing the compiled decision tree", e);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Parse the decision tree's XML, using the (shared) best translation for the locale, if any.
+     */
+    @Nullable
+    private DecisionTree loadDecisionTree(final String decisionTreeFilename, @Nullable final String language,
+                                          @Nullable final String countryCode) throws DecisionTree.DecisionTreeException {
+        final InputStream inputStreamTree = Utils.openAsset(mContext,
+                Utils.getDecisionTreeFilepath(decisionTreeFilename));
+        if (inputStreamTree == null) {
+            Log.error("DecisionTreeRepository: Error parsing decision tree.");
+            return null;
+        }
+
+        try {
+            return DecisionTree.load(inputStreamTree, getTranslation(language, countryCode));
+        } finally {
+            try {
+                inputStreamTree.close();
+            } catch (final IOException e) {
+                Log.error("DecisionTreeRepository: Exception while closing inputStreamTree", e);
+            }
+        }
+    }
+
+    /**
+     * Get the best translation for the locale, loading it only if we have not loaded it already.
+     *
+     * @return The shared translation, or null if there is none.
+     */
+    @Nullable
+    private DecisionTree.Translation getTranslation(@Nullable final String language,
+                                                    @Nullable final String countryCode) throws DecisionTree.DecisionTreeException {
+        if (TextUtils.isEmpty(language)) {
+            return null;
+        }
+
+        final String key = getKey(language, countryCode);
+        if (mTranslations.containsKey(key)) {
+            return mTranslations.get(key);
+        }
+
+        //Try finding a translation for a country-specific form of the language:
+        InputStream inputStreamTranslation = null;
+        if (!TextUtils.isEmpty(countryCode)) {
+            inputStreamTranslation = Utils.openAsset(mContext,
+                    Utils.getTranslationFilePath(language, countryCode));
+        }
+
+        if (inputStreamTranslation == null) {
+            //Try just the language instead:
+            inputStreamTranslation = Utils.openAsset(mContext,
+                    Utils.getTranslationFilePath(language, null));
+        }
+
+        DecisionTree.Translation result = null;
+        if (inputStreamTranslation != null) {
+            try {
+                result = DecisionTree.Translation.load(inputStreamTranslation);
+            } finally {
+                try {
+                    inputStreamTranslation.close();
+                } catch (final IOException e) {
+                    Log.error("DecisionTreeRepository: Exception while closing inputStreamTranslation", e);
+                }
+            }
+        }
+
+        mTranslations.put(key, result);
+        return result;
+    }
+}
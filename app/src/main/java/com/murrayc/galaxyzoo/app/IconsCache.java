@@ -19,10 +19,13 @@
 
 package com.murrayc.galaxyzoo.app;
 
+import android.app.ActivityManager;
 import android.content.Context;
 //import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.util.LruCache;
 import android.text.TextUtils;
@@ -41,6 +44,7 @@ import android.text.TextUtils;
 import java.io.InputStream;
 //import java.io.InputStreamReader;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 //import java.util.regex.Matcher;
 //import java.util.regex.Pattern;
 //import java.util.regex.PatternSyntaxException;
@@ -55,14 +59,29 @@ public class IconsCache {
 
     private static final String ASSET_PATH_ICONS_DIR = "icons/";
     private static final String ICON_FILE_PREFIX = "icon_";
+
+    //Use this fraction of the app's per-process memory class for the icons,
+    //as suggested here:
+    //http://developer.android.com/training/displaying-bitmaps/cache-bitmap.html#memory-cache
+    private static final int MEMORY_CLASS_DIVISOR = 8;
+
+    //The workflow icons are shown for every question,
+    //but the example icons are only shown in the help,
+    //so give the workflow icons most of the budget.
+    private static final int EXAMPLE_ICONS_BUDGET_DIVISOR = 4;
     //private final List<DecisionTree> mDecisionTrees;
     //private final File mCacheDir;
 
-    //TODO: Don't put both kinds of icons in the same map:
     //See this about the use of the LruCache:
     //http://developer.android.com/training/displaying-bitmaps/cache-bitmap.html#memory-cache
-    private final LruCache<String, Bitmap> mWorkflowIcons = new LruCache<>(20);
-    private final LruCache<String, Bitmap> mExampleIcons = new LruCache<>(20);
+    private final LruCache<String, Bitmap> mWorkflowIcons;
+    private final LruCache<String, Bitmap> mExampleIcons;
+
+    //We count these ourselves, once per lookup by getIcon(), getIconIfCached(), or getIconAsync(),
+    //because the LruCaches' counts include our checks of both caches, and our preloading.
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+
     private final Context mContext;
     /*
     private Bitmap mBmapWorkflowIcons = null;
@@ -80,6 +99,11 @@ public class IconsCache {
     public IconsCache(final Context context, final List<DecisionTree> decisionTrees) {
         //this.mDecisionTrees = decisionTrees;
         this.mContext = context;
+
+        final int budget = getMemoryBudget(context);
+        final int budgetExamples = budget / EXAMPLE_ICONS_BUDGET_DIVISOR;
+        mWorkflowIcons = new BitmapLruCache(budget - budgetExamples);
+        mExampleIcons = new BitmapLruCache(budgetExamples);
         /* this.mRequestQueue = Volley.newRequestQueue(context);
 
         mCacheDir = Utils.getExternalCacheDir(context);
@@ -112,6 +136,8 @@ public class IconsCache {
             */
         }
 
+        Log.info("IconsCache: After preloading: " + getStatistics());
+
         /* }
 
         mBmapWorkflowIcons = null;
@@ -119,6 +145,22 @@ public class IconsCache {
         */
     }
 
+    /**
+     * Get the maximum size, in bytes, of all the icons that we should keep in memory.
+     */
+    private static int getMemoryBudget(final Context context) {
+        final ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            Log.error("IconsCache.getMemoryBudget(): activityManager is null.");
+            return Config.ICONS_CACHE_MIN_BYTES;
+        }
+
+        //getMemoryClass() is in megabytes:
+        final int result = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR;
+        return Math.max(result, Config.ICONS_CACHE_MIN_BYTES);
+    }
+
     public static String getExampleImageUri(final String iconName) {
         return Config.FULL_EXAMPLE_URI + iconName + ".jpg";
     }
@@ -600,6 +642,14 @@ public class IconsCache {
     }
     */
 
+    /**
+     * Get the icon, loading it from the assets if it is no longer in the memory cache.
+     * This can do disk IO so it should not be used in the UI's main thread.
+     * Use getIconAsync() instead.
+     *
+     * @param iconName
+     * @return
+     */
     @Nullable
     public Bitmap getIcon(final String iconName) {
         //Avoid a NullPointerException from LruCache.get() if we pass a null key.
@@ -607,18 +657,180 @@ public class IconsCache {
             return null;
         }
 
-        Bitmap result = mWorkflowIcons.get(iconName);
+        final Bitmap result = getIconFromMemory(iconName);
+        countLookup(result);
+        if (result != null) {
+            return result;
+        }
+
+        return loadIcon(iconName);
+    }
+
+    /**
+     * Get the icon from the memory cache,
+     * or reload it if it is no longer in the cache,
+     * without counting the lookup.
+     */
+    @Nullable
+    private Bitmap loadIcon(final String iconName) {
+        final Bitmap result = getIconFromMemory(iconName);
+        if (result != null) {
+            return result;
+        }
+
+        reloadIcon(iconName, mWorkflowIcons);
+        return mWorkflowIcons.get(iconName);
+    }
 
-        //Reload it if it is no longer in the cache:
-        if (result == null) {
-            reloadIcon(iconName, mWorkflowIcons);
-            result = mWorkflowIcons.get(iconName);
+    /**
+     * Get the icon only if it is already in the memory cache.
+     * This never does any disk IO so it may be used in the UI's main thread.
+     *
+     * @param iconName
+     * @return
+     */
+    @Nullable
+    public Bitmap getIconIfCached(final String iconName) {
+        //Avoid a NullPointerException from LruCache.get() if we pass a null key.
+        if (TextUtils.isEmpty(iconName)) {
+            return null;
         }
 
+        final Bitmap result = getIconFromMemory(iconName);
+        countLookup(result);
         return result;
     }
 
+    /**
+     * Get the icon from whichever memory cache has it, without counting the lookup.
+     */
+    @Nullable
+    private Bitmap getIconFromMemory(final String iconName) {
+        final Bitmap result = mWorkflowIcons.get(iconName);
+        if (result != null) {
+            return result;
+        }
+
+        //The example icons are in a separate cache:
+        return mExampleIcons.get(iconName);
+    }
+
+    private void countLookup(@Nullable final Bitmap result) {
+        if (result != null) {
+            mHitCount.incrementAndGet();
+        } else {
+            mMissCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the icon, calling the callback, in the UI's main thread, when it is available.
+     * The callback is called immediately if the icon is already in the memory cache.
+     * Otherwise the icon is loaded from the assets in a background thread.
+     *
+     * This should be called from the UI's main thread.
+     *
+     * @param iconName
+     * @param callbacks
+     */
+    public void getIconAsync(final String iconName, @NonNull final Callbacks callbacks) {
+        if (TextUtils.isEmpty(iconName)) {
+            callbacks.onIconLoaded(iconName, null);
+            return;
+        }
+
+        final Bitmap bitmap = getIconIfCached(iconName);
+        if (bitmap != null) {
+            callbacks.onIconLoaded(iconName, bitmap);
+            return;
+        }
+
+        //Use the thread pool so we don't wait behind any other (slower) AsyncTasks,
+        //which use the serial executor by default:
+        final LoadIconTask task = new LoadIconTask(this, iconName, callbacks);
+        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Get a description of the memory cache usage,
+     * so we can check whether the memory budget is large enough for the decision trees.
+     */
+    public String getStatistics() {
+        return "hits=" + getHitCount() + ", misses=" + getMissCount() +
+                ", workflow icons: " + getStatistics(mWorkflowIcons) +
+                ", example icons: " + getStatistics(mExampleIcons);
+    }
+
+    private static String getStatistics(final LruCache<String, Bitmap> map) {
+        return "size=" + map.size() + " bytes, maxSize=" + map.maxSize() +
+                " bytes, evictions=" + map.evictionCount();
+    }
+
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+
+    public int getEvictionCount() {
+        return mWorkflowIcons.evictionCount() + mExampleIcons.evictionCount();
+    }
+
     private Context getContext() {
         return mContext;
     }
+
+    public interface Callbacks {
+        /**
+         * This is called, in the UI's main thread, when the icon has been loaded.
+         *
+         * @param iconName
+         * @param bitmap This will be null if the icon could not be loaded.
+         */
+        void onIconLoaded(final String iconName, @Nullable final Bitmap bitmap);
+    }
+
+    /**
+     * An LruCache whose size is the number of bytes used by its bitmaps,
+     * instead of the number of bitmaps.
+     */
+    private static class BitmapLruCache extends LruCache<String, Bitmap> {
+        BitmapLruCache(final int maxSizeBytes) {
+            super(maxSizeBytes);
+        }
+
+        @Override
+        protected int sizeOf(final String key, final Bitmap value) {
+            return value.getByteCount();
+        }
+    }
+
+    private static class LoadIconTask extends AsyncTask<Void, Void, Bitmap> {
+        private final IconsCache iconsCache;
+        private final String iconName;
+        private final Callbacks callbacks;
+
+        LoadIconTask(final IconsCache iconsCache, final String iconName, final Callbacks callbacks) {
+            this.iconsCache = iconsCache;
+            this.iconName = iconName;
+            this.callbacks = callbacks;
+        }
+
+        @Override
+        protected Bitmap doInBackground(final Void... params) {
+            if (isCancelled()) {
+                return null;
+            }
+
+            //getIconAsync() has already counted this lookup:
+            return iconsCache.loadIcon(iconName);
+        }
+
+        @Override
+        protected void onPostExecute(final Bitmap result) {
+            callbacks.onIconLoaded(iconName, result);
+        }
+    }
 }
\ No newline at end of file
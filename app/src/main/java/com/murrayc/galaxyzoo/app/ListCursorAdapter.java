@@ -21,8 +21,10 @@ package com.murrayc.galaxyzoo.app;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.database.DataSetObserver;
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
@@ -36,28 +38,150 @@ import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by murrayc on 5/16/14.
  */
 class ListCursorAdapter extends RecyclerView.Adapter<ListCursorAdapter.ViewHolder> {
 
-    private class CursorObserver extends DataSetObserver {
+    //A change payload for an item whose image has not changed,
+    //so onBindViewHolder() can update just the icons, without loading the image again.
+    private static final Object PAYLOAD_ICONS = new Object();
+
+    /**
+     * A copy of the columns that we show for one item.
+     * We show these instead of reading the cursor,
+     * so we can compare the old and new rows in the background,
+     * while the loader might close the old cursor.
+     */
+    static final class Row {
+        final long id;
+        final String itemId;
+        final String thumbnailUri;
+        final boolean thumbnailDownloaded;
+        final boolean done;
+        final boolean uploaded;
+        final boolean favorite;
+
+        private Row(final Cursor cursor) {
+            id = cursor.getLong(ListFragment.COLUMN_INDEX_ID);
+            itemId = cursor.getString(ListFragment.COLUMN_INDEX_ID);
+            thumbnailUri = cursor.getString(ListFragment.COLUMN_INDEX_LOCATION_THUMBNAIL_URI);
+            thumbnailDownloaded = (cursor.getInt(ListFragment.COLUMN_INDEX_LOCATION_THUMBNAIL_DOWNLOADED) == 1);
+            done = (cursor.getInt(ListFragment.COLUMN_INDEX_DONE) == 1);
+            uploaded = (cursor.getInt(ListFragment.COLUMN_INDEX_UPLOADED) == 1);
+            favorite = (cursor.getInt(ListFragment.COLUMN_INDEX_FAVOURITE) == 1);
+        }
+
+        boolean hasSameImage(final Row other) {
+            return TextUtils.equals(thumbnailUri, other.thumbnailUri) &&
+                    thumbnailDownloaded == other.thumbnailDownloaded;
+        }
+
+        boolean hasSameContents(final Row other) {
+            return hasSameImage(other) &&
+                    done == other.done &&
+                    uploaded == other.uploaded &&
+                    favorite == other.favorite;
+        }
+    }
+
+    /**
+     * Compares the old and new rows by _id, and then by the columns that we show.
+     */
+    private static class RowsDiffCallback extends DiffUtil.Callback {
+        private final List<Row> mOldRows;
+        private final List<Row> mNewRows;
+
+        RowsDiffCallback(final List<Row> oldRows, final List<Row> newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
         @Override
-        public void onChanged() {
-            super.onChanged();
-            //TODO: Be more specific?
-            notifyDataSetChanged();
+        public int getOldListSize() {
+            return mOldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(final int oldItemPosition, final int newItemPosition) {
+            return mOldRows.get(oldItemPosition).id == mNewRows.get(newItemPosition).id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(final int oldItemPosition, final int newItemPosition) {
+            return mOldRows.get(oldItemPosition).hasSameContents(mNewRows.get(newItemPosition));
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(final int oldItemPosition, final int newItemPosition) {
+            if (mOldRows.get(oldItemPosition).hasSameImage(mNewRows.get(newItemPosition))) {
+                return PAYLOAD_ICONS;
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Compares the old and new rows in the background,
+     * and then shows the new rows, with only the necessary changes.
+     */
+    private static class DiffTask extends AsyncTask<Void, Void, DiffUtil.DiffResult> {
+        private final WeakReference<ListCursorAdapter> mAdapterReference;
+        private final List<Row> mOldRows;
+        private final List<Row> mNewRows;
+        private final int mGeneration;
+
+        DiffTask(final ListCursorAdapter adapter, final List<Row> newRows) {
+            mAdapterReference = new WeakReference<>(adapter);
+            mOldRows = adapter.mRows;
+            mNewRows = newRows;
+            mGeneration = adapter.mGeneration;
+        }
+
+        @Override
+        protected DiffUtil.DiffResult doInBackground(final Void... params) {
+            //The rows keep their order, by _id, so we don't need to detect moves.
+            return DiffUtil.calculateDiff(new RowsDiffCallback(mOldRows, mNewRows), false);
+        }
+
+        @Override
+        protected void onPostExecute(final DiffUtil.DiffResult result) {
+            super.onPostExecute(result);
+
+            final ListCursorAdapter adapter = mAdapterReference.get();
+            if (adapter == null) {
+                return;
+            }
+
+            //Ignore this if there has been a newer cursor since,
+            //because that will be compared with the rows that we showed before it.
+            if (adapter.mGeneration != mGeneration) {
+                return;
+            }
+
+            adapter.mRows = mNewRows;
+            result.dispatchUpdatesTo(adapter);
         }
     }
 
-    private final CursorObserver mDataSetObserver = new CursorObserver();
+    @Nullable
+    public Row getItem(final int position) {
+        if (position < 0 || position >= mRows.size()) {
+            return null;
+        }
 
-    public Cursor getItem(final int position) {
-        //TODO Clone or copy it somehow?
-        //What does CursorAdapter (for ListView and GridView) do?
-        mCursor.moveToPosition(position);
-        return mCursor;
+        return mRows.get(position);
     }
 
     public interface OnItemClickedListener {
@@ -66,11 +190,18 @@ class ListCursorAdapter extends RecyclerView.Adapter<ListCursorAdapter.ViewHolde
 
     private final Context mContext;
     private Cursor mCursor = null;
+    //The rows that we are showing. This is replaced, never changed.
+    private List<Row> mRows = Collections.emptyList();
+    //This changes with each changeCursor(), so we can ignore the results of older DiffTasks.
+    private int mGeneration = 0;
     private final OnItemClickedListener mListener;
 
     ListCursorAdapter(final Context context, final OnItemClickedListener listener) {
         mContext = context;
         mListener = listener;
+
+        //The same item keeps its ViewHolder when the rows around it change:
+        setHasStableIds(true);
     }
 
     @Override
@@ -83,14 +214,12 @@ class ListCursorAdapter extends RecyclerView.Adapter<ListCursorAdapter.ViewHolde
     private static class ImageLoadedCallback implements Callback {
         final WeakReference<Context> contextReference;
         final WeakReference<ViewHolder> viewHolderReference;
-        final int position;
         final String itemId;
 
 
-        public  ImageLoadedCallback(final Context context, final ViewHolder viewHolder, final int position, final String itemId) {
+        public  ImageLoadedCallback(final Context context, final ViewHolder viewHolder, final String itemId) {
             this.contextReference = new WeakReference<>(context);
             this.viewHolderReference = new WeakReference<>(viewHolder);
-            this.position = position;
             this.itemId = itemId;
 
         }
@@ -106,9 +235,10 @@ class ListCursorAdapter extends RecyclerView.Adapter<ListCursorAdapter.ViewHolde
                 return null;
             }
 
-            //Check that we are still dealing with the same position,
-            //because the ImageView might be recycled for use with a different position.
-            if (viewHolder.getAdapterPosition() != position) {
+            //Check that we are still dealing with the same item,
+            //because the ImageView might be recycled for use with a different item.
+            //The item's position might change when other items are inserted or removed.
+            if (!TextUtils.equals(Long.toString(viewHolder.getItemId()), itemId)) {
                 return null;
             }
 
@@ -155,16 +285,28 @@ class ListCursorAdapter extends RecyclerView.Adapter<ListCursorAdapter.ViewHolde
         }
     }
 
+    @Override
+    public void onBindViewHolder(final ViewHolder viewHolder, final int i, final List<Object> payloads) {
+        if (!payloads.isEmpty() && !payloads.contains(null)) {
+            //Only the icons have changed, so don't load the image again:
+            final Row row = mRows.get(i);
+            if (!TextUtils.isEmpty(row.thumbnailUri)) {
+                bindIcons(viewHolder, row);
+            }
+
+            return;
+        }
+
+        onBindViewHolder(viewHolder, i);
+    }
+
     @Override
     public void onBindViewHolder(final ViewHolder viewHolder, final int i) {
-        mCursor.moveToPosition(i);
+        final Row row = mRows.get(i);
 
-        final String itemId = mCursor.getString(ListFragment.COLUMN_INDEX_ID);
-        final String imageUriStr = mCursor.getString(ListFragment.COLUMN_INDEX_LOCATION_THUMBNAIL_URI);
-        final boolean thumbnailDownloaded = (mCursor.getInt(ListFragment.COLUMN_INDEX_LOCATION_THUMBNAIL_DOWNLOADED) == 1);
-        final boolean done = (mCursor.getInt(ListFragment.COLUMN_INDEX_DONE) == 1);
-        final boolean uploaded = (mCursor.getInt(ListFragment.COLUMN_INDEX_UPLOADED) == 1);
-        final boolean favorite = (mCursor.getInt(ListFragment.COLUMN_INDEX_FAVOURITE) == 1);
+        final String itemId = row.itemId;
+        final String imageUriStr = row.thumbnailUri;
+        final boolean thumbnailDownloaded = row.thumbnailDownloaded;
 
         /*
         final TextView textView = (TextView) view.findViewById(R.id.item_text);
@@ -188,30 +330,34 @@ class ListCursorAdapter extends RecyclerView.Adapter<ListCursorAdapter.ViewHolde
                 //only show it while we are waiting for it to download from the internet.
                 viewHolder.progressBar.setVisibility(View.GONE);
                 Picasso.with(mContext).load(imageUriStr).into(viewHolder.imageView,
-                        new ImageLoadedCallback(mContext, viewHolder, viewHolder.getAdapterPosition(), itemId));
+                        new ImageLoadedCallback(mContext, viewHolder, itemId));
             } else {
                 //We are still waiting for it to download:
                 viewHolder.progressBar.setVisibility(View.VISIBLE);
             }
 
-            if (!favorite && !done && !uploaded) {
-                viewHolder.iconsPanel.setVisibility(View.GONE);
-            } else {
-                viewHolder.iconsPanel.setVisibility(View.VISIBLE);
-                viewHolder.checkboxFavorite.setVisibility(favorite ? View.VISIBLE : View.GONE);
-                viewHolder.checkboxClassified.setVisibility(done ? View.VISIBLE : View.GONE);
-                viewHolder.checkboxUploaded.setVisibility(uploaded ? View.VISIBLE : View.GONE);
-            }
-
-            //Don't allow the item to be selected (for viewing or classifying)
-            //if it is not done yet, so the user cannot skip ahead to classify
-            //only interesting images:
-            viewHolder.imageView.setEnabled(done);
+            bindIcons(viewHolder, row);
         }
 
         //holder.itemView.setTag(item);
     }
 
+    private static void bindIcons(final ViewHolder viewHolder, final Row row) {
+        if (!row.favorite && !row.done && !row.uploaded) {
+            viewHolder.iconsPanel.setVisibility(View.GONE);
+        } else {
+            viewHolder.iconsPanel.setVisibility(View.VISIBLE);
+            viewHolder.checkboxFavorite.setVisibility(row.favorite ? View.VISIBLE : View.GONE);
+            viewHolder.checkboxClassified.setVisibility(row.done ? View.VISIBLE : View.GONE);
+            viewHolder.checkboxUploaded.setVisibility(row.uploaded ? View.VISIBLE : View.GONE);
+        }
+
+        //Don't allow the item to be selected (for viewing or classifying)
+        //if it is not done yet, so the user cannot skip ahead to classify
+        //only interesting images:
+        viewHolder.imageView.setEnabled(row.done);
+    }
+
     public void onViewRecycled(final ViewHolder viewHolder) {
         //Picasso's into() documentation tells us to use cancelRequest() to avoid a leak,
         //though it doesn't suggest where/when to call it:
@@ -221,33 +367,53 @@ class ListCursorAdapter extends RecyclerView.Adapter<ListCursorAdapter.ViewHolde
 
     @Override
     public int getItemCount() {
-        if(mCursor == null) {
-            return 0;
-        }
+        return mRows.size();
+    }
 
-        return mCursor.getCount();
+    @Override
+    public long getItemId(final int position) {
+        return mRows.get(position).id;
     }
 
+    /**
+     * Show the rows from this cursor.
+     * The rows are copied now, while the cursor is open,
+     * and then compared with the previous rows in the background,
+     * so only the changed, inserted, and removed items are bound again.
+     */
     public final void changeCursor(final Cursor cursor) {
-        final boolean changed = (mCursor != cursor);
-
-        //TODO: our CursorObserver.onChanged() method never seems to be called
-        //but RecyclerView seems to call our getCount() every now and then anyway.
-        if (mCursor != null ) {
-            mCursor.unregisterDataSetObserver(mDataSetObserver);
+        if (mCursor == cursor) {
+            return;
         }
 
         mCursor = cursor;
+        mGeneration++;
 
-        if (mCursor != null) {
-            mCursor.registerDataSetObserver(mDataSetObserver);
+        final List<Row> newRows = getRows(cursor);
+        if (mRows.isEmpty() || newRows.isEmpty()) {
+            //There is nothing to compare:
+            mRows = newRows;
+            notifyDataSetChanged();
+            return;
         }
 
-        //TODO: Can we use the more specific methods.
-        //See https://developer.android.com/reference/android/support/v7/widget/RecyclerView.Adapter.html#notifyDataSetChanged%28%29
-        if (changed) {
-            notifyDataSetChanged();
+        new DiffTask(this, newRows).execute();
+    }
+
+    @NonNull
+    private static List<Row> getRows(@Nullable final Cursor cursor) {
+        if (cursor == null) {
+            return Collections.emptyList();
+        }
+
+        final List<Row> result = new ArrayList<>(cursor.getCount());
+        if (cursor.moveToFirst()) {
+            do {
+                result.add(new Row(cursor));
+            } while (cursor.moveToNext());
         }
+
+        return result;
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
@@ -23,8 +23,11 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.MergeCursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
@@ -39,6 +42,9 @@ import android.view.ViewGroup;
 
 import com.murrayc.galaxyzoo.app.provider.Item;
 
+import java.util.ArrayList;
+import java.util.List;
+
 //TODO: Why doesn't this need a layout resource?
 
 /**
@@ -64,7 +70,10 @@ public class ListFragment extends ZooFragment
     static final int COLUMN_INDEX_DONE = 3;
     static final int COLUMN_INDEX_UPLOADED = 4;
     static final int COLUMN_INDEX_FAVOURITE = 5;
+    //The loader for each page of items has this ID plus the page's index.
     private static final int URL_LOADER = 0;
+    private static final String ARG_AFTER_ID = "afterId";
+    private static final String STATE_PAGE_AFTER_IDS = "pageAfterIds";
 
     /**
      * A dummy implementation of the {@link ListFragment.Callbacks} interface that does
@@ -91,6 +100,14 @@ public class ListFragment extends ZooFragment
     private View mRootView = null;
     private ListCursorAdapter mAdapter = null;
 
+    //The grid shows the items one page at a time,
+    //loading the next page only when the user scrolls near the end,
+    //so we never query, or keep in memory, the whole history at once.
+    //Each page continues after the last _id of the previous page.
+    //These have one entry per page. A page's cursor is null until it has loaded.
+    private final List<Long> mPageAfterIds = new ArrayList<>();
+    private final List<Cursor> mPageCursors = new ArrayList<>();
+
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
      * fragment (e.g. upon screen orientation changes).
@@ -100,31 +117,61 @@ public class ListFragment extends ZooFragment
 
     @Override
     public Loader<Cursor> onCreateLoader(final int loaderId, final Bundle bundle) {
-        if (loaderId != URL_LOADER) {
+        final int page = loaderId - URL_LOADER;
+        if (page < 0 || bundle == null) {
             return null;
         }
 
         final Activity activity = getActivity();
 
-        final Uri uriItems = Item.ITEMS_URI;
+        final Uri.Builder builder = Item.ITEMS_URI.buildUpon();
+        final long afterId = bundle.getLong(ARG_AFTER_ID, -1);
+        if (afterId >= 0) {
+            builder.appendQueryParameter(Item.QUERY_PARAMETER_AFTER_ID, Long.toString(afterId));
+        }
+        builder.appendQueryParameter(Item.QUERY_PARAMETER_LIMIT, Integer.toString(Config.LIST_PAGE_SIZE));
 
         return new CursorLoader(
                 activity,
-                uriItems,
+                builder.build(),
                 mColumns,
-                null, // No where clause, return all records.
+                null, // No where clause, return all records in the page.
                 null, // No where clause, therefore no where column values.
-                null // Use the default sort order.
+                null // Use the default sort order, by _id, which the pages depend on.
         );
     }
 
     @Override
     public void onLoadFinished(final Loader<Cursor> cursorLoader, final Cursor cursor) {
-        /*
-         * Moves the query results into the adapter, causing the
-         * ListView fronting this adapter to re-display.
-         */
-        mAdapter.changeCursor(cursor);
+        final int page = cursorLoader.getId() - URL_LOADER;
+        if (page < 0 || page >= mPageCursors.size()) {
+            return;
+        }
+
+        mPageCursors.set(page, cursor);
+
+        final int nextPage = page + 1;
+        if (cursor == null || cursor.getCount() < Config.LIST_PAGE_SIZE) {
+            //This is the last page, so forget any later pages,
+            //for instance because items have been removed.
+            while (mPageCursors.size() > nextPage) {
+                final int lastPage = mPageCursors.size() - 1;
+                getLoaderManager().destroyLoader(URL_LOADER + lastPage);
+                mPageCursors.remove(lastPage);
+                mPageAfterIds.remove(lastPage);
+            }
+        } else if (nextPage < mPageCursors.size()) {
+            //If this page now ends with a different item,
+            //the next page must continue after that item instead:
+            final long lastId = getLastId(cursor);
+            if (lastId != mPageAfterIds.get(nextPage)) {
+                mPageAfterIds.set(nextPage, lastId);
+                mPageCursors.set(nextPage, null);
+                getLoaderManager().restartLoader(URL_LOADER + nextPage, createPageArgs(lastId), this);
+            }
+        }
+
+        updateAdapterCursor();
     }
 
     @Override
@@ -133,7 +180,93 @@ public class ListFragment extends ZooFragment
          * Clears out the adapter's reference to the Cursor.
          * This prevents memory leaks.
          */
-        mAdapter.changeCursor(null);
+        final int page = cursorLoader.getId() - URL_LOADER;
+        if (page >= 0 && page < mPageCursors.size()) {
+            mPageCursors.set(page, null);
+        }
+
+        updateAdapterCursor();
+    }
+
+    /**
+     * Show the loaded pages, up to the first page that has not yet loaded.
+     */
+    private void updateAdapterCursor() {
+        if (mAdapter == null) {
+            return;
+        }
+
+        final List<Cursor> cursors = new ArrayList<>();
+        for (final Cursor cursor : mPageCursors) {
+            if (cursor == null) {
+                break;
+            }
+
+            cursors.add(cursor);
+        }
+
+        /*
+         * Moves the query results into the adapter, causing the
+         * RecyclerView fronting this adapter to re-display.
+         * The loaders close the pages' cursors, so we don't close the MergeCursor.
+         */
+        if (cursors.isEmpty()) {
+            mAdapter.changeCursor(null);
+        } else if (cursors.size() == 1) {
+            mAdapter.changeCursor(cursors.get(0));
+        } else {
+            mAdapter.changeCursor(new MergeCursor(cursors.toArray(new Cursor[cursors.size()])));
+        }
+    }
+
+    /**
+     * Start loading the next page if the user has scrolled near the end of the loaded pages,
+     * and if there might be more items.
+     */
+    private void loadNextPageIfNecessary(final GridLayoutManager layoutManager) {
+        if (mAdapter == null || mPageCursors.isEmpty()) {
+            return;
+        }
+
+        final int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (lastVisible < mAdapter.getItemCount() - Config.LIST_PAGE_PREFETCH_DISTANCE) {
+            return;
+        }
+
+        //Wait for all the pages so far, and stop after a page that is not full:
+        final Cursor lastCursor = mPageCursors.get(mPageCursors.size() - 1);
+        if (lastCursor == null || lastCursor.getCount() < Config.LIST_PAGE_SIZE) {
+            return;
+        }
+
+        for (final Cursor cursor : mPageCursors) {
+            if (cursor == null) {
+                return;
+            }
+        }
+
+        final long afterId = getLastId(lastCursor);
+        mPageAfterIds.add(afterId);
+        mPageCursors.add(null);
+
+        //We use restartLoader(), instead of initLoader(),
+        //because initLoader() would reuse any loader that still has this ID,
+        //for instance from before a configuration change, ignoring our new afterId.
+        getLoaderManager().restartLoader(URL_LOADER + mPageCursors.size() - 1, createPageArgs(afterId), this);
+    }
+
+    private static long getLastId(final Cursor cursor) {
+        if (!cursor.moveToLast()) {
+            return -1;
+        }
+
+        return cursor.getLong(COLUMN_INDEX_ID);
+    }
+
+    private static Bundle createPageArgs(final long afterId) {
+        final Bundle result = new Bundle();
+        result.putLong(ARG_AFTER_ID, afterId);
+        return result;
     }
 
     @Override
@@ -153,11 +286,24 @@ public class ListFragment extends ZooFragment
 
         setHasOptionsMenu(true);
 
-        update();
+        update(savedInstanceState);
 
         return mRootView;
     }
 
+    @Override
+    public void onSaveInstanceState(@NonNull final Bundle outState) {
+        super.onSaveInstanceState(outState);
+
+        //Remember the pages, so we can reconnect to the same loaders,
+        //with the same arguments, after a configuration change:
+        final long[] pageAfterIds = new long[mPageAfterIds.size()];
+        for (int i = 0; i < pageAfterIds.length; i++) {
+            pageAfterIds[i] = mPageAfterIds.get(i);
+        }
+        outState.putLongArray(STATE_PAGE_AFTER_IDS, pageAfterIds);
+    }
+
     @Override
     public void onCreateOptionsMenu(final Menu menu, final MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
@@ -183,7 +329,7 @@ public class ListFragment extends ZooFragment
         }
     }
 
-    private void update() {
+    private void update(@Nullable final Bundle savedInstanceState) {
         final Activity activity = getActivity();
         if (activity == null) {
             return;
@@ -218,8 +364,17 @@ public class ListFragment extends ZooFragment
             return;
         }
 
-        gridView.setLayoutManager(
-                new GridLayoutManager(activity, gridSpan));
+        final GridLayoutManager layoutManager = new GridLayoutManager(activity, gridSpan);
+        gridView.setLayoutManager(layoutManager);
+
+        //Load more pages as the user scrolls.
+        //This is also called after a layout, so we load more pages if the first pages don't fill the grid.
+        gridView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(final RecyclerView recyclerView, final int dx, final int dy) {
+                loadNextPageIfNecessary(layoutManager);
+            }
+        });
 
 
         //This is apparently already the default:
@@ -231,10 +386,29 @@ public class ListFragment extends ZooFragment
         gridView.setAdapter(mAdapter);
 
         /*
-         * Initializes the CursorLoader. The URL_LOADER value is eventually passed
+         * Initializes the CursorLoader for the first page, and for any other pages
+         * that we had loaded before a configuration change. The URL_LOADER value is eventually passed
          * to onCreateLoader().
+         * initLoader() reconnects to the retained loaders, which have the same arguments.
+         * onLoadFinished() restarts any later page if its previous page now ends with a different item.
          */
-        getLoaderManager().initLoader(URL_LOADER, null, this);
+        mPageAfterIds.clear();
+        mPageCursors.clear();
+
+        long[] pageAfterIds = null;
+        if (savedInstanceState != null) {
+            pageAfterIds = savedInstanceState.getLongArray(STATE_PAGE_AFTER_IDS);
+        }
+
+        if (pageAfterIds == null || pageAfterIds.length == 0) {
+            pageAfterIds = new long[]{-1};
+        }
+
+        for (int page = 0; page < pageAfterIds.length; page++) {
+            mPageAfterIds.add(pageAfterIds[page]);
+            mPageCursors.add(null);
+            getLoaderManager().initLoader(URL_LOADER + page, createPageArgs(pageAfterIds[page]), this);
+        }
     }
 
     @Override
@@ -281,25 +455,22 @@ public class ListFragment extends ZooFragment
             return;
         }
 
-        // CursorAdapter.getItem() returns a  Cursor but that seems to be completely undocumented:
-        // https://code.google.com/p/android/issues/detail?id=69973&thanks=69973&ts=1400841331
         final ListCursorAdapter cursorAdapter = (ListCursorAdapter) adapter;
-        final Cursor cursor =  cursorAdapter.getItem(position /* -1 if we we have a header */);
-        if (cursor == null) {
+        final ListCursorAdapter.Row row = cursorAdapter.getItem(position /* -1 if we we have a header */);
+        if (row == null) {
             Log.error("cursorAdapter.getItem() returned null.");
             return;
         }
 
-        final boolean imageDownloaded = (cursor.getInt(COLUMN_INDEX_LOCATION_THUMBNAIL_DOWNLOADED) == 1);
-        if (!imageDownloaded) {
+        if (!row.thumbnailDownloaded) {
             //Just ignore clicks on items that are still downloading.
             //TODO: We don't check tha the full image has been downloaded,
             //so make sure that the activities can show them when they are ready.
             return;
         }
 
-        final String itemId = cursor.getString(COLUMN_INDEX_ID);
-        final boolean done = (cursor.getInt(COLUMN_INDEX_DONE) == 1);
+        final String itemId = row.itemId;
+        final boolean done = row.done;
 
         //Disable the ability to classify a not-yet-done item by selecting it from
         //the list.
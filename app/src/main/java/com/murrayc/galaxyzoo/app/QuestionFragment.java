@@ -29,7 +29,6 @@ import android.content.OperationApplicationException;
 import android.content.res.Configuration;
 import android.database.Cursor;
 import android.databinding.DataBindingUtil;
-import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -383,8 +382,7 @@ public class QuestionFragment extends BaseQuestionFragment
 
             insertButtonInRow(activity, row, button);
 
-            final BitmapDrawable icon = getIcon(activity, checkbox);
-            button.setCompoundDrawables(null, icon, null, null);
+            setButtonIcon(activity, button, checkbox);
 
             mCheckboxButtons.put(checkbox.getId(), button);
 
@@ -518,8 +516,7 @@ public class QuestionFragment extends BaseQuestionFragment
         final Button button = (Button)inflater.inflate(R.layout.question_answer_button, null);
         button.setText(answer.getText());
 
-        final BitmapDrawable icon = getIcon(activity, answer);
-        button.setCompoundDrawables(null, icon, null, null);
+        setButtonIcon(activity, button, answer);
         //There is still some padding: button.setCompoundDrawablePadding(0); //UiUtils.getPxForDpResource(activity, R.dimen.standard_margin));
         return button;
     }
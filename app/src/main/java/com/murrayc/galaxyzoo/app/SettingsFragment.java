@@ -19,12 +19,22 @@
 
 package com.murrayc.galaxyzoo.app;
 
+import android.content.ContentResolver;
+import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.CheckBoxPreference;
 import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
+import android.text.TextUtils;
+import android.text.format.Formatter;
+
+import com.murrayc.galaxyzoo.app.provider.CacheStats;
+
+import java.lang.ref.WeakReference;
 
 /**
  * A fragment showing the preferences.
@@ -33,6 +43,12 @@ public class SettingsFragment extends PreferenceFragment implements SharedPrefer
 
     private static final String KEY_PREF_CACHE_SIZE = "cache_size";
     private static final String KEY_PREF_KEEP_COUNT = "keep_count";
+    private static final String KEY_PREF_CACHE_BYTES = "cache_bytes";
+
+    private static final String[] PROJECTION_CACHE_BYTES_USED = new String[]{CacheStats.Columns.BYTES_USED};
+
+    private GetCacheBytesUsedTask mGetCacheBytesUsedTask = null;
+    private long mCacheBytesUsed = -1;
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -64,10 +80,20 @@ public class SettingsFragment extends PreferenceFragment implements SharedPrefer
         showUserDescriptionAsSummary(pref);
         pref = findPreference(KEY_PREF_KEEP_COUNT);
         showUserDescriptionAsSummary(pref);
+        showCacheBytesSummary();
+
+        //Show how much space is actually used, which we must get from the ContentProvider:
+        mGetCacheBytesUsedTask = new GetCacheBytesUsedTask(this);
+        mGetCacheBytesUsedTask.execute();
     }
 
     @Override
     public void onPause() {
+        if (mGetCacheBytesUsedTask != null) {
+            mGetCacheBytesUsedTask.cancel(true);
+            mGetCacheBytesUsedTask = null;
+        }
+
         getPreferenceManager().getSharedPreferences().unregisterOnSharedPreferenceChangeListener(this);
         super.onPause();
     }
@@ -80,6 +106,10 @@ public class SettingsFragment extends PreferenceFragment implements SharedPrefer
             showUserDescriptionAsSummary(connectionPref);
         }
 
+        if (TextUtils.equals(key, KEY_PREF_CACHE_BYTES)) {
+            showCacheBytesSummary();
+        }
+
         //Copy the preference to the Account:
         //This is an awful hack. Hopefully there is some other way to use preferences per-account.
         //If not, maybe we need to reimplement this fragment without using PreferencesFragment.
@@ -104,4 +134,71 @@ public class SettingsFragment extends PreferenceFragment implements SharedPrefer
         final ListPreference listPref = (ListPreference) preference;
         preference.setSummary(listPref.getEntry());
     }
+
+    /**
+     * Show the storage limit, and how much of it is used, if we know that yet.
+     */
+    private void showCacheBytesSummary() {
+        final Preference pref = findPreference(KEY_PREF_CACHE_BYTES);
+        showUserDescriptionAsSummary(pref);
+        if (mCacheBytesUsed < 0 || !(pref instanceof ListPreference)) {
+            return;
+        }
+
+        final ListPreference listPref = (ListPreference) pref;
+        pref.setSummary(getString(R.string.pref_summary_cache_bytes,
+                listPref.getEntry(),
+                Formatter.formatShortFileSize(getActivity(), mCacheBytesUsed)));
+    }
+
+    private void onGetCacheBytesUsedTaskFinished(final long bytesUsed) {
+        mGetCacheBytesUsedTask = null;
+        mCacheBytesUsed = bytesUsed;
+        showCacheBytesSummary();
+    }
+
+    /**
+     * Asynchronously gets the total size of the cached images from the ContentProvider.
+     */
+    private static class GetCacheBytesUsedTask extends AsyncTask<Void, Void, Long> {
+
+        private final WeakReference<SettingsFragment> mFragmentReference;
+        private final Context mContext;
+
+        GetCacheBytesUsedTask(final SettingsFragment fragment) {
+            mFragmentReference = new WeakReference<>(fragment);
+            mContext = fragment.getActivity().getApplicationContext();
+        }
+
+        @Override
+        protected Long doInBackground(final Void... params) {
+            final ContentResolver resolver = mContext.getContentResolver();
+            final Cursor c = resolver.query(CacheStats.CONTENT_URI, PROJECTION_CACHE_BYTES_USED,
+                    null, null, null);
+            if (c == null) {
+                Log.error("GetCacheBytesUsedTask: Cursor is null.");
+                return -1L;
+            }
+
+            long result = -1;
+            if (c.moveToFirst()) {
+                result = c.getLong(c.getColumnIndex(CacheStats.Columns.BYTES_USED));
+            }
+
+            c.close();
+            return result;
+        }
+
+        @Override
+        protected void onPostExecute(final Long result) {
+            super.onPostExecute(result);
+
+            final SettingsFragment fragment = mFragmentReference.get();
+            if (fragment == null || fragment.getActivity() == null) {
+                return;
+            }
+
+            fragment.onGetCacheBytesUsedTaskFinished(result);
+        }
+    }
 }
@@ -31,8 +31,6 @@ import android.text.TextUtils;
 
 import com.murrayc.galaxyzoo.app.provider.Config;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -70,86 +68,38 @@ public class Singleton {
         //See http://developer.android.com/guide/topics/ui/settings.html#Fragment
         Utils.initDefaultPrefs(context);
 
-        //Try to find a translation file:
-        InputStream inputStreamTranslation = null;
-        String translationFileName = null;
         mLocaleDetails = getLocaleDetails(context);
-        if (!TextUtils.isEmpty(mLocaleDetails.language)) {
-            //Try finding a translation for a country-specific form of the language:
-            //We have to get the stream to find out if the asset exists,
-            //so we keep the stream to avoid re-opening it unnecessarily:
-            translationFileName = Utils.getTranslationFilePath(mLocaleDetails.language, mLocaleDetails.countryCode);
-            inputStreamTranslation = Utils.openAsset(context, translationFileName);
-            if (inputStreamTranslation == null) {
-                //Try just the language instead:
-                translationFileName = Utils.getTranslationFilePath(mLocaleDetails.language, null);
-                inputStreamTranslation = Utils.openAsset(context, translationFileName);
-            }
-
-            if (inputStreamTranslation == null) {
-                translationFileName = null; //To mark that we don't have it.
-            }
-        }
 
         final List<DecisionTree> decisionTreesToPreloadIcons = new ArrayList<>();
 
-        //Parse the tree for each group of subjects:
+        //Several groups of subjects may use the same tree,
+        //so we load each tree, and the translation, only once, and share them:
+        final DecisionTreeRepository repository = new DecisionTreeRepository(context);
+        final String language = (mLocaleDetails == null) ? null : mLocaleDetails.language;
+        final String countryCode = (mLocaleDetails == null) ? null : mLocaleDetails.countryCode;
+
         for (final Map.Entry<String, Config.SubjectGroup> entry : Config.SUBJECT_GROUPS.entrySet()) {
             final String groupId = entry.getKey();
             final Config.SubjectGroup subjectGroup = entry.getValue();
 
-            final String decisionTreeFilename = subjectGroup.getFilename();
-            final InputStream inputStreamTree = Utils.openAsset(context,
-                    Utils.getDecisionTreeFilepath(decisionTreeFilename));
-            if (inputStreamTree == null) {
-                Log.error("Singleton: Error parsing decision tree.");
+            final DecisionTree sharedDecisionTree = repository.getDecisionTree(
+                    subjectGroup.getFilename(), language, countryCode);
+            if (sharedDecisionTree == null) {
                 continue;
             }
 
-            //We have to reload inputStreamTranslation because we cannot just reuse it:
-            if ((inputStreamTranslation == null) && !TextUtils.isEmpty(translationFileName)) {
-                inputStreamTranslation = Utils.openAsset(context, translationFileName);
-            }
-
-            final DecisionTree decisionTree = new DecisionTree(inputStreamTree, inputStreamTranslation);
-            mDecisionTrees.put(groupId, decisionTree);
-
-            //Preload icons only for trees that are likely to be used:
-            if (subjectGroup.getUseForNewQueries()) {
-                decisionTreesToPreloadIcons.add(decisionTree);
-            }
-
             //Discover the "Discuss this" question from our Config,
-            //because there is no reliable automatic way to discover it:
-            decisionTree.setDiscussQuestion(subjectGroup.getDiscussQuestion());
-
-            if (inputStreamTree != null) {
-                try {
-                    inputStreamTree.close();
-                } catch (final IOException e) {
-                    Log.error("Singleton: Exception while closing inputStreamTree", e);
-                }
-            }
-
-            //Make sure that we reload this instead of trying to reuse it,
-            //because we cannot reuse it:
-            if (inputStreamTranslation != null) {
-                try {
-                    inputStreamTranslation.close();
-                } catch (final IOException e) {
-                    Log.error("Singleton: Exception while closing inputStreamTranslation", e);
-                }
-            }
-            inputStreamTranslation = null; //So we reload it if necessary.
-        }
+            //because there is no reliable automatic way to discover it.
+            //This doesn't copy the questions.
+            final DecisionTree decisionTree = sharedDecisionTree.withDiscussQuestion(
+                    subjectGroup.getDiscussQuestion());
+            mDecisionTrees.put(groupId, decisionTree);
 
-        //Just in case the for() never iterates even once,
-        //which would be very odd:
-        if (inputStreamTranslation != null) {
-            try {
-                inputStreamTranslation.close();
-            } catch (final IOException e) {
-                Log.error("Singleton: Exception while closing inputStreamTranslation", e);
+            //Preload icons only for trees that are likely to be used,
+            //and only once for each shared tree:
+            if (subjectGroup.getUseForNewQueries() &&
+                    !decisionTreesToPreloadIcons.contains(sharedDecisionTree)) {
+                decisionTreesToPreloadIcons.add(sharedDecisionTree);
             }
         }
 
@@ -262,9 +212,38 @@ public class Singleton {
         return mIconsCache.getIcon(iconName);
     }
 
+    /**
+     * This can do disk IO if the icon is no longer in the memory cache,
+     * so avoid using it in the UI's main thread. Use getIconDrawableAsync() instead.
+     */
     @Nullable
     public BitmapDrawable getIconDrawable(final Context context, final String iconName) {
-        final Bitmap bitmap = getIcon(iconName);
+        return createIconDrawable(context, getIcon(iconName));
+    }
+
+    public BitmapDrawable getIconDrawable(final Context context, final DecisionTree.BaseButton answer) {
+        return getIconDrawable(context, answer.getIcon());
+    }
+
+    /**
+     * Get the icon's drawable, calling the callback in the UI's main thread when it is available.
+     * This calls the callback immediately if the icon is already in the memory cache.
+     */
+    public void getIconDrawableAsync(final Context context, final String iconName, final IconDrawableCallbacks callbacks) {
+        mIconsCache.getIconAsync(iconName, new IconsCache.Callbacks() {
+            @Override
+            public void onIconLoaded(final String iconName, final Bitmap bitmap) {
+                callbacks.onIconDrawableLoaded(createIconDrawable(context, bitmap));
+            }
+        });
+    }
+
+    public void getIconDrawableAsync(final Context context, final DecisionTree.BaseButton answer, final IconDrawableCallbacks callbacks) {
+        getIconDrawableAsync(context, answer.getIcon(), callbacks);
+    }
+
+    @Nullable
+    private static BitmapDrawable createIconDrawable(final Context context, final Bitmap bitmap) {
         if (bitmap == null) {
             return null;
         }
@@ -274,10 +253,6 @@ public class Singleton {
         return drawable;
     }
 
-    public BitmapDrawable getIconDrawable(final Context context, final DecisionTree.BaseButton answer) {
-        return getIconDrawable(context, answer.getIcon());
-    }
-
     /**
      * Find out whether the context's locale is different enough to the one used when
      * this instance was created.
@@ -310,6 +285,15 @@ public class Singleton {
         void onInitialized();
     }
 
+    public interface IconDrawableCallbacks {
+        /**
+         * This is called, in the UI's main thread, when the icon has been loaded.
+         *
+         * @param drawable This will be null if the icon could not be loaded.
+         */
+        void onIconDrawableLoaded(@Nullable final BitmapDrawable drawable);
+    }
+
     private static class InitAsyncTask extends AsyncTask<Context, Void, Void> {
         @Override
         protected Void doInBackground(final Context... params) {
@@ -54,6 +54,9 @@ public final class Utils {
     public static final String STRING_ENCODING = "UTF-8";
     private static final String ASSET_PATH_DECISION_TREE_DIR = "decision_tree/";
     private static final String JSON_FILE_EXTENSION = ".json";
+    private static final String ASSET_PATH_COMPILED_DECISION_TREE_DIR = ASSET_PATH_DECISION_TREE_DIR + "compiled/";
+    private static final String XML_FILE_EXTENSION = ".xml";
+    private static final String COMPILED_DECISION_TREE_FILE_EXTENSION = ".bin";
 
     /**
      * Ideally you would use LoginUtils.getUseWifiOnly() instead of the copy that is in
@@ -147,6 +150,30 @@ public final class Utils {
         }
     }
 
+    /**
+     * Get the path of the decision tree compiled at build time, with the translation, if any.
+     * See app/decision_trees.gradle.
+     *
+     * @param filename The decision tree's filename, such as gama_tree.xml.
+     * @param language The language, or null for the untranslated decision tree.
+     */
+    public static String getCompiledDecisionTreeFilePath(final String filename, final String language, final String countryCode) {
+        String treeName = filename;
+        if (treeName.endsWith(XML_FILE_EXTENSION)) {
+            treeName = treeName.substring(0, treeName.length() - XML_FILE_EXTENSION.length());
+        }
+
+        String path = ASSET_PATH_COMPILED_DECISION_TREE_DIR + treeName;
+        if (!TextUtils.isEmpty(language)) {
+            path += "-" + language;
+            if (!TextUtils.isEmpty(countryCode)) {
+                path += "_" + countryCode;
+            }
+        }
+
+        return path + COMPILED_DECISION_TREE_FILE_EXTENSION;
+    }
+
     @NonNull
     public static String getTalkUri(final String zooniverseId) {
         if (zooniverseId == null) {
@@ -224,6 +251,24 @@ public final class Utils {
         return uriBuilder.build();
     }
 
+    /**
+     * Get how long to wait before trying again after a number of failed attempts,
+     * doubling the wait after each failure, up to the maximum.
+     *
+     * @param attempts The number of failed attempts so far, at least 1.
+     */
+    public static long getRetryBackoff(final int attempts, final long initialMs, final long maximumMs) {
+        long result = initialMs;
+        for (int i = 1; i < attempts; i++) {
+            result *= 2;
+            if (result >= maximumMs) {
+                return maximumMs;
+            }
+        }
+
+        return result;
+    }
+
     static void initDefaultPrefs(final Context context) {
         PreferenceManager.setDefaultValues(context, R.xml.preferences, false);
     }
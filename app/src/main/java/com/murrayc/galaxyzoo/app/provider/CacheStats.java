@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider;
+
+import android.net.Uri;
+
+/**
+ * The disk usage of the cached image files, read-only, as a single row.
+ */
+public final class CacheStats {
+    public static final String AUTHORITY =
+            Item.AUTHORITY;
+
+    /**
+     * The content:// style URI for the cache statistics.
+     */
+    public static final Uri CONTENT_URI = Uri.parse("content://" +
+            AUTHORITY + "/" + ItemsContentProvider.URI_PART_CACHE_STATS);
+
+    /**
+     * Use this with ContentResolver.call() to remove the least-recently used
+     * uploaded items until the cached files use no more than the budget.
+     * The arg is the budget in bytes.
+     * The result has the same keys as the Columns, after the trimming.
+     */
+    public static final String METHOD_TRIM_CACHE = "trimCache";
+
+    /**
+     * Use this with ContentResolver.call() to forget the items whose cached files have been
+     * deleted, by the system or by the user, since the last check,
+     * and to download the images again for the items that are kept because their
+     * classifications are still to be uploaded.
+     * This is cheap when nothing has been deleted.
+     * The result has RESULT_ITEMS_REMOVED.
+     */
+    public static final String METHOD_CHECK_CACHE_EPOCH = "checkCacheEpoch";
+
+    /**
+     * The number of items removed by METHOD_TRIM_CACHE, METHOD_CHECK_CACHE_EPOCH,
+     * or Item.METHOD_REMOVE_ITEMS.
+     */
+    public static final String RESULT_ITEMS_REMOVED = "itemsRemoved";
+
+    public static final class Columns {
+        public static final String FILE_COUNT = "fileCount"; //Integer.
+        public static final String BYTES_USED = "bytesUsed"; //Integer. The total size of the cached files.
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo.
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider;
+
+import android.net.Uri;
+
+/**
+ * A whole classification of an Item, read-only, with one row per selected checkbox
+ * (or one row per answer if the answer has no selected checkboxes),
+ * ordered by the answers' sequence.
+ */
+public final class Classification {
+    public static final String AUTHORITY =
+            Item.AUTHORITY;
+
+    /**
+     * The URI for the classifications of all Items,
+     * or part of the URI for the classification of a single Item,
+     * using the Item's ID.
+     */
+    public static final Uri CLASSIFICATIONS_URI = Uri.parse("content://" +
+            AUTHORITY + "/" + ItemsContentProvider.URI_PART_CLASSIFICATION);
+    /**
+     * The content:// style URI for this item.
+     */
+    public static final Uri CONTENT_URI = CLASSIFICATIONS_URI;
+
+
+    public static final class Columns {
+        public static final String ITEM_ID = "itemId";
+        public static final String FAVORITE = "favorite"; //Integer boolean (1 or 0)
+        public static final String SEQUENCE = "sequence"; //Null if the Item has no answers.
+        public static final String QUESTION_ID = "questionId";
+        public static final String ANSWER_ID = "answerId";
+        public static final String CHECKBOX_ID = "checkboxId"; //Null if the answer has no selected checkboxes.
+    }
+}
@@ -47,6 +47,74 @@ public final class Config {
     //It also allows us to get a mix of items from different groups.
     public static final int MAXIMUM_DOWNLOAD_ITEMS = 5;
 
+    //The maximum number of classifications to upload at the same time,
+    //to avoid a storm of threads and connections after a long time offline.
+    public static final int MAXIMUM_CONCURRENT_UPLOADS = 2;
+
+    //After a failed upload, wait this long before trying that upload again,
+    //doubling the wait after each further failure, up to the maximum.
+    public static final long UPLOAD_RETRY_BACKOFF_INITIAL_MS = 60 * 1000; // 1 minute
+    public static final long UPLOAD_RETRY_BACKOFF_MAXIMUM_MS = 6 * 60 * 60 * 1000; // 6 hours
+
+    //After failing to create the thumbnail and inverted images from the standard image,
+    //wait this long before trying again, doubling the wait after each further failure, up to the maximum.
+    public static final long DERIVE_RETRY_BACKOFF_INITIAL_MS = 60 * 1000; // 1 minute
+    public static final long DERIVE_RETRY_BACKOFF_MAXIMUM_MS = 6 * 60 * 60 * 1000; // 6 hours
+
+    //Consider an image download to have hung if it has not finished after this long,
+    //so we may try it again.
+    public static final long IMAGE_DOWNLOAD_TIMEOUT_MS = 2 * 60 * 1000; // 2 minutes
+
+    //After a failed image download, wait this long before trying that download again,
+    //doubling the wait after each further failure, up to the maximum.
+    public static final long IMAGE_DOWNLOAD_RETRY_BACKOFF_INITIAL_MS = 30 * 1000; // 30 seconds
+    public static final long IMAGE_DOWNLOAD_RETRY_BACKOFF_MAXIMUM_MS = 60 * 60 * 1000; // 1 hour
+
+    //Forget a failed image download if it has not been tried again for this long after it could have been,
+    //probably because its item has been removed.
+    public static final long IMAGE_DOWNLOAD_FAILURE_EXPIRY_MS = IMAGE_DOWNLOAD_RETRY_BACKOFF_MAXIMUM_MS;
+
+    //The maximum number of failed image downloads to remember.
+    public static final int MAXIMUM_IMAGE_DOWNLOAD_FAILURES = 200;
+
+    //The maximum number of images to download from the same server at the same time,
+    //so the most urgent images don't have to share the connection with many others.
+    public static final int MAXIMUM_CONCURRENT_DOWNLOADS_PER_HOST = 2;
+
+    //The server gives us only the standard image, so we create the thumbnail and inverted images locally.
+    //The thumbnail's largest dimension, for the ListFragment's grid:
+    public static final int THUMBNAIL_SIZE_PX = 200;
+    //Downsample the standard image while decoding it if it is at least twice this size:
+    public static final int DERIVED_IMAGE_MAXIMUM_SIZE_PX = 1024;
+    public static final int DERIVED_IMAGE_JPEG_QUALITY = 85;
+
+    //Wait for this long without further changes before notifying observers about changes to the items,
+    //so a burst of changes, such as several image downloads, causes just one re-query,
+    //but never wait longer than the maximum after the first change.
+    public static final long NOTIFICATION_COALESCE_DELAY_MS = 250;
+    public static final long NOTIFICATION_COALESCE_MAXIMUM_DELAY_MS = 1000;
+
+    //Notify about up to this many distinct URIs separately, so an observer of one item
+    //is not told about changes to other items. Above this, notify once about their common ancestor.
+    public static final int NOTIFICATION_COALESCE_MAXIMUM_URIS = 10;
+
+    //The disk cache for the HTTP responses for the project and workflow metadata,
+    //in the app's cache directory. This does not contain the subject images.
+    public static final String HTTP_CACHE_DIR_NAME = "http";
+    public static final long HTTP_CACHE_MAX_BYTES = 2 * 1024 * 1024;
+
+    //Combine the sync requests made within this long after the first one,
+    //so a burst of changes causes just one sync.
+    public static final long SYNC_REQUEST_COALESCE_DELAY_MS = 2000;
+
+    //Record when each cached image was last read (for removing the least-recently used items first)
+    //at most this often, so scrolling through the list doesn't write to the database for every thumbnail.
+    public static final long IMAGE_LAST_ACCESSED_UPDATE_INTERVAL_MS = 60 * 60 * 1000; // 1 hour
+
+    //The maximum size of the cached images, if there is no preference for it yet.
+    //This should be the same as pref_default_cache_bytes.
+    public static final int DEFAULT_CACHE_BUDGET_MB = 100;
+
     public static List<String> getSubjectGroupsToUseForNewQueries() {
         return SUBJECT_GROUPS_TO_USE_FOR_NEW_QUERIES;
     }
@@ -92,7 +160,7 @@ public final class Config {
 
         //Production:
         {
-            // TODO: Avoid re-parsing the whole XML tree when surveys share a tree.
+            //Groups that use the same decision tree file share the parsed tree. See DecisionTreeRepository.
             SUBJECT_GROUPS.put(SUBJECT_GROUP_ID_GAMA_15, //GAMA 15
                     new SubjectGroup("gama_tree.xml", true,
                             new DecisionTree.DiscussQuestion("gama-11", "a-0", "a-1")));
@@ -32,12 +32,15 @@ import com.murrayc.galaxyzoo.app.Log;
 import com.murrayc.galaxyzoo.app.LoginUtils;
 import com.murrayc.galaxyzoo.app.Utils;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.List;
 
+import okhttp3.Cache;
+import okhttp3.CacheControl;
 import okhttp3.Call;
 import okhttp3.FormBody;
 import okhttp3.Interceptor;
@@ -58,11 +61,23 @@ public final class HttpUtils {
     public static final String HTTP_REQUEST_HEADER_PARAM_ACCEPT = "Accept";
     public static final String HTTP_REQUEST_HEADER_PARAM_CONTENT_TYPE = "Content-Type";
     public static final String CONTENT_TYPE_JSON = "application/vnd.api+json; version=1";
+    public static final String HTTP_REQUEST_HEADER_PARAM_CACHE_CONTROL = "Cache-Control";
+    public static final String CACHE_CONTROL_NO_CACHE_NO_STORE = "no-cache, no-store";
 
     private static final OkHttpClient client = new OkHttpClient.Builder()
             .addInterceptor(new UserAgentInterceptor())
             .build();
 
+    //Don't cache the subject images: We download them to our own cache, and don't request them again.
+    private static final CacheControl CACHE_CONTROL_NO_STORE = new CacheControl.Builder()
+            .noCache()
+            .noStore()
+            .build();
+
+    //This shares the connection pool and interceptors with client,
+    //but also has a disk cache. This is guarded by HttpUtils.class.
+    private static OkHttpClient sCachingClient = null;
+
     public static void throwIfNoNetwork(final Context context) {
         final boolean wifiOnly = LoginUtils.getUseWifiOnly(context);
         if(!getNetworkIsConnected(context, wifiOnly)) {
@@ -90,59 +105,39 @@ public final class HttpUtils {
         return networkConnected.connected;
     }
 
+    public static OkHttpClient getHttpClient() {
+        return client;
+    }
+
     /**
-     *
-     * @param context
-     * @param uriFileToCache  A Content URI for a cache file.
-     * @param cacheFileUri
-     * @return
-     * @throws FileCacheException
+     * Get a client that caches responses on disk, respecting the server's Cache-Control headers,
+     * and revalidating the cached responses with If-None-Match (for an ETag) or If-Modified-Since,
+     * so an unchanged response is just a 304 (Not Modified) response.
+     * Use this for the project and workflow metadata, which rarely changes.
      */
-    public static boolean cacheUriToFileSync(final Context context, final String uriFileToCache, final String cacheFileUri) throws FileCacheException {
-        Log.info("cacheUriToFileSync(): uriFileToCache=" + uriFileToCache);
-
-        final Call call = createGetRequestCall(uriFileToCache, false);
-
-        final Response response;
-        try {
-            response = call.execute();
-        } catch (final IOException e) {
-            Log.error("cacheUriToFile(): Exception from request.", e);
-            throw new FileCacheException("Exception from request.", e);
-        }
-
-        if (!response.isSuccessful()) {
-            Log.error("cacheUriToFile(): Request was not succcessful.");
-            return false;
-        }
-
-        try {
-            parseGetFileResponseContent(context, response.body().byteStream(), cacheFileUri);
-        } catch (final IOException e) {
-            Log.error("cacheUriToFile(): parseGetFileResponseContent failed for cache content URI: " + cacheFileUri, e);
-            throw new FileCacheException("Exception while parsing response for cache content URI: " + cacheFileUri, e);
+    public static synchronized OkHttpClient getCachingHttpClient(final Context context) {
+        if (sCachingClient == null) {
+            final File dir = new File(context.getApplicationContext().getCacheDir(), Config.HTTP_CACHE_DIR_NAME);
+            sCachingClient = client.newBuilder()
+                    .cache(new Cache(dir, Config.HTTP_CACHE_MAX_BYTES))
+                    .build();
         }
 
-        return true;
-    }
-
-    public static OkHttpClient getHttpClient() {
-        return client;
+        return sCachingClient;
     }
 
     public static Call createGetRequestCall(final String uri, final boolean cacheResponse) {
-        final Request request = new Request.Builder()
-                    .url(uri)
-                    .build();
+        Request.Builder builder = new Request.Builder()
+                    .url(uri);
 
         // We won't request the same image again if it succeeded once,
         // so don't waste memory or storage caching it.
         // (We are downloading it to our own cache, of course.)
         if (!cacheResponse) {
-            request.cacheControl().noCache();
+            builder = builder.cacheControl(CACHE_CONTROL_NO_STORE);
         }
 
-        return client.newCall(request);
+        return client.newCall(builder.build());
     }
 
     @Nullable
@@ -227,10 +222,12 @@ public final class HttpUtils {
      * @param context
      * @param data
      * @param cacheFileContentUri A Content URI for a cache file.
+     * @return The number of bytes written to the file.
      * @throws IOException
      */
-    public static void parseGetFileResponseContent(final Context context, final InputStream data, final String cacheFileContentUri) throws IOException {
+    public static long parseGetFileResponseContent(final Context context, final InputStream data, final String cacheFileContentUri) throws IOException {
         //Write the content to the file:
+        long result = 0;
         ParcelFileDescriptor pfd = null;
         FileOutputStream fout = null;
         try {
@@ -246,7 +243,7 @@ public final class HttpUtils {
             } else {
 
                 fout = new FileOutputStream(pfd.getFileDescriptor());
-                ByteStreams.copy(data, fout);
+                result = ByteStreams.copy(data, fout);
             }
         } finally {
             if (fout != null) {
@@ -265,6 +262,8 @@ public final class HttpUtils {
                 }
             }
         }
+
+        return result;
     }
 
     /**
@@ -291,12 +290,6 @@ public final class HttpUtils {
         }
     }
 
-    public static class FileCacheException extends Exception {
-        FileCacheException(final String detail, final Exception cause) {
-            super(detail, cause);
-        }
-    }
-
     public static class NameValuePair {
         private final String name;
         private final String value;
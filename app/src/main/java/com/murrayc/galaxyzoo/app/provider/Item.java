@@ -47,6 +47,29 @@ public final class Item {
             AUTHORITY + "/" + ItemsContentProvider.URI_PART_FILE);
     public static final String ITEM_URI_PART = ItemsContentProvider.URI_PART_ITEM;
 
+    /**
+     * Use this with ContentResolver.call() on ITEMS_URI to remove many items at once,
+     * with their images and classifications, in one transaction.
+     * The cached image files are deleted later, in the background.
+     * The arg is the maximum number of items to remove, or null for no limit.
+     * The extras may have EXTRA_SELECTION, EXTRA_SELECTION_ARGS and EXTRA_SORT_ORDER,
+     * with the same meaning as for query(), to choose the items.
+     * The result has CacheStats.RESULT_ITEMS_REMOVED.
+     */
+    public static final String METHOD_REMOVE_ITEMS = "removeItems";
+    public static final String EXTRA_SELECTION = "selection";
+    public static final String EXTRA_SELECTION_ARGS = "selectionArgs";
+    public static final String EXTRA_SORT_ORDER = "sortOrder";
+
+    /**
+     * Query parameters for ITEMS_URI, to get one page of the items at a time,
+     * in _id order, without the cost of skipping the earlier items with an offset.
+     * QUERY_PARAMETER_AFTER_ID is the last _id of the previous page, if any.
+     * QUERY_PARAMETER_LIMIT is the maximum number of items in the page.
+     */
+    public static final String QUERY_PARAMETER_AFTER_ID = "afterId";
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
     public static final class Columns implements BaseColumns {
         //The ID is BaseColumns._ID;
         public static final String DONE = "done"; //Integer boolean (1 or 0)
@@ -65,6 +88,10 @@ public final class Item {
         public static final String LOCATION_INVERTED_DOWNLOADED = "locationInvertedDownloaded"; //Integer boolean (1 or 0)
         public static final String FAVORITE = "favorite"; //Integer boolean (1 or 0)
         public static final String DATETIME_DONE = "dateTimeDone"; //An ISO8601 string ("YYYY-MM-DD HH:MM:SS.SSS").
+        public static final String UPLOAD_ATTEMPTS = "uploadAttempts"; //Integer. The number of failed attempts to upload the classification.
+        public static final String UPLOAD_NEXT_ATTEMPT = "uploadNextAttempt"; //Integer. Milliseconds since the epoch. Don't try to upload again before this time.
+        public static final String DERIVE_ATTEMPTS = "deriveAttempts"; //Integer. The number of failed attempts to create the thumbnail and inverted images.
+        public static final String DERIVE_NEXT_ATTEMPT = "deriveNextAttempt"; //Integer. Milliseconds since the epoch. Don't try to create those images again before this time.
 
     }
 }
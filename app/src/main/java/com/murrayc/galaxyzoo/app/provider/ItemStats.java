@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider;
+
+import android.net.Uri;
+
+/**
+ * The numbers of items in each state, read-only, as a single row.
+ * The database keeps these up to date whenever items are added, changed, or removed,
+ * so this is much cheaper than counting the items.
+ * The bytes used by the cached images are also available here,
+ * so callers that need both can avoid a second query.
+ */
+public final class ItemStats {
+    public static final String AUTHORITY =
+            Item.AUTHORITY;
+
+    /**
+     * The content:// style URI for the item statistics.
+     */
+    public static final Uri CONTENT_URI = Uri.parse("content://" +
+            AUTHORITY + "/" + ItemsContentProvider.URI_PART_ITEM_STATS);
+
+    public static final class Columns {
+        public static final String ITEM_COUNT = "itemCount"; //Integer. All the items.
+        public static final String NOT_DONE_COUNT = "notDoneCount"; //Integer. The items that have not been classified.
+        public static final String UPLOADED_COUNT = "uploadedCount"; //Integer. The items whose classifications have been uploaded.
+        public static final String OUTSTANDING_COUNT = "outstandingCount"; //Integer. The items whose classifications have not yet been uploaded.
+        public static final String BYTES_USED = "bytesUsed"; //Long. The size of the cached images, summed when queried, as in CacheStats.
+    }
+}
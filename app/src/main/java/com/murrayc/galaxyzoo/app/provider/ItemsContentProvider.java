@@ -21,12 +21,16 @@ package com.murrayc.galaxyzoo.app.provider;
 
 import android.content.ClipDescription;
 import android.content.ContentProvider;
-import android.content.ContentResolver;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
@@ -38,20 +42,30 @@ import android.os.ParcelFileDescriptor;
 import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
 import android.test.mock.MockContentResolver;
 import android.text.TextUtils;
 
 import com.murrayc.galaxyzoo.app.Log;
 import com.murrayc.galaxyzoo.app.Utils;
-import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
-import com.murrayc.galaxyzoo.app.syncadapter.SubjectAdder;
+
+import com.google.common.io.ByteStreams;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ItemsContentProvider extends ContentProvider {
 
@@ -60,7 +74,9 @@ public class ItemsContentProvider extends ContentProvider {
     public static final String URI_PART_FILE = "file";
     public static final String URI_PART_CLASSIFICATION_ANSWER = "classification-answer";
     public static final String URI_PART_CLASSIFICATION_CHECKBOX = "classification-checkbox";
-    private static final String URI_PART_CLASSIFICATION = "classification";
+    public static final String URI_PART_CLASSIFICATION = "classification";
+    public static final String URI_PART_CACHE_STATS = "cache-stats";
+    public static final String URI_PART_ITEM_STATS = "item-stats";
 
     /** The standard _data field used by the ContentProvider/ContentResolver for
      * the local URI corresponding to the row (identified by a Content URI) in the table.
@@ -119,6 +135,18 @@ public class ItemsContentProvider extends ContentProvider {
     private static final String CONTENT_TYPE_CLASSIFICATION_CHECKBOX =
             "vnd.android.cursor.item/vnd.android-galaxyzoo.classification-checkbox";
 
+    /**
+     * The MIME type of {@link CacheStats#CONTENT_URI}.
+     */
+    private static final String CONTENT_TYPE_CACHE_STATS =
+            "vnd.android.cursor.item/vnd.android-galaxyzoo.cache-stats";
+
+    /**
+     * The MIME type of {@link ItemStats#CONTENT_URI}.
+     */
+    private static final String CONTENT_TYPE_ITEM_STATS =
+            "vnd.android.cursor.item/vnd.android-galaxyzoo.item-stats";
+
     //TODO: Use an enum?
     private static final int MATCHER_ID_ITEMS = 1;
     private static final int MATCHER_ID_ITEM = 2;
@@ -130,6 +158,8 @@ public class ItemsContentProvider extends ContentProvider {
     private static final int MATCHER_ID_CLASSIFICATION_ANSWER = 8;
     private static final int MATCHER_ID_CLASSIFICATION_CHECKBOXES = 9;
     private static final int MATCHER_ID_CLASSIFICATION_CHECKBOX = 10;
+    private static final int MATCHER_ID_CACHE_STATS = 11;
+    private static final int MATCHER_ID_ITEM_STATS = 12;
     private static final UriMatcher sUriMatcher;
 
     static {
@@ -164,6 +194,12 @@ public class ItemsContentProvider extends ContentProvider {
 
         // A URI for a single classification:
         sUriMatcher.addURI(Item.AUTHORITY, URI_PART_CLASSIFICATION_CHECKBOX + "/#", MATCHER_ID_CLASSIFICATION_CHECKBOX);
+
+        // A URI for the disk usage of the cached files:
+        sUriMatcher.addURI(Item.AUTHORITY, URI_PART_CACHE_STATS, MATCHER_ID_CACHE_STATS);
+
+        // A URI for the single row of item counts:
+        sUriMatcher.addURI(Item.AUTHORITY, URI_PART_ITEM_STATS, MATCHER_ID_ITEM_STATS);
     }
 
     private static final String[] FILE_MIME_TYPES = new String[]{"application/x-glom"};
@@ -173,8 +209,32 @@ public class ItemsContentProvider extends ContentProvider {
      * for /item/ URIs, mapping to the items tables.
      */
     private static final Map<String, String> sItemsProjectionMap;
+    //The same, without the columns that the items view gets from the images table.
+    private static final Map<String, String> sItemsTableProjectionMap;
     private static final Map<String, String> sClassificationAnswersProjectionMap;
     private static final Map<String, String> sClassificationCheckboxesProjectionMap;
+    private static final Map<String, String> sClassificationsProjectionMap;
+    private static final Map<String, String> sItemStatsProjectionMap;
+
+    /**
+     * The items, with their answers, with the answers' selected checkboxes, if any,
+     * so we can get a whole classification in one query.
+     */
+    private static final String TABLES_CLASSIFICATIONS =
+            DatabaseHelper.TABLE_NAME_ITEMS +
+            " LEFT JOIN " + DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS + " ON (" +
+                    DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS + "." + DatabaseHelper.ClassificationAnswersDbColumns.ITEM_ID + " = " +
+                    DatabaseHelper.TABLE_NAME_ITEMS + "." + BaseColumns._ID + ")" +
+            " LEFT JOIN " + DatabaseHelper.TABLE_NAME_CLASSIFICATION_CHECKBOXES + " ON (" +
+                    DatabaseHelper.TABLE_NAME_CLASSIFICATION_CHECKBOXES + "." + DatabaseHelper.ClassificationCheckboxesDbColumns.ITEM_ID + " = " +
+                    DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS + "." + DatabaseHelper.ClassificationAnswersDbColumns.ITEM_ID + " AND " +
+                    DatabaseHelper.TABLE_NAME_CLASSIFICATION_CHECKBOXES + "." + DatabaseHelper.ClassificationCheckboxesDbColumns.SEQUENCE + " = " +
+                    DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS + "." + DatabaseHelper.ClassificationAnswersDbColumns.SEQUENCE + ")";
+
+    private static final String DEFAULT_SORT_ORDER_CLASSIFICATIONS =
+            DatabaseHelper.TABLE_NAME_ITEMS + "." + BaseColumns._ID + " ASC, " +
+            DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS + "." + DatabaseHelper.ClassificationAnswersDbColumns.SEQUENCE + " ASC, " +
+            DatabaseHelper.TABLE_NAME_CLASSIFICATION_CHECKBOXES + "." + DatabaseHelper.ClassificationCheckboxesDbColumns.CHECKBOX_ID + " ASC";
 
     static {
         sItemsProjectionMap = new HashMap<>();
@@ -195,7 +255,33 @@ public class ItemsContentProvider extends ContentProvider {
         sItemsProjectionMap.put(Item.Columns.LOCATION_INVERTED_DOWNLOADED, DatabaseHelper.ItemsDbColumns.LOCATION_INVERTED_DOWNLOADED);
         sItemsProjectionMap.put(Item.Columns.FAVORITE, DatabaseHelper.ItemsDbColumns.FAVORITE);
         sItemsProjectionMap.put(Item.Columns.DATETIME_DONE, DatabaseHelper.ItemsDbColumns.DATETIME_DONE);
-
+        sItemsProjectionMap.put(Item.Columns.UPLOAD_ATTEMPTS, DatabaseHelper.ItemsDbColumns.UPLOAD_ATTEMPTS);
+        sItemsProjectionMap.put(Item.Columns.UPLOAD_NEXT_ATTEMPT, DatabaseHelper.ItemsDbColumns.UPLOAD_NEXT_ATTEMPT);
+        sItemsProjectionMap.put(Item.Columns.DERIVE_ATTEMPTS, DatabaseHelper.ItemsDbColumns.DERIVE_ATTEMPTS);
+        sItemsProjectionMap.put(Item.Columns.DERIVE_NEXT_ATTEMPT, DatabaseHelper.ItemsDbColumns.DERIVE_NEXT_ATTEMPT);
+
+        sItemsTableProjectionMap = new HashMap<>(sItemsProjectionMap);
+        sItemsTableProjectionMap.remove(Item.Columns.LOCATION_STANDARD_URI_REMOTE);
+        sItemsTableProjectionMap.remove(Item.Columns.LOCATION_STANDARD_URI);
+        sItemsTableProjectionMap.remove(Item.Columns.LOCATION_STANDARD_DOWNLOADED);
+        sItemsTableProjectionMap.remove(Item.Columns.LOCATION_THUMBNAIL_URI_REMOTE);
+        sItemsTableProjectionMap.remove(Item.Columns.LOCATION_THUMBNAIL_URI);
+        sItemsTableProjectionMap.remove(Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED);
+        sItemsTableProjectionMap.remove(Item.Columns.LOCATION_INVERTED_URI_REMOTE);
+        sItemsTableProjectionMap.remove(Item.Columns.LOCATION_INVERTED_URI);
+        sItemsTableProjectionMap.remove(Item.Columns.LOCATION_INVERTED_DOWNLOADED);
+
+
+        sItemStatsProjectionMap = new HashMap<>();
+        sItemStatsProjectionMap.put(ItemStats.Columns.ITEM_COUNT, DatabaseHelper.ItemStatsDbColumns.ITEM_COUNT);
+        sItemStatsProjectionMap.put(ItemStats.Columns.NOT_DONE_COUNT, DatabaseHelper.ItemStatsDbColumns.NOT_DONE_COUNT);
+        sItemStatsProjectionMap.put(ItemStats.Columns.UPLOADED_COUNT, DatabaseHelper.ItemStatsDbColumns.UPLOADED_COUNT);
+        sItemStatsProjectionMap.put(ItemStats.Columns.OUTSTANDING_COUNT, DatabaseHelper.ItemStatsDbColumns.OUTSTANDING_COUNT);
+        //The images' sizes are not counted by the triggers, so we sum them here,
+        //letting the SyncAdapter get everything it needs in one query:
+        sItemStatsProjectionMap.put(ItemStats.Columns.BYTES_USED,
+                "(SELECT CAST(TOTAL(" + DatabaseHelper.ImagesDbColumns.BYTES + ") AS INTEGER) FROM " +
+                        DatabaseHelper.TABLE_NAME_IMAGES + ") AS " + ItemStats.Columns.BYTES_USED);
 
         sClassificationAnswersProjectionMap = new HashMap<>();
         sClassificationAnswersProjectionMap.put(BaseColumns._ID, BaseColumns._ID);
@@ -211,28 +297,143 @@ public class ItemsContentProvider extends ContentProvider {
         sClassificationCheckboxesProjectionMap.put(ClassificationCheckbox.Columns.QUESTION_ID, DatabaseHelper.ClassificationCheckboxesDbColumns.QUESTION_ID);
         sClassificationCheckboxesProjectionMap.put(ClassificationCheckbox.Columns.CHECKBOX_ID, DatabaseHelper.ClassificationCheckboxesDbColumns.CHECKBOX_ID);
 
+        //These are qualified by the table names, because the columns names are ambiguous in the join:
+        sClassificationsProjectionMap = new HashMap<>();
+        putQualifiedColumn(sClassificationsProjectionMap, Classification.Columns.ITEM_ID,
+                DatabaseHelper.TABLE_NAME_ITEMS, BaseColumns._ID);
+        putQualifiedColumn(sClassificationsProjectionMap, Classification.Columns.FAVORITE,
+                DatabaseHelper.TABLE_NAME_ITEMS, DatabaseHelper.ItemsDbColumns.FAVORITE);
+        putQualifiedColumn(sClassificationsProjectionMap, Classification.Columns.SEQUENCE,
+                DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS, DatabaseHelper.ClassificationAnswersDbColumns.SEQUENCE);
+        putQualifiedColumn(sClassificationsProjectionMap, Classification.Columns.QUESTION_ID,
+                DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS, DatabaseHelper.ClassificationAnswersDbColumns.QUESTION_ID);
+        putQualifiedColumn(sClassificationsProjectionMap, Classification.Columns.ANSWER_ID,
+                DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS, DatabaseHelper.ClassificationAnswersDbColumns.ANSWER_ID);
+        putQualifiedColumn(sClassificationsProjectionMap, Classification.Columns.CHECKBOX_ID,
+                DatabaseHelper.TABLE_NAME_CLASSIFICATION_CHECKBOXES, DatabaseHelper.ClassificationCheckboxesDbColumns.CHECKBOX_ID);
+
     }
 
 
     private DatabaseHelper mOpenDbHelper = null;
 
-    //These are only used in the rare case that we need to explicitly get a "next" item,
-    //and block on the result, if the SyncAdapter hasn't done that for us.
-    private ZooniverseClient mZooniverseClient = null;
-    private SubjectAdder mSubjectAdder = null;
-    private static final String[] PROJECTION_REMOVE_ITEM = {
-            DatabaseHelper.ItemsDbColumns.LOCATION_STANDARD_URI,
-            DatabaseHelper.ItemsDbColumns.LOCATION_THUMBNAIL_URI,
-            DatabaseHelper.ItemsDbColumns.LOCATION_INVERTED_URI
+    //Sends the change notifications, combining bursts of changes into one notification.
+    private NotificationCoalescer mNotificationCoalescer = null;
+
+    //Whether checkCacheEpoch() has run since the provider started.
+    //After that, the SyncAdapter checks again during each sync.
+    private final AtomicBoolean mCacheEpochChecked = new AtomicBoolean(false);
+
+    //Deletes the cached files of removed items, one at a time, in the background,
+    //and records when the cached files were last read.
+    private final Executor mFileJanitor = Executors.newSingleThreadExecutor();
+
+    //When we last recorded each image's LAST_ACCESSED, by image ID,
+    //so we record it at most once per Config.IMAGE_LAST_ACCESSED_UPDATE_INTERVAL_MS.
+    //Forgetting an image just means that we record it again next time.
+    private final LruCache<Long, Long> mLastAccessedRecorded = new LruCache<>(1000);
+
+    //This is set, for the calling thread, while applyBatch() or bulkInsert() is running,
+    //so we can send the change notifications, and request a sync, just once at the end.
+    private final ThreadLocal<BatchState> mBatchState = new ThreadLocal<>();
+
+    private static final String[] PROJECTION_ID = {BaseColumns._ID};
+    private static final String[] PROJECTION_ID_FILE_DATA = {
+            BaseColumns._ID,
+            DatabaseHelper.ImagesDbColumns.FILE_DATA
+    };
+    private static final String[] PROJECTION_IMAGES_FILE_DATA = {
+            DatabaseHelper.ImagesDbColumns.TYPE,
+            DatabaseHelper.ImagesDbColumns.FILE_DATA
+    };
+
+    /**
+     * The columns of the items view that come from each image's row in the images table.
+     */
+    private static final class ItemImageColumns {
+        final int type;
+        final String alias; //The images table's alias in the items view.
+        final String uriRemote;
+        final String uri;
+        final String downloaded;
+
+        ItemImageColumns(final int type, final String alias, final String uriRemote, final String uri, final String downloaded) {
+            this.type = type;
+            this.alias = alias;
+            this.uriRemote = uriRemote;
+            this.uri = uri;
+            this.downloaded = downloaded;
+        }
+    }
+
+    private static final ItemImageColumns[] ITEM_IMAGE_COLUMNS = {
+            new ItemImageColumns(DatabaseHelper.IMAGE_TYPE_STANDARD, "standard",
+                    DatabaseHelper.ItemsDbColumns.LOCATION_STANDARD_URI_REMOTE,
+                    DatabaseHelper.ItemsDbColumns.LOCATION_STANDARD_URI,
+                    DatabaseHelper.ItemsDbColumns.LOCATION_STANDARD_DOWNLOADED),
+            new ItemImageColumns(DatabaseHelper.IMAGE_TYPE_THUMBNAIL, "thumbnail",
+                    DatabaseHelper.ItemsDbColumns.LOCATION_THUMBNAIL_URI_REMOTE,
+                    DatabaseHelper.ItemsDbColumns.LOCATION_THUMBNAIL_URI,
+                    DatabaseHelper.ItemsDbColumns.LOCATION_THUMBNAIL_DOWNLOADED),
+            new ItemImageColumns(DatabaseHelper.IMAGE_TYPE_INVERTED, "inverted",
+                    DatabaseHelper.ItemsDbColumns.LOCATION_INVERTED_URI_REMOTE,
+                    DatabaseHelper.ItemsDbColumns.LOCATION_INVERTED_URI,
+                    DatabaseHelper.ItemsDbColumns.LOCATION_INVERTED_DOWNLOADED)
     };
-    private static final String[] PROJECTION_FILES_FILE_DATA = {DatabaseHelper.FilesDbColumns.FILE_DATA};
 
+    private static final String WHERE_CLAUSE_IMAGES_FOR_ITEM =
+            DatabaseHelper.ImagesDbColumns.ITEM_ID + " = ?";
+    private static final String WHERE_CLAUSE_IMAGE_FOR_ITEM =
+            DatabaseHelper.ImagesDbColumns.ITEM_ID + " = ? AND " +
+            DatabaseHelper.ImagesDbColumns.TYPE + " = ?";
+
+    //The uploaded items, with the total size of their cached files, least-recently used first:
+    private static final String QUERY_TRIM_CACHE = "SELECT " +
+            DatabaseHelper.TABLE_NAME_ITEMS + "." + BaseColumns._ID + ", " +
+            "TOTAL(" + DatabaseHelper.ImagesDbColumns.BYTES + ") AS itemBytes, " +
+            "MAX(" + DatabaseHelper.ImagesDbColumns.LAST_ACCESSED + ") AS itemLastAccessed" +
+            " FROM " + DatabaseHelper.TABLE_NAME_ITEMS +
+            " JOIN " + DatabaseHelper.TABLE_NAME_IMAGES + " ON (" +
+            DatabaseHelper.TABLE_NAME_IMAGES + "." + DatabaseHelper.ImagesDbColumns.ITEM_ID + " = " +
+            DatabaseHelper.TABLE_NAME_ITEMS + "." + BaseColumns._ID + ")" +
+            " WHERE " + DatabaseHelper.ItemsDbColumns.UPLOADED + " == 1" +
+            " GROUP BY " + DatabaseHelper.TABLE_NAME_ITEMS + "." + BaseColumns._ID +
+            " ORDER BY itemLastAccessed ASC";
+
+    private static final String QUERY_CACHE_STATS = "SELECT " +
+            "COUNT(*) AS " + CacheStats.Columns.FILE_COUNT + ", " +
+            "CAST(TOTAL(" + DatabaseHelper.ImagesDbColumns.BYTES + ") AS INTEGER) AS " + CacheStats.Columns.BYTES_USED +
+            " FROM " + DatabaseHelper.TABLE_NAME_IMAGES;
+
+    //When the cache has been wiped, forget all items except those with classifications still to upload.
+    private static final String WHERE_CLAUSE_NOT_WAITING_FOR_UPLOAD = "(" +
+            DatabaseHelper.ItemsDbColumns.DONE + " != 1" +
+            ") OR (" +
+            DatabaseHelper.ItemsDbColumns.UPLOADED + " == 1" +
+            ")";
+
+    //The file whose absence tells us that the cache directory has been wiped,
+    //by the system or by the user.
+    private static final String CACHE_EPOCH_SENTINEL_FILENAME = ".cache-epoch";
+
+    //Where we store the number of the current cache epoch, incremented after each wipe.
+    private static final String PREFS_NAME_CACHE_EPOCH = "cache_epoch";
+    private static final String PREF_KEY_CACHE_EPOCH = "epoch";
+
+    //Only items whose classifications have been uploaded may be removed to save space.
+    //Items that are not yet classified would just be downloaded again.
+    private static final String WHERE_CLAUSE_UPLOADED = getWhereClauseUploaded(null);
+
+
+    //The items that have not yet been classified.
+    //This is part of WHERE_CLAUSE_NOT_DONE, so the "next" query can use the partial index.
+    private static final String WHERE_CLAUSE_NOT_CLASSIFIED = getWhereClauseNotClassified(null);
 
     /** A where clause to find all the subjects that have not yet been classified,
      * and which are ready to be classified.
      */
     private static final String WHERE_CLAUSE_NOT_DONE = "(" +
-            DatabaseHelper.ItemsDbColumns.DONE + " != 1" +
+            WHERE_CLAUSE_NOT_CLASSIFIED +
             ") AND (" +
             DatabaseHelper.ItemsDbColumns.LOCATION_STANDARD_DOWNLOADED + " == 1" +
             ") AND (" +
@@ -241,9 +442,43 @@ public class ItemsContentProvider extends ContentProvider {
             DatabaseHelper.ItemsDbColumns.LOCATION_INVERTED_DOWNLOADED + " == 1" +
             ")";
 
+    //These are the where clauses used by the SyncAdapter,
+    //so our partial indexes can use them.
+    //SQLite only uses a partial index if the query's where clause contains the index's where clause.
+    private static final String WHERE_CLAUSE_OUTSTANDING = getWhereClauseOutstanding(null);
+
     public ItemsContentProvider() {
     }
 
+    //These build the where clauses above.
+    //The item_stats triggers use them with a row of "NEW" or "OLD" to qualify the column names.
+
+    private static String getWhereClauseUploaded(@Nullable final String row) {
+        return qualifyColumn(row, DatabaseHelper.ItemsDbColumns.UPLOADED) + " == 1";
+    }
+
+    private static String getWhereClauseNotClassified(@Nullable final String row) {
+        return qualifyColumn(row, DatabaseHelper.ItemsDbColumns.DONE) + " != 1";
+    }
+
+    private static String getWhereClauseOutstanding(@Nullable final String row) {
+        return "(" + qualifyColumn(row, DatabaseHelper.ItemsDbColumns.DONE) + " == 1) AND " +
+                "(" + qualifyColumn(row, DatabaseHelper.ItemsDbColumns.UPLOADED) + " != 1)";
+    }
+
+    private static String qualifyColumn(@Nullable final String row, final String columnName) {
+        if (row == null) {
+            return columnName;
+        }
+
+        return row + "." + columnName;
+    }
+
+    private static void putQualifiedColumn(final Map<String, String> projectionMap, final String columnName,
+                                           final String tableName, final String dbColumnName) {
+        projectionMap.put(columnName, tableName + "." + dbColumnName + " AS " + columnName);
+    }
+
     private static ContentValues getMappedContentValues(final ContentValues values, final Map<String, String> projectionMap) {
         final ContentValues result = new ContentValues();
 
@@ -290,18 +525,12 @@ public class ItemsContentProvider extends ContentProvider {
         switch (match) {
             //TODO: Do not support this because it would delete everything in one go?
             case MATCHER_ID_ITEMS:
-                affected = getDb().delete(DatabaseHelper.TABLE_NAME_ITEMS,
-                        (!TextUtils.isEmpty(selection) ?
-                                " AND (" + selection + ')' : ""),
-                        selectionArgs
-                );
-                //TODO: Delete all associated files too.
+                affected = removeItems(selection, selectionArgs, null, null);
                 break;
             case MATCHER_ID_ITEM: {
-                //TODO: Use selection.
                 final UriParts uriParts = parseContentUri(uri);
-                removeItem(uriParts.itemId);
-                affected = 1; //TODO: Check the removeItem() result.
+                affected = removeItems(prependIdToSelection(selection),
+                        prependToArray(selectionArgs, uriParts.itemId), null, null);
                 break;
             }
 
@@ -346,10 +575,119 @@ public class ItemsContentProvider extends ContentProvider {
                         uri);
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return affected;
     }
 
+    /**
+     * Apply all the operations in one database transaction,
+     * so they succeed or fail together, with only one commit,
+     * and with only one change notification at the end.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull final ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = getDb();
+        final BatchState batchState = new BatchState();
+        mBatchState.set(batchState);
+
+        final ContentProviderResult[] results;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchState.remove();
+        }
+
+        onBatchFinished(batchState);
+        return results;
+    }
+
+    /**
+     * Insert all the rows in one database transaction,
+     * with only one change notification at the end.
+     * If any row cannot be inserted then none are inserted, and this returns 0.
+     */
+    @Override
+    public int bulkInsert(@NonNull final Uri uri, @NonNull final ContentValues[] values) {
+        final SQLiteDatabase db = getDb();
+        final BatchState batchState = new BatchState();
+        mBatchState.set(batchState);
+
+        int inserted = 0;
+        db.beginTransaction();
+        try {
+            for (final ContentValues value : values) {
+                //A failed insert() has already rolled back its own (nested) transaction,
+                //which means that our outer transaction will be rolled back too,
+                //so we must not carry on as if the other rows were inserted.
+                if (insert(uri, value) == null) {
+                    Log.error("bulkInsert(): Abandoning the whole batch because one insert failed.");
+                    inserted = 0;
+                    break;
+                }
+
+                inserted++;
+            }
+
+            if (inserted == values.length) {
+                db.setTransactionSuccessful();
+            }
+        } finally {
+            db.endTransaction();
+            mBatchState.remove();
+        }
+
+        //Don't notify about rows that were never committed:
+        if (inserted > 0) {
+            onBatchFinished(batchState);
+        }
+
+        return inserted;
+    }
+
+    private void onBatchFinished(final BatchState batchState) {
+        //The coalescer notifies once for the whole batch,
+        //about the nearest URI that is a parent of all the changed URIs:
+        for (final Uri uri : batchState.changedUris) {
+            notifyChangeNow(uri);
+        }
+
+        if (batchState.syncReasons != 0) {
+            requestSyncNow(batchState.syncReasons, false);
+        }
+    }
+
+    /**
+     * Notify observers about the change,
+     * or do that at the end of the batch, if we are in applyBatch() or bulkInsert().
+     * Use the most specific URI, such as the item's URI, so observers of other items are not notified.
+     */
+    private void notifyChange(final Uri uri) {
+        final BatchState batchState = mBatchState.get();
+        if (batchState != null) {
+            batchState.changedUris.add(uri);
+            return;
+        }
+
+        notifyChangeNow(uri);
+    }
+
+    /**
+     * Notify observers about the change soon,
+     * along with any other changes in the meantime.
+     */
+    private void notifyChangeNow(final Uri uri) {
+        if (mNotificationCoalescer == null) {
+            return;
+        }
+
+        mNotificationCoalescer.add(uri);
+    }
+
     @Override
     public String getType(@NonNull final Uri uri) {
         switch (sUriMatcher.match(uri)) {
@@ -358,6 +696,10 @@ public class ItemsContentProvider extends ContentProvider {
             case MATCHER_ID_ITEM:
             case MATCHER_ID_ITEM_NEXT:
                 return CONTENT_TYPE_ITEM;
+            case MATCHER_ID_CLASSIFICATIONS:
+                return CONTENT_TYPE_CLASSIFICATIONS;
+            case MATCHER_ID_CLASSIFICATION:
+                return CONTENT_TYPE_CLASSIFICATION;
             case MATCHER_ID_CLASSIFICATION_ANSWERS:
                 return CONTENT_TYPE_CLASSIFICATION_ANSWERS;
             case MATCHER_ID_CLASSIFICATION_ANSWER:
@@ -366,6 +708,10 @@ public class ItemsContentProvider extends ContentProvider {
                 return CONTENT_TYPE_CLASSIFICATION_CHECKBOXES;
             case MATCHER_ID_CLASSIFICATION_CHECKBOX:
                 return CONTENT_TYPE_CLASSIFICATION_CHECKBOX;
+            case MATCHER_ID_CACHE_STATS:
+                return CONTENT_TYPE_CACHE_STATS;
+            case MATCHER_ID_ITEM_STATS:
+                return CONTENT_TYPE_ITEM_STATS;
             default:
                 throw new IllegalArgumentException("Unknown item type: " +
                         uri);
@@ -398,7 +744,93 @@ public class ItemsContentProvider extends ContentProvider {
     @Override
     public ParcelFileDescriptor openFile(@NonNull final Uri uri, @NonNull final String mode)
             throws FileNotFoundException {
-        return super.openFileHelper(uri, mode);
+        final ParcelFileDescriptor result = super.openFileHelper(uri, mode);
+
+        //Remember when the file was last read, so we can remove the least-recently used items first:
+        if (TextUtils.equals(mode, "r") && sUriMatcher.match(uri) == MATCHER_ID_FILE) {
+            recordLastAccessed(ContentUris.parseId(uri));
+        }
+
+        return result;
+    }
+
+    /**
+     * Record when the image was last read, in the background,
+     * unless we have already recorded it recently.
+     * The ListFragment reads each visible thumbnail while scrolling,
+     * so we don't want to write to the database every time, or on the binder thread.
+     */
+    private void recordLastAccessed(final long imageId) {
+        final long now = System.currentTimeMillis();
+        final Long recorded = mLastAccessedRecorded.get(imageId);
+        if (recorded != null && (now - recorded) < Config.IMAGE_LAST_ACCESSED_UPDATE_INTERVAL_MS) {
+            return;
+        }
+
+        mLastAccessedRecorded.put(imageId, now);
+
+        mFileJanitor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ContentValues values = new ContentValues();
+                values.put(DatabaseHelper.ImagesDbColumns.LAST_ACCESSED, now);
+                getDb().update(DatabaseHelper.TABLE_NAME_IMAGES, values,
+                        BaseColumns._ID + " = ?", new String[]{Long.toString(imageId)});
+            }
+        });
+    }
+
+    @Override
+    public Bundle call(@NonNull final String method, final String arg, final Bundle extras) {
+        if (TextUtils.equals(method, CacheStats.METHOD_TRIM_CACHE)) {
+            final long budget;
+            try {
+                budget = Long.parseLong(arg);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("trimCache: Invalid budget: " + arg, e);
+            }
+
+            final int removed = trimCache(budget);
+
+            final Bundle result = getCacheStats();
+            result.putInt(CacheStats.RESULT_ITEMS_REMOVED, removed);
+            return result;
+        } else if (TextUtils.equals(method, Item.METHOD_REMOVE_ITEMS)) {
+            if (!TextUtils.isEmpty(arg)) {
+                try {
+                    Integer.parseInt(arg);
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("removeItems: Invalid limit: " + arg, e);
+                }
+            }
+
+            String selection = null;
+            String[] selectionArgs = null;
+            String sortOrder = null;
+            if (extras != null) {
+                selection = extras.getString(Item.EXTRA_SELECTION);
+                selectionArgs = extras.getStringArray(Item.EXTRA_SELECTION_ARGS);
+                sortOrder = extras.getString(Item.EXTRA_SORT_ORDER);
+            }
+
+            final int removed = removeItems(selection, selectionArgs, sortOrder, arg);
+            if (removed > 0) {
+                notifyChange(Item.ITEMS_URI);
+            }
+
+            final Bundle result = new Bundle();
+            result.putInt(CacheStats.RESULT_ITEMS_REMOVED, removed);
+            return result;
+        } else if (TextUtils.equals(method, CacheStats.METHOD_CHECK_CACHE_EPOCH)) {
+            mCacheEpochChecked.set(true);
+            final int removed = checkCacheEpoch();
+
+            final Bundle result = new Bundle();
+            result.putInt(CacheStats.RESULT_ITEMS_REMOVED, removed);
+            return result;
+        }
+
+        return super.call(method, arg, extras);
     }
 
     //TODO: Is this actually used by anything?
@@ -422,32 +854,51 @@ public class ItemsContentProvider extends ContentProvider {
                     throw new IllegalArgumentException("Refusing to insert without a SubjectID: " + uri);
                 }
 
-                // Get (our) local content URIs for the local caches of any (or any future) remote URIs for the images:
-                // Notice that we allow the client to provide a remote URI for each but we then change
-                // it to our local URI of our local cache of that remote file.
-                // Even if no URI is provided by the client, we still create the local URI and put
-                // it in the table row for later use.
-                final ContentValues valuesComplete = new ContentValues(values);
+                //Forget any items whose files were wiped, before creating the new files,
+                //but only once after the provider starts. The SyncAdapter checks again during each sync.
+                if (mCacheEpochChecked.compareAndSet(false, true)) {
+                    checkCacheEpoch();
+                }
 
-                //This doesn't actually get any data from the locations.
-                boolean fileUrisCreated = false;
+                // Create the images rows, with local files for the local caches of any (or any future) remote URIs for the images:
+                // Notice that we allow the client to provide a remote URI for each, and the
+                // items view then provides our local content URI for our local cache of that remote file.
+                // Even if no URI is provided by the client, we still create the local file
+                // for later use.
+                // The item and its images are added together, or not at all.
+                final SQLiteDatabase db = getDb();
+                long itemId = -1;
+                db.beginTransaction();
                 try {
-                    fileUrisCreated = createFileUrisForImages(valuesComplete);
-                } catch (final IOException e) {
-                    Log.error("insert(): createFileUrisForImages() failed", e);
+                    itemId = db.insertOrThrow(DatabaseHelper.TABLE_NAME_ITEMS,
+                            DatabaseHelper.ItemsDbColumns._ID,
+                            getMappedContentValues(values, sItemsTableProjectionMap));
+
+                    //This doesn't actually get any data from the locations.
+                    if (insertImages(itemId, getMappedContentValues(values, sItemsProjectionMap))) {
+                        db.setTransactionSuccessful();
+                    } else {
+                        itemId = -1;
+                    }
+                } catch (final SQLException|IOException e) {
+                    Log.error("insert(): Could not insert the item and its images.", e);
+                    itemId = -1;
+                } finally {
+                    db.endTransaction();
                 }
 
-                if (!fileUrisCreated) {
+                if (itemId < 0) {
                     //Abandon the item.
-                    //We cannot add an item without its file URIs.
+                    //We cannot add an item without its files.
                     return null;
                 }
 
-                uriInserted = insertMappedValues(DatabaseHelper.TABLE_NAME_ITEMS, valuesComplete,
-                        sItemsProjectionMap, Item.ITEMS_URI);
+                uriInserted = ContentUris.withAppendedId(Item.ITEMS_URI, itemId);
+                notifyChange(uriInserted);
 
                 //The caller (SyncAdapter) will do this: cacheUrisToFiles(subjectId, listFiles, true /* async */);
-                requestSync();
+                //but the new images might take the cache over its limit:
+                requestSync(SyncScheduler.REASON_PRUNE);
 
                 break;
             }
@@ -496,7 +947,7 @@ public class ItemsContentProvider extends ContentProvider {
                 final Uri itemUri =
                         ContentUris.withAppendedId(
                                 uriPrefix, rowId);
-                getContext().getContentResolver().notifyChange(itemUri, null);
+                notifyChange(itemUri);
                 return itemUri; //The URI of the newly-added Item.
             } else {
                 throw new IllegalStateException("could not insert " +
@@ -510,39 +961,6 @@ public class ItemsContentProvider extends ContentProvider {
         return null;
     }
 
-    /** Get a the content URI of a new file, whose data will actually be on the local system.
-     */
-    private Uri createFileUri() throws IOException {
-        //Log.info("createFileUri(): subject id=" + subjectId + ", imageType=" + imageType);
-
-        final SQLiteDatabase db = getDb();
-        final long fileId = db.insertOrThrow(DatabaseHelper.TABLE_NAME_FILES,
-                DatabaseHelper.FilesDbColumns.FILE_DATA, null);
-
-        //Build a value for the _data column, using the autogenerated file _id:
-        final String realFileUri = createCacheFile(Long.toString(fileId)); //TODO: Is toString() affected by the locale?)
-        if (TextUtils.isEmpty(realFileUri)) {
-            Log.error("createFileUri(): createCacheFile() returned null.");
-            return null;
-        }
-
-        //Put the value for the _data column in the files table:
-        //This will be used implicitly by openOutputStream() and openInputStream():
-        final ContentValues valuesUpdate = new ContentValues();
-        valuesUpdate.put(DatabaseHelper.FilesDbColumns.FILE_DATA, realFileUri);
-        db.update(DatabaseHelper.TABLE_NAME_FILES, valuesUpdate,
-                BaseColumns._ID + " = ?", new String[]{Double.toString(fileId)});
-
-        //Build the content: URI for the file to put in the Item's table:
-        Uri fileUri = null;
-        if (fileId >= 0) {
-            fileUri = ContentUris.withAppendedId(Item.FILE_URI, fileId);
-            //TODO? getContext().getContentResolver().notifyChange(fileId, null);
-        }
-
-        return fileUri;
-    }
-
     /**
      * Actually create the file on disk in the cache directory,
      * and return the absolute path of the new file.
@@ -607,14 +1025,13 @@ public class ItemsContentProvider extends ContentProvider {
         final Context context = getContext();
 
         mOpenDbHelper = new DatabaseHelper(context);
+        mNotificationCoalescer = new NotificationCoalescer(context.getContentResolver());
 
         //This is useful to wipe the database when testing.
         //Note that the cached image files in files/ will not be deleted
         //so you will see "the file already exists" errors in the log,
         //but we will then just reuse the files.
         //mOpenDbHelper.onUpgrade(mOpenDbHelper.getWritableDatabase(), 0, 1);
-        mZooniverseClient = new ZooniverseClient(context, Config.SERVER);
-        mSubjectAdder = new SubjectAdder(context);
 
         //This isn't necessary when using the private getExternalCacheDir():
         //Make sure that the .nomedia file exists,
@@ -624,6 +1041,14 @@ public class ItemsContentProvider extends ContentProvider {
         return true;
     }
 
+    /**
+     * Close the database, so tests can then open the database file themselves.
+     */
+    @Override
+    public void shutdown() {
+        mOpenDbHelper.close();
+    }
+
 
     @Override
     public Cursor query(@NonNull final Uri uri, final String[] projection, final String selection,
@@ -644,13 +1069,25 @@ public class ItemsContentProvider extends ContentProvider {
         Cursor c;
         switch (match) {
             case MATCHER_ID_ITEMS: {
-                // query the database for all items:
+                // query the database for all items,
+                // or just one page of them:
+                final String afterId = getNumericQueryParameter(uri, Item.QUERY_PARAMETER_AFTER_ID);
+                final String limit = getNumericQueryParameter(uri, Item.QUERY_PARAMETER_LIMIT);
+
                 final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-                builder.setTables(DatabaseHelper.TABLE_NAME_ITEMS);
+                builder.setTables(DatabaseHelper.VIEW_NAME_ITEMS);
                 builder.setProjectionMap(sItemsProjectionMap);
-                c = builder.query(getDb(), projection,
-                        selection, selectionArgs,
-                        null, null, orderBy);
+                if (afterId == null) {
+                    c = builder.query(getDb(), projection,
+                            selection, selectionArgs,
+                            null, null, orderBy, limit);
+                } else {
+                    //Continue after the previous page, using the primary key,
+                    //so SQLite doesn't have to step over the earlier items:
+                    c = builder.query(getDb(), projection,
+                            prependAfterIdToSelection(selection), prependToArray(selectionArgs, afterId),
+                            null, null, orderBy, limit);
+                }
 
                 c.setNotificationUri(getContext().getContentResolver(),
                         Item.ITEMS_URI);
@@ -668,87 +1105,48 @@ public class ItemsContentProvider extends ContentProvider {
                 //This lets us use the ? syntax to avoid SQL injection
 
                 final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-                builder.setTables(DatabaseHelper.TABLE_NAME_ITEMS);
+                builder.setTables(DatabaseHelper.VIEW_NAME_ITEMS);
                 builder.setProjectionMap(sItemsProjectionMap);
                 builder.appendWhere(BaseColumns._ID + " = ?"); //We use ? to avoid SQL Injection.
                 c = builder.query(getDb(), projection,
                         selection, prependToArray(selectionArgs, uriParts.itemId),
                         null, null, orderBy);
+
+                //Changes to all the items, such as removals, are notified via the parent Item.ITEMS_URI,
+                //so this is notified about those too.
                 c.setNotificationUri(getContext().getContentResolver(),
-                        Item.ITEMS_URI); //TODO: More precise?
+                        uri);
                 break;
             }
 
             case MATCHER_ID_ITEM_NEXT:
+                //This only returns an item whose images have all been downloaded already,
+                //so it never waits for the network.
+                //If there is no such item yet, this returns an empty cursor immediately,
+                //and the caller will be notified via the cursor when an item is ready,
+                //after the SyncAdapter has downloaded more subjects and their images.
                 c = queryItemNext(projection, selection, selectionArgs, orderBy);
 
                 if (c == null) {
                     Log.error("ItemsContentProvider.query(): c is null.");
                 } else {
-                    final int count = c.getCount();
-                    if (count < 1) {
-                        //Immediately get some more from the REST server and then try again.
-                        //Get one synchronously, for now.
-                        //This is a (small) duplicate of what SyncProvider does.
-                        //TODO: Find a way to ask the SyncProvider to do exactly this and no more,
-                        //and block until it has finished?
-                        // Try this more than once, in case we are using multiple groups
-                        // and some of the groups are no longer available from the server.
-                        // This doesn't guarantee that we will try all groups, but it makes
-                        // it much more likely that we will hit one that works.
-                        boolean found = false;
-                        for(int i = 0; i < 3; i++) {
-                            List<ZooniverseClient.Subject> subjects = null;
-                            try {
-                                final String groupId = mZooniverseClient.getGroupIdForNextQuery();
-                                subjects = mZooniverseClient.requestMoreItemsSync(groupId, 1);
-                            } catch (final HttpUtils.NoNetworkException e) {
-                                //Return the empty cursor,
-                                //and let the caller guess at the cause.
-                                //If we let the exception be thrown by this query() method then
-                                //it will causes an app crash in AsyncTask.done(), as used by CursorLoader.
-                                //TODO: Find a better way to respond to errors when using CursorLoader?
-                                Log.error("ItemsContentProvider.query(): next: requestMoreItemsSync threw NoNetworkException.");
-                            } catch (final ZooniverseClient.RequestMoreItemsException e) {
-                                //Return the empty cursor,
-                                //and let the caller guess at the cause.
-                                //If we let the exception be thrown by this query() method then
-                                //it will causes an app crash in AsyncTask.done(), as used by CursorLoader.
-                                //TODO: Find a better way to respond to errors when using CursorLoader?
-                                Log.error("ItemsContentProvider.query(): next: requestMoreItemsSync threw RequestMoreItemsException.");
-                            }
-
-                            if ((subjects == null) || (subjects.isEmpty())) {
-                                Log.error("ItemsContentProvider.query(): next: requestMoreItemsSync returned no items.");
-                            } else {
-                                found = true;
-                                if(!mSubjectAdder.addSubjects(subjects, false /* not async - we need it immediately. */)) {
-                                    found = false; //Something went wrong when getting the first item.
-                                }
-                                break;
-                            }
-                        }
-
-                        if (!found) {
-                            //Return the empty cursor,
-                            //and let the caller guess at the cause.
-                            Log.error("ItemsContentProvider.query(): next: requestMoreItemsSync returned no items even after multiple attempts");
-                            return c;
-                        }
+                    //Notify about changes to any item,
+                    //because we don't know yet which item will become the next one.
+                    c.setNotificationUri(getContext().getContentResolver(),
+                            Item.ITEMS_URI);
 
-                        //Close the cursor and try again, now that we expect to succeed:
-                        c.close();
-                        c = queryItemNext(projection, selection, selectionArgs, orderBy);
+                    if (c.getCount() < 1) {
+                        //Ask for the new items as soon as possible,
+                        //because the user is waiting for them:
+                        requestSyncNow(SyncScheduler.REASON_NEED_SUBJECTS | SyncScheduler.REASON_DOWNLOAD_IMAGES,
+                                true /* expedited */);
+                        break;
                     }
-
-
-                    c.setNotificationUri(getContext().getContentResolver(),
-                            Item.ITEMS_URI); //TODO: More precise?
                 }
 
                 //Make sure we have enough soon enough
                 //by getting the rest asynchronously:
-                requestSync();
+                requestSync(SyncScheduler.REASON_NEED_SUBJECTS);
 
                 break;
 
@@ -759,14 +1157,69 @@ public class ItemsContentProvider extends ContentProvider {
 
                 //Prepend our ID=? argument to the selection arguments.
                 //This lets us use the ? syntax to avoid SQL injection
-                c = getDb().query(DatabaseHelper.TABLE_NAME_FILES, projection,
+                c = getDb().query(DatabaseHelper.TABLE_NAME_IMAGES, projection,
                         prependIdToSelection(selection),
                         prependToArray(selectionArgs, fileId), null, null, orderBy
                 );
 
                 c.setNotificationUri(getContext().getContentResolver(),
-                        Item.FILE_URI); //TODO: More precise?
+                        uri);
+                break;
+
+            case MATCHER_ID_CACHE_STATS:
+                c = getDb().rawQuery(QUERY_CACHE_STATS, null);
+
+                //Items are added and removed along with their files:
+                c.setNotificationUri(getContext().getContentResolver(),
+                        Item.ITEMS_URI);
+                break;
+
+            case MATCHER_ID_ITEM_STATS: {
+                //The triggers keep this single row up to date,
+                //so we don't need to count the items:
+                final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+                builder.setTables(DatabaseHelper.TABLE_NAME_ITEM_STATS);
+                builder.setProjectionMap(sItemStatsProjectionMap);
+                c = builder.query(getDb(), projection,
+                        selection, selectionArgs,
+                        null, null, null);
+
+                //The counts change whenever the items change:
+                c.setNotificationUri(getContext().getContentResolver(),
+                        Item.ITEMS_URI);
+                break;
+            }
+
+            case MATCHER_ID_CLASSIFICATIONS: {
+                // query the database for the whole classifications of all items:
+                final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+                builder.setTables(TABLES_CLASSIFICATIONS);
+                builder.setProjectionMap(sClassificationsProjectionMap);
+                c = builder.query(getDb(), projection,
+                        selection, selectionArgs,
+                        null, null, getClassificationsOrderBy(sortOrder));
+
+                c.setNotificationUri(getContext().getContentResolver(),
+                        Classification.CONTENT_URI);
+                break;
+            }
+            case MATCHER_ID_CLASSIFICATION: {
+                // query the database for the whole classification of a specific item,
+                // with its answers and checkboxes, in one query:
+                final UriParts uriParts = parseContentUri(uri);
+
+                final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+                builder.setTables(TABLES_CLASSIFICATIONS);
+                builder.setProjectionMap(sClassificationsProjectionMap);
+                builder.appendWhere(DatabaseHelper.TABLE_NAME_ITEMS + "." + BaseColumns._ID + " = ?"); //We use ? to avoid SQL Injection.
+                c = builder.query(getDb(), projection,
+                        selection, prependToArray(selectionArgs, uriParts.itemId),
+                        null, null, getClassificationsOrderBy(sortOrder));
+
+                c.setNotificationUri(getContext().getContentResolver(),
+                        uri);
                 break;
+            }
 
             case MATCHER_ID_CLASSIFICATION_ANSWERS: {
                 // query the database for all items:
@@ -797,7 +1250,7 @@ public class ItemsContentProvider extends ContentProvider {
                         selection, prependToArray(selectionArgs, uriParts.itemId),
                         null, null, orderBy);
                 c.setNotificationUri(getContext().getContentResolver(),
-                        ClassificationAnswer.CONTENT_URI); //TODO: More precise?
+                        uri);
                 break;
             }
 
@@ -830,7 +1283,7 @@ public class ItemsContentProvider extends ContentProvider {
                         selection, prependToArray(selectionArgs, uriParts.itemId),
                         null, null, orderBy);
                 c.setNotificationUri(getContext().getContentResolver(),
-                        ClassificationCheckbox.CONTENT_URI); //TODO: More precise?
+                        uri);
                 break;
 
             default:
@@ -842,6 +1295,18 @@ public class ItemsContentProvider extends ContentProvider {
         return c;
     }
 
+    /**
+     * The default sort order is ambiguous in the join,
+     * so use a qualified sort order instead.
+     */
+    private static String getClassificationsOrderBy(final String sortOrder) {
+        if (TextUtils.isEmpty(sortOrder)) {
+            return DEFAULT_SORT_ORDER_CLASSIFICATIONS;
+        }
+
+        return sortOrder;
+    }
+
     private Cursor queryItemNext(final String[] projection, final String selection, final String[] selectionArgs, final String orderBy) {
         // query the database for a single  item that is not yet done:
 
@@ -849,7 +1314,7 @@ public class ItemsContentProvider extends ContentProvider {
         //This lets us use the ? syntax to avoid SQL injection
 
         final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-        builder.setTables(DatabaseHelper.TABLE_NAME_ITEMS);
+        builder.setTables(DatabaseHelper.VIEW_NAME_ITEMS);
         builder.setProjectionMap(sItemsProjectionMap);
         builder.appendWhere(WHERE_CLAUSE_NOT_DONE);
 
@@ -883,7 +1348,7 @@ public class ItemsContentProvider extends ContentProvider {
         result[0] = value;
 
         if (arrayLength > 0) {
-            System.arraycopy(array, 0, result, 1, result.length);
+            System.arraycopy(array, 0, result, 1, arrayLength);
         }
 
         return result;
@@ -920,20 +1385,17 @@ public class ItemsContentProvider extends ContentProvider {
 
         switch (sUriMatcher.match(uri)) {
             case MATCHER_ID_ITEMS:
-                affected = updateMappedValues(DatabaseHelper.TABLE_NAME_ITEMS, values, sItemsProjectionMap,
+                //The images can only be changed for a single item.
+                affected = updateMappedValues(DatabaseHelper.TABLE_NAME_ITEMS, values, sItemsTableProjectionMap,
                         selection, selectionArgs);
-                requestSync();
+                requestSync(getSyncReasonsForItemChanges(values));
                 break;
 
             case MATCHER_ID_ITEM: {
                 final UriParts uriParts = parseContentUri(uri);
 
-                //Prepend our ID=? argument to the selection arguments.
-                //This lets us use the ? syntax to avoid SQL injection
-                affected = updateMappedValues(DatabaseHelper.TABLE_NAME_ITEMS, values, sItemsProjectionMap,
-                        prependIdToSelection(selection),
-                        prependToArray(selectionArgs, uriParts.itemId));
-                requestSync();
+                affected = updateItem(uriParts.itemId, values, selection, selectionArgs);
+                requestSync(getSyncReasonsForItemChanges(values));
                 break;
             }
 
@@ -978,11 +1440,37 @@ public class ItemsContentProvider extends ContentProvider {
                 throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
 
         return affected;
     }
 
+    private static String prependAfterIdToSelection(final String selection) {
+        return BaseColumns._ID + " > ?"
+                + (!TextUtils.isEmpty(selection) ?
+                " AND (" + selection + ')' : "");
+    }
+
+    /**
+     * Get the query parameter, checking that it is a number,
+     * because we use it in the SQL.
+     *
+     * @return The number as a string, or null if there is no such query parameter.
+     */
+    @Nullable
+    private static String getNumericQueryParameter(final Uri uri, final String name) {
+        final String value = uri.getQueryParameter(name);
+        if (TextUtils.isEmpty(value)) {
+            return null;
+        }
+
+        try {
+            return Long.toString(Long.parseLong(value));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " query parameter: " + uri, e);
+        }
+    }
+
     private static String prependIdToSelection(final String selection) {
         return BaseColumns._ID + " = ?"
                 + (!TextUtils.isEmpty(selection) ?
@@ -1001,134 +1489,477 @@ public class ItemsContentProvider extends ContentProvider {
         return mOpenDbHelper.getWritableDatabase();
     }
 
-    private void removeItem(final String itemId) {
-        final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-        builder.setTables(DatabaseHelper.TABLE_NAME_ITEMS);
-        builder.appendWhere(Item.Columns._ID + " = ?"); //We use ? to avoid SQL Injection.
-        final String[] selectionArgs = {itemId}; //TODO: locale-independent?
-        final Cursor c = builder.query(getDb(), PROJECTION_REMOVE_ITEM,
-                null, selectionArgs,
-                null, null, null);
-
-        final String[] imageUris = new String[3];
-        if (c.moveToFirst()) {
-            imageUris[0] = c.getString(0);
-            imageUris[1] = c.getString(1);
-            imageUris[2] = c.getString(2);
-        }
-
-        c.close();
-
-        removeItem(itemId, imageUris);
-    }
-
-    private void removeItem(final String itemId, final String[] imageUris) {
+    /**
+     * Update the item's row in the items table,
+     * and its rows in the images table, for the items view's columns from there.
+     */
+    private int updateItem(final String itemId, final ContentValues values, final String selection,
+                           final String[] selectionArgs) {
         final SQLiteDatabase db = getDb();
+        final ContentValues valuesItem = getMappedContentValues(values, sItemsTableProjectionMap);
+        final ContentValues valuesMapped = getMappedContentValues(values, sItemsProjectionMap);
 
-        final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-        builder.setTables(DatabaseHelper.TABLE_NAME_FILES);
-        builder.appendWhere(DatabaseHelper.FilesDbColumns._ID + " = ?");
+        //The files have now been written, so we can know their real sizes:
+        final String[] imageFilePaths = valuesMarkImagesAsDownloaded(valuesMapped) ?
+                getImageFilePaths(itemId) : null;
+        final long now = System.currentTimeMillis();
 
-        //Get the cached image files, delete them, and forget them:
-        for (final String contentUri : imageUris) {
-            if (contentUri == null) {
-                continue;
+        int affected = 0;
+        db.beginTransaction();
+        try {
+            if (valuesItem.size() > 0) {
+                //Prepend our ID=? argument to the selection arguments.
+                //This lets us use the ? syntax to avoid SQL injection
+                affected = db.update(DatabaseHelper.TABLE_NAME_ITEMS, valuesItem,
+                        prependIdToSelection(selection),
+                        prependToArray(selectionArgs, itemId));
             }
 
-            //Get the real local URI for the file:
-            final Uri uri = Uri.parse(contentUri);
-            final long fileId = ContentUris.parseId(uri);
-            final String strFileId = Double.toString(fileId); //TODO: Is this locale-independent?
+            if (valuesItem.size() == 0 || affected > 0) {
+                for (final ItemImageColumns imageColumns : ITEM_IMAGE_COLUMNS) {
+                    final ContentValues valuesImage = new ContentValues();
+                    if (valuesMapped.containsKey(imageColumns.uriRemote)) {
+                        valuesImage.put(DatabaseHelper.ImagesDbColumns.REMOTE_URI,
+                                valuesMapped.getAsString(imageColumns.uriRemote));
+                    }
+
+                    if (valuesMapped.containsKey(imageColumns.downloaded)) {
+                        valuesImage.put(DatabaseHelper.ImagesDbColumns.STATE,
+                                valuesMapped.getAsInteger(imageColumns.downloaded));
 
-            final String[] selectionArgs = {strFileId};
-            final Cursor c = builder.query(db, PROJECTION_FILES_FILE_DATA,
-                    null, selectionArgs,
-                    null, null, null);
+                        final String realFileUri = (imageFilePaths == null) ? null : imageFilePaths[imageColumns.type];
+                        if (!TextUtils.isEmpty(realFileUri)) {
+                            valuesImage.put(DatabaseHelper.ImagesDbColumns.BYTES, new File(realFileUri).length());
+                            valuesImage.put(DatabaseHelper.ImagesDbColumns.LAST_ACCESSED, now);
+                        }
+                    }
 
-            if (c.moveToFirst()) {
-                final String realFileUri = c.getString(0);
-                final File realFile = new File(realFileUri);
-                if(!realFile.delete()) {
-                    Log.error("removeItem(): File.delete() failed.");
+                    if (valuesImage.size() == 0) {
+                        continue;
+                    }
+
+                    final String[] whereArgs = {itemId, Integer.toString(imageColumns.type)};
+                    if (db.update(DatabaseHelper.TABLE_NAME_IMAGES, valuesImage,
+                            WHERE_CLAUSE_IMAGE_FOR_ITEM, whereArgs) > 0) {
+                        affected = 1;
+                    }
                 }
             }
 
-            c.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return affected;
+    }
 
-            final String[] whereArgs = {strFileId};
-            if (db.delete(DatabaseHelper.TABLE_NAME_FILES,
-                    DatabaseHelper.FilesDbColumns._ID + " = ?",
-                    whereArgs) <= 0) {
-                Log.error("removeItem(): Could not remove the file row.");
+    private static boolean valuesMarkImagesAsDownloaded(final ContentValues valuesMapped) {
+        for (final ItemImageColumns imageColumns : ITEM_IMAGE_COLUMNS) {
+            if (valuesMapped.containsKey(imageColumns.downloaded)) {
+                return true;
             }
         }
 
-        // Remove the related classification answers:
-        final String[] whereArgs = {itemId};
-        if (db.delete(DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS,
-                DatabaseHelper.ClassificationAnswersDbColumns.ITEM_ID + " = ?",
-                whereArgs) <= 0) {
-            //This would only be an error worth reporting if we know that this item
-            //has a classification already.
-            //Log.error("removeItem(): Could not remove the classification answers rows.");
+        return false;
+    }
+
+    /**
+     * Get the real paths of the item's cached image files, with one query.
+     *
+     * @return The paths, indexed by the image type.
+     */
+    private String[] getImageFilePaths(final String itemId) {
+        final String[] result = new String[ITEM_IMAGE_COLUMNS.length];
+
+        final String[] selectionArgs = {itemId}; //TODO: locale-independent?
+        final Cursor c = getDb().query(DatabaseHelper.TABLE_NAME_IMAGES, PROJECTION_IMAGES_FILE_DATA,
+                WHERE_CLAUSE_IMAGES_FOR_ITEM, selectionArgs,
+                null, null, null);
+        while (c.moveToNext()) {
+            final int type = c.getInt(0);
+            if (type >= 0 && type < result.length) {
+                result[type] = c.getString(1);
+            }
         }
 
-        // Remove the related classification checkboxes:
-        // We don't check that at least 1 row was deleted,
-        // because there are not always answers with checkboxes.
-        if (db.delete(DatabaseHelper.TABLE_NAME_CLASSIFICATION_CHECKBOXES,
-                DatabaseHelper.ClassificationCheckboxesDbColumns.ITEM_ID + " = ?",
-                whereArgs) <= 0) {
-            //This would only be an error worth reporting if we know that this item
-            //has a classification already.
-            //Log.error("removeItem(): Could not remove the classification answers rows.");
+        c.close();
+
+        return result;
+    }
+
+    private Bundle getCacheStats() {
+        final Bundle result = new Bundle();
+
+        final Cursor c = getDb().rawQuery(QUERY_CACHE_STATS, null);
+        if (c.moveToFirst()) {
+            result.putInt(CacheStats.Columns.FILE_COUNT, c.getInt(0));
+            result.putLong(CacheStats.Columns.BYTES_USED, c.getLong(1));
         }
 
-        //Delete the item:
-        if (db.delete(DatabaseHelper.TABLE_NAME_ITEMS,
-                Item.Columns._ID + " = ?",
-                whereArgs) <= 0) {
-            Log.error("removeItem(): No item rows were removed.");
+        c.close();
+        return result;
+    }
+
+    /**
+     * Check whether the cache directory has been wiped since we started the current cache epoch,
+     * by comparing the epoch in the sentinel file with the epoch in our preferences.
+     * If it has been wiped, forget the items whose files were wiped,
+     * reset the images of the items that we keep, so they are downloaded again,
+     * and start a new epoch.
+     *
+     * @return The number of items removed.
+     */
+    private synchronized int checkCacheEpoch() {
+        final Context context = getContext();
+        if (context == null) {
+            return 0;
         }
+
+        final File cacheDir = Utils.getExternalCacheDir(context);
+        if (cacheDir == null || !cacheDir.isDirectory()) {
+            //We could not cache anything there anyway.
+            //For instance, this happens while running under ProviderTestCase2.
+            return 0;
+        }
+
+        final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME_CACHE_EPOCH, Context.MODE_PRIVATE);
+        final int storedEpoch = prefs.getInt(PREF_KEY_CACHE_EPOCH, 0);
+        final File sentinel = new File(cacheDir, CACHE_EPOCH_SENTINEL_FILENAME);
+        final boolean sentinelExists = sentinel.exists();
+        final int sentinelEpoch = sentinelExists ? readCacheEpochSentinel(sentinel) : 0;
+        if (storedEpoch > 0 && sentinelEpoch == storedEpoch) {
+            return 0;
+        }
+
+        final boolean wiped;
+        if (storedEpoch > 0 && !sentinelExists) {
+            //We wrote the sentinel when we started this epoch, so the cache was wiped.
+            wiped = true;
+        } else {
+            //We have not started an epoch yet, after a fresh install or after upgrading
+            //from a version that did not use the sentinel, or the sentinel is from some other epoch.
+            //If the cache was not wiped then the oldest cached file still exists.
+            wiped = !oldestCachedFileExists();
+        }
+
+        int removed = 0;
+        if (wiped) {
+            removed = removeItemsWithWipedFiles();
+            resetWipedImages();
+        }
+
+        final int epoch = storedEpoch + 1;
+        prefs.edit().putInt(PREF_KEY_CACHE_EPOCH, epoch).apply();
+        writeCacheEpochSentinel(sentinel, epoch);
+
+        Log.info("checkCacheEpoch(): Started cache epoch " + epoch + ", after removing " + removed + " items.");
+        return removed;
     }
 
     /**
-     * Create Content URIs that point to local files, so we can download the remote files to those
-     * files as a cache.
+     * @return true if the cached file with the lowest ID still exists, or if there are no cached files.
+     */
+    private boolean oldestCachedFileExists() {
+        final Cursor c = getDb().query(DatabaseHelper.TABLE_NAME_IMAGES, PROJECTION_ID_FILE_DATA,
+                DatabaseHelper.ImagesDbColumns.FILE_DATA + " IS NOT NULL", null,
+                null, null, BaseColumns._ID + " ASC", "1");
+
+        String realFileUri = null;
+        if (c.moveToFirst()) {
+            realFileUri = c.getString(1);
+        }
+
+        c.close();
+
+        if (TextUtils.isEmpty(realFileUri)) {
+            return true;
+        }
+
+        return new File(realFileUri).exists();
+    }
+
+    /**
+     * Forget all the items whose files were in the wiped cache,
+     * in one transaction, with one change notification.
      *
-     * @param values
-     * @return
+     * @return The number of items removed.
      */
-    private boolean createFileUrisForImages(final ContentValues values) throws IOException {
-        Uri fileUri = createFileUri();
-        if (fileUri == null) {
-            return false;
+    private int removeItemsWithWipedFiles() {
+        final int removed = removeItems(WHERE_CLAUSE_NOT_WAITING_FOR_UPLOAD, null, null, null);
+
+        if (removed > 0) {
+            notifyChange(Item.ITEMS_URI);
         }
 
-        values.put(DatabaseHelper.ItemsDbColumns.LOCATION_STANDARD_URI, fileUri.toString());
+        return removed;
+    }
+
+    /**
+     * Mark the images of the items that we kept after a wipe, because their classifications
+     * are still to be uploaded, as not downloaded, with new empty files,
+     * so they are downloaded again instead of appearing to be in the cache.
+     */
+    private void resetWipedImages() {
+        final SQLiteDatabase db = getDb();
+        final Cursor c = db.query(DatabaseHelper.TABLE_NAME_IMAGES,
+                new String[]{BaseColumns._ID, DatabaseHelper.ImagesDbColumns.ITEM_ID, DatabaseHelper.ImagesDbColumns.TYPE},
+                DatabaseHelper.ImagesDbColumns.ITEM_ID + " IN (SELECT " + BaseColumns._ID +
+                        " FROM " + DatabaseHelper.TABLE_NAME_ITEMS +
+                        " WHERE NOT (" + WHERE_CLAUSE_NOT_WAITING_FOR_UPLOAD + "))",
+                null, null, null, null);
+
+        db.beginTransaction();
+        try {
+            while (c.moveToNext()) {
+                final String realFileUri;
+                try {
+                    realFileUri = createCacheFile(c.getLong(1) + "_" + c.getInt(2));
+                } catch (final IOException e) {
+                    Log.error("resetWipedImages(): Could not create the cache file again.", e);
+                    continue;
+                }
+
+                final ContentValues values = new ContentValues();
+                values.put(DatabaseHelper.ImagesDbColumns.FILE_DATA, realFileUri);
+                values.put(DatabaseHelper.ImagesDbColumns.STATE, DatabaseHelper.IMAGE_STATE_NOT_DOWNLOADED);
+                values.put(DatabaseHelper.ImagesDbColumns.BYTES, 0);
+                db.update(DatabaseHelper.TABLE_NAME_IMAGES, values,
+                        BaseColumns._ID + " = ?", new String[]{Long.toString(c.getLong(0))});
+            }
 
-        fileUri = createFileUri();
-        if (fileUri == null) {
-            return false;
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            c.close();
         }
 
-        values.put(DatabaseHelper.ItemsDbColumns.LOCATION_THUMBNAIL_URI, fileUri.toString());
+        //The remaining items' images are now not downloaded:
+        notifyChange(Item.ITEMS_URI);
+        requestSync(SyncScheduler.REASON_DOWNLOAD_IMAGES);
+    }
 
-        fileUri = createFileUri();
-        if (fileUri == null) {
-            return false;
+    /**
+     * @return The epoch in the sentinel file, or 0 if it cannot be read.
+     */
+    private static int readCacheEpochSentinel(@NonNull final File sentinel) {
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(sentinel);
+            final String str = new String(ByteStreams.toByteArray(stream), Utils.STRING_ENCODING);
+            return Integer.parseInt(str.trim());
+        } catch (final IOException | NumberFormatException e) {
+            Log.error("readCacheEpochSentinel(): Could not read the sentinel file: " + sentinel.getAbsolutePath(), e);
+            return 0;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (final IOException e) {
+                    Log.error("readCacheEpochSentinel(): Exception while closing stream.", e);
+                }
+            }
         }
+    }
 
-        values.put(DatabaseHelper.ItemsDbColumns.LOCATION_INVERTED_URI, fileUri.toString());
+    private static void writeCacheEpochSentinel(@NonNull final File sentinel, final int epoch) {
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(sentinel);
+            stream.write(Integer.toString(epoch).getBytes(Utils.STRING_ENCODING));
+        } catch (final IOException e) {
+            Log.error("writeCacheEpochSentinel(): Could not write the sentinel file: " + sentinel.getAbsolutePath(), e);
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (final IOException e) {
+                    Log.error("writeCacheEpochSentinel(): Exception while closing stream.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the least-recently used uploaded items,
+     * until the cached files use no more than the budget.
+     *
+     * @param budget The maximum number of bytes.
+     * @return The number of items removed.
+     */
+    private int trimCache(final long budget) {
+        final SQLiteDatabase db = getDb();
+
+        long bytesUsed = getCacheStats().getLong(CacheStats.Columns.BYTES_USED);
+        if (bytesUsed <= budget) {
+            return 0;
+        }
+
+        //Choose the least-recently used items, until enough would be removed:
+        final List<String> itemIds = new ArrayList<>();
+        final Cursor c = db.rawQuery(QUERY_TRIM_CACHE, null);
+        while (bytesUsed > budget && c.moveToNext()) {
+            itemIds.add(c.getString(0));
+            bytesUsed -= c.getLong(1);
+        }
+        c.close();
+
+        int removed = 0;
+        if (!itemIds.isEmpty()) {
+            final String[] placeholders = new String[itemIds.size()];
+            Arrays.fill(placeholders, "?");
+            removed = removeItems(BaseColumns._ID + " IN (" + TextUtils.join(", ", placeholders) + ")",
+                    itemIds.toArray(new String[itemIds.size()]), null, null);
+        }
+
+        Log.info("trimCache(): Removed " + removed + " items. Now using " + bytesUsed + " bytes, with a budget of " + budget + " bytes.");
+
+        if (removed > 0) {
+            notifyChange(Item.ITEMS_URI);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Remove the items, with their images and classifications,
+     * with a few set-based statements in one transaction.
+     * The cached image files are deleted later, by the file janitor, on a background thread.
+     * The caller should notify about the change.
+     *
+     * @param selection Chooses the items, with the Item.Columns column names.
+     * @param sortOrder Chooses which items to remove first, if there is a limit.
+     * @param limit The maximum number of items to remove, or null.
+     * @return The number of items removed.
+     */
+    private int removeItems(final String selection, final String[] selectionArgs,
+                            final String sortOrder, final String limit) {
+        final SQLiteDatabase db = getDb();
+
+        //This chooses the same items for each statement,
+        //because the items are deleted by the last statement.
+        final String subQuery = SQLiteQueryBuilder.buildQueryString(false, DatabaseHelper.VIEW_NAME_ITEMS,
+                PROJECTION_ID, selection, null, null, sortOrder, limit);
+        final String whereClause = BaseColumns._ID + " IN (" + subQuery + ")";
+        //The images, classification_answers and classification_checkboxes tables all use this name:
+        final String whereClauseItemId = DatabaseHelper.ImagesDbColumns.ITEM_ID + " IN (" + subQuery + ")";
+        final String[] whereArgs = (selectionArgs == null) ? new String[0] : selectionArgs;
+
+        final int removed;
+        db.beginTransaction();
+        try {
+            //Remember the cached image files, so the file janitor can delete them:
+            db.execSQL("INSERT INTO " + DatabaseHelper.TABLE_NAME_REMOVED_FILES +
+                    " (" + DatabaseHelper.RemovedFilesDbColumns.FILE_DATA + ")" +
+                    " SELECT " + DatabaseHelper.ImagesDbColumns.FILE_DATA +
+                    " FROM " + DatabaseHelper.TABLE_NAME_IMAGES +
+                    " WHERE " + DatabaseHelper.ImagesDbColumns.FILE_DATA + " IS NOT NULL" +
+                    " AND " + whereClauseItemId, whereArgs);
+
+            // Remove the related classification answers and checkboxes:
+            // There are not always any.
+            db.delete(DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS,
+                    whereClauseItemId, whereArgs);
+            db.delete(DatabaseHelper.TABLE_NAME_CLASSIFICATION_CHECKBOXES,
+                    whereClauseItemId, whereArgs);
+
+            //Delete the items.
+            //Their rows in the images table are deleted along with them.
+            removed = db.delete(DatabaseHelper.TABLE_NAME_ITEMS,
+                    whereClause, whereArgs);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (removed > 0) {
+            deleteRemovedFilesAsync();
+        }
+
+        return removed;
+    }
+
+    /**
+     * Delete the cached image files of the removed items, on the file janitor's thread,
+     * so removing the items doesn't wait for the filesystem.
+     */
+    private void deleteRemovedFilesAsync() {
+        mFileJanitor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deleteRemovedFiles();
+            }
+        });
+    }
+
+    private void deleteRemovedFiles() {
+        final SQLiteDatabase db = getDb();
+
+        final Cursor c = db.query(DatabaseHelper.TABLE_NAME_REMOVED_FILES, PROJECTION_ID_FILE_DATA,
+                null, null, null, null, BaseColumns._ID + " ASC");
+        long lastId = -1;
+        while (c.moveToNext()) {
+            lastId = c.getLong(0);
+
+            final String realFileUri = c.getString(1);
+            if (TextUtils.isEmpty(realFileUri)) {
+                continue;
+            }
+
+            final File realFile = new File(realFileUri);
+            if (realFile.exists() && !realFile.delete()) {
+                Log.error("deleteRemovedFiles(): File.delete() failed.");
+            }
+        }
+        c.close();
+
+        if (lastId >= 0) {
+            db.delete(DatabaseHelper.TABLE_NAME_REMOVED_FILES,
+                    BaseColumns._ID + " <= ?", new String[]{Long.toString(lastId)});
+        }
+    }
+
+    /**
+     * Create the item's rows in the images table, with local files, so we can download the remote
+     * files to those files as a cache.
+     * The items view then provides content URIs for these files.
+     *
+     * @param itemId
+     * @param valuesMapped The item's values, with the items view's column names.
+     * @return
+     */
+    private boolean insertImages(final long itemId, final ContentValues valuesMapped) throws IOException {
+        final SQLiteDatabase db = getDb();
+
+        for (final ItemImageColumns imageColumns : ITEM_IMAGE_COLUMNS) {
+            //Name the file after the item and the image type,
+            //so we can create it before inserting the row, instead of updating the row afterwards.
+            final String realFileUri = createCacheFile(itemId + "_" + imageColumns.type);
+            if (TextUtils.isEmpty(realFileUri)) {
+                Log.error("insertImages(): createCacheFile() returned null.");
+                return false;
+            }
+
+            //The _data column will be used implicitly by openOutputStream() and openInputStream():
+            final ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.ImagesDbColumns.ITEM_ID, itemId);
+            values.put(DatabaseHelper.ImagesDbColumns.TYPE, imageColumns.type);
+            values.put(DatabaseHelper.ImagesDbColumns.REMOTE_URI, valuesMapped.getAsString(imageColumns.uriRemote));
+            values.put(DatabaseHelper.ImagesDbColumns.FILE_DATA, realFileUri);
+            db.insertOrThrow(DatabaseHelper.TABLE_NAME_IMAGES,
+                    DatabaseHelper.ImagesDbColumns.FILE_DATA, values);
+        }
 
         return true;
     }
 
     /**
-     * There are 2 tables: items and files.
-     * The items table has a uri field that specifies a record in the files tables.
-     * The files table has a (standard for openInput/OutputStream()) _data field that
-     * contains the URI of the file for the item.
+     * There are 2 main tables: items and images.
+     * Each item has a row in the images table for each of its images.
+     * The images table has a (standard for openInput/OutputStream()) _data field that
+     * contains the URI of the local file for the image.
+     * The items view provides the items with their images' columns, as in Item.Columns.
      * <p/>
      * The location and creation of the SQLite database is left entirely up to the SQLiteOpenHelper
      * class. We just store its name in the Document.
@@ -1136,20 +1967,69 @@ public class ItemsContentProvider extends ContentProvider {
     private static class DatabaseHelper extends SQLiteOpenHelper {
 
         //After the first official release, try to preserve data when changing this. See onUpgrade()
-        private static final int DATABASE_VERSION = 21;
+        private static final int DATABASE_VERSION = 28;
+
+        //The oldest version that upgradeFrom() knows about.
+        //Databases from older versions are upgraded by rebuildTables().
+        private static final int DATABASE_VERSION_FIRST_MIGRATION = 20;
 
         private static final String DATABASE_NAME = "items.db";
 
         private static final String TABLE_NAME_ITEMS = "items";
+        //Each item row has one images row for each type of image.
+        private static final String TABLE_NAME_IMAGES = "images";
+        //The items, with the columns from their images rows, for queries.
+        private static final String VIEW_NAME_ITEMS = "items_with_images";
+        //Replaced by the images table in version 25. Only used by the migrations.
         private static final String TABLE_NAME_FILES = "files";
+        //The cached files of removed items, which the file janitor has not yet deleted.
+        private static final String TABLE_NAME_REMOVED_FILES = "removed_files";
+        //A single row of item counts, kept up to date by triggers on the items table.
+        private static final String TABLE_NAME_ITEM_STATS = "item_stats";
+        private static final String TRIGGER_NAME_ITEM_STATS_INSERT = "item_stats_insert_trigger";
+        private static final String TRIGGER_NAME_ITEM_STATS_UPDATE = "item_stats_update_trigger";
+        private static final String TRIGGER_NAME_ITEM_STATS_DELETE = "item_stats_delete_trigger";
         //Each item row has many classification_answers rows.
         private static final String TABLE_NAME_CLASSIFICATION_ANSWERS = "classification_answers";
         //Each item row has some classification_checkboxes rows.
         private static final String TABLE_NAME_CLASSIFICATION_CHECKBOXES = "classification_checkboxes";
+        //Used temporarily by rebuildTables():
+        private static final String TABLE_NAME_SUFFIX_OLD = "_old";
+        //Used by onUpgrade(), around each step:
+        private static final String SAVEPOINT_NAME_UPGRADE = "upgrade_step";
         private static final String DEFAULT_SORT_ORDER = Item.Columns._ID + " ASC";
 
+        private static final String INDEX_NAME_ITEMS_NEXT = "items_next_index";
+        private static final String INDEX_NAME_ITEMS_UPLOADED_BY_DATE = "items_uploaded_by_date_index";
+        private static final String INDEX_NAME_ITEMS_OUTSTANDING_BY_DATE = "items_outstanding_by_date_index";
+        private static final String INDEX_NAME_IMAGES_ITEM = "images_item_index";
+
+        //The values of ImagesDbColumns.TYPE:
+        private static final int IMAGE_TYPE_STANDARD = 0;
+        private static final int IMAGE_TYPE_THUMBNAIL = 1;
+        private static final int IMAGE_TYPE_INVERTED = 2;
+
+        //The values of ImagesDbColumns.STATE,
+        //which the items view provides as the Item.Columns.LOCATION_*_DOWNLOADED columns:
+        private static final int IMAGE_STATE_NOT_DOWNLOADED = 0;
+        private static final int IMAGE_STATE_DOWNLOADED = 1;
+
         DatabaseHelper(final Context context) {
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+            //Use write-ahead logging so the UI's queries can read from other pooled connections
+            //while the SyncAdapter and the image download callbacks are writing,
+            //instead of waiting for them.
+            //The SQLiteDatabase chooses the size of the connection pool.
+            setWriteAheadLoggingEnabled(true);
+        }
+
+        @Override
+        public void onConfigure(final SQLiteDatabase sqLiteDatabase) {
+            super.onConfigure(sqLiteDatabase);
+
+            //Delete the images rows along with their item row:
+            sqLiteDatabase.setForeignKeyConstraintsEnabled(true);
         }
 
         @Override
@@ -1160,77 +2040,352 @@ public class ItemsContentProvider extends ContentProvider {
         @Override
         public void onUpgrade(final SQLiteDatabase sqLiteDatabase,
                               final int oldv, final int newv) {
-            if (oldv != newv) {
-
-                switch(oldv) {
-                    case 20: {
-                        //Add the groupId field to the items:
-                        try {
-                            sqLiteDatabase.execSQL("ALTER TABLE " + TABLE_NAME_ITEMS + " ADD COLUMN "
-                                    + ItemsDbColumns.GROUP_ID + " TEXT;");
-                        } catch( final SQLiteException ex) {
-                            Log.error("onUpgrade: ALTER TABLE ADD COLUMN failed", ex);
-                            //Fall through to the default case to recreate the tables completely.
-                        }
-                        break;
-                    }
+            if (oldv == newv) {
+                return;
+            }
 
-                    default: {
-                        dropTable(sqLiteDatabase, TABLE_NAME_ITEMS);
-                        dropTable(sqLiteDatabase, TABLE_NAME_FILES);
-                        dropTable(sqLiteDatabase, TABLE_NAME_CLASSIFICATION_ANSWERS);
-                        dropTable(sqLiteDatabase, TABLE_NAME_CLASSIFICATION_CHECKBOXES);
+            if (oldv < DATABASE_VERSION_FIRST_MIGRATION) {
+                //We don't know exactly what changed since these versions,
+                //so just keep whatever data still fits.
+                Log.info("onUpgrade(): No migrations from version " + oldv + ", so copying the data into new tables.");
+                rebuildTables(sqLiteDatabase);
+                return;
+            }
 
-                        createTable(sqLiteDatabase);
-                        break;
-                    }
+            //Apply each version's changes in turn, so we keep the cached images
+            //and any classifications that have not yet been uploaded:
+            try {
+                for (int version = oldv; version < newv; version++) {
+                    upgradeFromInSavepoint(sqLiteDatabase, version);
+                }
+            } catch (final SQLiteException ex) {
+                //This shouldn't happen, but losing the data would be worse than a slow upgrade.
+                //The failed step has been rolled back, so the tables are as they were after the
+                //last step that succeeded, and rebuildTables() can copy their data.
+                Log.error("onUpgrade(): Migration failed, so copying the data into new tables instead.", ex);
+                rebuildTables(sqLiteDatabase);
+            }
+        }
+
+        /**
+         * Call upgradeFrom() in a savepoint, rolling back its partial changes if it fails.
+         * SQLiteOpenHelper already calls onUpgrade() in a transaction,
+         * but rolling that back would lose all the steps, and we could not then copy the data.
+         */
+        private static void upgradeFromInSavepoint(final SQLiteDatabase sqLiteDatabase, final int version) {
+            sqLiteDatabase.execSQL("SAVEPOINT " + SAVEPOINT_NAME_UPGRADE + ";");
+            try {
+                upgradeFrom(sqLiteDatabase, version);
+            } catch (final SQLiteException ex) {
+                sqLiteDatabase.execSQL("ROLLBACK TO " + SAVEPOINT_NAME_UPGRADE + ";");
+                sqLiteDatabase.execSQL("RELEASE " + SAVEPOINT_NAME_UPGRADE + ";");
+                throw ex;
+            }
+
+            //This doesn't commit anything, because we are inside SQLiteOpenHelper's transaction.
+            sqLiteDatabase.execSQL("RELEASE " + SAVEPOINT_NAME_UPGRADE + ";");
+        }
+
+        /**
+         * Change the database from this version to the next version.
+         * Add a case here whenever DATABASE_VERSION changes.
+         */
+        private static void upgradeFrom(final SQLiteDatabase sqLiteDatabase, final int version) {
+            Log.info("upgradeFrom(): Upgrading from database version " + version);
+
+            switch(version) {
+                case 20: {
+                    //Add the groupId field to the items:
+                    sqLiteDatabase.execSQL("ALTER TABLE " + TABLE_NAME_ITEMS + " ADD COLUMN "
+                            + ItemsDbColumns.GROUP_ID + " TEXT;");
+                    break;
+                }
+
+                case 21: {
+                    //Add the upload retry fields to the items:
+                    sqLiteDatabase.execSQL("ALTER TABLE " + TABLE_NAME_ITEMS + " ADD COLUMN "
+                            + ItemsDbColumns.UPLOAD_ATTEMPTS + " INTEGER DEFAULT 0;");
+                    sqLiteDatabase.execSQL("ALTER TABLE " + TABLE_NAME_ITEMS + " ADD COLUMN "
+                            + ItemsDbColumns.UPLOAD_NEXT_ATTEMPT + " INTEGER DEFAULT 0;");
+                    break;
+                }
+
+                case 22: {
+                    //Add the cache usage fields to the files:
+                    sqLiteDatabase.execSQL("ALTER TABLE " + TABLE_NAME_FILES + " ADD COLUMN "
+                            + FilesDbColumns.SIZE + " INTEGER DEFAULT 0;");
+                    sqLiteDatabase.execSQL("ALTER TABLE " + TABLE_NAME_FILES + " ADD COLUMN "
+                            + FilesDbColumns.LAST_ACCESSED + " INTEGER DEFAULT 0;");
+
+                    recordAllFileSizes(sqLiteDatabase, TABLE_NAME_FILES, FilesDbColumns.SIZE);
+                    break;
+                }
+
+                case 23: {
+                    //Replace the single-column indexes with indexes for the actual queries:
+                    dropIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.UPLOADED);
+                    dropIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.DONE);
+                    dropIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.DATETIME_DONE);
+                    dropIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.LOCATION_STANDARD_DOWNLOADED);
+                    dropIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.LOCATION_THUMBNAIL_DOWNLOADED);
+                    dropIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.LOCATION_INVERTED_DOWNLOADED);
+                    createItemsQueryIndexes(sqLiteDatabase);
+                    break;
+                }
+
+                case 24: {
+                    //Replace the items' location columns, and the files table, with the images table.
+                    //SQLite can't drop columns, so copy the items into a new items table.
+                    //Do this before creating the images table,
+                    //so renaming the items table doesn't change the images table's foreign key.
+                    final String oldTableName = TABLE_NAME_ITEMS + TABLE_NAME_SUFFIX_OLD;
+                    dropIndexesForTable(sqLiteDatabase, TABLE_NAME_ITEMS);
+                    dropTable(sqLiteDatabase, oldTableName);
+                    sqLiteDatabase.execSQL("ALTER TABLE " + TABLE_NAME_ITEMS + " RENAME TO " + oldTableName + ";");
+
+                    createItemsTable(sqLiteDatabase);
+                    copyColumns(sqLiteDatabase, oldTableName, TABLE_NAME_ITEMS);
+
+                    createImagesTable(sqLiteDatabase);
+                    copyImagesFromFiles(sqLiteDatabase, oldTableName);
+                    createItemsView(sqLiteDatabase);
+
+                    dropTable(sqLiteDatabase, oldTableName);
+                    dropTable(sqLiteDatabase, TABLE_NAME_FILES);
+                    break;
+                }
+
+                case 25: {
+                    //Add the queue of files for the file janitor to delete:
+                    createRemovedFilesTable(sqLiteDatabase);
+                    break;
+                }
+
+                case 26: {
+                    //Add the item counts, counting the existing items once:
+                    createItemStatsTable(sqLiteDatabase);
+                    sqLiteDatabase.execSQL("UPDATE " + TABLE_NAME_ITEM_STATS + " SET " +
+                            ItemStatsDbColumns.ITEM_COUNT + " = (SELECT COUNT(*) FROM " + TABLE_NAME_ITEMS + "), " +
+                            ItemStatsDbColumns.NOT_DONE_COUNT + " = (SELECT TOTAL(" + getCountExpression(WHERE_CLAUSE_NOT_CLASSIFIED) + ") FROM " + TABLE_NAME_ITEMS + "), " +
+                            ItemStatsDbColumns.UPLOADED_COUNT + " = (SELECT TOTAL(" + getCountExpression(WHERE_CLAUSE_UPLOADED) + ") FROM " + TABLE_NAME_ITEMS + "), " +
+                            ItemStatsDbColumns.OUTSTANDING_COUNT + " = (SELECT TOTAL(" + getCountExpression(WHERE_CLAUSE_OUTSTANDING) + ") FROM " + TABLE_NAME_ITEMS + ");");
+                    break;
+                }
+
+                case 27: {
+                    //Add the image derivation retry fields to the items:
+                    sqLiteDatabase.execSQL("ALTER TABLE " + TABLE_NAME_ITEMS + " ADD COLUMN "
+                            + ItemsDbColumns.DERIVE_ATTEMPTS + " INTEGER DEFAULT 0;");
+                    sqLiteDatabase.execSQL("ALTER TABLE " + TABLE_NAME_ITEMS + " ADD COLUMN "
+                            + ItemsDbColumns.DERIVE_NEXT_ATTEMPT + " INTEGER DEFAULT 0;");
+
+                    //Recreate the view so it has the new columns too:
+                    dropView(sqLiteDatabase, VIEW_NAME_ITEMS);
+                    createItemsView(sqLiteDatabase);
+                    break;
+                }
+
+                default: {
+                    throw new SQLiteException("upgradeFrom(): No migration from database version " + version);
                 }
             }
         }
 
+        /**
+         * Recreate all the tables with the current schema,
+         * copying the data from any columns that still exist.
+         * The rows keep their IDs, so the items still refer to their cached files.
+         */
+        private static void rebuildTables(final SQLiteDatabase sqLiteDatabase) {
+            final String[] tableNames = {TABLE_NAME_ITEMS, TABLE_NAME_IMAGES,
+                    TABLE_NAME_CLASSIFICATION_ANSWERS, TABLE_NAME_CLASSIFICATION_CHECKBOXES,
+                    TABLE_NAME_REMOVED_FILES};
+
+            //The view would otherwise refer to the renamed tables:
+            dropView(sqLiteDatabase, VIEW_NAME_ITEMS);
+
+            //The triggers would otherwise move to the renamed items table.
+            //The item counts are then recreated, and counted again as the items are copied.
+            dropItemStatsTable(sqLiteDatabase);
+
+            //Move the old tables out of the way.
+            //Their indexes keep their names, so drop them before we create the new ones.
+            final List<String> oldTableNames = new ArrayList<>();
+            for (final String tableName : tableNames) {
+                if (!getTableExists(sqLiteDatabase, tableName)) {
+                    continue;
+                }
+
+                dropIndexesForTable(sqLiteDatabase, tableName);
+
+                final String oldTableName = tableName + TABLE_NAME_SUFFIX_OLD;
+                dropTable(sqLiteDatabase, oldTableName);
+                sqLiteDatabase.execSQL("ALTER TABLE " + tableName + " RENAME TO " + oldTableName + ";");
+                oldTableNames.add(tableName);
+            }
+
+            createTable(sqLiteDatabase);
+
+            //The items are copied first, because the images refer to them.
+            for (final String tableName : oldTableNames) {
+                copyColumns(sqLiteDatabase, tableName + TABLE_NAME_SUFFIX_OLD, tableName);
+            }
+
+            //Older versions had the files table, and the location columns in the items table,
+            //instead of the images table:
+            if (oldTableNames.contains(TABLE_NAME_ITEMS) && getTableExists(sqLiteDatabase, TABLE_NAME_FILES)) {
+                copyImagesFromFiles(sqLiteDatabase, TABLE_NAME_ITEMS + TABLE_NAME_SUFFIX_OLD);
+                dropTable(sqLiteDatabase, TABLE_NAME_FILES);
+            }
+
+            for (final String tableName : oldTableNames) {
+                dropTable(sqLiteDatabase, tableName + TABLE_NAME_SUFFIX_OLD);
+            }
+
+            //The old files table might not have had the sizes:
+            recordAllFileSizes(sqLiteDatabase, TABLE_NAME_IMAGES, ImagesDbColumns.BYTES);
+        }
+
+        /**
+         * Copy the data from any columns that exist in both tables.
+         * The rows keep their IDs.
+         */
+        private static void copyColumns(final SQLiteDatabase sqLiteDatabase, final String fromTableName,
+                                        final String toTableName) {
+            final List<String> columnNames = getColumnNames(sqLiteDatabase, fromTableName);
+            columnNames.retainAll(getColumnNames(sqLiteDatabase, toTableName));
+            if (columnNames.isEmpty()) {
+                return;
+            }
+
+            final String columns = TextUtils.join(", ", columnNames);
+            sqLiteDatabase.execSQL("INSERT INTO " + toTableName + " (" + columns + ")" +
+                    " SELECT " + columns + " FROM " + fromTableName + ";");
+        }
+
+        /**
+         * Create the images rows from the location columns of the old items table,
+         * and the files table that those columns referred to.
+         * Each images row keeps the ID of its files row,
+         * so the content URIs of the cached files don't change.
+         */
+        private static void copyImagesFromFiles(final SQLiteDatabase sqLiteDatabase, final String oldItemsTableName) {
+            final List<String> itemsColumnNames = getColumnNames(sqLiteDatabase, oldItemsTableName);
+            final List<String> filesColumnNames = getColumnNames(sqLiteDatabase, TABLE_NAME_FILES);
+
+            //The files table didn't have these before version 23:
+            final String size = filesColumnNames.contains(FilesDbColumns.SIZE) ?
+                    TABLE_NAME_FILES + "." + FilesDbColumns.SIZE : "0";
+            final String lastAccessed = filesColumnNames.contains(FilesDbColumns.LAST_ACCESSED) ?
+                    TABLE_NAME_FILES + "." + FilesDbColumns.LAST_ACCESSED : "0";
+
+            final String fileUriPrefix = DatabaseUtils.sqlEscapeString(Item.FILE_URI.toString() + "/");
+            for (final ItemImageColumns imageColumns : ITEM_IMAGE_COLUMNS) {
+                if (!itemsColumnNames.contains(imageColumns.uri)) {
+                    continue;
+                }
+
+                sqLiteDatabase.execSQL("INSERT INTO " + TABLE_NAME_IMAGES + " (" +
+                        BaseColumns._ID + ", " +
+                        ImagesDbColumns.ITEM_ID + ", " +
+                        ImagesDbColumns.TYPE + ", " +
+                        ImagesDbColumns.REMOTE_URI + ", " +
+                        ImagesDbColumns.FILE_DATA + ", " +
+                        ImagesDbColumns.STATE + ", " +
+                        ImagesDbColumns.BYTES + ", " +
+                        ImagesDbColumns.LAST_ACCESSED + ")" +
+                        " SELECT " +
+                        TABLE_NAME_FILES + "." + BaseColumns._ID + ", " +
+                        oldItemsTableName + "." + BaseColumns._ID + ", " +
+                        imageColumns.type + ", " +
+                        oldItemsTableName + "." + imageColumns.uriRemote + ", " +
+                        TABLE_NAME_FILES + "." + FilesDbColumns.FILE_DATA + ", " +
+                        oldItemsTableName + "." + imageColumns.downloaded + ", " +
+                        size + ", " +
+                        lastAccessed +
+                        " FROM " + oldItemsTableName +
+                        " JOIN " + TABLE_NAME_FILES + " ON (" +
+                        oldItemsTableName + "." + imageColumns.uri + " = " +
+                        fileUriPrefix + " || " + TABLE_NAME_FILES + "." + BaseColumns._ID + ");");
+            }
+        }
+
+        private static boolean getTableExists(final SQLiteDatabase sqLiteDatabase, final String tableName) {
+            return DatabaseUtils.queryNumEntries(sqLiteDatabase, "sqlite_master",
+                    "type = 'table' AND name = ?", new String[]{tableName}) > 0;
+        }
+
+        private static List<String> getColumnNames(final SQLiteDatabase sqLiteDatabase, final String tableName) {
+            final List<String> result = new ArrayList<>();
+            final Cursor c = sqLiteDatabase.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+            final int columnIndex = c.getColumnIndex("name");
+            while (c.moveToNext()) {
+                result.add(c.getString(columnIndex));
+            }
+
+            c.close();
+            return result;
+        }
+
+        private static void dropIndexesForTable(final SQLiteDatabase sqLiteDatabase, final String tableName) {
+            //The automatic indexes, for UNIQUE constraints, cannot be dropped.
+            final List<String> indexNames = new ArrayList<>();
+            final Cursor c = sqLiteDatabase.query("sqlite_master", new String[]{"name"},
+                    "type = 'index' AND tbl_name = ? AND name NOT LIKE 'sqlite_autoindex%'", new String[]{tableName},
+                    null, null, null);
+            while (c.moveToNext()) {
+                indexNames.add(c.getString(0));
+            }
+
+            c.close();
+
+            for (final String indexName : indexNames) {
+                sqLiteDatabase.execSQL("DROP INDEX IF EXISTS " + indexName + ";");
+            }
+        }
+
+        /**
+         * Store the actual sizes of the existing files, which were cached before we stored their sizes.
+         *
+         * @param tableName The files table, or the images table which replaced it.
+         */
+        private static void recordAllFileSizes(final SQLiteDatabase sqLiteDatabase, final String tableName,
+                                               final String sizeColumnName) {
+            final Cursor c = sqLiteDatabase.query(tableName,
+                    new String[]{BaseColumns._ID, URI_PART_DATA},
+                    null, null, null, null, null);
+            while (c.moveToNext()) {
+                final String realFileUri = c.getString(1);
+                if (TextUtils.isEmpty(realFileUri)) {
+                    continue;
+                }
+
+                final ContentValues values = new ContentValues();
+                values.put(sizeColumnName, new File(realFileUri).length());
+                sqLiteDatabase.update(tableName, values,
+                        BaseColumns._ID + " = ?", new String[]{Long.toString(c.getLong(0))});
+            }
+
+            c.close();
+        }
+
         private static void dropTable(final SQLiteDatabase sqLiteDatabase, final String tableName) {
             sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " +
                     tableName + ";");
         }
 
-        private static void createTable(final SQLiteDatabase sqLiteDatabase) {
-            String qs = "CREATE TABLE " + TABLE_NAME_ITEMS + " (" +
-                    BaseColumns._ID +
-                    " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    ItemsDbColumns.DONE + " INTEGER DEFAULT 0, " +
-                    ItemsDbColumns.UPLOADED + " INTEGER DEFAULT 0, " +
-                    ItemsDbColumns.SUBJECT_ID + " TEXT, " +
-                    ItemsDbColumns.ZOONIVERSE_ID + " TEXT, " +
-                    ItemsDbColumns.GROUP_ID + " TEXT, " +
-                    ItemsDbColumns.LOCATION_STANDARD_URI_REMOTE + " TEXT, " +
-                    ItemsDbColumns.LOCATION_STANDARD_URI + " TEXT, " +
-                    ItemsDbColumns.LOCATION_STANDARD_DOWNLOADED + " INTEGER DEFAULT 0, " +
-                    ItemsDbColumns.LOCATION_THUMBNAIL_URI_REMOTE + " TEXT, " +
-                    ItemsDbColumns.LOCATION_THUMBNAIL_URI + " TEXT, " +
-                    ItemsDbColumns.LOCATION_THUMBNAIL_DOWNLOADED + " INTEGER DEFAULT 0, " +
-                    ItemsDbColumns.LOCATION_INVERTED_URI_REMOTE + " TEXT, " +
-                    ItemsDbColumns.LOCATION_INVERTED_URI + " TEXT, " +
-                    ItemsDbColumns.LOCATION_INVERTED_DOWNLOADED + " INTEGER DEFAULT 0, " +
-                    ItemsDbColumns.FAVORITE + " INTEGER DEFAULT 0, " +
-                    ItemsDbColumns.DATETIME_DONE + " TEXT)";
-            sqLiteDatabase.execSQL(qs);
-            createIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.SUBJECT_ID);
-            createIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.UPLOADED);
-            createIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.DONE);
-            createIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.DATETIME_DONE);
-            createIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.LOCATION_STANDARD_DOWNLOADED);
-            createIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.LOCATION_THUMBNAIL_DOWNLOADED);
-            createIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.LOCATION_INVERTED_DOWNLOADED);
-
-
-            qs = "CREATE TABLE " + TABLE_NAME_FILES + " (" +
-                    BaseColumns._ID +
-                    " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    FilesDbColumns.FILE_DATA + " TEXT);";
-            sqLiteDatabase.execSQL(qs);
+        private static void dropView(final SQLiteDatabase sqLiteDatabase, final String viewName) {
+            sqLiteDatabase.execSQL("DROP VIEW IF EXISTS " +
+                    viewName + ";");
+        }
 
+        private static void createTable(final SQLiteDatabase sqLiteDatabase) {
+            createItemsTable(sqLiteDatabase);
+            createItemStatsTable(sqLiteDatabase);
+            createImagesTable(sqLiteDatabase);
+            createItemsView(sqLiteDatabase);
 
-            qs = "CREATE TABLE " + TABLE_NAME_CLASSIFICATION_ANSWERS + " (" +
+            String qs = "CREATE TABLE " + TABLE_NAME_CLASSIFICATION_ANSWERS + " (" +
                     BaseColumns._ID +
                     " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                     ClassificationAnswersDbColumns.SEQUENCE + " INTEGER DEFAULT 0, " +
@@ -1250,6 +2405,170 @@ public class ItemsContentProvider extends ContentProvider {
             sqLiteDatabase.execSQL(qs);
             createIndex(sqLiteDatabase, TABLE_NAME_CLASSIFICATION_CHECKBOXES, ClassificationCheckboxesDbColumns.ITEM_ID);
             createIndex(sqLiteDatabase, TABLE_NAME_CLASSIFICATION_CHECKBOXES, ClassificationCheckboxesDbColumns.QUESTION_ID);
+
+            createRemovedFilesTable(sqLiteDatabase);
+        }
+
+        private static void createRemovedFilesTable(final SQLiteDatabase sqLiteDatabase) {
+            final String qs = "CREATE TABLE " + TABLE_NAME_REMOVED_FILES + " (" +
+                    BaseColumns._ID +
+                    " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    RemovedFilesDbColumns.FILE_DATA + " TEXT)";
+            sqLiteDatabase.execSQL(qs);
+        }
+
+        /**
+         * Create the single row of item counts,
+         * with triggers that keep it up to date whenever items are added, changed, or removed.
+         * This starts with no items counted.
+         */
+        private static void createItemStatsTable(final SQLiteDatabase sqLiteDatabase) {
+            String qs = "CREATE TABLE " + TABLE_NAME_ITEM_STATS + " (" +
+                    BaseColumns._ID +
+                    " INTEGER PRIMARY KEY, " +
+                    ItemStatsDbColumns.ITEM_COUNT + " INTEGER DEFAULT 0, " +
+                    ItemStatsDbColumns.NOT_DONE_COUNT + " INTEGER DEFAULT 0, " +
+                    ItemStatsDbColumns.UPLOADED_COUNT + " INTEGER DEFAULT 0, " +
+                    ItemStatsDbColumns.OUTSTANDING_COUNT + " INTEGER DEFAULT 0)";
+            sqLiteDatabase.execSQL(qs);
+            sqLiteDatabase.execSQL("INSERT INTO " + TABLE_NAME_ITEM_STATS +
+                    " (" + BaseColumns._ID + ") VALUES (1);");
+
+            qs = "CREATE TRIGGER " + TRIGGER_NAME_ITEM_STATS_INSERT +
+                    " AFTER INSERT ON " + TABLE_NAME_ITEMS +
+                    " BEGIN UPDATE " + TABLE_NAME_ITEM_STATS + " SET " +
+                    ItemStatsDbColumns.ITEM_COUNT + " = " + ItemStatsDbColumns.ITEM_COUNT + " + 1, " +
+                    getItemStatsChanges("NEW", " + ") + "; END;";
+            sqLiteDatabase.execSQL(qs);
+
+            qs = "CREATE TRIGGER " + TRIGGER_NAME_ITEM_STATS_DELETE +
+                    " AFTER DELETE ON " + TABLE_NAME_ITEMS +
+                    " BEGIN UPDATE " + TABLE_NAME_ITEM_STATS + " SET " +
+                    ItemStatsDbColumns.ITEM_COUNT + " = " + ItemStatsDbColumns.ITEM_COUNT + " - 1, " +
+                    getItemStatsChanges("OLD", " - ") + "; END;";
+            sqLiteDatabase.execSQL(qs);
+
+            //Only the done and uploaded columns affect the counts,
+            //so this doesn't run when, for instance, an item is marked as a favorite:
+            qs = "CREATE TRIGGER " + TRIGGER_NAME_ITEM_STATS_UPDATE +
+                    " AFTER UPDATE OF " + ItemsDbColumns.DONE + ", " + ItemsDbColumns.UPLOADED +
+                    " ON " + TABLE_NAME_ITEMS +
+                    " BEGIN UPDATE " + TABLE_NAME_ITEM_STATS + " SET " +
+                    ItemStatsDbColumns.NOT_DONE_COUNT + " = " + ItemStatsDbColumns.NOT_DONE_COUNT +
+                    " + " + getCountExpression(getWhereClauseNotClassified("NEW")) +
+                    " - " + getCountExpression(getWhereClauseNotClassified("OLD")) + ", " +
+                    ItemStatsDbColumns.UPLOADED_COUNT + " = " + ItemStatsDbColumns.UPLOADED_COUNT +
+                    " + " + getCountExpression(getWhereClauseUploaded("NEW")) +
+                    " - " + getCountExpression(getWhereClauseUploaded("OLD")) + ", " +
+                    ItemStatsDbColumns.OUTSTANDING_COUNT + " = " + ItemStatsDbColumns.OUTSTANDING_COUNT +
+                    " + " + getCountExpression(getWhereClauseOutstanding("NEW")) +
+                    " - " + getCountExpression(getWhereClauseOutstanding("OLD")) + "; END;";
+            sqLiteDatabase.execSQL(qs);
+        }
+
+        private static void dropItemStatsTable(final SQLiteDatabase sqLiteDatabase) {
+            sqLiteDatabase.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_NAME_ITEM_STATS_INSERT + ";");
+            sqLiteDatabase.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_NAME_ITEM_STATS_UPDATE + ";");
+            sqLiteDatabase.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_NAME_ITEM_STATS_DELETE + ";");
+            dropTable(sqLiteDatabase, TABLE_NAME_ITEM_STATS);
+        }
+
+        /**
+         * Get the SET clauses that add or subtract the item's contribution to each state's count.
+         *
+         * @param row "NEW" or "OLD".
+         * @param operator " + " or " - ".
+         */
+        private static String getItemStatsChanges(final String row, final String operator) {
+            return ItemStatsDbColumns.NOT_DONE_COUNT + " = " + ItemStatsDbColumns.NOT_DONE_COUNT +
+                    operator + getCountExpression(getWhereClauseNotClassified(row)) + ", " +
+                    ItemStatsDbColumns.UPLOADED_COUNT + " = " + ItemStatsDbColumns.UPLOADED_COUNT +
+                    operator + getCountExpression(getWhereClauseUploaded(row)) + ", " +
+                    ItemStatsDbColumns.OUTSTANDING_COUNT + " = " + ItemStatsDbColumns.OUTSTANDING_COUNT +
+                    operator + getCountExpression(getWhereClauseOutstanding(row));
+        }
+
+        /**
+         * Get an expression that is 1 if the where clause is true for the item, or 0 otherwise,
+         * just as COUNT(*) would count it.
+         * A NULL comparison counts as false.
+         * Use TOTAL() around this to count over the items table.
+         */
+        private static String getCountExpression(final String whereClause) {
+            return "(CASE WHEN " + whereClause + " THEN 1 ELSE 0 END)";
+        }
+
+        private static void createItemsTable(final SQLiteDatabase sqLiteDatabase) {
+            final String qs = "CREATE TABLE " + TABLE_NAME_ITEMS + " (" +
+                    BaseColumns._ID +
+                    " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    ItemsDbColumns.DONE + " INTEGER DEFAULT 0, " +
+                    ItemsDbColumns.UPLOADED + " INTEGER DEFAULT 0, " +
+                    ItemsDbColumns.SUBJECT_ID + " TEXT, " +
+                    ItemsDbColumns.ZOONIVERSE_ID + " TEXT, " +
+                    ItemsDbColumns.GROUP_ID + " TEXT, " +
+                    ItemsDbColumns.FAVORITE + " INTEGER DEFAULT 0, " +
+                    ItemsDbColumns.DATETIME_DONE + " TEXT, " +
+                    ItemsDbColumns.UPLOAD_ATTEMPTS + " INTEGER DEFAULT 0, " +
+                    ItemsDbColumns.UPLOAD_NEXT_ATTEMPT + " INTEGER DEFAULT 0, " +
+                    ItemsDbColumns.DERIVE_ATTEMPTS + " INTEGER DEFAULT 0, " +
+                    ItemsDbColumns.DERIVE_NEXT_ATTEMPT + " INTEGER DEFAULT 0)";
+            sqLiteDatabase.execSQL(qs);
+            createIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.SUBJECT_ID);
+            createItemsQueryIndexes(sqLiteDatabase);
+        }
+
+        private static void createImagesTable(final SQLiteDatabase sqLiteDatabase) {
+            String qs = "CREATE TABLE " + TABLE_NAME_IMAGES + " (" +
+                    BaseColumns._ID +
+                    " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    ImagesDbColumns.ITEM_ID + " INTEGER NOT NULL REFERENCES " +
+                    TABLE_NAME_ITEMS + " (" + BaseColumns._ID + ") ON DELETE CASCADE, " +
+                    ImagesDbColumns.TYPE + " INTEGER NOT NULL, " +
+                    ImagesDbColumns.REMOTE_URI + " TEXT, " +
+                    ImagesDbColumns.FILE_DATA + " TEXT, " +
+                    ImagesDbColumns.STATE + " INTEGER DEFAULT " + IMAGE_STATE_NOT_DOWNLOADED + ", " +
+                    ImagesDbColumns.BYTES + " INTEGER DEFAULT 0, " +
+                    ImagesDbColumns.ETAG + " TEXT, " +
+                    ImagesDbColumns.LAST_ACCESSED + " INTEGER DEFAULT 0)";
+            sqLiteDatabase.execSQL(qs);
+
+            //For the items view's joins, and for deleting an item's images:
+            qs = "CREATE UNIQUE INDEX " + INDEX_NAME_IMAGES_ITEM +
+                    " ON " + TABLE_NAME_IMAGES +
+                    " ( " + ImagesDbColumns.ITEM_ID + ", " + ImagesDbColumns.TYPE + " )";
+            sqLiteDatabase.execSQL(qs);
+        }
+
+        /**
+         * Create the view that provides the items with the columns from their images rows,
+         * with the same column names that the items table had before version 25.
+         */
+        private static void createItemsView(final SQLiteDatabase sqLiteDatabase) {
+            final String fileUriPrefix = DatabaseUtils.sqlEscapeString(Item.FILE_URI.toString() + "/");
+
+            final StringBuilder columns = new StringBuilder(TABLE_NAME_ITEMS + ".*");
+            final StringBuilder joins = new StringBuilder();
+            for (final ItemImageColumns imageColumns : ITEM_IMAGE_COLUMNS) {
+                final String alias = imageColumns.alias;
+                columns.append(", ").append(alias).append(".").append(ImagesDbColumns.REMOTE_URI)
+                        .append(" AS ").append(imageColumns.uriRemote);
+
+                //The content URI, for openFile(), of the image's row:
+                columns.append(", ").append(fileUriPrefix).append(" || ").append(alias).append(".").append(BaseColumns._ID)
+                        .append(" AS ").append(imageColumns.uri);
+                columns.append(", ").append(alias).append(".").append(ImagesDbColumns.STATE)
+                        .append(" AS ").append(imageColumns.downloaded);
+
+                joins.append(" LEFT JOIN ").append(TABLE_NAME_IMAGES).append(" AS ").append(alias)
+                        .append(" ON (").append(alias).append(".").append(ImagesDbColumns.ITEM_ID)
+                        .append(" = ").append(TABLE_NAME_ITEMS).append(".").append(BaseColumns._ID)
+                        .append(" AND ").append(alias).append(".").append(ImagesDbColumns.TYPE)
+                        .append(" = ").append(imageColumns.type).append(")");
+            }
+
+            sqLiteDatabase.execSQL("CREATE VIEW " + VIEW_NAME_ITEMS + " AS SELECT " + columns +
+                    " FROM " + TABLE_NAME_ITEMS + joins + ";");
         }
 
         private static void createIndex(final SQLiteDatabase sqLiteDatabase, final String tableName, final String fieldName) {
@@ -1259,6 +2578,76 @@ public class ItemsContentProvider extends ContentProvider {
             sqLiteDatabase.execSQL(qs);
         }
 
+        private static void dropIndex(final SQLiteDatabase sqLiteDatabase, final String tableName, final String fieldName) {
+            sqLiteDatabase.execSQL("DROP INDEX IF EXISTS " +
+                    tableName + "_" + fieldName + "_index;");
+        }
+
+        /**
+         * Create an index for each of the frequent queries on the items table.
+         * Each is a partial index containing only the rows that the query can return,
+         * so inserts and updates of other rows don't need to change it.
+         * The low-cardinality done, uploaded and downloaded flags are not indexed by themselves.
+         */
+        private static void createItemsQueryIndexes(final SQLiteDatabase sqLiteDatabase) {
+            if (!getSupportsPartialIndexes(sqLiteDatabase)) {
+                //Older versions of SQLite (before Android 5.0) can't use partial indexes,
+                //so use the nearest composite indexes:
+                createIndex(sqLiteDatabase, INDEX_NAME_ITEMS_NEXT,
+                        ItemsDbColumns.DONE + ", " + BaseColumns._ID, null);
+                createIndex(sqLiteDatabase, INDEX_NAME_ITEMS_UPLOADED_BY_DATE,
+                        ItemsDbColumns.UPLOADED + ", " + ItemsDbColumns.DATETIME_DONE, null);
+                createIndex(sqLiteDatabase, INDEX_NAME_ITEMS_OUTSTANDING_BY_DATE,
+                        ItemsDbColumns.DONE + ", " + ItemsDbColumns.UPLOADED + ", " + ItemsDbColumns.DATETIME_DONE, null);
+                return;
+            }
+
+            //The "next" item: done != 1 ... ORDER BY _id LIMIT 1:
+            //The images' downloaded states are in the images table, so this index can't check them.
+            createIndex(sqLiteDatabase, INDEX_NAME_ITEMS_NEXT,
+                    BaseColumns._ID, WHERE_CLAUSE_NOT_CLASSIFIED);
+
+            //The oldest uploaded items, to remove: uploaded == 1 ORDER BY dateTimeDone:
+            createIndex(sqLiteDatabase, INDEX_NAME_ITEMS_UPLOADED_BY_DATE,
+                    ItemsDbColumns.DATETIME_DONE, WHERE_CLAUSE_UPLOADED);
+
+            //The classifications to upload, oldest first: done == 1 AND uploaded != 1 ORDER BY dateTimeDone:
+            createIndex(sqLiteDatabase, INDEX_NAME_ITEMS_OUTSTANDING_BY_DATE,
+                    ItemsDbColumns.DATETIME_DONE, WHERE_CLAUSE_OUTSTANDING);
+        }
+
+        private static void createIndex(final SQLiteDatabase sqLiteDatabase, final String indexName,
+                                        final String fieldNames, @Nullable final String whereClause) {
+            String qs = "CREATE INDEX IF NOT EXISTS " + indexName +
+                    " ON " + TABLE_NAME_ITEMS +
+                    " ( " + fieldNames + " )";
+            if (!TextUtils.isEmpty(whereClause)) {
+                qs += " WHERE " + whereClause;
+            }
+
+            sqLiteDatabase.execSQL(qs);
+        }
+
+        /**
+         * Partial indexes need SQLite 3.8.0, which Android has had since Android 5.0.
+         */
+        private static boolean getSupportsPartialIndexes(final SQLiteDatabase sqLiteDatabase) {
+            final String version = DatabaseUtils.stringForQuery(sqLiteDatabase, "SELECT sqlite_version()", null);
+            if (TextUtils.isEmpty(version)) {
+                return false;
+            }
+
+            final String[] parts = version.split("\\.");
+            try {
+                final int major = Integer.parseInt(parts[0]);
+                final int minor = (parts.length > 1) ? Integer.parseInt(parts[1]) : 0;
+                return (major > 3) || ((major == 3) && (minor >= 8));
+            } catch (final NumberFormatException e) {
+                Log.error("getSupportsPartialIndexes(): Could not parse the SQLite version: " + version, e);
+                return false;
+            }
+        }
+
         private static class ItemsDbColumns implements BaseColumns {
             //Specific to our app:
             static final String DONE = "done"; //1 or 0. Whether the user has classified it already.
@@ -1268,22 +2657,53 @@ public class ItemsContentProvider extends ContentProvider {
             static final String SUBJECT_ID = "subjectId";
             static final String ZOONIVERSE_ID = "zooniverseId";
             static final String GROUP_ID = "groupId";
+            //These are in the items view, from the images table.
+            //Before version 25, they were in the items table.
             static final String LOCATION_STANDARD_URI_REMOTE = "locationStandardUriRemote"; //The original file on the remote server.
-            static final String LOCATION_STANDARD_URI = "locationStandardUri"; //The content URI for a file in the files table.
+            static final String LOCATION_STANDARD_URI = "locationStandardUri"; //The content URI for a file in the images table.
             static final String LOCATION_STANDARD_DOWNLOADED = "locationStandardDownloaded"; //1 or 0. Whether the file has finished downloading.
             static final String LOCATION_THUMBNAIL_URI_REMOTE = "locationThumbnailUriRemote"; //The original file on the remote server.
-            static final String LOCATION_THUMBNAIL_URI = "locationThumbnailUri"; //The content URI for a file in the files table.
+            static final String LOCATION_THUMBNAIL_URI = "locationThumbnailUri"; //The content URI for a file in the images table.
             static final String LOCATION_THUMBNAIL_DOWNLOADED = "locationThumbnailDownloaded"; //1 or 0. Whether the file has finished downloading.
             static final String LOCATION_INVERTED_URI_REMOTE = "locationInvertedUriRemote"; //The original file on the remote server.
-            static final String LOCATION_INVERTED_URI = "locationInvertedUri"; //The content URI for a file in the files table.
+            static final String LOCATION_INVERTED_URI = "locationInvertedUri"; //The content URI for a file in the images table.
             static final String LOCATION_INVERTED_DOWNLOADED = "locationInvertedDownloaded"; //1 or 0. Whether the file has finished downloading.
             //            static final String LOCATIONS_REQUESTED_DATETIME = "locationsRequestedDateTime"; //When we last tried to download the images. An ISO8601 string ("YYYY-MM-DD HH:MM:SS.SSS")
             static final String FAVORITE = "favorite"; //1 or 0. Whether the user has marked this as a favorite.
             static final String DATETIME_DONE = "dateTimeDone"; //An ISO8601 string ("YYYY-MM-DD HH:MM:SS.SSS").
+            static final String UPLOAD_ATTEMPTS = "uploadAttempts"; //The number of failed attempts to upload the classification.
+            static final String UPLOAD_NEXT_ATTEMPT = "uploadNextAttempt"; //Milliseconds since the epoch. Don't try to upload again before this time.
+            static final String DERIVE_ATTEMPTS = "deriveAttempts"; //The number of failed attempts to create the thumbnail and inverted images.
+            static final String DERIVE_NEXT_ATTEMPT = "deriveNextAttempt"; //Milliseconds since the epoch. Don't try to create those images again before this time.
+        }
+
+        private static class ImagesDbColumns implements BaseColumns {
+            private static final String ITEM_ID = "itemId";
+            private static final String TYPE = "type"; //One of the IMAGE_TYPE_* values.
+            private static final String REMOTE_URI = "remoteUri"; //The original file on the remote server.
+            private static final String FILE_DATA = URI_PART_DATA; //The real URI of the local file.
+            private static final String STATE = "state"; //One of the IMAGE_STATE_* values.
+            private static final String BYTES = "bytes"; //The size of the file in bytes, when it was last written.
+            private static final String ETAG = "etag"; //The remote file's HTTP ETag, if known, to check whether it has changed.
+            private static final String LAST_ACCESSED = "lastAccessed"; //Milliseconds since the epoch. When the file was last written or read.
         }
 
+        //Replaced by ImagesDbColumns in version 25. Only used by the migrations.
         private static class FilesDbColumns implements BaseColumns {
             private static final String FILE_DATA = URI_PART_DATA; //The real URI
+            private static final String SIZE = "size"; //The size of the file in bytes, when it was last written.
+            private static final String LAST_ACCESSED = "lastAccessed"; //Milliseconds since the epoch. When the file was last written or read.
+        }
+
+        private static class ItemStatsDbColumns implements BaseColumns {
+            private static final String ITEM_COUNT = "itemCount";
+            private static final String NOT_DONE_COUNT = "notDoneCount"; //done != 1
+            private static final String UPLOADED_COUNT = "uploadedCount"; //uploaded == 1
+            private static final String OUTSTANDING_COUNT = "outstandingCount"; //done == 1 AND uploaded != 1
+        }
+
+        private static class RemovedFilesDbColumns implements BaseColumns {
+            private static final String FILE_DATA = URI_PART_DATA; //The real URI of the local file.
         }
 
         private static class ClassificationAnswersDbColumns implements BaseColumns {
@@ -1302,22 +2722,64 @@ public class ItemsContentProvider extends ContentProvider {
         }
     }
 
-    /** Ask the SyncAdapter to do its work.
+    /** Ask the SyncAdapter to do its work,
+     * or do that at the end of the batch, if we are in applyBatch() or bulkInsert().
      * We call this when we think it's likely that some work is necessary.
+     *
+     * @param reasons A combination of the SyncScheduler.REASON_* flags, so the SyncAdapter only does that work.
      */
-    private static void requestSync() {
-        final Bundle extras = new Bundle();
-        extras.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
-
-        //Ask the framework to run our SyncAdapter.
-        //We call this far too often,
-        //but we trust the SyncAdapter system to not actually do the sync too often.
-        //That seems to work fine as long as the SyncAdapter is in its own process.
-        //See android:process=":sync" in AndroidManifest.xml
-        ContentResolver.requestSync(null, Item.AUTHORITY, extras);
+    private void requestSync(final int reasons) {
+        final BatchState batchState = mBatchState.get();
+        if (batchState != null) {
+            batchState.syncReasons |= reasons;
+            return;
+        }
+
+        requestSyncNow(reasons, false);
+    }
+
+    /**
+     * @param expedited Ask the framework to run the sync before other pending syncs,
+     * because the user is waiting for it.
+     */
+    private static void requestSyncNow(final int reasons, final boolean expedited) {
+        //The SyncScheduler combines the requests from a burst of changes,
+        //such as several image downloads, so we don't ask the framework for a sync after every write.
+        SyncScheduler.requestSync(null, reasons, expedited);
+    }
+
+    /**
+     * Get the work that the SyncAdapter might need to do after these changes to items.
+     */
+    private static int getSyncReasonsForItemChanges(final ContentValues values) {
+        int reasons = 0;
+        if (values == null) {
+            return reasons;
+        }
+
+        if (values.containsKey(Item.Columns.DONE)) {
+            //There is a classification to upload, and one less subject to classify:
+            reasons |= SyncScheduler.REASON_UPLOAD_PENDING | SyncScheduler.REASON_NEED_SUBJECTS;
+        }
+
+        if (values.containsKey(Item.Columns.UPLOADED)) {
+            //The uploaded items might now be old enough, or numerous enough, to remove:
+            reasons |= SyncScheduler.REASON_PRUNE;
+        }
+
+        return reasons;
     }
 
     private static class UriParts {
         public String itemId = null;
     }
+
+    /**
+     * What happened during a call to applyBatch() or bulkInsert(),
+     * so we can respond just once at the end.
+     */
+    private static class BatchState {
+        public final Set<Uri> changedUris = new HashSet<>();
+        public int syncReasons = 0;
+    }
 }
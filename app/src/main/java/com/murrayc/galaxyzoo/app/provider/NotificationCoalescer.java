@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the change notifications from ItemsContentProvider,
+ * and sends them after a short quiet period, without duplicates,
+ * so a burst of changes, such as the image downloads for several subjects,
+ * makes the observers (such as the ListFragment's loader) re-query just once.
+ * If there are many distinct URIs, this sends one notification about their common ancestor instead.
+ *
+ * The provider is used from several threads, so this is thread-safe.
+ *
+ * This is only public so we can test it.
+ */
+@VisibleForTesting
+public final class NotificationCoalescer {
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    //These are guarded by this.
+    private final Set<Uri> mPendingUris = new LinkedHashSet<>();
+    private long mFirstPendingTime = 0;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public NotificationCoalescer(@NonNull final ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Notify about a change to this URI, after a short delay,
+     * along with any other changes in the meantime.
+     */
+    public void add(@NonNull final Uri uri) {
+        synchronized (this) {
+            final long now = SystemClock.uptimeMillis();
+            if (mPendingUris.isEmpty()) {
+                mFirstPendingTime = now;
+            }
+
+            mPendingUris.add(uri);
+
+            //Wait for a quiet period, but don't let a long burst delay the notification forever:
+            final long deadline = mFirstPendingTime + Config.NOTIFICATION_COALESCE_MAXIMUM_DELAY_MS;
+            mHandler.removeCallbacks(mFlushRunnable);
+            mHandler.postAtTime(mFlushRunnable,
+                    Math.min(now + Config.NOTIFICATION_COALESCE_DELAY_MS, deadline));
+        }
+    }
+
+    /**
+     * Send the pending notifications now, if there are any.
+     */
+    public void flush() {
+        final List<Uri> uris;
+        synchronized (this) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            uris = getUrisToNotify(mPendingUris);
+            mPendingUris.clear();
+        }
+
+        for (final Uri uri : uris) {
+            //Don't let this ask for an upload sync (syncToNetwork), as notifyChange(uri, null) would,
+            //because our SyncAdapter supports uploading, and that sync would not have our
+            //SyncScheduler reasons, so it would do all its work after every local change.
+            //We ask for syncs, with reasons, via SyncScheduler instead.
+            mResolver.notifyChange(uri, null, false);
+        }
+    }
+
+    /**
+     * Get the distinct URIs, leaving out any URI whose ancestor is also there,
+     * because observers of a URI's descendants, such as a single item, are notified too.
+     * If there are still too many, get just their common ancestor.
+     */
+    @NonNull
+    static List<Uri> getUrisToNotify(@NonNull final Collection<Uri> uris) {
+        final List<Uri> result = new ArrayList<>();
+        for (final Uri uri : uris) {
+            if (!hasAncestorIn(uri, uris)) {
+                result.add(uri);
+            }
+        }
+
+        if (result.size() <= Config.NOTIFICATION_COALESCE_MAXIMUM_URIS) {
+            return result;
+        }
+
+        final List<Uri> ancestor = new ArrayList<>();
+        ancestor.add(getCommonAncestor(result));
+        return ancestor;
+    }
+
+    /**
+     * Whether any of the other URIs is a parent, or grandparent, etc, of this URI.
+     */
+    private static boolean hasAncestorIn(@NonNull final Uri uri, @NonNull final Collection<Uri> others) {
+        final List<String> segments = uri.getPathSegments();
+        for (final Uri other : others) {
+            if (!TextUtils.equals(uri.getScheme(), other.getScheme()) ||
+                    !TextUtils.equals(uri.getAuthority(), other.getAuthority())) {
+                continue;
+            }
+
+            final List<String> otherSegments = other.getPathSegments();
+            if (otherSegments.size() >= segments.size()) {
+                continue;
+            }
+
+            if (segments.subList(0, otherSegments.size()).equals(otherSegments)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the deepest URI that is, or is a parent of, all the URIs.
+     * For instance, for several item URIs, this is Item.ITEMS_URI.
+     */
+    @Nullable
+    static Uri getCommonAncestor(@NonNull final Collection<Uri> uris) {
+        Uri first = null;
+        List<String> segments = null;
+        for (final Uri uri : uris) {
+            if (first == null) {
+                first = uri;
+                segments = new ArrayList<>(uri.getPathSegments());
+                continue;
+            }
+
+            if (!TextUtils.equals(first.getScheme(), uri.getScheme()) ||
+                    !TextUtils.equals(first.getAuthority(), uri.getAuthority())) {
+                //This doesn't happen, because we only notify about our own URIs.
+                segments.clear();
+                continue;
+            }
+
+            final List<String> otherSegments = uri.getPathSegments();
+            int i = 0;
+            while (i < segments.size() && i < otherSegments.size() &&
+                    TextUtils.equals(segments.get(i), otherSegments.get(i))) {
+                i++;
+            }
+
+            segments = segments.subList(0, i);
+        }
+
+        if (first == null) {
+            return null;
+        }
+
+        final Uri.Builder builder = new Uri.Builder()
+                .scheme(first.getScheme())
+                .authority(first.getAuthority());
+        for (final String segment : segments) {
+            builder.appendPath(segment);
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider;
+
+import android.accounts.Account;
+import android.content.ContentResolver;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import com.murrayc.galaxyzoo.app.Log;
+
+/**
+ * Asks the framework to run the SyncAdapter, combining the requests made within a short time
+ * into one request, with the reasons for all of them,
+ * so a burst of changes, such as several image downloads, causes just one sync,
+ * and the sync only does the work that is needed.
+ *
+ * The requests are combined per process. This is thread-safe.
+ */
+public final class SyncScheduler {
+
+    /**
+     * The sync extras key for the reasons, as a combination of the REASON_* flags.
+     * A sync without this, such as a periodic sync, does all the work.
+     */
+    public static final String EXTRA_SYNC_REASONS = "syncReasons";
+
+    //We need more subjects to classify.
+    public static final int REASON_NEED_SUBJECTS = 1;
+    //Some images might not have been downloaded yet.
+    public static final int REASON_DOWNLOAD_IMAGES = 1 << 1;
+    //Some classifications might need to be uploaded.
+    public static final int REASON_UPLOAD_PENDING = 1 << 2;
+    //Old subjects, or cached images, might need to be removed.
+    public static final int REASON_PRUNE = 1 << 3;
+    //The cached images might have been deleted by the system or by the user.
+    public static final int REASON_CHECK_CACHE = 1 << 4;
+
+    public static final int REASONS_ALL = REASON_NEED_SUBJECTS | REASON_DOWNLOAD_IMAGES |
+            REASON_UPLOAD_PENDING | REASON_PRUNE | REASON_CHECK_CACHE;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    //These are guarded by SyncScheduler.class.
+    private static int sPendingReasons = 0;
+    private static Account sPendingAccount = null;
+
+    private static final Runnable sFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush(false);
+        }
+    };
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Ask for a sync soon, along with any other requests in the meantime.
+     *
+     * @param account The account to sync, or null for all accounts.
+     * @param reasons A combination of the REASON_* flags.
+     * @param expedited Ask for the sync now, and ask the framework to run it before other pending syncs,
+     * because the user is waiting for it.
+     */
+    public static void requestSync(@Nullable final Account account, final int reasons, final boolean expedited) {
+        if (reasons == 0) {
+            return;
+        }
+
+        synchronized (SyncScheduler.class) {
+            final boolean scheduled = (sPendingReasons != 0);
+            sPendingReasons |= reasons;
+            if (account != null) {
+                sPendingAccount = account;
+            }
+
+            if (expedited) {
+                sHandler.removeCallbacks(sFlushRunnable);
+            } else {
+                //The window starts with the first request, so a long burst doesn't delay the sync forever:
+                if (!scheduled) {
+                    sHandler.postDelayed(sFlushRunnable, Config.SYNC_REQUEST_COALESCE_DELAY_MS);
+                }
+
+                return;
+            }
+        }
+
+        flush(true);
+    }
+
+    public static void requestSync(final int reasons) {
+        requestSync(null, reasons, false);
+    }
+
+    /**
+     * Get the reasons for this sync from its extras.
+     */
+    public static int getReasons(@Nullable final Bundle extras) {
+        if (extras == null || !extras.containsKey(EXTRA_SYNC_REASONS)) {
+            return REASONS_ALL;
+        }
+
+        return extras.getInt(EXTRA_SYNC_REASONS);
+    }
+
+    private static void flush(final boolean expedited) {
+        final int reasons;
+        final Account account;
+        synchronized (SyncScheduler.class) {
+            reasons = sPendingReasons;
+            account = sPendingAccount;
+            sPendingReasons = 0;
+            sPendingAccount = null;
+        }
+
+        if (reasons == 0) {
+            return;
+        }
+
+        final Bundle extras = new Bundle();
+        extras.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        if (expedited) {
+            extras.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        }
+        extras.putInt(EXTRA_SYNC_REASONS, reasons);
+
+        Log.info("SyncScheduler.flush(): Requesting sync with reasons: " + reasons);
+
+        //Ask the framework to run our SyncAdapter.
+        //That seems to work fine as long as the SyncAdapter is in its own process.
+        //See android:process=":sync" in AndroidManifest.xml
+        ContentResolver.requestSync(account, Item.AUTHORITY, extras);
+    }
+}
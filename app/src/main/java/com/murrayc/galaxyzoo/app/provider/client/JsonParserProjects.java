@@ -2,149 +2,147 @@ package com.murrayc.galaxyzoo.app.provider.client;
 
 import android.support.annotation.Nullable;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-
-import java.lang.reflect.Type;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 public class JsonParserProjects {
-    /** A custom GSON deserializer,
-     * so we can create Project objects using the constructor.
-     * We want to do so Project can remain an immutable class.
+    /** A streaming GSON TypeAdapter,
+     * so we can create Project objects using the constructor,
+     * which reads just the fields that Project needs, and skips the rest,
+     * without building a tree of JsonElements for the whole response.
+     * This writes just those fields too.
+     * Use this via nullSafe(), which reads and writes a null response.
      */
-    static class ProjectsResponseDeserializer implements JsonDeserializer<ZooniverseClient.ProjectsResponse> {
-        public ZooniverseClient.ProjectsResponse deserialize(final JsonElement json, final Type typeOfT, final JsonDeserializationContext context)
-                throws JsonParseException {
-            final JsonObject jsonObject = json.getAsJsonObject();
-            if (jsonObject == null) {
-                return null;
-            }
-
-            final JsonArray jsonSubjects = jsonObject.getAsJsonArray("projects");
-            if (jsonSubjects == null) {
-                return null;
-            }
-
-            // Parse each project (usually just one):
-            final List<ZooniverseClient.Project> projects = new ArrayList<>();
-            for (final JsonElement jsonSubject : jsonSubjects) {
-                final JsonObject asObject = jsonSubject.getAsJsonObject();
-                final ZooniverseClient.Project workflow = deserializeProjectFromJsonObject(asObject);
-                projects.add(workflow);
+    static class ProjectsResponseTypeAdapter extends TypeAdapter<ZooniverseClient.ProjectsResponse> {
+        @Override
+        public void write(final JsonWriter out, final ZooniverseClient.ProjectsResponse value) throws IOException {
+            out.beginObject();
+            out.name("projects");
+            out.beginArray();
+            if (value.projects != null) {
+                for (final ZooniverseClient.Project project : value.projects) {
+                    writeProject(out, project);
+                }
             }
-
-            final ZooniverseClient.ProjectsResponse result = new ZooniverseClient.ProjectsResponse(projects);
-            return result;
+            out.endArray();
+            out.endObject();
         }
 
-        @Nullable
-        private ZooniverseClient.Project deserializeProjectFromJsonObject(JsonObject jsonObject) {
-            final String id = JsonUtils.getString(jsonObject, "id");
-            final String displayName =  JsonUtils.getString(jsonObject, "display_name");
+        private static void writeProject(final JsonWriter out, final ZooniverseClient.Project project) throws IOException {
+            out.beginObject();
+            out.name("id").value(project.id());
+            out.name("display_name").value(project.displayName());
 
-            List<String> workflowIds = null;
-            List<String> activeWorkflowIds = null;
-
-            final JsonObject jsonObjectLinks = jsonObject.getAsJsonObject("links");
-            if (jsonObjectLinks != null) {
-                workflowIds = JsonUtils.listOfStringsFromJsonArray(jsonObjectLinks, "workflows");
-                activeWorkflowIds = JsonUtils.listOfStringsFromJsonArray(jsonObjectLinks, "active_workflows");
-            }
+            out.name("links");
+            out.beginObject();
+            JsonUtils.writeListOfStrings(out, "workflows", project.workflowIds());
+            JsonUtils.writeListOfStrings(out, "active_workflows", project.activeWorkflowIds());
+            out.endObject();
 
-            return new ZooniverseClient.Project(id, displayName, workflowIds, activeWorkflowIds);
+            out.endObject();
         }
 
-        private List<ZooniverseClient.Task> deserializeTasksFromJsonElement(final JsonElement jsonElement) {
-            final JsonObject jsonObject = jsonElement.getAsJsonObject();
-            if (jsonObject == null) {
-                return null;
+        @Override
+        public ZooniverseClient.ProjectsResponse read(final JsonReader in) throws IOException {
+            try {
+                return readProjectsResponse(in);
+            } catch (final IllegalStateException e) {
+                //An unexpected token type, as Gson reports it for its own TypeAdapters.
+                throw new JsonSyntaxException(e);
             }
+        }
 
-            final Set<Map.Entry<String, JsonElement>> jsonEntrySet = jsonObject.entrySet();
-            if (jsonEntrySet == null) {
+        private static ZooniverseClient.ProjectsResponse readProjectsResponse(final JsonReader in) throws IOException {
+            if (JsonUtils.skipUnlessObject(in)) {
                 return null;
             }
 
-            // Parse each task:
-            final List<ZooniverseClient.Task> tasks = new ArrayList<>();
-            for (final Map.Entry<String, JsonElement> jsonEntry : jsonEntrySet) {
-                final String id = jsonEntry.getKey();
-
-                final JsonElement jsonValue = jsonEntry.getValue();
-                if (jsonValue == null) {
-                    continue;
+            List<ZooniverseClient.Project> projects = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                if ("projects".equals(name)) {
+                    projects = readProjects(in);
+                } else {
+                    in.skipValue();
                 }
-
-                final JsonObject asObject = jsonValue.getAsJsonObject();
-                if (asObject == null) {
-                    continue;
-                }
-
-                final ZooniverseClient.Task task = deserializeTaskFromJsonElement(asObject, id);
-                tasks.add(task);
             }
+            in.endObject();
 
-            return tasks;
-        }
-
-        private ZooniverseClient.Task deserializeTaskFromJsonElement(final JsonElement jsonElement, final String id) {
-            final JsonObject jsonObject = jsonElement.getAsJsonObject();
-            if (jsonObject == null) {
+            if (projects == null) {
                 return null;
             }
 
-            final String type = JsonUtils.getString(jsonObject, "type");
-            final String question = JsonUtils.getString(jsonObject, "question");
-            final String help =  JsonUtils.getString(jsonObject, "help");
-            final boolean required = JsonUtils.getBoolean(jsonObject, "required");
-
-            List<ZooniverseClient.Answer> answers = null;
-            final JsonElement jsonElementAnswers = jsonObject.get("answers");
-            if (jsonElementAnswers != null) {
-                answers = deserializeAnswersFromJsonElement(jsonElementAnswers);
-            }
-
-            return new ZooniverseClient.Task(id, type, question, help, answers, required);
+            return new ZooniverseClient.ProjectsResponse(projects);
         }
 
-        private List<ZooniverseClient.Answer> deserializeAnswersFromJsonElement(final JsonElement jsonElement) {
-            final JsonArray jsonArray = jsonElement.getAsJsonArray();
-            if (jsonArray == null) {
-                return null;
-            }
-
-            // Parse each answer:
-            final List<ZooniverseClient.Answer> answers = new ArrayList<>();
-            for (final JsonElement jsonAnswer : jsonArray) {
-                if (jsonAnswer == null) {
-                    continue;
+        private static List<ZooniverseClient.Project> readProjects(final JsonReader in) throws IOException {
+            // Parse each project (usually just one):
+            final List<ZooniverseClient.Project> projects = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                final ZooniverseClient.Project project = readProject(in);
+                if (project != null) {
+                    projects.add(project);
                 }
-
-                final ZooniverseClient.Answer answer = deserializeAnswerFromJsonElement(jsonAnswer);
-                answers.add(answer);
             }
+            in.endArray();
 
-            return answers;
+            return projects;
         }
 
-        private ZooniverseClient.Answer deserializeAnswerFromJsonElement(final JsonElement jsonElement) {
-            final JsonObject jsonObject = jsonElement.getAsJsonObject();
-            if (jsonObject == null) {
+        @Nullable
+        private static ZooniverseClient.Project readProject(final JsonReader in) throws IOException {
+            if (JsonUtils.skipUnlessObject(in)) {
                 return null;
             }
 
-            final String label = JsonUtils.getString(jsonObject, "label");
-            final String next = JsonUtils.getString(jsonObject, "next");
+            String id = null;
+            String displayName = null;
+            List<String> workflowIds = null;
+            List<String> activeWorkflowIds = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                switch (name) {
+                    case "id":
+                        id = JsonUtils.nextString(in);
+                        break;
+                    case "display_name":
+                        displayName = JsonUtils.nextString(in);
+                        break;
+                    case "links":
+                        if (JsonUtils.skipUnlessObject(in)) {
+                            break;
+                        }
+
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            final String linkName = in.nextName();
+                            if ("workflows".equals(linkName)) {
+                                workflowIds = JsonUtils.nextListOfStrings(in);
+                            } else if ("active_workflows".equals(linkName)) {
+                                activeWorkflowIds = JsonUtils.nextListOfStrings(in);
+                            } else {
+                                in.skipValue();
+                            }
+                        }
+                        in.endObject();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
 
-            return new ZooniverseClient.Answer(label, next);
+            return new ZooniverseClient.Project(id, displayName, workflowIds, activeWorkflowIds);
         }
     }
 }
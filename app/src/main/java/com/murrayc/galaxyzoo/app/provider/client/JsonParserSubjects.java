@@ -2,14 +2,12 @@ package com.murrayc.galaxyzoo.app.provider.client;
 
 import android.support.annotation.Nullable;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-
-import java.lang.reflect.Type;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -19,107 +17,147 @@ import java.util.List;
 
 public class JsonParserSubjects {
 
-    /** A custom GSON deserializer,
-     * so we can create Subject objects using the constructor.
-     * We want to do so Subject can remain an immutable class.
+    /** A streaming GSON TypeAdapter,
+     * so we can create Subject objects using the constructor,
+     * which reads just the fields that Subject needs, and skips the rest, such as the metadata,
+     * without building a tree of JsonElements for the whole response.
+     * This writes just those fields too.
+     * Use this via nullSafe(), which reads and writes a null response.
      */
-    static class SubjectsResponseDeserializer implements JsonDeserializer<ZooniverseClient.SubjectsResponse> {
-        public ZooniverseClient.SubjectsResponse deserialize(final JsonElement json, final Type typeOfT, final JsonDeserializationContext context)
-                throws JsonParseException {
-            final JsonObject jsonObject = json.getAsJsonObject();
-            if (jsonObject == null) {
-                return null;
+    static class SubjectsResponseTypeAdapter extends TypeAdapter<ZooniverseClient.SubjectsResponse> {
+        @Override
+        public void write(final JsonWriter out, final ZooniverseClient.SubjectsResponse value) throws IOException {
+            out.beginObject();
+            out.name("subjects");
+            out.beginArray();
+            if (value.subjects != null) {
+                for (final ZooniverseClient.Subject subject : value.subjects) {
+                    writeSubject(out, subject);
+                }
             }
+            out.endArray();
+            out.endObject();
+        }
 
-            final JsonArray jsonSubjects = jsonObject.getAsJsonArray("subjects");
-
-            // Parse each subject:
-            final List<ZooniverseClient.Subject> subjects = new ArrayList<>();
-            for (final JsonElement jsonSubject : jsonSubjects) {
-                final JsonObject asObject = jsonSubject.getAsJsonObject();
-                final ZooniverseClient.Subject subject = deserializeSubjectFromJsonObject(asObject);
-                subjects.add(subject);
+        private static void writeSubject(final JsonWriter out, final ZooniverseClient.Subject subject) throws IOException {
+            out.beginObject();
+            out.name("id").value(subject.getId());
+            out.name("zooniverse_id").value(subject.getZooniverseId());
+            out.name("group_id").value(subject.getGroupId());
+
+            out.name("locations");
+            out.beginArray();
+            if (subject.getLocationStandard() != null) {
+                out.beginObject();
+                out.name("image/jpeg").value(subject.getLocationStandard());
+                out.endObject();
             }
+            out.endArray();
 
-            // final JsonElement jsonMetadata = jsonObject.get("metadata");
-
-            final ZooniverseClient.SubjectsResponse result = new ZooniverseClient.SubjectsResponse(subjects);
-            return result;
+            out.endObject();
         }
 
-        @Nullable
-        private ZooniverseClient.Subject deserializeSubjectFromJsonObject(JsonObject jsonObject) {
-            final String id = JsonUtils.getString(jsonObject, "id");
-            final String zooniverseId = JsonUtils.getString(jsonObject, "zooniverse_id");
-            final String groupId = JsonUtils.getString(jsonObject, "group_id");
-
-            String locationStandard = null; //TODO: Others too.
-            List<String> locations = null;
-            final JsonElement jsonElementLocations = jsonObject.get("locations");
-            if (jsonElementLocations != null) {
-                locations = deserializeLocationsFromJsonElement(jsonElementLocations);
-                if (locations != null && !locations.isEmpty()) {
-                    locationStandard = locations.get(0);
-                }
+        @Override
+        public ZooniverseClient.SubjectsResponse read(final JsonReader in) throws IOException {
+            try {
+                return readSubjectsResponse(in);
+            } catch (final IllegalStateException e) {
+                //An unexpected token type, as Gson reports it for its own TypeAdapters.
+                throw new JsonSyntaxException(e);
             }
-
-            return new ZooniverseClient.Subject(id, zooniverseId, groupId, locationStandard, null, null);
         }
 
-        private List<String> deserializeLocationsFromJsonElement(final JsonElement jsonElement) {
-            final JsonArray jsonLocations = jsonElement.getAsJsonArray();
-            if (jsonLocations == null) {
+        private static ZooniverseClient.SubjectsResponse readSubjectsResponse(final JsonReader in) throws IOException {
+            if (JsonUtils.skipUnlessObject(in)) {
                 return null;
             }
 
-            // Parse each location:
-            final List<String> locations = new ArrayList<>();
-            for (final JsonElement jsonLocation : jsonLocations) {
-                final JsonObject asObject = jsonLocation.getAsJsonObject();
-                final String url = JsonUtils.getString(asObject, "image/jpeg");
-                if (url != null) {
-                    locations.add(url);
+            final List<ZooniverseClient.Subject> subjects = new ArrayList<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                if ("subjects".equals(name)) {
+                    readSubjects(in, subjects);
+                } else {
+                    in.skipValue();
                 }
             }
+            in.endObject();
 
-            return locations;
+            return new ZooniverseClient.SubjectsResponse(subjects);
         }
-    }
 
-    /** A custom GSON deserializer,
-     * so we can create Subject objects using the constructor.
-     * We want to do so Subject can remain an immutable class.
-     */
-    static class SubjectDeserializer implements JsonDeserializer<ZooniverseClient.Subject> {
-        public ZooniverseClient.Subject deserialize(final JsonElement json, final Type typeOfT, final JsonDeserializationContext context)
-                throws JsonParseException {
-            final JsonObject jsonObject = json.getAsJsonObject();
-            if (jsonObject == null) {
-                return null;
+        private static void readSubjects(final JsonReader in, final List<ZooniverseClient.Subject> subjects) throws IOException {
+            in.beginArray();
+            while (in.hasNext()) {
+                final ZooniverseClient.Subject subject = readSubject(in);
+                if (subject != null) {
+                    subjects.add(subject);
+                }
             }
-
-            return deserializeSubjectFromJsonObject(jsonObject);
+            in.endArray();
         }
 
         @Nullable
-        private ZooniverseClient.Subject deserializeSubjectFromJsonObject(JsonObject jsonObject) {
-            final String id = JsonUtils.getString(jsonObject, "id");
-            final String zooniverseId = JsonUtils.getString(jsonObject, "zooniverse_id");
-            final String groupId = JsonUtils.getString(jsonObject, "group_id");
-
-            final JsonElement jsonElementLocations = jsonObject.get("locations");
-            if (jsonElementLocations == null) {
+        private static ZooniverseClient.Subject readSubject(final JsonReader in) throws IOException {
+            if (JsonUtils.skipUnlessObject(in)) {
                 return null;
             }
 
-            final JsonObject jsonObjectLocations = jsonElementLocations.getAsJsonObject();
-            if (jsonObjectLocations == null) {
-                return null;
-            }
+            String id = null;
+            String zooniverseId = null;
+            String groupId = null;
+            String locationStandard = null; //TODO: Others too.
 
-            final String locationStandard = JsonUtils.getString(jsonObjectLocations, "image/jpg");
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                switch (name) {
+                    case "id":
+                        id = JsonUtils.nextString(in);
+                        break;
+                    case "zooniverse_id":
+                        zooniverseId = JsonUtils.nextString(in);
+                        break;
+                    case "group_id":
+                        groupId = JsonUtils.nextString(in);
+                        break;
+                    case "locations":
+                        locationStandard = readFirstLocation(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
 
             return new ZooniverseClient.Subject(id, zooniverseId, groupId, locationStandard, null, null);
         }
+
+        @Nullable
+        private static String readFirstLocation(final JsonReader in) throws IOException {
+            String result = null;
+
+            in.beginArray();
+            while (in.hasNext()) {
+                if (JsonUtils.skipUnlessObject(in)) {
+                    continue;
+                }
+
+                in.beginObject();
+                while (in.hasNext()) {
+                    final String name = in.nextName();
+                    if (result == null && "image/jpeg".equals(name)) {
+                        result = JsonUtils.nextString(in);
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+            }
+            in.endArray();
+
+            return result;
+        }
     }
 }
@@ -2,150 +2,261 @@ package com.murrayc.galaxyzoo.app.provider.client;
 
 import android.support.annotation.Nullable;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-
-import java.lang.reflect.Type;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * Created by murrayc on 3/27/18.
  */
 
 public class JsonParserWorkflows {
-    /** A custom GSON deserializer,
-     * so we can create Workflow objects using the constructor.
-     * We want to do so Workflow can remain an immutable class.
+    /** A streaming GSON TypeAdapter,
+     * so we can create Workflow objects using the constructor,
+     * which reads just the fields that Workflow, Task, and Answer need, and skips the rest,
+     * without building a tree of JsonElements for the whole (large) response.
+     * This writes just those fields too.
+     * Use this via nullSafe(), which reads and writes a null response.
      */
-    static class WorkflowsResponseDeserializer implements JsonDeserializer<ZooniverseClient.WorkflowsResponse> {
-        public ZooniverseClient.WorkflowsResponse deserialize(final JsonElement json, final Type typeOfT, final JsonDeserializationContext context)
-                throws JsonParseException {
-            final JsonObject jsonObject = json.getAsJsonObject();
-            if (jsonObject == null) {
+    static class WorkflowsResponseTypeAdapter extends TypeAdapter<ZooniverseClient.WorkflowsResponse> {
+        @Override
+        public void write(final JsonWriter out, final ZooniverseClient.WorkflowsResponse value) throws IOException {
+            out.beginObject();
+            out.name("workflows");
+            out.beginArray();
+            if (value.workflows != null) {
+                for (final ZooniverseClient.Workflow workflow : value.workflows) {
+                    writeWorkflow(out, workflow);
+                }
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        private static void writeWorkflow(final JsonWriter out, final ZooniverseClient.Workflow workflow) throws IOException {
+            out.beginObject();
+            out.name("id").value(workflow.id());
+            out.name("display_name").value(workflow.displayName());
+
+            //The tasks object has each task's id as its name:
+            out.name("tasks");
+            out.beginObject();
+            if (workflow.tasks() != null) {
+                for (final ZooniverseClient.Task task : workflow.tasks()) {
+                    out.name(task.id());
+                    writeTask(out, task);
+                }
+            }
+            out.endObject();
+
+            out.endObject();
+        }
+
+        private static void writeTask(final JsonWriter out, final ZooniverseClient.Task task) throws IOException {
+            out.beginObject();
+            out.name("type").value(task.type());
+            out.name("question").value(task.question());
+            out.name("help").value(task.help());
+            out.name("required").value(task.required());
+
+            if (task.answers() != null) {
+                out.name("answers");
+                out.beginArray();
+                for (final ZooniverseClient.Answer answer : task.answers()) {
+                    out.beginObject();
+                    out.name("label").value(answer.label);
+                    out.name("next").value(answer.next);
+                    out.endObject();
+                }
+                out.endArray();
+            }
+
+            out.endObject();
+        }
+
+        @Override
+        public ZooniverseClient.WorkflowsResponse read(final JsonReader in) throws IOException {
+            try {
+                return readWorkflowsResponse(in);
+            } catch (final IllegalStateException e) {
+                //An unexpected token type, as Gson reports it for its own TypeAdapters.
+                throw new JsonSyntaxException(e);
+            }
+        }
+
+        private static ZooniverseClient.WorkflowsResponse readWorkflowsResponse(final JsonReader in) throws IOException {
+            if (JsonUtils.skipUnlessObject(in)) {
                 return null;
             }
 
-            final JsonArray jsonSubjects = jsonObject.getAsJsonArray("workflows");
-            if (jsonSubjects == null) {
+            List<ZooniverseClient.Workflow> workflows = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                if ("workflows".equals(name)) {
+                    workflows = readWorkflows(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (workflows == null) {
                 return null;
             }
 
+            return new ZooniverseClient.WorkflowsResponse(workflows);
+        }
+
+        private static List<ZooniverseClient.Workflow> readWorkflows(final JsonReader in) throws IOException {
             // Parse each workflow (usually just one):
             final List<ZooniverseClient.Workflow> workflows = new ArrayList<>();
-            for (final JsonElement jsonSubject : jsonSubjects) {
-                final JsonObject asObject = jsonSubject.getAsJsonObject();
-                final ZooniverseClient.Workflow workflow = deserializeWorkflowFromJsonObject(asObject);
-                workflows.add(workflow);
+            in.beginArray();
+            while (in.hasNext()) {
+                final ZooniverseClient.Workflow workflow = readWorkflow(in);
+                if (workflow != null) {
+                    workflows.add(workflow);
+                }
             }
+            in.endArray();
 
-            final ZooniverseClient.WorkflowsResponse result = new ZooniverseClient.WorkflowsResponse(workflows);
-            return result;
+            return workflows;
         }
 
         @Nullable
-        private ZooniverseClient.Workflow deserializeWorkflowFromJsonObject(JsonObject jsonObject) {
-            final String id = JsonUtils.getString(jsonObject, "id");
-            final String displayName =  JsonUtils.getString(jsonObject, "display_name");
+        private static ZooniverseClient.Workflow readWorkflow(final JsonReader in) throws IOException {
+            if (JsonUtils.skipUnlessObject(in)) {
+                return null;
+            }
 
+            String id = null;
+            String displayName = null;
             List<ZooniverseClient.Task> tasks = null;
-            final JsonElement jsonElementTasks = jsonObject.get("tasks");
-            if (jsonElementTasks != null) {
-                tasks = deserializeTasksFromJsonElement(jsonElementTasks);
+
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                switch (name) {
+                    case "id":
+                        id = JsonUtils.nextString(in);
+                        break;
+                    case "display_name":
+                        displayName = JsonUtils.nextString(in);
+                        break;
+                    case "tasks":
+                        tasks = readTasks(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
             }
+            in.endObject();
 
             return new ZooniverseClient.Workflow(id, displayName, tasks);
         }
 
-        private List<ZooniverseClient.Task> deserializeTasksFromJsonElement(final JsonElement jsonElement) {
-            final JsonObject jsonObject = jsonElement.getAsJsonObject();
-            if (jsonObject == null) {
-                return null;
-            }
-
-            final Set<Map.Entry<String, JsonElement>> jsonEntrySet = jsonObject.entrySet();
-            if (jsonEntrySet == null) {
+        @Nullable
+        private static List<ZooniverseClient.Task> readTasks(final JsonReader in) throws IOException {
+            if (JsonUtils.skipUnlessObject(in)) {
                 return null;
             }
 
-            // Parse each task:
+            // Parse each task, whose id is its name in the tasks object:
             final List<ZooniverseClient.Task> tasks = new ArrayList<>();
-            for (final Map.Entry<String, JsonElement> jsonEntry : jsonEntrySet) {
-                final String id = jsonEntry.getKey();
-
-                final JsonElement jsonValue = jsonEntry.getValue();
-                if (jsonValue == null) {
-                    continue;
-                }
-
-                final JsonObject asObject = jsonValue.getAsJsonObject();
-                if (asObject == null) {
-                    continue;
+            in.beginObject();
+            while (in.hasNext()) {
+                final String id = in.nextName();
+                final ZooniverseClient.Task task = readTask(in, id);
+                if (task != null) {
+                    tasks.add(task);
                 }
-
-                final ZooniverseClient.Task task = deserializeTaskFromJsonElement(asObject, id);
-                tasks.add(task);
             }
+            in.endObject();
 
             return tasks;
         }
 
-        private ZooniverseClient.Task deserializeTaskFromJsonElement(final JsonElement jsonElement, final String id) {
-            final JsonObject jsonObject = jsonElement.getAsJsonObject();
-            if (jsonObject == null) {
+        @Nullable
+        private static ZooniverseClient.Task readTask(final JsonReader in, final String id) throws IOException {
+            if (JsonUtils.skipUnlessObject(in)) {
                 return null;
             }
 
-            final String type = JsonUtils.getString(jsonObject, "type");
-            final String question = JsonUtils.getString(jsonObject, "question");
-            final String help =  JsonUtils.getString(jsonObject, "help");
-            final boolean required = JsonUtils.getBoolean(jsonObject, "required");
-
+            String type = null;
+            String question = null;
+            String help = null;
+            boolean required = false;
             List<ZooniverseClient.Answer> answers = null;
-            final JsonElement jsonElementAnswers = jsonObject.get("answers");
-            if (jsonElementAnswers != null) {
-                answers = deserializeAnswersFromJsonElement(jsonElementAnswers);
+
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                switch (name) {
+                    case "type":
+                        type = JsonUtils.nextString(in);
+                        break;
+                    case "question":
+                        question = JsonUtils.nextString(in);
+                        break;
+                    case "help":
+                        help = JsonUtils.nextString(in);
+                        break;
+                    case "required":
+                        required = JsonUtils.nextBoolean(in);
+                        break;
+                    case "answers":
+                        answers = readAnswers(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
             }
+            in.endObject();
 
             return new ZooniverseClient.Task(id, type, question, help, answers, required);
         }
 
-        private List<ZooniverseClient.Answer> deserializeAnswersFromJsonElement(final JsonElement jsonElement) {
-            final JsonArray jsonArray = jsonElement.getAsJsonArray();
-            if (jsonArray == null) {
+        @Nullable
+        private static List<ZooniverseClient.Answer> readAnswers(final JsonReader in) throws IOException {
+            if (in.peek() != JsonToken.BEGIN_ARRAY) {
+                in.skipValue();
                 return null;
             }
 
             // Parse each answer:
             final List<ZooniverseClient.Answer> answers = new ArrayList<>();
-            for (final JsonElement jsonAnswer : jsonArray) {
-                if (jsonAnswer == null) {
+            in.beginArray();
+            while (in.hasNext()) {
+                if (JsonUtils.skipUnlessObject(in)) {
                     continue;
                 }
 
-                final ZooniverseClient.Answer answer = deserializeAnswerFromJsonElement(jsonAnswer);
-                answers.add(answer);
-            }
-
-            return answers;
-        }
+                String label = null;
+                String next = null;
+                in.beginObject();
+                while (in.hasNext()) {
+                    final String name = in.nextName();
+                    if ("label".equals(name)) {
+                        label = JsonUtils.nextString(in);
+                    } else if ("next".equals(name)) {
+                        next = JsonUtils.nextString(in);
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
 
-        private ZooniverseClient.Answer deserializeAnswerFromJsonElement(final JsonElement jsonElement) {
-            final JsonObject jsonObject = jsonElement.getAsJsonObject();
-            if (jsonObject == null) {
-                return null;
+                answers.add(new ZooniverseClient.Answer(label, next));
             }
+            in.endArray();
 
-            final String label = JsonUtils.getString(jsonObject, "label");
-            final String next = JsonUtils.getString(jsonObject, "next");
-
-            return new ZooniverseClient.Answer(label, next);
+            return answers;
         }
     }
 }
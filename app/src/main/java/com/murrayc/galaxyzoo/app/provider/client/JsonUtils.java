@@ -1,9 +1,12 @@
 package com.murrayc.galaxyzoo.app.provider.client;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import android.support.annotation.Nullable;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,50 +15,89 @@ import java.util.List;
  */
 
 public class JsonUtils {
-    static String getString(final JsonObject jsonObject, final String name) {
-        final JsonElement jsonElementId = jsonObject.get(name);
-        if (jsonElementId == null) {
-            // The field does not exist in the JSON object.
-            return null;
-        }
-
-        if (jsonElementId.isJsonNull()) {
-            // The field is null in the JSON object.
-            return null;
+    /**
+     * Read the next value as a string,
+     * skipping it (and returning null) if it is null, an object, or an array.
+     */
+    static String nextString(final JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        switch (token) {
+            case STRING:
+            case NUMBER:
+                return in.nextString();
+            case BOOLEAN:
+                return Boolean.toString(in.nextBoolean());
+            default:
+                in.skipValue();
+                return null;
         }
-
-        return jsonElementId.getAsString();
     }
 
-    static boolean getBoolean(final JsonObject jsonObject, final String name) {
-        final JsonElement jsonElementId = jsonObject.get(name);
-        if (jsonElementId == null) {
-            // The field does not exist in the JSON object.
-            return false;
+    /**
+     * Read the next value as a boolean,
+     * skipping it (and returning false) if it is null, an object, or an array.
+     */
+    static boolean nextBoolean(final JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        switch (token) {
+            case BOOLEAN:
+                return in.nextBoolean();
+            case STRING:
+                return Boolean.parseBoolean(in.nextString());
+            default:
+                in.skipValue();
+                return false;
         }
-
-        if (jsonElementId.isJsonNull()) {
-            // The field is null in the JSON object.
-            return false;
-        }
-
-        return jsonElementId.getAsBoolean();
     }
 
-    static List<String> listOfStringsFromJsonArray(final JsonObject jsonObject, final String fieldName) {
+    /**
+     * Read the next value as a list of the non-empty strings,
+     * skipping it (and returning an empty list) if it is not an array.
+     */
+    static List<String> nextListOfStrings(final JsonReader in) throws IOException {
         final List<String> result = new ArrayList<>();
-        final JsonArray jsonArray = jsonObject.getAsJsonArray(fieldName);
-        for (final JsonElement jsonElement : jsonArray) {
-            if (jsonElement == null) {
-                continue;
-            }
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            in.skipValue();
+            return result;
+        }
 
-            final String text = jsonElement.getAsString();
+        in.beginArray();
+        while (in.hasNext()) {
+            final String text = nextString(in);
             if (text != null && !text.isEmpty()) {
                 result.add(text);
             }
         }
+        in.endArray();
 
         return result;
     }
+
+    /**
+     * Write the list of strings as an array, with this name, unless it is null.
+     */
+    static void writeListOfStrings(final JsonWriter out, final String name, @Nullable final List<String> strings) throws IOException {
+        if (strings == null) {
+            return;
+        }
+
+        out.name(name);
+        out.beginArray();
+        for (final String str : strings) {
+            out.value(str);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Skip the next value, and return true, unless it is an object.
+     */
+    static boolean skipUnlessObject(final JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return true;
+        }
+
+        return false;
+    }
 }
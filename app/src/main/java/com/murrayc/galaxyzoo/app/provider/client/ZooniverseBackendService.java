@@ -45,7 +45,9 @@ public interface ZooniverseBackendService {
      * @return
      */
     @Headers({
-            HttpUtils.HTTP_REQUEST_HEADER_PARAM_USER_AGENT + ": " + HttpUtils.HTTP_REQUEST_HEADER_PARAM_USER_AGENT
+            HttpUtils.HTTP_REQUEST_HEADER_PARAM_USER_AGENT + ": " + HttpUtils.HTTP_REQUEST_HEADER_PARAM_USER_AGENT,
+            //The queued subjects are different each time, so never use or store a cached response:
+            HttpUtils.HTTP_REQUEST_HEADER_PARAM_CACHE_CONTROL + ": " + HttpUtils.CACHE_CONTROL_NO_CACHE_NO_STORE
     })
     @GET("subjects/queued?http_cache=true")
     Call<ZooniverseClient.SubjectsResponse> getSubjects(@Query("workflow_id") String workflowId, @Query("limit") int limit);
@@ -56,25 +56,29 @@ public class ZooniverseClient {
         mContext = context;
         mServerBaseUri = serverBaseUri;
 
-        final Retrofit retrofit = createRetrofit(mServerBaseUri);
+        final Retrofit retrofit = createRetrofit(context, mServerBaseUri);
         mRetrofitService = retrofit.create(ZooniverseBackendService.class);
     }
 
-    private static Retrofit createRetrofit(final String baseUrl) {
+    private static Retrofit createRetrofit(final Context context, final String baseUrl) {
         final Gson gson = createGson();
         return new Retrofit.Builder()
                 .baseUrl(baseUrl)
+                //The project and workflow responses can then be revalidated instead of downloaded again.
+                //The subjects are never cached. See ZooniverseBackendService.
+                .client(HttpUtils.getCachingHttpClient(context))
                 .addConverterFactory(GsonConverterFactory.create(gson))
                 .build();
     }
 
     @NonNull
     public static Gson createGson() {
-        // Register our custom GSON deserializers for use by Retrofit.
+        // Register our custom GSON TypeAdapters for use by Retrofit.
+        // These parse the responses as they are read, skipping what we don't need.
         final GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.registerTypeAdapter(SubjectsResponse.class, new JsonParserSubjects.SubjectsResponseDeserializer());
-        gsonBuilder.registerTypeAdapter(ProjectsResponse.class, new JsonParserProjects.ProjectsResponseDeserializer());
-        gsonBuilder.registerTypeAdapter(WorkflowsResponse.class, new JsonParserWorkflows.WorkflowsResponseDeserializer());
+        gsonBuilder.registerTypeAdapter(SubjectsResponse.class, new JsonParserSubjects.SubjectsResponseTypeAdapter().nullSafe());
+        gsonBuilder.registerTypeAdapter(ProjectsResponse.class, new JsonParserProjects.ProjectsResponseTypeAdapter().nullSafe());
+        gsonBuilder.registerTypeAdapter(WorkflowsResponse.class, new JsonParserWorkflows.WorkflowsResponseTypeAdapter().nullSafe());
         return gsonBuilder.create();
     }
 
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.syncadapter;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.provider.Config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Creates the thumbnail and inverted images from the standard image,
+ * because the server now only gives us the standard image.
+ * This avoids downloading anything else.
+ */
+final class ImageDeriver {
+
+    //Inverts the red, green and blue channels, leaving alpha alone.
+    private static final float[] COLOR_MATRIX_INVERT = {
+            -1,  0,  0, 0, 255,
+             0, -1,  0, 0, 255,
+             0,  0, -1, 0, 255,
+             0,  0,  0, 1,   0
+    };
+
+    private ImageDeriver() {
+    }
+
+    /**
+     * Decode the standard image once, and write the thumbnail and/or inverted images from it.
+     * This does disk IO and image processing, so don't call it from the main thread.
+     *
+     * @param standardUri A Content URI for the standard image's cache file.
+     * @param thumbnailUri A Content URI for the thumbnail's cache file, or null if it is not wanted.
+     * @param invertedUri A Content URI for the inverted image's cache file, or null if it is not wanted.
+     * @return true if all the wanted images were written.
+     */
+    static boolean deriveImages(@NonNull final Context context, @NonNull final String standardUri,
+                                @Nullable final String thumbnailUri, @Nullable final String invertedUri) {
+        final ContentResolver resolver = context.getContentResolver();
+
+        final Bitmap standard = decodeImage(resolver, Uri.parse(standardUri), Config.DERIVED_IMAGE_MAXIMUM_SIZE_PX);
+        if (standard == null) {
+            Log.error("ImageDeriver.deriveImages(): Could not decode the standard image: " + standardUri);
+            return false;
+        }
+
+        boolean result = true;
+
+        if (!TextUtils.isEmpty(thumbnailUri)) {
+            final Bitmap thumbnail = createThumbnail(standard, Config.THUMBNAIL_SIZE_PX);
+            result = writeImage(resolver, thumbnail, Uri.parse(thumbnailUri));
+            if (thumbnail != standard) {
+                thumbnail.recycle();
+            }
+        }
+
+        if (result && !TextUtils.isEmpty(invertedUri)) {
+            final Bitmap inverted = createInverted(standard);
+            result = writeImage(resolver, inverted, Uri.parse(invertedUri));
+            inverted.recycle();
+        }
+
+        standard.recycle();
+        return result;
+    }
+
+    /**
+     * Decode the image, downsampling it if it is much larger than the maximum size,
+     * to avoid using more memory than necessary.
+     */
+    @Nullable
+    private static Bitmap decodeImage(@NonNull final ContentResolver resolver, @NonNull final Uri uri, final int maximumSize) {
+        //Get the dimensions first, without decoding the whole image:
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        if (!decodeStream(resolver, uri, options)) {
+            return null;
+        }
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, maximumSize);
+
+        InputStream stream = null;
+        try {
+            stream = resolver.openInputStream(uri);
+            if (stream == null) {
+                return null;
+            }
+
+            return BitmapFactory.decodeStream(stream, null, options);
+        } catch (final IOException e) {
+            Log.error("ImageDeriver.decodeImage(): Exception while decoding the image.", e);
+            return null;
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    private static boolean decodeStream(@NonNull final ContentResolver resolver, @NonNull final Uri uri, @NonNull final BitmapFactory.Options options) {
+        InputStream stream = null;
+        try {
+            stream = resolver.openInputStream(uri);
+            if (stream == null) {
+                return false;
+            }
+
+            BitmapFactory.decodeStream(stream, null, options);
+            return true;
+        } catch (final IOException e) {
+            Log.error("ImageDeriver.decodeStream(): Exception while decoding the image bounds.", e);
+            return false;
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Get the largest power of 2 that keeps both dimensions at least as big as the maximum size.
+     */
+    private static int calculateInSampleSize(final int width, final int height, final int maximumSize) {
+        int result = 1;
+        while ((width / (result * 2)) >= maximumSize &&
+                (height / (result * 2)) >= maximumSize) {
+            result *= 2;
+        }
+
+        return result;
+    }
+
+    @NonNull
+    private static Bitmap createThumbnail(@NonNull final Bitmap standard, final int size) {
+        final int width = standard.getWidth();
+        final int height = standard.getHeight();
+        final int largest = Math.max(width, height);
+        if (largest <= size) {
+            return standard;
+        }
+
+        //Keep the aspect ratio:
+        final int scaledWidth = Math.max(1, (width * size) / largest);
+        final int scaledHeight = Math.max(1, (height * size) / largest);
+        return Bitmap.createScaledBitmap(standard, scaledWidth, scaledHeight, true /* filter */);
+    }
+
+    @NonNull
+    private static Bitmap createInverted(@NonNull final Bitmap standard) {
+        final Bitmap result = Bitmap.createBitmap(standard.getWidth(), standard.getHeight(),
+                Bitmap.Config.ARGB_8888);
+
+        final Paint paint = new Paint();
+        paint.setColorFilter(new ColorMatrixColorFilter(new ColorMatrix(COLOR_MATRIX_INVERT)));
+
+        final Canvas canvas = new Canvas(result);
+        canvas.drawBitmap(standard, 0, 0, paint);
+        return result;
+    }
+
+    private static boolean writeImage(@NonNull final ContentResolver resolver, @NonNull final Bitmap bitmap, @NonNull final Uri uri) {
+        OutputStream stream = null;
+        try {
+            stream = resolver.openOutputStream(uri, "w");
+            if (stream == null) {
+                Log.error("ImageDeriver.writeImage(): openOutputStream() returned null for: " + uri);
+                return false;
+            }
+
+            return bitmap.compress(Bitmap.CompressFormat.JPEG, Config.DERIVED_IMAGE_JPEG_QUALITY, stream);
+        } catch (final IOException e) {
+            Log.error("ImageDeriver.writeImage(): Exception while writing the image: " + uri, e);
+            return false;
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    private static void closeQuietly(@Nullable final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            Log.error("ImageDeriver.closeQuietly(): Exception while closing stream.", e);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.syncadapter;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.Utils;
+import com.murrayc.galaxyzoo.app.provider.Config;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the image downloads that are in progress,
+ * so we don't download the same remote URI twice at the same time.
+ *
+ * This is used from the SyncAdapter's thread and from OkHttp's callback threads,
+ * so it must be thread-safe.
+ */
+final class ImageDownloadRegistry {
+
+    /**
+     * A download that has been started via tryStart().
+     * Call finish() when it has succeeded or failed.
+     */
+    final class Download {
+        private final String mUri;
+
+        //This is reset when the download actually starts, if it was queued first.
+        private volatile long mStartTime;
+
+        private Download(final String uri, final long startTime) {
+            mUri = uri;
+            mStartTime = startTime;
+        }
+
+        void onStarted() {
+            mStartTime = SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * @param bytes The number of bytes downloaded, or -1 if that is not known.
+         */
+        void finish(final boolean success, final long bytes) {
+            onDownloadFinished(this, success, bytes);
+        }
+    }
+
+    private static final class Failure {
+        final int attempts;
+        final long nextAttemptTime;
+
+        Failure(final int attempts, final long nextAttemptTime) {
+            this.attempts = attempts;
+            this.nextAttemptTime = nextAttemptTime;
+        }
+    }
+
+    private final long mTimeoutMs;
+
+    //Remote URIs mapped to the downloads that are currently in progress:
+    private final ConcurrentMap<String, Download> mInProgress = new ConcurrentHashMap<>();
+
+    //Remote URIs mapped to their recent failures, so we can wait before retrying.
+    //Entries are removed when the download succeeds, when they expire, or when there are too many.
+    private final ConcurrentMap<String, Failure> mFailures = new ConcurrentHashMap<>();
+
+    private final AtomicLong mStartedCount = new AtomicLong();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+    private final AtomicLong mTimedOutCount = new AtomicLong();
+    private final AtomicLong mSucceededCount = new AtomicLong();
+    private final AtomicLong mFailedCount = new AtomicLong();
+    private final AtomicLong mTotalBytes = new AtomicLong();
+    private final AtomicLong mTotalLatencyMs = new AtomicLong();
+
+    ImageDownloadRegistry(final long timeoutMs) {
+        mTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Whether we should try to download this remote URI now.
+     * This is false if it is already being downloaded (and has not timed out),
+     * or if it failed recently.
+     */
+    boolean shouldStart(@NonNull final String uri) {
+        final long now = SystemClock.elapsedRealtime();
+        final Download download = mInProgress.get(uri);
+        if (download != null && !isStale(download, now)) {
+            return false;
+        }
+
+        return !isWaitingToRetry(uri, now);
+    }
+
+    /**
+     * Mark this remote URI as being downloaded.
+     *
+     * @return The Download, or null if it should not be downloaded now,
+     * for instance because it is already being downloaded.
+     */
+    @Nullable
+    Download tryStart(@NonNull final String uri) {
+        final long now = SystemClock.elapsedRealtime();
+        if (isWaitingToRetry(uri, now)) {
+            return null;
+        }
+
+        final Download download = new Download(uri, now);
+        final Download existing = mInProgress.putIfAbsent(uri, download);
+        if (existing == null) {
+            mStartedCount.incrementAndGet();
+            return download;
+        }
+
+        if (!isStale(existing, now)) {
+            //Let the existing download finish instead.
+            mCoalescedCount.incrementAndGet();
+            return null;
+        }
+
+        //The existing download seems to have hung, so start again.
+        //If it does finish later, it won't remove this new entry.
+        if (!mInProgress.replace(uri, existing, download)) {
+            //Someone else replaced it first.
+            mCoalescedCount.incrementAndGet();
+            return null;
+        }
+
+        Log.info("ImageDownloadRegistry.tryStart(): Download timed out, so restarting it: " + uri);
+        mTimedOutCount.incrementAndGet();
+        mStartedCount.incrementAndGet();
+        return download;
+    }
+
+    private void onDownloadFinished(@NonNull final Download download, final boolean success, final long bytes) {
+        final long now = SystemClock.elapsedRealtime();
+        final long latency = now - download.mStartTime;
+        mInProgress.remove(download.mUri, download);
+
+        if (success) {
+            mFailures.remove(download.mUri);
+            mSucceededCount.incrementAndGet();
+            mTotalLatencyMs.addAndGet(latency);
+            if (bytes > 0) {
+                mTotalBytes.addAndGet(bytes);
+            }
+
+            Log.info("ImageDownloadRegistry: Downloaded " + bytes + " bytes in " + latency + "ms: " + download.mUri);
+        } else {
+            final Failure previous = mFailures.get(download.mUri);
+            final int attempts = (previous == null) ? 1 : previous.attempts + 1;
+            final long backoff = Utils.getRetryBackoff(attempts,
+                    Config.IMAGE_DOWNLOAD_RETRY_BACKOFF_INITIAL_MS, Config.IMAGE_DOWNLOAD_RETRY_BACKOFF_MAXIMUM_MS);
+            mFailures.put(download.mUri, new Failure(attempts, now + backoff));
+            mFailedCount.incrementAndGet();
+            if (mFailures.size() > Config.MAXIMUM_IMAGE_DOWNLOAD_FAILURES) {
+                pruneFailures(now);
+            }
+
+            Log.info("ImageDownloadRegistry: Download failed after " + latency + "ms (attempts=" + attempts +
+                    ", retrying after " + backoff + "ms): " + download.mUri);
+        }
+    }
+
+    private boolean isStale(@NonNull final Download download, final long now) {
+        return (now - download.mStartTime) >= mTimeoutMs;
+    }
+
+    private boolean isWaitingToRetry(@NonNull final String uri, final long now) {
+        final Failure failure = mFailures.get(uri);
+        if (failure == null) {
+            return false;
+        }
+
+        if (isExpired(failure, now)) {
+            mFailures.remove(uri, failure);
+            return false;
+        }
+
+        return now < failure.nextAttemptTime;
+    }
+
+    private static boolean isExpired(@NonNull final Failure failure, final long now) {
+        return (now - failure.nextAttemptTime) >= Config.IMAGE_DOWNLOAD_FAILURE_EXPIRY_MS;
+    }
+
+    /**
+     * Forget the failures that we may already retry, including the expired ones,
+     * because forgetting those loses the least.
+     * If there are still too many then forget some of the others too,
+     * so this never grows without limit.
+     */
+    private void pruneFailures(final long now) {
+        for (final Map.Entry<String, Failure> entry : mFailures.entrySet()) {
+            final Failure failure = entry.getValue();
+            if (now >= failure.nextAttemptTime) {
+                mFailures.remove(entry.getKey(), failure);
+            }
+        }
+
+        final Iterator<String> iter = mFailures.keySet().iterator();
+        while (mFailures.size() > Config.MAXIMUM_IMAGE_DOWNLOAD_FAILURES && iter.hasNext()) {
+            iter.next();
+            iter.remove();
+        }
+    }
+
+    String getStatistics() {
+        final long succeeded = mSucceededCount.get();
+        final long averageLatency = (succeeded == 0) ? 0 : mTotalLatencyMs.get() / succeeded;
+        return "started=" + mStartedCount.get() +
+                ", inProgress=" + mInProgress.size() +
+                ", coalesced=" + mCoalescedCount.get() +
+                ", timedOut=" + mTimedOutCount.get() +
+                ", succeeded=" + succeeded +
+                ", failed=" + mFailedCount.get() +
+                ", waitingToRetry=" + mFailures.size() +
+                ", bytes=" + mTotalBytes.get() +
+                ", averageLatencyMs=" + averageLatency;
+    }
+}
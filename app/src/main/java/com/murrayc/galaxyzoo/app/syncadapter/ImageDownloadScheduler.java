@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.syncadapter;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.LoginUtils;
+import com.murrayc.galaxyzoo.app.Utils;
+import com.murrayc.galaxyzoo.app.provider.HttpUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+/**
+ * Starts the image downloads in order of priority,
+ * with only a few downloads from the same host at the same time,
+ * so the image that the user needs next doesn't have to wait behind less urgent images.
+ *
+ * Downloads are paused while there is no suitable network connection,
+ * and resumed when there is one again.
+ * We only listen for network changes while there are downloads queued or running,
+ * because the SyncAdapter, and therefore this, lives as long as the process.
+ */
+final class ImageDownloadScheduler {
+
+    /**
+     * The order of these is the order in which the downloads are started.
+     */
+    enum Priority {
+        NEXT_ITEM, //The image that ClassifyFragment will show next.
+        THUMBNAIL, //Thumbnails for the ListFragment's grid.
+        STANDARD,
+        INVERTED //The inverted images are rarely viewed.
+    }
+
+    private static final class Request implements Comparable<Request> {
+        final String uri;
+        final String host;
+        final long sequence;
+        Priority priority;
+        Callback callback;
+        ImageDownloadRegistry.Download download;
+
+        Request(final String uri, final String host, final long sequence, final Priority priority,
+                final ImageDownloadRegistry.Download download, final Callback callback) {
+            this.uri = uri;
+            this.host = host;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.download = download;
+            this.callback = callback;
+        }
+
+        @Override
+        public int compareTo(@NonNull final Request other) {
+            final int result = priority.compareTo(other.priority);
+            if (result != 0) {
+                return result;
+            }
+
+            //Otherwise first come, first served:
+            return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+        }
+    }
+
+    private final Context mContext;
+    private final int mMaximumPerHost;
+
+    //These are all guarded by synchronized(this):
+    private final PriorityQueue<Request> mQueue = new PriorityQueue<>();
+    private final Map<String, Request> mQueuedByUri = new HashMap<>();
+    private final Map<String, Integer> mRunningByHost = new HashMap<>();
+    private long mSequence = 0;
+    private boolean mPaused = false;
+
+    private BroadcastReceiver mReceiverNetworkChange = null;
+
+    ImageDownloadScheduler(final Context context, final int maximumPerHost) {
+        mContext = context;
+        mMaximumPerHost = maximumPerHost;
+    }
+
+    /**
+     * Queue a download of the remote URI.
+     * If that URI is already queued, this just raises its priority if necessary,
+     * and the new callback replaces the old one.
+     *
+     * @param download The entry in the ImageDownloadRegistry. The callback must finish it.
+     * @param callback This will be called on one of OkHttp's threads.
+     */
+    void schedule(@NonNull final String uri, @NonNull final Priority priority,
+                  @NonNull final ImageDownloadRegistry.Download download, @NonNull final Callback callback) {
+        synchronized (this) {
+            final Request existing = mQueuedByUri.get(uri);
+            if (existing != null) {
+                //Re-add it so the PriorityQueue notices any change of priority:
+                mQueue.remove(existing);
+                if (priority.compareTo(existing.priority) < 0) {
+                    existing.priority = priority;
+                }
+                existing.download = download;
+                existing.callback = callback;
+                mQueue.add(existing);
+            } else {
+                final String host = Uri.parse(uri).getHost();
+                final Request request = new Request(uri, host, mSequence++, priority, download, callback);
+                mQueue.add(request);
+                mQueuedByUri.put(uri, request);
+            }
+
+            listenForNetworkChanges();
+        }
+
+        startQueuedDownloads();
+    }
+
+    /**
+     * Don't start any more downloads until resume() is called.
+     * Downloads that have already started are allowed to finish, or fail.
+     */
+    void pause() {
+        synchronized (this) {
+            if (mPaused) {
+                return;
+            }
+
+            Log.info("ImageDownloadScheduler.pause(): queued=" + mQueue.size());
+            mPaused = true;
+        }
+    }
+
+    void resume() {
+        synchronized (this) {
+            if (!mPaused) {
+                return;
+            }
+
+            Log.info("ImageDownloadScheduler.resume(): queued=" + mQueue.size());
+            mPaused = false;
+        }
+
+        startQueuedDownloads();
+    }
+
+    /**
+     * Pause when we lose a suitable network connection, and resume when we have one again.
+     * CONNECTIVITY_ACTION is sticky, so the receiver is called straight away with the current state,
+     * in case that changed while we were not listening.
+     * Call this with the lock held.
+     */
+    private void listenForNetworkChanges() {
+        if (mReceiverNetworkChange != null) {
+            return;
+        }
+
+        mReceiverNetworkChange = new BroadcastReceiver() {
+            @Override
+            public void onReceive(final Context context, final Intent intent) {
+                final Utils.NetworkConnected networkConnected =
+                        Utils.getNetworkIsConnected(context, LoginUtils.getUseWifiOnly(context));
+                if ((networkConnected != null) && (networkConnected.connected)) {
+                    resume();
+                } else {
+                    pause();
+                }
+            }
+        };
+
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+        mContext.registerReceiver(mReceiverNetworkChange, filter);
+    }
+
+    /**
+     * Stop listening for network changes if there are no downloads queued or running.
+     * Call this with the lock held.
+     */
+    private void stopListeningForNetworkChangesIfIdle() {
+        if (mReceiverNetworkChange == null || !mQueue.isEmpty() || !mRunningByHost.isEmpty()) {
+            return;
+        }
+
+        mContext.unregisterReceiver(mReceiverNetworkChange);
+        mReceiverNetworkChange = null;
+    }
+
+    private void startQueuedDownloads() {
+        final List<Request> toStart = new ArrayList<>();
+
+        synchronized (this) {
+            if (mPaused) {
+                return;
+            }
+
+            //Take the requests in order of priority,
+            //skipping (but keeping) those whose host is already busy enough:
+            final List<Request> skipped = new ArrayList<>();
+            Request request;
+            while ((request = mQueue.poll()) != null) {
+                final int running = getRunningCount(request.host);
+                if (running >= mMaximumPerHost) {
+                    skipped.add(request);
+                    continue;
+                }
+
+                mRunningByHost.put(request.host, running + 1);
+                mQueuedByUri.remove(request.uri);
+                toStart.add(request);
+            }
+
+            mQueue.addAll(skipped);
+        }
+
+        for (final Request request : toStart) {
+            start(request);
+        }
+    }
+
+    private void start(@NonNull final Request request) {
+        Log.info("ImageDownloadScheduler.start(): priority=" + request.priority + ", uri=" + request.uri);
+
+        request.download.onStarted();
+
+        final Call call = HttpUtils.createGetRequestCall(request.uri, false);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(final Call call, final IOException e) {
+                try {
+                    request.callback.onFailure(call, e);
+                } finally {
+                    onFinished(request);
+                }
+            }
+
+            @Override
+            public void onResponse(final Call call, final Response response) throws IOException {
+                try {
+                    request.callback.onResponse(call, response);
+                } finally {
+                    onFinished(request);
+                }
+            }
+        });
+    }
+
+    private void onFinished(@NonNull final Request request) {
+        synchronized (this) {
+            final int running = getRunningCount(request.host);
+            if (running <= 1) {
+                mRunningByHost.remove(request.host);
+            } else {
+                mRunningByHost.put(request.host, running - 1);
+            }
+
+            stopListeningForNetworkChangesIfIdle();
+        }
+
+        startQueuedDownloads();
+    }
+
+    private int getRunningCount(final String host) {
+        final Integer result = mRunningByHost.get(host);
+        return (result == null) ? 0 : result;
+    }
+}
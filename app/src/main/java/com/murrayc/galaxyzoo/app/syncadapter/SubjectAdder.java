@@ -29,19 +29,19 @@ import android.text.TextUtils;
 
 import com.murrayc.galaxyzoo.app.Log;
 import com.murrayc.galaxyzoo.app.Utils;
+import com.murrayc.galaxyzoo.app.provider.Config;
 import com.murrayc.galaxyzoo.app.provider.HttpUtils;
 import com.murrayc.galaxyzoo.app.provider.ImageType;
 import com.murrayc.galaxyzoo.app.provider.Item;
-import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
 import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -49,9 +49,22 @@ import okhttp3.Callback;
 public class SubjectAdder {
     private final Context mContext;
 
-    /* A map of remote URIs to the last dates that we tried to download them.
-     */
-    private final Map<String, Date> mImageDownloadsInProgress = new HashMap<>();
+    //The remote URIs that we are downloading, or that failed recently.
+    //This is shared with OkHttp's callback threads.
+    private final ImageDownloadRegistry mImageDownloads = new ImageDownloadRegistry(Config.IMAGE_DOWNLOAD_TIMEOUT_MS);
+
+    private final ImageDownloadScheduler mImageDownloadScheduler;
+
+    //This creates the thumbnail and inverted images from the standard images, one at a time.
+    //Decoding and encoding the images is slow, so we don't do it in OkHttp's callbacks,
+    //where the ImageDownloadScheduler would still count it as a running download for the host.
+    private final ExecutorService mDeriveExecutor = Executors.newSingleThreadExecutor();
+
+    //The items whose images are waiting for mDeriveExecutor,
+    //so downloadMissingImages() doesn't queue them again, or download their standard image again
+    //before it has been marked as downloaded.
+    private final Set<Uri> mDeriveItemsQueued = Collections.synchronizedSet(new HashSet<Uri>());
+
     private static final String[] PROJECTION_DOWNLOAD_MISSING_IMAGES = {Item.Columns._ID,
             Item.Columns.LOCATION_STANDARD_DOWNLOADED,
             Item.Columns.LOCATION_STANDARD_URI_REMOTE,
@@ -61,7 +74,8 @@ public class SubjectAdder {
             Item.Columns.LOCATION_THUMBNAIL_URI,
             Item.Columns.LOCATION_INVERTED_DOWNLOADED,
             Item.Columns.LOCATION_INVERTED_URI_REMOTE,
-            Item.Columns.LOCATION_INVERTED_URI};
+            Item.Columns.LOCATION_INVERTED_URI,
+            Item.Columns.DERIVE_NEXT_ATTEMPT};
     private static final String[] PROJECTION_CACHE_URIS_TO_FILES = {
             Item.Columns.LOCATION_STANDARD_URI_REMOTE,
             Item.Columns.LOCATION_STANDARD_URI,
@@ -70,12 +84,20 @@ public class SubjectAdder {
             Item.Columns.LOCATION_INVERTED_URI_REMOTE,
             Item.Columns.LOCATION_INVERTED_URI,
     };
-    private static final String[] PROJECTION_CHECK_IMAGES = {Item.Columns._ID,
+    private static final String[] PROJECTION_DERIVE_IMAGES = {
             Item.Columns.LOCATION_STANDARD_URI,
+            Item.Columns.LOCATION_THUMBNAIL_URI_REMOTE,
             Item.Columns.LOCATION_THUMBNAIL_URI,
-            Item.Columns.LOCATION_INVERTED_URI};
-    private static final String[] PROJECTION_URI_PART_DATA = {ItemsContentProvider.URI_PART_DATA};
+            Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED,
+            Item.Columns.LOCATION_INVERTED_URI_REMOTE,
+            Item.Columns.LOCATION_INVERTED_URI,
+            Item.Columns.LOCATION_INVERTED_DOWNLOADED,
+            Item.Columns.DERIVE_ATTEMPTS};
     private static final String[] PROJECTION_SUBJECT_ID = {Item.Columns.SUBJECT_ID};
+    private static final String[] PROJECTION_ID = {Item.Columns._ID};
+
+    private static final String WHERE_CLAUSE_NOT_DONE = Item.Columns.DONE + " != 1";
+    private static final String ORDER_BY_ID = Item.Columns._ID + " ASC";
 
     private static final String WHERE_CLAUSE_DOWNLOAD_NOT_DONE = "(" +
             Item.Columns.LOCATION_STANDARD_DOWNLOADED + " != 1" +
@@ -84,16 +106,11 @@ public class SubjectAdder {
             ") OR (" +
             Item.Columns.LOCATION_INVERTED_DOWNLOADED + " != 1" +
             ")";
-    private static final String WHERE_CLAUSE_DOWNLOAD_ALL_DONE = "(" +
-            Item.Columns.LOCATION_STANDARD_DOWNLOADED + " == 1" +
-            ") AND (" +
-            Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED + " == 1" +
-            ") AND (" +
-            Item.Columns.LOCATION_INVERTED_DOWNLOADED + " == 1" +
-            ")";
 
     public SubjectAdder(final Context context) {
         this.mContext = context;
+
+        mImageDownloadScheduler = new ImageDownloadScheduler(context, Config.MAXIMUM_CONCURRENT_DOWNLOADS_PER_HOST);
     }
 
     /**
@@ -106,17 +123,23 @@ public class SubjectAdder {
 
         throwIfNoNetwork();
 
+        //In case we missed the network change:
+        mImageDownloadScheduler.resume();
+
+        final String nextItemId = getNextItemId();
+
         //Get all the items that have an image that is not yet fully downloaded:
         final ContentResolver resolver = getContext().getContentResolver();
 
         final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_DOWNLOAD_MISSING_IMAGES,
-                WHERE_CLAUSE_DOWNLOAD_NOT_DONE, null, null);
+                WHERE_CLAUSE_DOWNLOAD_NOT_DONE, null, ORDER_BY_ID);
         if (c == null) {
             Log.error("downloadMissingImages(): Cursor is null.");
             return false;
         }
 
-        //Find out if the image is currently being downloaded:
+        //Find out if the image is currently being downloaded, or failed recently:
+        final long now = System.currentTimeMillis();
         while (c.moveToNext()) {
             final String itemId = c.getString(0);
             if (TextUtils.isEmpty(itemId)) {
@@ -129,7 +152,16 @@ public class SubjectAdder {
             final boolean standardDownloaded = c.getInt(1) == 1;
             if (!standardDownloaded) {
                 final String uriStandardRemote = c.getString(2);
-                if (!mImageDownloadsInProgress.containsKey(uriStandardRemote)) {
+                if (TextUtils.isEmpty(uriStandardRemote)) {
+                    //This shouldn't happen.
+                    //We cannot get the image, or create the other images, without a remote URI.
+                    c.close();
+                    Utils.abandonItem(getContext(), itemId);
+                    return false;
+                }
+
+                if (mImageDownloads.shouldStart(uriStandardRemote) &&
+                        !mDeriveItemsQueued.contains(itemUri)) {
                     final String uriStandard = c.getString(3);
                     if (TextUtils.isEmpty(uriStandard)) {
                         //This shouldn't happen.
@@ -139,15 +171,22 @@ public class SubjectAdder {
                         return false;
                     }
 
-                    downloadMissingImage(itemUri, uriStandardRemote, uriStandard, ImageType.STANDARD);
+                    downloadMissingImage(itemUri, uriStandardRemote, uriStandard, ImageType.STANDARD,
+                            getPriority(itemId, nextItemId, ImageType.STANDARD));
                     noWorkNeeded = false;
                 }
             }
 
+            //The server might give us only the standard image,
+            //so we create the others from that.
+            boolean needsDerivedImages = false;
+
             final boolean thumbnailDownloaded = c.getInt(4) == 1;
-            if (!thumbnailDownloaded) {
-                final String uriThumbnailRemote = c.getString(5);
-                if (!mImageDownloadsInProgress.containsKey(uriThumbnailRemote)) {
+            final String uriThumbnailRemote = c.getString(5);
+            if (!thumbnailDownloaded && TextUtils.isEmpty(uriThumbnailRemote)) {
+                needsDerivedImages = true;
+            } else if (!thumbnailDownloaded) {
+                if (mImageDownloads.shouldStart(uriThumbnailRemote)) {
                     final String uriThumbnail = c.getString(6);
                     if (TextUtils.isEmpty(uriThumbnail)) {
                         //This shouldn't happen.
@@ -157,15 +196,18 @@ public class SubjectAdder {
                         return false;
                     }
 
-                    downloadMissingImage(itemUri, uriThumbnailRemote, uriThumbnail, ImageType.THUMBNAIL);
+                    downloadMissingImage(itemUri, uriThumbnailRemote, uriThumbnail, ImageType.THUMBNAIL,
+                            getPriority(itemId, nextItemId, ImageType.THUMBNAIL));
                     noWorkNeeded = false;
                 }
             }
 
             final boolean invertedDownloaded = c.getInt(7) == 1;
-            if(!invertedDownloaded) {
-                final String uriInvertedRemote = c.getString(8);
-                if (!mImageDownloadsInProgress.containsKey(uriInvertedRemote)) {
+            final String uriInvertedRemote = c.getString(8);
+            if (!invertedDownloaded && TextUtils.isEmpty(uriInvertedRemote)) {
+                needsDerivedImages = true;
+            } else if(!invertedDownloaded) {
+                if (mImageDownloads.shouldStart(uriInvertedRemote)) {
                     final String uriInverted = c.getString(9);
                     if (TextUtils.isEmpty(uriInverted)) {
                         //This shouldn't happen.
@@ -175,14 +217,29 @@ public class SubjectAdder {
                         return false;
                     }
 
-                    downloadMissingImage(itemUri, uriInvertedRemote, uriInverted, ImageType.INVERTED);
+                    downloadMissingImage(itemUri, uriInvertedRemote, uriInverted, ImageType.INVERTED,
+                            getPriority(itemId, nextItemId, ImageType.INVERTED));
                     noWorkNeeded = false;
                 }
             }
+
+            //Otherwise this happens when the standard image has been downloaded.
+            //This catches items whose standard image was downloaded before we did this.
+            if (needsDerivedImages && standardDownloaded) {
+                //Wait longer before retrying a previously-failed derivation:
+                final long nextAttempt = c.getLong(10);
+                if (nextAttempt <= now) {
+                    deriveImagesAsync(itemUri, false);
+                }
+
+                noWorkNeeded = false;
+            }
         }
 
         c.close();
 
+        Log.info("downloadMissingImages(): Image downloads: " + mImageDownloads.getStatistics());
+
         return noWorkNeeded;
     }
 
@@ -192,12 +249,13 @@ public class SubjectAdder {
      * @param uriRemote
      * @param uriContent A Content URI for a cache file.
      * @param imageType
+     * @param priority
      */
-    private void downloadMissingImage(@NonNull final Uri itemUri, @NonNull final String uriRemote, @NonNull final String uriContent, final ImageType imageType) {
+    private void downloadMissingImage(@NonNull final Uri itemUri, @NonNull final String uriRemote, @NonNull final String uriContent, final ImageType imageType, final ImageDownloadScheduler.Priority priority) {
         Log.info("downloadMissingImage(): imageType=" + imageType + ", uriRemote=" + uriRemote);
 
         try {
-            cacheUriToFile(uriRemote, uriContent, itemUri, imageType, true /* async */);
+            cacheUriToFile(uriRemote, uriContent, itemUri, imageType, priority, true /* async */);
         } catch (final HttpUtils.NoNetworkException e) {
             //Ignore this - it is normal if wifi-only is set in the settings
             //and if we are then not on a wi-fi connection.
@@ -206,131 +264,60 @@ public class SubjectAdder {
     }
 
     /**
-     * If the cache is cleared (automatically by the system or manually by the user)
-     * then the local URIs in our database will no longer be valid.
-     * Assume that the system (or user) really wanted to free up the space,
-     * so just forget about these items instead of re-downloading the images.
-     * Assume that the system will let the SyncAdaptor download more when it has enough space.
-     *
-     * @return True if no work was needed.
+     * Get the ID of the item that the "next" query will return, when its images are downloaded.
      */
-    boolean checkForDeletedCachedImages() {
-        boolean noWorkNeeded = true;
-
-        final List<String> itemsToAbandon = new ArrayList<>();
-
-        //Get all the items that have images that were (at least previously) all fully downloaded:
+    private String getNextItemId() {
         final ContentResolver resolver = getContext().getContentResolver();
-
-        //This should be the same orderBy as used by the "next" query in ItemsContentProvider,
-        //though we use the external Column name rather than the internal column name used there,
-        //though they are actually the same.
-        final String orderBy = Item.Columns._ID + " ASC";
-        final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_CHECK_IMAGES,
-                WHERE_CLAUSE_DOWNLOAD_ALL_DONE, null, orderBy);
+        final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_ID,
+                WHERE_CLAUSE_NOT_DONE, null, ORDER_BY_ID);
         if (c == null) {
-            Log.error("checkForDeletedCachedImages(): Cursor is null.");
-            return false;
+            Log.error("getNextItemId(): Cursor is null.");
+            return null;
         }
 
-        //Find out if the images still exist in the cache:
-        while (c.moveToNext()) {
-            final String itemId = c.getString(0);
-            if (TextUtils.isEmpty(itemId)) {
-                continue;
-            }
-
-            final String uriStandard = c.getString(1);
-            if(!cachedImageExists(uriStandard)) {
-                itemsToAbandon.add(itemId);
-                noWorkNeeded = false;
-                continue;
-            }
-
-            final String uriThumbnail = c.getString(2);
-            if(!cachedImageExists(uriThumbnail)) {
-                itemsToAbandon.add(itemId);
-                noWorkNeeded = false;
-                continue;
-            }
-
-            final String uriInverted = c.getString(3);
-            if(!cachedImageExists(uriInverted)) {
-                itemsToAbandon.add(itemId);
-                noWorkNeeded = false;
-                continue;
-            }
-
-            //If the first item did not need to be abandoned,
-            //don't bother checking the rest.
-            //This way, we avoid having to abandon an item
-            //when the user tries to classify a "next" item,
-            //and avoid unnecessary checking when it doesn't look like
-            //the whole cache has been deleted.
-            //If the other items are in fact missing their images
-            //then they will be abandoned when the user tries to view them.
-            if (noWorkNeeded) {
-                break;
-            }
+        String result = null;
+        if (c.moveToFirst()) {
+            result = c.getString(0);
         }
 
         c.close();
-
-        //Abandon any items whose images didn't exist any more:
-        for (final String itemId : itemsToAbandon) {
-            Log.info("checkForDeletedCachedImages() Abandoning itemId=" + itemId);
-            final Uri itemUri = Utils.getItemUri(itemId);
-            final int affected = resolver.delete(itemUri, null, null);
-            if (affected != 1) {
-                Log.error("checkForDeletedCachedImages(): Unexpected number of rows affected: " + affected);
-            }
-        }
-
-        return noWorkNeeded;
+        return result;
     }
 
-    private boolean cachedImageExists(final String fileUri) {
-        final ContentResolver resolver = getContext().getContentResolver();
-
-        //We get the actual local URI so we can check if the local cache file exists.
-        //TODO: Is there a simple way to just check that the file exists via the ContentResolver
-        //without this hacky use of the _data field?
-        final Uri fileUriAsUri = Uri.parse(fileUri);
-        final Cursor c = resolver.query(fileUriAsUri, PROJECTION_URI_PART_DATA,
-                null, null, null);
-        if(c == null) {
-            Log.error("SubjectAdder.cachedImageExists(): Cursor is null.");
-            return false;
-        }
-
-        if(!c.moveToNext()) {
-            Log.error("SubjectAdder.cachedImageExists(): query failed.");
-            c.close();
-            return false;
-        }
+    /**
+     * The image that ClassifyFragment will show next is most urgent,
+     * then the thumbnails that ListFragment shows,
+     * and the rarely-viewed inverted images are least urgent.
+     */
+    private static ImageDownloadScheduler.Priority getPriority(final String itemId, final String nextItemId, final ImageType imageType) {
+        switch (imageType) {
+            case STANDARD:
+                if (TextUtils.equals(itemId, nextItemId)) {
+                    return ImageDownloadScheduler.Priority.NEXT_ITEM;
+                }
 
-        final String localUri = c.getString(0);
-        c.close();
-        if (TextUtils.isEmpty(localUri)) {
-            Log.error("SubjectAdder.cachedImageExists(): _DATA URI was empty.");
-            return false;
+                return ImageDownloadScheduler.Priority.STANDARD;
+            case THUMBNAIL:
+                return ImageDownloadScheduler.Priority.THUMBNAIL;
+            case INVERTED:
+                return ImageDownloadScheduler.Priority.INVERTED;
+            default:
+                throw new IllegalArgumentException("getPriority(): Unexpected imageType.");
         }
-
-        final File cacheFile = new File(localUri);
-        return cacheFile.exists();
     }
 
     /**
+     * Add the subjects, and queue downloads of their images.
+     *
      * @param subjects
-     * @param asyncFileDownloads Get the image data asynchronously if this is true.
      */
-    public boolean addSubjects(@NonNull final List<ZooniverseClient.Subject> subjects, final boolean asyncFileDownloads) {
+    public boolean addSubjects(@NonNull final List<ZooniverseClient.Subject> subjects) {
         if (subjects == null) {
             return false;
         }
 
         for (final ZooniverseClient.Subject subject : subjects) {
-            if(!addSubject(subject, asyncFileDownloads)) {
+            if(!addSubject(subject)) {
                 return false;
             }
         }
@@ -339,7 +326,7 @@ public class SubjectAdder {
     }
 
 
-    private void cacheUrisToFiles(final Uri itemUri, final boolean asyncFileDownloads) {
+    private void cacheUrisToFiles(final Uri itemUri) {
 
         final ContentResolver resolver = getContext().getContentResolver();
 
@@ -354,6 +341,9 @@ public class SubjectAdder {
             return;
         }
 
+        final String itemId = itemUri.getLastPathSegment();
+        final String nextItemId = getNextItemId();
+
         while (c.moveToNext()) {
             final String uriStandardRemote = c.getString(0);
             final String uriStandard = c.getString(1);
@@ -362,9 +352,20 @@ public class SubjectAdder {
             final String uriInvertedRemote = c.getString(4);
             final String uriInverted = c.getString(5);
 
-            cacheUriToFileWithNullChecks(uriStandardRemote, uriStandard, itemUri, ImageType.STANDARD, asyncFileDownloads);
-            cacheUriToFileWithNullChecks(uriThumbnailRemote, uriThumbnail, itemUri, ImageType.THUMBNAIL, asyncFileDownloads);
-            cacheUriToFileWithNullChecks(uriInvertedRemote, uriInverted, itemUri, ImageType.INVERTED, asyncFileDownloads);
+            cacheUriToFileWithNullChecks(uriStandardRemote, uriStandard, itemUri, ImageType.STANDARD,
+                    getPriority(itemId, nextItemId, ImageType.STANDARD));
+
+            //If there is no remote URI for these,
+            //we will create them from the standard image when that has been downloaded.
+            if (!TextUtils.isEmpty(uriThumbnailRemote)) {
+                cacheUriToFileWithNullChecks(uriThumbnailRemote, uriThumbnail, itemUri, ImageType.THUMBNAIL,
+                        getPriority(itemId, nextItemId, ImageType.THUMBNAIL));
+            }
+
+            if (!TextUtils.isEmpty(uriInvertedRemote)) {
+                cacheUriToFileWithNullChecks(uriInvertedRemote, uriInverted, itemUri, ImageType.INVERTED,
+                        getPriority(itemId, nextItemId, ImageType.INVERTED));
+            }
         }
 
         c.close();
@@ -376,14 +377,14 @@ public class SubjectAdder {
      * @param uriStandard A Content URI for a cache file.
      * @param itemUri
      * @param imageType
-     * @param asyncFileDownloads
+     * @param priority
      */
-    private void cacheUriToFileWithNullChecks(final String uriStandardRemote, final String uriStandard, final Uri itemUri, final ImageType imageType, final boolean asyncFileDownloads) {
+    private void cacheUriToFileWithNullChecks(final String uriStandardRemote, final String uriStandard, final Uri itemUri, final ImageType imageType, final ImageDownloadScheduler.Priority priority) {
         if (TextUtils.isEmpty(uriStandardRemote) || TextUtils.isEmpty(uriStandard)) {
             Log.error("cacheUriToFileWithNullChecks(): Empty uriStandardRemote or uriStandard.");
         } else {
             try {
-                cacheUriToFile(uriStandardRemote, uriStandard, itemUri, imageType, asyncFileDownloads);
+                cacheUriToFile(uriStandardRemote, uriStandard, itemUri, imageType, priority);
             } catch (final HttpUtils.NoNetworkException e) {
                 //Ignore this - it is normal if wifi-only is set in the settings
                 //and if we are then not on a wi-fi connection.
@@ -393,12 +394,13 @@ public class SubjectAdder {
     }
 
     /**
-     * Download bytes from a url and store them in a file, optionally asynchronously in spawned thread.
+     * Download bytes from a url and store them in a file, asynchronously,
+     * when the ImageDownloadScheduler gets to it.
      *
      * @param cacheFileUri A Content URI for a cache file.
-     * @param asyncFileDownloads Get the image data asynchronously if this is true.
+     * @param priority How soon the ImageDownloadScheduler should start the download.
      */
-    private void cacheUriToFile(final String uriFileToCache, final String cacheFileUri, final Uri itemUri, final ImageType imageType, final boolean asyncFileDownloads) throws HttpUtils.NoNetworkException {
+    private void cacheUriToFile(final String uriFileToCache, final String cacheFileUri, final Uri itemUri, final ImageType imageType, final ImageDownloadScheduler.Priority priority) throws HttpUtils.NoNetworkException {
         if (TextUtils.isEmpty(uriFileToCache)) {
             throw new IllegalArgumentException("uriFileToCache is empty or null.");
         }
@@ -407,63 +409,53 @@ public class SubjectAdder {
             throw new IllegalArgumentException("uriFileToCache is empty or null");
         }
 
-        //Don't attempt it if it is already in progress.
-        if (mImageDownloadsInProgress.containsKey(uriFileToCache)) {
-            //TODO: Check the actual date?
-            return;
-        }
-
         //Don't try if there is no suitable network connection:
         HttpUtils.throwIfNoNetwork(getContext());
 
-        final Date now = new Date();
-        mImageDownloadsInProgress.put(uriFileToCache, now);
-
-        if (asyncFileDownloads) {
-            Log.info("cacheUriToFile(): uriFileToCache=" + uriFileToCache);
-
-            final Call call = HttpUtils.createGetRequestCall(uriFileToCache, false);
-            call.enqueue(new Callback() {
-                @Override
-                public void onFailure(final Call call, final IOException e) {
-                    onImageDownloadDone(false, uriFileToCache, itemUri, imageType);
-                }
+        //Don't attempt it if it is already in progress, unless that seems to have hung.
+        final ImageDownloadRegistry.Download download = mImageDownloads.tryStart(uriFileToCache);
+        if (download == null) {
+            return;
+        }
 
-                @Override
-                public void onResponse(final Call call, final okhttp3.Response response) throws IOException {
-                    boolean successful = false;
+        Log.info("cacheUriToFile(): priority=" + priority + ", uriFileToCache=" + uriFileToCache);
 
-                    if (response != null && response.isSuccessful()) {
-                        try {
-                            HttpUtils.parseGetFileResponseContent(mContext, response.body().byteStream(), cacheFileUri);
-                            successful = true;
-                        } catch (final IOException e) {
-                            Log.error("cacheUriToFile(): parseGetFileResponseContent failed for cache content URI: " + cacheFileUri, e);
-                        }
+        mImageDownloadScheduler.schedule(uriFileToCache, priority, download, new Callback() {
+            @Override
+            public void onFailure(final Call call, final IOException e) {
+                onImageDownloadDone(download, false, -1, itemUri, imageType);
+            }
 
-                        // In case parseGetFileResponseContent() didn't read to the end, for some reason:
-                        response.close();
+            @Override
+            public void onResponse(final Call call, final okhttp3.Response response) throws IOException {
+                boolean successful = false;
+                long bytes = -1;
+
+                if (response != null && response.isSuccessful()) {
+                    try {
+                        bytes = HttpUtils.parseGetFileResponseContent(mContext, response.body().byteStream(), cacheFileUri);
+                        successful = true;
+                    } catch (final IOException e) {
+                        Log.error("cacheUriToFile(): parseGetFileResponseContent failed for cache content URI: " + cacheFileUri, e);
                     }
 
-                    onImageDownloadDone(successful, uriFileToCache, itemUri, imageType);
+                    // In case parseGetFileResponseContent() didn't read to the end, for some reason:
+                    response.close();
                 }
-            });
-        } else {
-            boolean response = false;
-            try {
-                response = HttpUtils.cacheUriToFileSync(getContext(), uriFileToCache, cacheFileUri);
-            } catch (final HttpUtils.FileCacheException e) {
-                Log.error("SubjectAdder.CacheUriToFile(): Exception from HttpUtils.cacheUriToFileSync", e);
-            }
 
-            onImageDownloadDone(response, uriFileToCache, itemUri, imageType);
-        }
+                onImageDownloadDone(download, successful, bytes, itemUri, imageType);
+            }
+        });
     }
 
-    private void onImageDownloadDone(final boolean success, final String uriFileToCache, final Uri itemUri, final ImageType imageType) {
-        markImageDownloadAsNotInProgress(uriFileToCache);
+    private void onImageDownloadDone(final ImageDownloadRegistry.Download download, final boolean success, final long bytes, final Uri itemUri, final ImageType imageType) {
+        download.finish(success, bytes);
         if (success) {
-            markImageAsDownloaded(itemUri, imageType, uriFileToCache);
+            if (imageType == ImageType.STANDARD) {
+                deriveImagesAsync(itemUri, true);
+            } else {
+                markImageAsDownloaded(itemUri, imageType);
+            }
         } else {
             Log.error("onImageDownloadDone(): cacheUriToContentUriFileSync(): failed.");
         }
@@ -477,20 +469,96 @@ public class SubjectAdder {
         HttpUtils.throwIfNoNetwork(getContext());
     }
 
+    /**
+     * Create any thumbnail or inverted images that the server didn't give us remote URIs for,
+     * from the already-downloaded standard image.
+     *
+     * @return The values to mark those images as downloaded,
+     * or, if that failed, to remember the failed attempt, so we don't try again until after an exponential backoff.
+     */
+    private ContentValues deriveImagesFromStandard(final Uri itemUri) {
+        final ContentValues result = new ContentValues();
+
+        final ContentResolver resolver = getContext().getContentResolver();
+        final Cursor c = resolver.query(itemUri, PROJECTION_DERIVE_IMAGES,
+                null, null, null);
+        if (c == null) {
+            Log.error("deriveImagesFromStandard(): Cursor is null.");
+            return result;
+        }
 
-    private void markImageDownloadAsNotInProgress(final String uriFileToCache) {
-        mImageDownloadsInProgress.remove(uriFileToCache);
+        if (!c.moveToFirst()) {
+            c.close();
+            return result;
+        }
+
+        final String uriStandard = c.getString(0);
+        String uriThumbnail = null;
+        if (TextUtils.isEmpty(c.getString(1)) && c.getInt(3) != 1) {
+            uriThumbnail = c.getString(2);
+        }
+
+        String uriInverted = null;
+        if (TextUtils.isEmpty(c.getString(4)) && c.getInt(6) != 1) {
+            uriInverted = c.getString(5);
+        }
+
+        final int attempts = c.getInt(7);
+        c.close();
+
+        if (TextUtils.isEmpty(uriStandard) ||
+                (TextUtils.isEmpty(uriThumbnail) && TextUtils.isEmpty(uriInverted))) {
+            return result;
+        }
+
+        if (!ImageDeriver.deriveImages(getContext(), uriStandard, uriThumbnail, uriInverted)) {
+            Log.error("deriveImagesFromStandard(): deriveImages() failed for itemUri=" + itemUri +
+                    ", attempts=" + (attempts + 1));
+            result.put(Item.Columns.DERIVE_ATTEMPTS, attempts + 1);
+            result.put(Item.Columns.DERIVE_NEXT_ATTEMPT,
+                    System.currentTimeMillis() + Utils.getRetryBackoff(attempts + 1,
+                            Config.DERIVE_RETRY_BACKOFF_INITIAL_MS, Config.DERIVE_RETRY_BACKOFF_MAXIMUM_MS));
+            return result;
+        }
+
+        if (!TextUtils.isEmpty(uriThumbnail)) {
+            result.put(Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED, 1);
+        }
+
+        if (!TextUtils.isEmpty(uriInverted)) {
+            result.put(Item.Columns.LOCATION_INVERTED_DOWNLOADED, 1);
+        }
+
+        return result;
     }
 
-    private void markImageAsDownloaded(final Uri itemUri, final ImageType imageType, final String uriFileToCache) {
+    /**
+     * Create any thumbnail or inverted images from the standard image, on mDeriveExecutor,
+     * and then mark them as downloaded.
+     *
+     * @param standardDownloaded Whether to also mark the standard image as downloaded,
+     * in the same update, so they all become available together.
+     */
+    private void deriveImagesAsync(final Uri itemUri, final boolean standardDownloaded) {
+        if (!mDeriveItemsQueued.add(itemUri) && !standardDownloaded) {
+            return;
+        }
 
-        //Don't try downloading this again later:
+        mDeriveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDeriveItemsQueued.remove(itemUri);
 
-        //Actually the caller should already have removed this,
-        //regardless of the download's success or failure.
-        //but let's be sure:
-        markImageDownloadAsNotInProgress(uriFileToCache);
+                if (standardDownloaded) {
+                    markImageAsDownloaded(itemUri, ImageType.STANDARD);
+                } else {
+                    markImagesAsDownloaded(itemUri, deriveImagesFromStandard(itemUri));
+                }
+            }
+        });
+    }
 
+    private void markImageAsDownloaded(final Uri itemUri, final ImageType imageType) {
         //Let users of the ContentProvider API know that the image has been fully downloaded
         //so it's safe to use it:
         String fieldName = null;
@@ -508,15 +576,25 @@ public class SubjectAdder {
                 throw new IllegalArgumentException("markImageAsDownloaded(): Unexpected imageType.");
         }
 
-        final ContentResolver resolver = getContext().getContentResolver();
-
-        final ContentValues values = new ContentValues();
+        //Create the other images before marking the standard image as downloaded,
+        //so they all become available together, with just one update:
+        final ContentValues values = (imageType == ImageType.STANDARD) ?
+                deriveImagesFromStandard(itemUri) : new ContentValues();
         values.put(fieldName, 1);
 
+        markImagesAsDownloaded(itemUri, values);
+    }
+
+    private void markImagesAsDownloaded(final Uri itemUri, final ContentValues values) {
+        if (values.size() == 0) {
+            return;
+        }
+
+        final ContentResolver resolver = getContext().getContentResolver();
         final int affected = resolver.update(itemUri, values,
                 null, null);
         if (affected != 1) {
-            Log.error("markImageAsDownloaded(): Failed to mark image download as done.");
+            Log.error("markImagesAsDownloaded(): Failed to mark image download as done.");
         } //else {
             //Let the ListView (or other UI) know that there is more to display.
             //TODO? notifyRowChangeBySubjectId(subjectId);
@@ -525,9 +603,8 @@ public class SubjectAdder {
 
     /**
      * @param item
-     * @param asyncFileDownloads Get the image data asynchronously if this is true.
      */
-    private boolean addSubject(final ZooniverseClient.Subject item, final boolean asyncFileDownloads) {
+    private boolean addSubject(final ZooniverseClient.Subject item) {
         if (subjectIsInDatabase(item.getId())) {
             //It is already in the database.
             //TODO: Update the row?
@@ -553,7 +630,7 @@ public class SubjectAdder {
             return false;
         }
 
-        cacheUrisToFiles(itemUri, asyncFileDownloads);
+        cacheUrisToFiles(itemUri);
 
         //TODO: notifyRowChangeById(rowId);
         return true;
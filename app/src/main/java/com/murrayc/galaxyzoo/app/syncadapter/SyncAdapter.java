@@ -27,25 +27,31 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.SyncResult;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
-import android.text.TextUtils;
 
 import com.murrayc.galaxyzoo.app.Log;
 import com.murrayc.galaxyzoo.app.LoginUtils;
 import com.murrayc.galaxyzoo.app.R;
 import com.murrayc.galaxyzoo.app.Utils;
-import com.murrayc.galaxyzoo.app.provider.ClassificationAnswer;
-import com.murrayc.galaxyzoo.app.provider.ClassificationCheckbox;
+import com.murrayc.galaxyzoo.app.provider.CacheStats;
+import com.murrayc.galaxyzoo.app.provider.Classification;
 import com.murrayc.galaxyzoo.app.provider.Config;
 import com.murrayc.galaxyzoo.app.provider.HttpUtils;
 import com.murrayc.galaxyzoo.app.provider.Item;
+import com.murrayc.galaxyzoo.app.provider.ItemStats;
+import com.murrayc.galaxyzoo.app.provider.SyncScheduler;
 import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import retrofit2.Call;
 import retrofit2.Callback;
@@ -54,18 +60,19 @@ import retrofit2.Callback;
  * Created by murrayc on 10/4/14.
  */
 public class SyncAdapter extends AbstractThreadedSyncAdapter {
-    private static final String COUNT_AS_COUNT = "COUNT(*) AS count";
     private static final String PARAM_PART_CLASSIFICATION = "classification";
-    private static final String WHERE_CLAUSE_NOT_DONE = Item.Columns.DONE + " != 1";
     private static final String WHERE_CLAUSE_UPLOADED = Item.Columns.UPLOADED + " == 1";
     private static final String[] PROJECTION_ITEMS_OUTSTANDING = {Item.Columns._ID,
             Item.Columns.SUBJECT_ID,
-            Item.Columns.GROUP_ID};
-    private static final String[] PROJECTION_ID = {Item.Columns._ID};
-    private static final String[] PROJECTION_FAVORITE = {Item.Columns.FAVORITE};
-    private static final String[] PROJECTION_CLASSIFICATION_CHECKBOX_ID = {ClassificationCheckbox.Columns.CHECKBOX_ID};
-    private int mUploadsInProgress = 0;
-
+            Item.Columns.GROUP_ID,
+            Item.Columns.UPLOAD_ATTEMPTS,
+            Item.Columns.UPLOAD_NEXT_ATTEMPT};
+    private static final String WHERE_CLAUSE_OUTSTANDING =
+            "(" + Item.Columns.DONE + " == 1) AND " +
+                    "(" + Item.Columns.UPLOADED + " != 1)";
+    //Upload the oldest classifications first.
+    //ISO-8601 dates can be alphabetically sorted to get date-time order:
+    private static final String ORDER_BY_OUTSTANDING = Item.Columns.DATETIME_DONE + " ASC";
     private boolean mRequestMoreItemsTaskInProgress = false;
 
     //This communicates with the remote server:
@@ -76,16 +83,30 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
     //and download image files to the local cache.
     private final SubjectAdder mSubjectAdder;
 
-    //Out Runnable tasks use this to post results back to our main thread.
-    private final Handler mHandler;
-    private static final String[] PROJECTION_UPLOAD = {ClassificationAnswer.Columns.SEQUENCE,
-            ClassificationAnswer.Columns.QUESTION_ID,
-            ClassificationAnswer.Columns.ANSWER_ID};
-    private static final String[] PROJECTION_COUNT_AS_COUNT = new String[]{COUNT_AS_COUNT};
+    //This runs the UploadTasks, with a fixed maximum number running at the same time.
+    private final ExecutorService mUploadExecutor;
+    private static final String[] PROJECTION_UPLOAD = {Classification.Columns.FAVORITE,
+            Classification.Columns.SEQUENCE,
+            Classification.Columns.QUESTION_ID,
+            Classification.Columns.ANSWER_ID,
+            Classification.Columns.CHECKBOX_ID};
+    private static final String[] PROJECTION_ITEM_STATS = {ItemStats.Columns.NOT_DONE_COUNT,
+            ItemStats.Columns.UPLOADED_COUNT,
+            ItemStats.Columns.BYTES_USED};
+
+    /**
+     * The counts that decide whether we need to download or remove subjects,
+     * read in one query.
+     */
+    private static final class ItemCounts {
+        int notDoneCount = 0;
+        int uploadedCount = 0;
+        long bytesUsed = 0;
+    }
 
     public SyncAdapter(final Context context, final boolean autoInitialize) {
         super(context, autoInitialize);
-        mHandler = new Handler(Looper.getMainLooper());
+        mUploadExecutor = Executors.newFixedThreadPool(Config.MAXIMUM_CONCURRENT_UPLOADS);
 
         //Uncomment this to make debugger breakpoints work: android.os.Debug.waitForDebugger();
 
@@ -98,40 +119,63 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
 
     @Override
     public void onPerformSync(final Account account, final Bundle extras, final String authority, final ContentProviderClient provider, final SyncResult syncResult) {
-        doRegularTasks();
+        //Periodic syncs, and syncs requested by the system, have no reasons, so we do everything then.
+        doRegularTasks(syncResult, SyncScheduler.getReasons(extras));
     }
 
     /**
      * Do any uploads, downloads, or removals that are currently necessary.
      * This might not finish all necessary work, so subsequent calls might be necessary.
      *
-     * @return Return true if we know for sure that no further work is currently necessary.
+     * @param reasons A combination of the SyncScheduler.REASON_* flags, saying what work might be necessary.
      */
-    private void doRegularTasks() {
-        Log.info("doRegularTasks() start");
+    private void doRegularTasks(final SyncResult syncResult, final int reasons) {
+        Log.info("doRegularTasks() start with reasons: " + reasons);
+        //Get all the counts at once, instead of querying again for each task:
+        final ItemCounts counts = getItemCounts();
+
         //Do the download first, to avoid the UI having to wait for new subjects to classify.
 
+        if ((reasons & SyncScheduler.REASON_NEED_SUBJECTS) != 0) {
+            downloadMinimumSubjectsAsync(ZooniverseClient.getGroupIdForNextQuery(), counts);
+        }
 
-        downloadMinimumSubjectsAsync(ZooniverseClient.getGroupIdForNextQuery());
-        downloadMissingImages();
+        if ((reasons & SyncScheduler.REASON_DOWNLOAD_IMAGES) != 0) {
+            downloadMissingImages();
+        }
 
         //Do less urgent things next:
-        uploadOutstandingClassifications();
-        removeOldSubjects();
+        if ((reasons & SyncScheduler.REASON_UPLOAD_PENDING) != 0) {
+            uploadOutstandingClassifications(syncResult);
+        }
+
+        if ((reasons & SyncScheduler.REASON_PRUNE) != 0) {
+            removeOldSubjects(counts);
+            trimCache();
+        }
 
-        //TODO: Don't bother checking that each image still exists, repeatedly -
-        //instead only check if a special file has been removed from the cache?
-        checkImagesStillExist();
+        if ((reasons & SyncScheduler.REASON_CHECK_CACHE) != 0) {
+            checkImagesStillExist();
+        }
 
         Log.info("doRegularTasks() end");
     }
 
+    /**
+     * Forget any items whose cached images have been deleted.
+     *
+     * @return Return true if we know for sure that no further work is currently necessary.
+     */
     private boolean checkImagesStillExist() {
-        Log.info("checkImagesStillExist(): start");
-        final boolean noWorkNecessary = mSubjectAdder.checkForDeletedCachedImages();
-        Log.info("checkImagesStillExist(): end");
+        final ContentResolver resolver = getContentResolver();
+        final Bundle result = resolver.call(CacheStats.CONTENT_URI, CacheStats.METHOD_CHECK_CACHE_EPOCH,
+                null, null);
+        if (result == null) {
+            Log.error("checkImagesStillExist(): result is null.");
+            return false;
+        }
 
-        return noWorkNecessary;
+        return result.getInt(CacheStats.RESULT_ITEMS_REMOVED) == 0;
     }
 
     /**
@@ -164,8 +208,8 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
      *
      * @return Return true if we know for sure that no further downloading is currently necessary.
      */
-    private boolean downloadMinimumSubjectsAsync(final String groupId) {
-        final int missing = getNotDoneNeededForCache();
+    private boolean downloadMinimumSubjectsAsync(final String groupId, final ItemCounts counts) {
+        final int missing = getNotDoneNeededForCache(counts);
         if (missing > 0) {
             requestMoreItemsAsync(groupId, missing);
             return false;
@@ -211,55 +255,55 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
 
     }
 
-    private int getNotDoneNeededForCache() {
-        final int count = getNotDoneCount();
-        final int min_cache_size = getMinCacheSize();
-        return min_cache_size - count;
-    }
-
-    private int getNotDoneCount() {
-        final ContentResolver resolver = getContentResolver();
-
-        final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_COUNT_AS_COUNT,
-                WHERE_CLAUSE_NOT_DONE, null, null);
-        if (c == null) {
-            Log.error("getNotDoneCount(): Cursor is null.");
+    private int getNotDoneNeededForCache(final ItemCounts counts) {
+        //Don't download more subjects while the cache is already too big.
+        //Otherwise we would just remove old subjects to make room for new ones, repeatedly.
+        final long bytesUsed = counts.bytesUsed;
+        final long budget = getCacheBudget();
+        if (bytesUsed >= budget) {
+            Log.info("getNotDoneNeededForCache(): The cache is full: bytesUsed=" + bytesUsed + ", budget=" + budget);
             return 0;
         }
 
-        c.moveToFirst();
-        final int result = c.getInt(0);
-        c.close();
-        return result;
+        final int min_cache_size = getMinCacheSize();
+        return min_cache_size - counts.notDoneCount;
     }
 
-    private int getUploadedCount() {
-        final ContentResolver resolver = getContentResolver();
+    /**
+     * Get the item counts, which the ItemsContentProvider keeps up to date,
+     * so this doesn't count the items, and the bytes used by the cache.
+     */
+    private ItemCounts getItemCounts() {
+        final ItemCounts result = new ItemCounts();
 
-        final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_COUNT_AS_COUNT,
-                WHERE_CLAUSE_UPLOADED, null, null);
+        final ContentResolver resolver = getContentResolver();
+        final Cursor c = resolver.query(ItemStats.CONTENT_URI, PROJECTION_ITEM_STATS,
+                null, null, null);
         if (c == null) {
-            Log.error("getUploadedCount(): Cursor is null.");
-            return 0;
+            Log.error("getItemCounts(): Cursor is null.");
+            return result;
+        }
+
+        if (c.moveToFirst()) {
+            result.notDoneCount = c.getInt(0);
+            result.uploadedCount = c.getInt(1);
+            result.bytesUsed = c.getLong(2);
         }
 
-        c.moveToFirst();
-        final int result = c.getInt(0);
         c.close();
         return result;
     }
 
     /**
-     * Upload any outstanding classifications.
+     * Upload any outstanding classifications, oldest first,
+     * blocking until the uploads have finished.
+     * Classifications whose previous upload failed are skipped until their
+     * backoff time has passed.
      *
+     * @param syncResult The number of uploaded, failed, and skipped classifications will be added to this.
      * @return Return true if we know for sure that no further uploading is currently necessary.
      */
-    private boolean uploadOutstandingClassifications() {
-        //To keep things simple, don't do this while it is already happening.
-        //This only ever happens on this thread so there should be no need for a lock here.
-        if (mUploadsInProgress > 0)
-            return false;
-
+    private boolean uploadOutstandingClassifications(final SyncResult syncResult) {
         // TODO: Request re-authentication when the server says we have used the wrong name + api_key.
         // What does the server reply in that case?
         // See https://github.com/zooniverse/Galaxy-Zoo/issues/184
@@ -268,11 +312,8 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         // query the database for any item whose classification is not yet uploaded.
         final ContentResolver resolver = getContentResolver();
 
-        final String whereClause =
-                "(" + Item.Columns.DONE + " == 1) AND " +
-                        "(" + Item.Columns.UPLOADED + " != 1)";
         final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_ITEMS_OUTSTANDING,
-                whereClause, null, null); //TODO: Order by?
+                WHERE_CLAUSE_OUTSTANDING, null, ORDER_BY_OUTSTANDING);
         if (c == null) {
             Log.error("uploadOutstandingClassifications(): Cursor is null.");
             return false;
@@ -283,20 +324,85 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
             return true; //Tell the caller that no action was necessary.
         }
 
+        final long now = System.currentTimeMillis();
+        final List<UploadTask> tasks = new ArrayList<>();
+        int skipped = 0;
         while (c.moveToNext()) {
             final String itemId = c.getString(0);
             final String subjectId = c.getString(1);
             final String groupId = c.getString(2);
+            final int attempts = c.getInt(3);
+            final long nextAttempt = c.getLong(4);
 
+            //Wait longer before retrying a previously-failed upload:
+            if (nextAttempt > now) {
+                skipped++;
+                continue;
+            }
 
-            mUploadsInProgress++;
-            final UploadTask task = new UploadTask(itemId, subjectId, groupId, loginDetails.name, loginDetails.authApiKey);
-            final Thread thread = new Thread(task);
-            thread.start();
+            tasks.add(new UploadTask(itemId, subjectId, groupId, attempts, loginDetails.name, loginDetails.authApiKey));
         }
 
         c.close();
-        return false;
+
+        syncResult.stats.numSkippedEntries += skipped;
+
+        if (tasks.isEmpty()) {
+            return false;
+        }
+
+        //Don't try if there is no suitable network connection,
+        //so we don't count this as a failed attempt for every item.
+        try {
+            HttpUtils.throwIfNoNetwork(getContext());
+        } catch (final HttpUtils.NoNetworkException e) {
+            Log.info("uploadOutstandingClassifications(): No network connection.");
+            return false;
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        final List<Future<UploadResult>> results;
+        try {
+            results = mUploadExecutor.invokeAll(tasks);
+        } catch (final InterruptedException e) {
+            //The sync was probably cancelled.
+            Log.info("uploadOutstandingClassifications(): Interrupted.");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        int uploaded = 0;
+        int failed = 0;
+        int deferred = 0;
+        for (final Future<UploadResult> result : results) {
+            try {
+                switch (result.get()) {
+                    case UPLOADED:
+                        uploaded++;
+                        break;
+                    case DEFERRED:
+                        deferred++;
+                        break;
+                    default:
+                        failed++;
+                }
+            } catch (final InterruptedException | ExecutionException e) {
+                Log.error("uploadOutstandingClassifications(): Exception from UploadTask", e);
+                failed++;
+            }
+        }
+
+        syncResult.stats.numUpdates += uploaded;
+        //Uploads that were deferred, because the network went away, were not IO errors,
+        //so don't let them make the SyncManager back off:
+        syncResult.stats.numIoExceptions += failed;
+        syncResult.stats.numSkippedEntries += deferred;
+
+        final long duration = SystemClock.elapsedRealtime() - start;
+        Log.info("uploadOutstandingClassifications(): uploaded=" + uploaded + ", failed=" + failed +
+                ", deferred=" + deferred + ", skipped=" + skipped + ", duration=" + duration + "ms");
+
+        return (failed == 0) && (deferred == 0) && (skipped == 0);
     }
 
     /**
@@ -304,42 +410,26 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
      *
      * @return Return true if we know for sure that no further removal is currently necessary.
      */
-    private boolean removeOldSubjects() {
-        final int count = getUploadedCount();
+    private boolean removeOldSubjects(final ItemCounts counts) {
+        final int count = counts.uploadedCount;
         final int max = getKeepCount();
         if (count > max) {
             Log.info("removeOldSubjects(): start");
-            //Get the oldest done (and uploaded) items:
+            //Remove the oldest done (and uploaded) items, all at once:
             final ContentResolver resolver = getContentResolver();
 
+            final Bundle extras = new Bundle();
+            extras.putString(Item.EXTRA_SELECTION, WHERE_CLAUSE_UPLOADED);
             //ISO-8601 dates can be alphabetically sorted to get date-time order:
-            final String orderBy = Item.Columns.DATETIME_DONE + " ASC";
+            extras.putString(Item.EXTRA_SORT_ORDER, Item.Columns.DATETIME_DONE + " ASC");
             final int countToRemove = count - max;
-            //TODO: Use this: final String limit = Integer.toString(countToRemove); //TODO: Is this locale-independent?
-            final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_ID,
-                    WHERE_CLAUSE_UPLOADED, null, orderBy);
-            if (c == null) {
-                Log.error("removeOldSubjects(): Cursor is null.");
+            final Bundle result = resolver.call(Item.ITEMS_URI, Item.METHOD_REMOVE_ITEMS,
+                    Integer.toString(countToRemove), extras);
+            if (result == null) {
+                Log.error("removeOldSubjects(): result is null.");
                 return false;
             }
 
-            //Remove them one by one:
-            int removed = 0;
-            while (c.moveToNext()) {
-                final String itemId = c.getString(0);
-                if (!TextUtils.isEmpty(itemId)) {
-                    removeItem(itemId);
-
-                    //Only remove enough:
-                    removed++;
-                    if (removed == countToRemove) {
-                        break;
-                    }
-                }
-            }
-
-            c.close();
-
             Log.info("removeOldSubjects(): end");
 
             return false;
@@ -348,13 +438,22 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
-    private void removeItem(final String itemId) {
+    /**
+     * Remove the least-recently used classified subjects if their images use more than the budget.
+     * Subjects that have not been classified, or not yet uploaded, are never removed.
+     *
+     * @return Return true if we know for sure that no further removal is currently necessary.
+     */
+    private boolean trimCache() {
         final ContentResolver resolver = getContentResolver();
-
-        //ItemsContentProvider takes care of deleting related files, classification answers, etc:
-        if(resolver.delete(Utils.getItemUri(itemId), null, null) < 1) {
-            Log.error("removeItem(): No item rows were removed.");
+        final Bundle result = resolver.call(CacheStats.CONTENT_URI, CacheStats.METHOD_TRIM_CACHE,
+                Long.toString(getCacheBudget()), null);
+        if (result == null) {
+            Log.error("trimCache(): result is null.");
+            return false;
         }
+
+        return result.getInt(CacheStats.RESULT_ITEMS_REMOVED) == 0;
     }
 
     private boolean doUploadSync(final String itemId, final String subjectId, final String groupId, final String authName, final String authApiKey) throws ZooniverseClient.UploadException {
@@ -368,84 +467,68 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
 
         final ContentResolver resolver = getContentResolver();
 
-        //Mark it as a favorite if necessary:
-        {
-            final Cursor c = resolver.query(Utils.getItemUri(itemId),
-                    PROJECTION_FAVORITE, null, null, null);
-            if (c == null) {
-                Log.error("doUploadSync(): Cursor is null.");
-                return false;
-            }
-
-            if (c.moveToFirst()) {
-                final int favorite = c.getInt(0);
-                if (favorite == 1) {
-                    nameValuePairs.add(new HttpUtils.NameValuePair(PARAM_PART_CLASSIFICATION + "[favorite][]",
-                            "true"));
-                }
-            }
+        //Get the item, its answers, and their selected checkboxes, in one query:
+        final Uri.Builder uriBuilder = Classification.CLASSIFICATIONS_URI.buildUpon();
+        uriBuilder.appendPath(itemId);
+        final Cursor c = resolver.query(uriBuilder.build(),
+                PROJECTION_UPLOAD, null, null, null);
+        if (c == null) {
+            Log.error("doUploadSync(): Cursor is null.");
+            return false;
+        }
 
+        if (!c.moveToFirst()) {
+            Log.error("doUploadSync(): The item does not exist.");
             c.close();
+            return false;
         }
 
-
-        final Cursor c;
-        {
-            final String selection = ClassificationAnswer.Columns.ITEM_ID + " = ?"; //We use ? to avoid SQL Injection.
-            final String[] selectionArgs = {itemId};
-            final String orderBy = ClassificationAnswer.Columns.SEQUENCE + " ASC";
-            c = resolver.query(ClassificationAnswer.CONTENT_URI,
-                    PROJECTION_UPLOAD, selection, selectionArgs, orderBy);
-            if (c == null) {
-                Log.error("doUploadSync(): Cursor is null.");
-                return false;
-            }
+        //Mark it as a favorite if necessary:
+        //This is the same in every row.
+        final int favorite = c.getInt(0);
+        if (favorite == 1) {
+            nameValuePairs.add(new HttpUtils.NameValuePair(PARAM_PART_CLASSIFICATION + "[favorite][]",
+                    "true"));
         }
 
+        //The rows are ordered by the answers' sequence,
+        //with one row for each of the answer's selected checkboxes, if any.
         int max_sequence = 0;
-        while (c.moveToNext()) {
-            final int sequence = c.getInt(0);
-            final String questionId = c.getString(1);
-            final String answerId = c.getString(2);
-
-            //We could instead ORDER BY the sequence but that might be slightly slower and need a index.
-            if(sequence > max_sequence) {
-                max_sequence = sequence;
+        int previousSequence = -1;
+        String questionKey = null;
+        do {
+            if (c.isNull(1)) {
+                //The item has no answers.
+                continue;
             }
 
-            //Add the question's answer:
-            //TODO: Is the string representation of sequence locale-dependent?
-            final String questionKey =
-                    getAnnotationPart(sequence) + "[" + questionId + "]";
-            nameValuePairs.add(new HttpUtils.NameValuePair(questionKey, answerId));
-
-
-            final String selection = "(" + ClassificationCheckbox.Columns.ITEM_ID + " = ?) AND " +
-                    "(" + ClassificationCheckbox.Columns.QUESTION_ID + " == ?)"; //We use ? to avoid SQL Injection.
-            final String[] selectionArgs = {itemId, questionId};
-
-            //Add the question's answer's selected checkboxes, if any:
-            //The sequence will be the same for any selected checkbox for the same answer,
-            //so we don't bother getting that, or sorting by that.
-            final String orderBy = ClassificationCheckbox.Columns.CHECKBOX_ID + " ASC";
-            final Cursor cursorCheckboxes = resolver.query(ClassificationCheckbox.CONTENT_URI,
-                    PROJECTION_CLASSIFICATION_CHECKBOX_ID, selection, selectionArgs, orderBy);
-            if (cursorCheckboxes == null) {
-                Log.error("doUploadSync(): cursorCheckboxes is null.");
-                c.close();
-                return false;
+            final int sequence = c.getInt(1);
+            if (sequence != previousSequence) {
+                previousSequence = sequence;
+
+                final String questionId = c.getString(2);
+                final String answerId = c.getString(3);
+
+                if(sequence > max_sequence) {
+                    max_sequence = sequence;
+                }
+
+                //Add the question's answer:
+                //TODO: Is the string representation of sequence locale-dependent?
+                questionKey =
+                        getAnnotationPart(sequence) + "[" + questionId + "]";
+                nameValuePairs.add(new HttpUtils.NameValuePair(questionKey, answerId));
             }
 
-            while (cursorCheckboxes.moveToNext()) {
-                final String checkboxId = cursorCheckboxes.getString(0);
+            //Add the question's answer's selected checkbox, if any:
+            if (!c.isNull(4)) {
+                final String checkboxId = c.getString(4);
 
                 //TODO: The Galaxy-Zoo server expects us to reuse the parameter name,
                 //TODO: Is the string representation of sequence locale-dependent?
                 nameValuePairs.add(new HttpUtils.NameValuePair(questionKey, checkboxId));
             }
-
-            cursorCheckboxes.close();
-        }
+        } while (c.moveToNext());
 
         c.close();
 
@@ -464,45 +547,47 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         return PARAM_PART_CLASSIFICATION + "[annotations][" + sequence + "]";
     }
 
-    private class UploadTask implements Runnable {
+    private enum UploadResult {
+        UPLOADED,
+        FAILED,
+        //Not attempted, so not counted as a failed attempt.
+        DEFERRED
+    }
+
+    private class UploadTask implements Callable<UploadResult> {
         private final String mItemId ;
         private final String mSubjectId;
         private final String mGroupId;
+        private final int mAttempts;
         private final String mAuthName;
         private final String mAuthApiKey;
 
-        public UploadTask(final String itemId, final String subjectId, final String groupId, final String authName, final String authApiKey) {
+        public UploadTask(final String itemId, final String subjectId, final String groupId, final int attempts, final String authName, final String authApiKey) {
             mItemId = itemId;
             mSubjectId = subjectId;
             mGroupId = groupId;
+            mAttempts = attempts;
             mAuthName = authName;
             mAuthApiKey = authApiKey;
         }
 
         @Override
-        public void run() {
-            Log.info("UploadTask.run()");
+        public UploadResult call() {
+            Log.info("UploadTask.call()");
             boolean result = false;
             try {
                 result = doUploadSync(mItemId, mSubjectId, mGroupId, mAuthName, mAuthApiKey);
             } catch (final HttpUtils.NoNetworkException e) {
                 //This is normal, if there is no suitable network connection.
+                //Don't count this as a failed attempt.
                 Log.info("UploadTask(): NoNetworkException");
+                return UploadResult.DEFERRED;
             } catch (final ZooniverseClient.UploadException e) {
                 Log.error("UploadTask(): UploadException", e);
             }
 
-            //Call onPostExecute in the main thread:
-            final boolean resultToUse = result;
-            mHandler.post(new Runnable() {
-                public void run() {
-                    onPostExecute(resultToUse);
-                }
-            });
-        }
-
-        protected void onPostExecute(final boolean result) {
-            onUploadTaskFinished(result, mItemId);
+            onUploadTaskFinished(result, mItemId, mAttempts);
+            return result ? UploadResult.UPLOADED : UploadResult.FAILED;
         }
     }
 
@@ -516,8 +601,9 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         //Check that we are not adding too many,
         //which can happen if a second request was queued before we got the result from a
         //first request.
+        //This runs later than doRegularTasks(), so we get the counts again.
         List<ZooniverseClient.Subject> listToUse = result.subjects;
-        final int missing = getNotDoneNeededForCache();
+        final int missing = getNotDoneNeededForCache(getItemCounts());
         if (missing <= 0) {
             return;
         }
@@ -527,17 +613,16 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
             listToUse = listToUse.subList(0, missing);
         }
 
-        mSubjectAdder.addSubjects(listToUse, true /* async */);
+        mSubjectAdder.addSubjects(listToUse);
     }
 
-    private void onUploadTaskFinished(final boolean result, final String itemId) {
+    private void onUploadTaskFinished(final boolean result, final String itemId, final int attempts) {
         if (result) {
             markItemAsUploaded(itemId);
-        } //else {
+        } else {
             //TODO: Inform the user?
-        //}
-
-        mUploadsInProgress--;
+            markItemUploadAsFailed(itemId, attempts + 1);
+        }
     }
 
     private void markItemAsUploaded(final String itemId) {
@@ -553,6 +638,25 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    /**
+     * Remember the failed attempt, and don't try again until after an exponential backoff.
+     */
+    private void markItemUploadAsFailed(final String itemId, final int attempts) {
+        final ContentValues values = new ContentValues();
+        values.put(Item.Columns.UPLOAD_ATTEMPTS, attempts);
+        values.put(Item.Columns.UPLOAD_NEXT_ATTEMPT,
+                System.currentTimeMillis() + Utils.getRetryBackoff(attempts,
+                        Config.UPLOAD_RETRY_BACKOFF_INITIAL_MS, Config.UPLOAD_RETRY_BACKOFF_MAXIMUM_MS));
+
+        final ContentResolver resolver = getContentResolver();
+        final int affected = resolver.update(Utils.getItemUri(itemId),
+                values, null, null);
+
+        if (affected != 1) {
+            Log.error("markItemUploadAsFailed(): Unexpected affected rows: " + affected);
+        }
+    }
+
     private int getMinCacheSize() {
         return LoginUtils.getIntPref(getContext(), R.string.pref_key_cache_size);
     }
@@ -561,5 +665,18 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         return LoginUtils.getIntPref(getContext(), R.string.pref_key_keep_count);
     }
 
+    /**
+     * @return The maximum size of the cached images, in bytes.
+     */
+    private long getCacheBudget() {
+        int megabytes = LoginUtils.getIntPref(getContext(), R.string.pref_key_cache_bytes);
+        if (megabytes <= 0) {
+            //The Account might not have this preference yet.
+            megabytes = Config.DEFAULT_CACHE_BUDGET_MB;
+        }
+
+        return megabytes * 1024L * 1024L;
+    }
+
 
 }